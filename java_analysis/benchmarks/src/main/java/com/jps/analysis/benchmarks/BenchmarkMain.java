@@ -0,0 +1,48 @@
+package com.jps.analysis.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar. Takes the usual JMH options, but unless a result
+// format is given, writes machine-readable results to
+// target/jmh-results/<label>-<timestamp>.json so runs of different versions can be
+// charted side by side. The label is -Dbench.label, by default the tested version.
+public final class BenchmarkMain {
+    private static final List<String> INFO_OPTIONS = Arrays.asList("-h", "-l", "-lp", "-lprof", "-lrf");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        if (options.contains("-rf") || options.stream().anyMatch(INFO_OPTIONS::contains)) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Path directory = Paths.get("target", "jmh-results");
+        Files.createDirectories(directory);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path result = directory.resolve(label() + "-" + timestamp + ".json");
+
+        String[] withResult = Arrays.copyOf(args, args.length + 4);
+        withResult[args.length] = "-rf";
+        withResult[args.length + 1] = "json";
+        withResult[args.length + 2] = "-rff";
+        withResult[args.length + 3] = result.toString();
+        System.out.println("Writing results to " + result);
+        org.openjdk.jmh.Main.main(withResult);
+    }
+
+    private static String label() {
+        String label = System.getProperty("bench.label");
+        if (label == null) {
+            label = BenchmarkMain.class.getPackage().getImplementationVersion();
+        }
+        return label != null ? label : "java-analysis";
+    }
+}
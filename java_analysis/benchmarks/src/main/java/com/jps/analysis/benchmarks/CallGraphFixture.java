@@ -0,0 +1,111 @@
+package com.jps.analysis.benchmarks;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.IndexBatch;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.Random;
+
+// Synthetic call graph databases for the query benchmarks. A graph with E edges has
+// E / FAN_OUT methods, each making FAN_OUT calls to seeded random targets, spread over
+// classes of METHODS_PER_CLASS methods named Class<n>.m<n>(int). Databases are kept in
+// the given directory as graph-<edges>.db and reused by later runs, since the 10M edge
+// graph takes minutes and about a gigabyte to build.
+public final class CallGraphFixture {
+    public static final int FAN_OUT = 10;
+    public static final int METHODS_PER_CLASS = 20;
+    public static final String PARAMETERS = "int";
+    private static final int ROWS_PER_FLUSH = 100_000;
+    private static final long SEED = 42;
+
+    private CallGraphFixture() {
+    }
+
+    public static int methodCount(long edges) {
+        return (int) Math.max(1, edges / FAN_OUT);
+    }
+
+    public static String className(int method) {
+        return "Class" + method / METHODS_PER_CLASS;
+    }
+
+    public static String methodName(int method) {
+        return "m" + method;
+    }
+
+    public static Path open(Path directory, long edges) throws Exception {
+        Path database = directory.resolve("graph-" + edges + ".db");
+        if (Files.exists(database)) {
+            return database;
+        }
+        Files.createDirectories(directory);
+        // Built under a temporary name so an interrupted build is never reused
+        Path partial = directory.resolve("graph-" + edges + ".db.partial");
+        Files.deleteIfExists(partial);
+        DatabaseManager db = new DatabaseManager("jdbc:sqlite:" + partial);
+        try {
+            build(db, edges);
+        } finally {
+            db.close();
+        }
+        Files.move(partial, database, StandardCopyOption.ATOMIC_MOVE);
+        return database;
+    }
+
+    // Classes, then methods, then calls, so each row refers to ids already stored
+    private static void build(DatabaseManager db, long edges) throws SQLException {
+        int methods = methodCount(edges);
+        int classes = (methods + METHODS_PER_CLASS - 1) / METHODS_PER_CLASS;
+        Random random = new Random(SEED);
+        IndexBatch batch = new IndexBatch();
+
+        int[] classIds = new int[classes];
+        int flushed = 0;
+        for (int c = 0; c < classes; c++) {
+            batch.addClass("com.example.bench.p" + (c + 1) % 100, className(c * METHODS_PER_CLASS),
+                    "Class" + c + ".java", null);
+            if (batch.size() >= ROWS_PER_FLUSH || c == classes - 1) {
+                db.flush(batch);
+                for (int i = flushed; i <= c; i++) {
+                    classIds[i] = batch.getClassId(-(i - flushed + 1));
+                }
+                flushed = c + 1;
+                batch.clear();
+            }
+        }
+
+        int[] methodIds = new int[methods];
+        flushed = 0;
+        for (int method = 0; method < methods; method++) {
+            batch.addMethod(classIds[method / METHODS_PER_CLASS], methodName(method), "int", PARAMETERS,
+                    false, true, null);
+            if (batch.size() >= ROWS_PER_FLUSH || method == methods - 1) {
+                db.flush(batch);
+                for (int i = flushed; i <= method; i++) {
+                    methodIds[i] = batch.getMethodId(-(i - flushed + 1));
+                }
+                flushed = method + 1;
+                batch.clear();
+            }
+        }
+
+        for (long edge = 0; edge < edges; edge++) {
+            int caller = (int) (edge / FAN_OUT % methods);
+            int callee = random.nextInt(methods);
+            boolean inLoop = random.nextInt(4) == 0;
+            boolean inTry = random.nextInt(8) == 0;
+            boolean inConditional = random.nextInt(3) == 0;
+            batch.addMethodCall(methodIds[caller], methodIds[callee], 3 + (int) (edge % FAN_OUT), "this",
+                    className(caller) + "." + methodName(caller), inTry, false, false, inLoop, inLoop ? "for" : null,
+                    inConditional, inConditional ? "if" : null);
+            if (batch.size() >= ROWS_PER_FLUSH) {
+                db.flush(batch);
+                batch.clear();
+            }
+        }
+        db.flush(batch);
+    }
+}
@@ -0,0 +1,157 @@
+package com.jps.analysis.benchmarks;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.FileExtraction;
+import com.jps.analysis.parser.IndexWriter;
+import com.jps.analysis.parser.JavaSourceParser;
+import com.jps.analysis.synthetic.SyntheticProjectGenerator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The per-file indexing hot path, one source file per operation, so ops/s is files/s
+// and the "bytes" counter is source bytes/s. Each stage is measured on its own:
+//
+//   parse            JavaParser only, no symbol solver
+//   extract          parse + extraction visitor, symbol resolution disabled
+//   extractResolved  parse + extraction with the indexer's own symbol solver
+//                    (JavaSourceParser.createParser); the difference from extract
+//                    is the symbol-resolution cost
+//   store            writing an already extracted file to SQLite (refresh mode)
+//   parseJavaFile    the public end-to-end path: read, extract with symbols, store
+//
+// Run with -prof gc for gc.alloc.rate.norm, the bytes allocated per file.
+// -p corpus=test_java_project reads -Dcorpus.dir (default test_java_project/src);
+// -p corpus=generated writes a few large synthetic files to a temporary directory.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ParserBenchmark {
+    private static final long SEED = 42;
+
+    @Param({"test_java_project", "generated"})
+    public String corpus;
+
+    private SourceCorpus sources;
+    private Path workDir;
+    private JavaParser plainParser;
+    private JavaParser resolvingParser;
+    private JavaSourceParser sourceParser;
+    private IndexWriter writer;
+    private List<FileExtraction> extractions;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("jps-parser-bench");
+        if (corpus.equals("generated")) {
+            // Few large files: long method bodies, deep nesting and many call sites per file
+            SyntheticProjectGenerator.Shape shape = new SyntheticProjectGenerator.Shape().packages(2)
+                    .classesPerPackage(4).methodsPerClass(100).fanOut(8).nestingDepth(3).staticImports(4);
+            sources = SourceCorpus.generate(workDir.resolve("src"), shape, SEED);
+        } else {
+            sources = SourceCorpus.load(Paths.get(System.getProperty("corpus.dir", "test_java_project/src")));
+        }
+
+        // Index the corpus once: sets the parser's project root and leaves rows behind,
+        // so store and parseJavaFile measure re-indexing as the watcher does it
+        System.setProperty("db.url", "jdbc:sqlite:" + workDir.resolve("bench.db"));
+        System.setProperty("parser.threads", "1");
+        sourceParser = new JavaSourceParser();
+        sourceParser.parseProject(sources.getRoot());
+        writer = new IndexWriter(DatabaseManager.getInstance());
+
+        plainParser = new JavaParser();
+        // The symbol solver the indexer itself uses, shared JDK types and solver cache included
+        resolvingParser = sourceParser.createParser();
+
+        extractions = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            extractions.add(sourceParser.extract(sources.getFiles().get(i), sources.getContents().get(i),
+                    resolvingParser));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DatabaseManager.getInstance().close();
+        try (Stream<Path> walk = Files.walk(workDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private int nextFile(Bytes counter) {
+        int index = next;
+        next = (next + 1) % sources.size();
+        counter.bytes += sources.getSizeBytes(index);
+        return index;
+    }
+
+    @Benchmark
+    public ParseResult<CompilationUnit> parse(Bytes counter) {
+        return plainParser.parse(sources.getContents().get(nextFile(counter)));
+    }
+
+    @Benchmark
+    public FileExtraction extract(Bytes counter) {
+        int index = nextFile(counter);
+        return sourceParser.extract(sources.getFiles().get(index), sources.getContents().get(index), plainParser);
+    }
+
+    @Benchmark
+    public FileExtraction extractResolved(Bytes counter) {
+        int index = nextFile(counter);
+        return sourceParser.extract(sources.getFiles().get(index), sources.getContents().get(index),
+                resolvingParser);
+    }
+
+    @Benchmark
+    public long store(Bytes counter) throws Exception {
+        writer.write(extractions.get(nextFile(counter)), true);
+        writer.flush();
+        return writer.getRowsWritten();
+    }
+
+    @Benchmark
+    public void parseJavaFile(Bytes counter) throws IOException {
+        sourceParser.parseJavaFile(sources.getFiles().get(nextFile(counter)), resolvingParser);
+    }
+}
@@ -0,0 +1,106 @@
+package com.jps.analysis.benchmarks;
+
+import com.jps.analysis.db.ConnectionPool;
+import com.jps.analysis.query.MethodQuery;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// MethodQuery lookups against synthetic call graphs of increasing size. Each operation
+// queries a different seeded random method, so the score is the average latency of a
+// single lookup rather than of one hot, fully cached row.
+//
+// Graph databases are built on first use under -Dbench.dir (default target/bench-data)
+// and reused afterwards; see CallGraphFixture. Restrict the sizes with -p edges=10000.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    private static final int KEYS = 4096;
+    private static final long SEED = 7;
+
+    @Param({"10000", "1000000", "10000000"})
+    public long edges;
+
+    private ConnectionPool connections;
+    private MethodQuery query;
+    private int[] keys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path database = CallGraphFixture.open(Paths.get(System.getProperty("bench.dir", "target/bench-data")), edges);
+        // Pooled like AnalysisServer, so a lookup leases a warm connection rather than
+        // paying for opening one
+        connections = new ConnectionPool("jdbc:sqlite:" + database);
+        query = new MethodQuery(connections);
+
+        Random random = new Random(SEED);
+        int methods = CallGraphFixture.methodCount(edges);
+        keys = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = random.nextInt(methods);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.close();
+    }
+
+    private int nextKey() {
+        int key = keys[next];
+        next = (next + 1) % KEYS;
+        return key;
+    }
+
+    @Benchmark
+    public List<MethodCall> findMethodCalls() {
+        int method = nextKey();
+        return query.findMethodCalls(CallGraphFixture.className(method), CallGraphFixture.methodName(method),
+                CallGraphFixture.PARAMETERS);
+    }
+
+    @Benchmark
+    public List<MethodCall> findMethodCallsTo() {
+        int method = nextKey();
+        return query.findMethodCallsTo(CallGraphFixture.className(method), CallGraphFixture.methodName(method),
+                CallGraphFixture.PARAMETERS);
+    }
+
+    @Benchmark
+    public List<MethodCall> findMethodCallsByContext() {
+        int method = nextKey();
+        Map<String, Object> filters = Collections.singletonMap("is_in_loop", true);
+        return query.findMethodCallsByContext(CallGraphFixture.className(method), CallGraphFixture.methodName(method),
+                CallGraphFixture.PARAMETERS, filters);
+    }
+
+    @Benchmark
+    public List<MethodInfo> findMethodsBySignature() {
+        return query.findMethodsBySignature(CallGraphFixture.methodName(nextKey()), "int", CallGraphFixture.PARAMETERS);
+    }
+}
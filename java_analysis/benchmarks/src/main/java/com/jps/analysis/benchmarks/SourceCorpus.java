@@ -0,0 +1,64 @@
+package com.jps.analysis.benchmarks;
+
+import com.jps.analysis.synthetic.SyntheticProjectGenerator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Java sources held in memory for the parser benchmarks: either an existing source tree
+// (by default the bundled test_java_project) or one written by SyntheticProjectGenerator.
+public class SourceCorpus {
+    private final Path root;
+    private final List<Path> files;
+    private final List<String> contents;
+    // UTF-8 size of each file on disk
+    private final long[] sizes;
+    private final long totalBytes;
+
+    private SourceCorpus(Path root, List<Path> files) throws IOException {
+        this.root = root;
+        this.files = Collections.unmodifiableList(files);
+        List<String> loaded = new ArrayList<>(files.size());
+        this.sizes = new long[files.size()];
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            byte[] bytes = Files.readAllBytes(files.get(i));
+            loaded.add(new String(bytes, StandardCharsets.UTF_8));
+            sizes[i] = bytes.length;
+            total += bytes.length;
+        }
+        this.contents = Collections.unmodifiableList(loaded);
+        this.totalBytes = total;
+    }
+
+    public static SourceCorpus load(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> files = walk.filter(path -> path.toString().endsWith(".java")).sorted()
+                    .collect(Collectors.toList());
+            if (files.isEmpty()) {
+                throw new IOException("No Java sources under " + root);
+            }
+            return new SourceCorpus(root, files);
+        }
+    }
+
+    // Writes a synthetic project under root, where the symbol solver can find its declarations
+    public static SourceCorpus generate(Path root, SyntheticProjectGenerator.Shape shape, long seed) throws IOException {
+        new SyntheticProjectGenerator(shape, seed).generate(root);
+        return load(root);
+    }
+
+    public Path getRoot() { return root; }
+    public List<Path> getFiles() { return files; }
+    public List<String> getContents() { return contents; }
+    public long getSizeBytes(int index) { return sizes[index]; }
+    public int size() { return files.size(); }
+    public long getTotalBytes() { return totalBytes; }
+}
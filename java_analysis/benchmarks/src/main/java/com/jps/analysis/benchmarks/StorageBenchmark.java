@@ -0,0 +1,99 @@
+package com.jps.analysis.benchmarks;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.IndexBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// DatabaseManager write paths on a temporary SQLite file. Every invocation stores what
+// a typical source file produces (one class, METHODS methods, CALLS calls), either one
+// auto-committed statement per row through storeClass/storeMethod/storeMethodCall or
+// queued in an IndexBatch and written in one transaction by flush. Scores are rows/s.
+// Both paths write through the manager's one connection, opened in setUp and held for
+// the whole trial, so neither score includes opening connections.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int METHODS = 20;
+    private static final int CALLS = 100;
+    private static final int ROWS = 1 + METHODS + CALLS;
+
+    private Path directory;
+    private DatabaseManager db;
+    private int nextClass;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("jps-storage-bench");
+        db = new DatabaseManager("jdbc:sqlite:" + directory.resolve("bench.db"));
+        // Opens the connection every store and flush below reuses until tearDown
+        db.getConnection();
+        db.createTables();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        Files.deleteIfExists(directory.resolve("bench.db"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int rowAtATime() throws SQLException {
+        int file = nextClass++;
+        int classId = db.storeClass("com.example.bench", "Class" + file);
+        int[] methodIds = new int[METHODS];
+        for (int m = 0; m < METHODS; m++) {
+            methodIds[m] = db.storeMethod(classId, "m" + m, "int", "int", false, true);
+        }
+        int last = -1;
+        for (int c = 0; c < CALLS; c++) {
+            last = db.storeMethodCall(methodIds[c % METHODS], methodIds[(c * 7) % METHODS], c + 1, "this",
+                    "Class" + file + ".m" + c % METHODS, false, false, false, c % 4 == 0, c % 4 == 0 ? "for" : null,
+                    false, null);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int batched() throws SQLException {
+        IndexBatch batch = new IndexBatch();
+        int file = nextClass++;
+        int classId = batch.addClass("com.example.bench", "Class" + file, null, null);
+        int[] methodIds = new int[METHODS];
+        for (int m = 0; m < METHODS; m++) {
+            methodIds[m] = batch.addMethod(classId, "m" + m, "int", "int", false, true, null);
+        }
+        for (int c = 0; c < CALLS; c++) {
+            batch.addMethodCall(methodIds[c % METHODS], methodIds[(c * 7) % METHODS], c + 1, "this",
+                    "Class" + file + ".m" + c % METHODS, false, false, false, c % 4 == 0, c % 4 == 0 ? "for" : null,
+                    false, null);
+        }
+        int rows = batch.size();
+        db.flush(batch);
+        return rows;
+    }
+}
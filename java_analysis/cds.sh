@@ -0,0 +1,31 @@
+#!/bin/bash
+# Builds an AppCDS (application class-data sharing) archive for the launcher, so that
+# short-lived runs map pre-parsed, pre-verified classes instead of loading them from
+# the jar. Build the jar first (mvn package); run.sh picks the archive up automatically.
+#
+# A few training runs of the scripting CLI against the bundled test project record
+# which classes are loaded, then one dump turns that list into target/java-analysis.jsa.
+# Rebuild the archive whenever the jar changes; a stale archive is ignored by the JVM.
+#
+# To use it elsewhere:
+#   java -XX:SharedArchiveFile=target/java-analysis.jsa -cp $JAR com.jps.analysis.cli.Main query ...
+set -e
+JAR=target/java-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar
+CDS=target/java-analysis.jsa
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+train() {
+  java -Xshare:off -XX:DumpLoadedClassList="$WORK/classes.$1" -cp "$JAR" com.jps.analysis.cli.Main "${@:2}" \
+    --db "$WORK/train.db" > /dev/null 2>&1
+}
+
+train 1 index test_java_project
+train 2 query loops
+train 3 query calls --format tsv
+train 4 export
+train 5 visualize dependencies
+cat "$WORK"/classes.* | sort -u > "$WORK/classes.lst"
+
+java -Xshare:dump -XX:SharedClassListFile="$WORK/classes.lst" -XX:SharedArchiveFile="$CDS" -cp "$JAR" > /dev/null
+echo "Wrote $CDS ($(wc -l < "$WORK/classes.lst") classes)"
@@ -1,2 +1,13 @@
 #!/bin/bash
-java -jar target/java-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar "$@"
\ No newline at end of file
+JAR=target/java-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar
+CDS=target/java-analysis.jsa
+OPTS=()
+# JFR=<file.jfr> records the analyzer's events along with the JDK's default set
+if [ -n "$JFR" ]; then
+  OPTS+=("-XX:StartFlightRecording=settings=default,settings=$(dirname "$0")/jfr/java-analysis.jfc,filename=$JFR")
+fi
+# Class-data-sharing archive from cds.sh; the JVM falls back to normal loading if it is stale
+if [ -f "$CDS" ]; then
+  exec java "${OPTS[@]}" -XX:SharedArchiveFile="$CDS" -jar "$JAR" "$@"
+fi
+exec java "${OPTS[@]}" -jar "$JAR" "$@"
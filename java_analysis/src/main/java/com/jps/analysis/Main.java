@@ -1,9 +1,14 @@
 package com.jps.analysis;
 
+import com.jps.analysis.bytecode.BytecodeIndexer;
+import com.jps.analysis.library.LibraryIndex;
+import com.jps.analysis.parser.IndexWriter;
 import com.jps.analysis.parser.JavaSourceParser;
 import com.jps.analysis.query.MethodQuery;
+import com.jps.analysis.server.AnalysisServer;
 import com.jps.analysis.query.MethodQuery.MethodCall;
 import com.jps.analysis.visualization.MethodCallVisualizer;
+import com.jps.analysis.watch.ProjectWatcher;
 import com.jps.analysis.db.DatabaseManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,20 +25,66 @@ public class Main {
     private static final MethodCallVisualizer visualizer = new MethodCallVisualizer();
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java -jar java-analysis.jar <project-root>");
+        boolean bytecode = false;
+        boolean watch = false;
+        boolean serve = false;
+        Path projectRoot = null;
+        for (String arg : args) {
+            if (arg.equals("--bytecode")) {
+                bytecode = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--serve")) {
+                serve = true;
+            } else if (projectRoot == null && !arg.startsWith("--")) {
+                projectRoot = Paths.get(arg);
+            } else {
+                projectRoot = null;
+                break;
+            }
+        }
+        if (projectRoot == null || (bytecode && watch)) {
+            System.out.println("Usage: java -jar java-analysis.jar [--bytecode | --watch] [--serve] <project-root>");
+            System.out.println("  --bytecode  index compiled classes and jars instead of source files");
+            System.out.println("  --watch     keep the index up to date while the project is edited");
+            System.out.println("  --serve     answer queries over HTTP instead of showing the menu (port: -Dserver.port)");
             return;
         }
 
-        Path projectRoot = Paths.get(args[0]);
-        JavaSourceParser parser = new JavaSourceParser();
+        ProjectWatcher watcher = null;
         try {
-            parser.parseProject(projectRoot);
-            showMainMenu();
+            if (bytecode) {
+                DatabaseManager dbManager = DatabaseManager.getInstance();
+                IndexWriter writer = new IndexWriter(dbManager);
+                writer.setLibraryCatalog(new LibraryIndex().attachConfigured(dbManager));
+                new BytecodeIndexer(writer).index(projectRoot);
+            } else {
+                JavaSourceParser parser = new JavaSourceParser();
+                parser.parseProject(projectRoot);
+                if (watch) {
+                    watcher = new ProjectWatcher(parser, projectRoot);
+                    watcher.start();
+                }
+            }
+            if (serve) {
+                AnalysisServer server = new AnalysisServer();
+                if (watcher != null) {
+                    watcher.addListener(server);
+                }
+                server.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                System.out.println("Serving queries on http://localhost:" + server.getPort() + "/api/");
+                Thread.currentThread().join();
+            } else {
+                showMainMenu();
+            }
         } catch (Exception e) {
             logger.error("Failed to analyze project", e);
             System.out.println("Error: " + e.getMessage());
         } finally {
+            if (watcher != null) {
+                watcher.close();
+            }
             DatabaseManager.getInstance().close();
         }
     }
@@ -0,0 +1,312 @@
+package com.jps.analysis.bytecode;
+
+import com.jps.analysis.parser.FileExtraction;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Extracts classes, methods and calls from a compiled class. Every invoke instruction
+// names its exact owner and descriptor, so no symbol solving is needed. Parameters are
+// stored as the descriptor's type names, e.g. [java.lang.String, int].
+//
+// Bytecode has no statement structure, so call context is approximated:
+// loops from backward jumps, try/catch/finally from the exception table and
+// conditionals from forward branches.
+public class BytecodeExtractor {
+    private static final String LOOP = "loop";
+    private static final String IF = "if";
+    private static final String SWITCH = "switch";
+
+    public FileExtraction extract(String location, byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, ClassReader.SKIP_FRAMES);
+
+        FileExtraction extraction = new FileExtraction(location, classBytes.length);
+        String classKey = classKey(classNode.name);
+        extraction.addClass(packageName(classNode.name), simpleName(classNode.name), null);
+
+        for (MethodNode method : classNode.methods) {
+            if ((method.access & Opcodes.ACC_BRIDGE) != 0) {
+                continue;
+            }
+            String parameters = parameters(method.desc);
+            extraction.addMethod(classKey, methodName(classNode.name, method.name),
+                    Type.getReturnType(method.desc).getClassName(), parameters,
+                    (method.access & Opcodes.ACC_STATIC) != 0, (method.access & Opcodes.ACC_PUBLIC) != 0, null);
+        }
+
+        for (MethodNode method : classNode.methods) {
+            if ((method.access & Opcodes.ACC_BRIDGE) == 0 && method.instructions.size() > 0) {
+                extractCalls(extraction, classNode, method);
+            }
+        }
+        return extraction;
+    }
+
+    private void extractCalls(FileExtraction extraction, ClassNode classNode, MethodNode method) {
+        String callerKey = FileExtraction.methodKey(classKey(classNode.name), methodName(classNode.name, method.name),
+                FileExtraction.formatParameters(parameters(method.desc)));
+        InsnList instructions = method.instructions;
+        Regions regions = new Regions(instructions, method.tryCatchBlocks);
+
+        int line = 0;
+        for (int i = 0; i < instructions.size(); i++) {
+            AbstractInsnNode insn = instructions.get(i);
+            if (insn instanceof LineNumberNode) {
+                line = ((LineNumberNode) insn).line;
+            } else if (insn instanceof MethodInsnNode) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                String scope = scope(classNode, call);
+                String context = call.name.equals("<init>") ? "constructor" : "direct";
+                addCall(extraction, callerKey, call.owner, call.name, call.desc,
+                        call.getOpcode() == Opcodes.INVOKESTATIC, line, scope, context, regions, i);
+            } else if (insn instanceof InvokeDynamicInsnNode) {
+                // Lambdas and method references: link to the implementation method
+                for (Object arg : ((InvokeDynamicInsnNode) insn).bsmArgs) {
+                    if (arg instanceof Handle) {
+                        Handle handle = (Handle) arg;
+                        addCall(extraction, callerKey, handle.getOwner(), handle.getName(), handle.getDesc(),
+                                handle.getTag() == Opcodes.H_INVOKESTATIC, line,
+                                handle.getOwner().equals(classNode.name) ? "this" : simpleName(handle.getOwner()),
+                                "lambda", regions, i);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addCall(FileExtraction extraction, String callerKey, String owner, String name, String desc,
+                         boolean isStatic, int line, String scope, String context, Regions regions, int index) {
+        // Calls on array types (clone() and friends) have no class to attach to
+        if (owner.startsWith("[")) {
+            return;
+        }
+        String calledClassKey = classKey(owner);
+        String calledMethod = methodName(owner, name);
+        String parameters = parameters(desc);
+        extraction.addClassStub(calledClassKey);
+        extraction.addMethodStub(calledClassKey, calledMethod, parameters, isStatic);
+
+        String loopType = regions.inLoop[index] ? LOOP : "";
+        String conditionalType = regions.conditional[index] != null ? regions.conditional[index] : "";
+        extraction.addCall(new FileExtraction.CallRecord(callerKey,
+                FileExtraction.methodKey(calledClassKey, calledMethod, FileExtraction.formatParameters(parameters)),
+                line, scope, context, regions.inTry[index], regions.inCatch[index], regions.inFinally[index],
+                regions.inLoop[index], loopType, regions.conditional[index] != null, conditionalType));
+    }
+
+    private static String scope(ClassNode classNode, MethodInsnNode call) {
+        if (call.getOpcode() == Opcodes.INVOKESPECIAL && call.owner.equals(classNode.superName)) {
+            return "super";
+        }
+        if (call.owner.equals(classNode.name) && call.getOpcode() != Opcodes.INVOKESTATIC) {
+            return "this";
+        }
+        return simpleName(call.owner);
+    }
+
+    static String classKey(String internalName) {
+        return FileExtraction.classKey(packageName(internalName), simpleName(internalName));
+    }
+
+    static String packageName(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        return slash < 0 ? "" : internalName.substring(0, slash).replace('/', '.');
+    }
+
+    static String simpleName(String internalName) {
+        return internalName.substring(internalName.lastIndexOf('/') + 1);
+    }
+
+    // Constructors are stored under the class name, as the source parser does
+    static String methodName(String owner, String name) {
+        return name.equals("<init>") ? simpleName(owner) : name;
+    }
+
+    // Unformatted parameter list; FileExtraction adds the spaces after commas
+    static String parameters(String desc) {
+        StringBuilder sb = new StringBuilder("[");
+        Type[] types = Type.getArgumentTypes(desc);
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(types[i].getClassName());
+        }
+        return sb.append(']').toString();
+    }
+
+    // Per-instruction context flags for one method body
+    private static class Regions {
+        final boolean[] inLoop;
+        final boolean[] inTry;
+        final boolean[] inCatch;
+        final boolean[] inFinally;
+        final String[] conditional;
+        private final InsnList instructions;
+
+        Regions(InsnList instructions, List<TryCatchBlockNode> tryCatchBlocks) {
+            this.instructions = instructions;
+            int size = instructions.size();
+            inLoop = new boolean[size];
+            inTry = new boolean[size];
+            inCatch = new boolean[size];
+            inFinally = new boolean[size];
+            conditional = new String[size];
+
+            markLoops();
+            markConditionals();
+            markTryCatch(tryCatchBlocks);
+        }
+
+        // A jump back to an earlier instruction closes a loop around everything in between
+        private void markLoops() {
+            for (int i = 0; i < instructions.size(); i++) {
+                AbstractInsnNode insn = instructions.get(i);
+                if (insn instanceof JumpInsnNode) {
+                    int target = instructions.indexOf(((JumpInsnNode) insn).label);
+                    if (target <= i) {
+                        mark(inLoop, target, i + 1);
+                    }
+                }
+            }
+        }
+
+        private void markConditionals() {
+            for (int i = 0; i < instructions.size(); i++) {
+                AbstractInsnNode insn = instructions.get(i);
+                if (insn instanceof JumpInsnNode && insn.getOpcode() != Opcodes.GOTO
+                        && insn.getOpcode() != Opcodes.JSR) {
+                    int target = instructions.indexOf(((JumpInsnNode) insn).label);
+                    if (target <= i) {
+                        continue;
+                    }
+                    AbstractInsnNode beforeTarget = previousInstruction(target);
+                    if (beforeTarget != null && beforeTarget.getOpcode() == Opcodes.GOTO) {
+                        int gotoTarget = instructions.indexOf(((JumpInsnNode) beforeTarget).label);
+                        if (gotoTarget <= i) {
+                            // Exit test of a loop, not an if statement
+                            continue;
+                        }
+                        // The then-branch jumps over an else-branch
+                        markConditional(target, gotoTarget, IF);
+                    }
+                    markConditional(i + 1, target, IF);
+                } else if (insn instanceof TableSwitchInsnNode || insn instanceof LookupSwitchInsnNode) {
+                    LabelNode dflt;
+                    List<LabelNode> labels;
+                    if (insn instanceof TableSwitchInsnNode) {
+                        dflt = ((TableSwitchInsnNode) insn).dflt;
+                        labels = ((TableSwitchInsnNode) insn).labels;
+                    } else {
+                        dflt = ((LookupSwitchInsnNode) insn).dflt;
+                        labels = ((LookupSwitchInsnNode) insn).labels;
+                    }
+                    int end = instructions.indexOf(dflt);
+                    for (LabelNode label : labels) {
+                        end = Math.max(end, instructions.indexOf(label));
+                    }
+                    markConditional(i + 1, end, SWITCH);
+                }
+            }
+        }
+
+        // Protected ranges are try blocks; typed handlers are catch blocks and
+        // catch-any handlers are the compiled finally blocks
+        private void markTryCatch(List<TryCatchBlockNode> tryCatchBlocks) {
+            if (tryCatchBlocks == null) {
+                return;
+            }
+            for (TryCatchBlockNode block : tryCatchBlocks) {
+                mark(inTry, instructions.indexOf(block.start), instructions.indexOf(block.end));
+                int handler = instructions.indexOf(block.handler);
+                mark(block.type == null ? inFinally : inCatch, handler, handlerEnd(handler));
+            }
+            markInlinedFinally();
+            for (int i = 0; i < inTry.length; i++) {
+                if (inCatch[i] || inFinally[i]) {
+                    inTry[i] = false;
+                }
+            }
+        }
+
+        // The compiler copies a finally block onto every normal exit of the try and
+        // catch blocks; the copies share the source lines of the catch-any handler
+        private void markInlinedFinally() {
+            Set<Integer> finallyLines = new HashSet<>();
+            int[] lines = new int[instructions.size()];
+            int line = 0;
+            for (int i = 0; i < lines.length; i++) {
+                AbstractInsnNode insn = instructions.get(i);
+                if (insn instanceof LineNumberNode) {
+                    line = ((LineNumberNode) insn).line;
+                }
+                lines[i] = line;
+                if (inFinally[i] && line > 0 && !(insn instanceof LineNumberNode) && insn.getOpcode() >= 0
+                        && insn.getOpcode() != Opcodes.ATHROW && insn.getOpcode() != Opcodes.ASTORE
+                        && insn.getOpcode() != Opcodes.ALOAD) {
+                    finallyLines.add(line);
+                }
+            }
+            for (int i = 0; i < lines.length; i++) {
+                if (finallyLines.contains(lines[i])) {
+                    inFinally[i] = true;
+                    inCatch[i] = false;
+                }
+            }
+        }
+
+        // A handler runs until it jumps past the try statement, rethrows or returns
+        private int handlerEnd(int handler) {
+            for (int i = handler; i < instructions.size(); i++) {
+                int opcode = instructions.get(i).getOpcode();
+                if (opcode == Opcodes.GOTO || opcode == Opcodes.ATHROW
+                        || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)) {
+                    return i + 1;
+                }
+            }
+            return instructions.size();
+        }
+
+        private AbstractInsnNode previousInstruction(int index) {
+            for (int i = index - 1; i >= 0; i--) {
+                AbstractInsnNode insn = instructions.get(i);
+                if (insn.getOpcode() >= 0) {
+                    return insn;
+                }
+            }
+            return null;
+        }
+
+        private void markConditional(int from, int to, String type) {
+            for (int i = Math.max(0, from); i < Math.min(to, conditional.length); i++) {
+                if (conditional[i] == null) {
+                    conditional[i] = type;
+                }
+            }
+        }
+
+        private static void mark(boolean[] flags, int from, int to) {
+            for (int i = Math.max(0, from); i < Math.min(to, flags.length); i++) {
+                flags[i] = true;
+            }
+        }
+    }
+}
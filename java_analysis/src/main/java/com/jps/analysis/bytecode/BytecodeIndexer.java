@@ -0,0 +1,129 @@
+package com.jps.analysis.bytecode;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.FileExtraction;
+import com.jps.analysis.parser.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Indexes compiled classes from class directories and jars into the same tables
+// as the source parser. Much faster than parsing source, and works for
+// dependencies that ship without source.
+public class BytecodeIndexer {
+    private static final Logger logger = LoggerFactory.getLogger(BytecodeIndexer.class);
+
+    private final IndexWriter writer;
+    private final BytecodeExtractor extractor = new BytecodeExtractor();
+    private long classesIndexed;
+    // Class locations stored before this call to index; writing them again refreshes them,
+    // since method_calls has no key that would stop a second copy of every edge
+    private Set<String> storedLocations = Set.of();
+
+    public BytecodeIndexer() {
+        this(new IndexWriter(DatabaseManager.getInstance()));
+    }
+
+    public BytecodeIndexer(IndexWriter writer) {
+        this.writer = writer;
+    }
+
+    // Accepts a class directory, a jar, a single class file or a directory of jars
+    public void index(Path path) throws IOException {
+        long start = System.nanoTime();
+        long before = classesIndexed;
+        path = path.toAbsolutePath().normalize();
+        try {
+            storedLocations = writer.getStoredPaths(path.toString());
+        } catch (SQLException e) {
+            throw new IOException("Failed to read classes already stored from " + path, e);
+        }
+        if (Files.isDirectory(path)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(path)) {
+                files = walk.filter(p -> isClassFile(p) || isJar(p)).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                if (isJar(file)) {
+                    indexJar(file);
+                } else {
+                    indexClass(file.toString(), Files.readAllBytes(file));
+                }
+            }
+        } else if (isJar(path)) {
+            indexJar(path);
+        } else if (isClassFile(path)) {
+            indexClass(path.toString(), Files.readAllBytes(path));
+        } else {
+            throw new IOException("Not a class directory, jar or class file: " + path);
+        }
+
+        try {
+            writer.flush();
+        } catch (SQLException e) {
+            throw new IOException("Failed to store classes from " + path, e);
+        }
+        logger.info("Indexed " + (classesIndexed - before) + " classes from " + path + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void indexJar(Path jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                // Multi-release copies would only duplicate the base classes
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")
+                        || entry.getName().startsWith("META-INF/")) {
+                    continue;
+                }
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    indexClass(jar + "!/" + entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+    }
+
+    private void indexClass(String location, byte[] classBytes) throws IOException {
+        if (location.endsWith("module-info.class") || location.endsWith("package-info.class")) {
+            return;
+        }
+        FileExtraction extraction;
+        try {
+            extraction = extractor.extract(location, classBytes);
+        } catch (RuntimeException e) {
+            logger.error("Failed to read class file: " + location, e);
+            return;
+        }
+        try {
+            writer.write(extraction, storedLocations.contains(location));
+        } catch (SQLException e) {
+            throw new IOException("Failed to store " + location, e);
+        }
+        classesIndexed++;
+    }
+
+    private static boolean isClassFile(Path path) {
+        return path.toString().endsWith(".class");
+    }
+
+    private static boolean isJar(Path path) {
+        return path.toString().endsWith(".jar");
+    }
+
+    public long getClassesIndexed() {
+        return classesIndexed;
+    }
+}
@@ -1,65 +1,426 @@
 package com.jps.analysis.cli;
 
+import com.jps.analysis.bytecode.BytecodeIndexer;
 import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.library.LibraryIndex;
+import com.jps.analysis.parser.IndexWriter;
 import com.jps.analysis.parser.JavaSourceParser;
+import com.jps.analysis.query.CallGraph;
 import com.jps.analysis.query.MethodQuery;
-import com.github.javaparser.JavaParser;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import com.jps.analysis.server.ArtifactStore;
+import com.jps.analysis.synthetic.SyntheticProjectGenerator;
+import com.jps.analysis.visualization.MethodCallVisualizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+// Non-interactive entry point for scripts and CI. Only "index" parses the project;
+// every other command answers from the existing database and streams its results to
+// stdout, so a query step costs one database round trip instead of a full re-index.
+//
+//   index <project-root> [--bytecode] [--metrics <file>] [--no-artifacts]
+//   query from|to <class> <method> [<params>]
+//   query scope <scope>
+//   query transitive <class> <method> [<params>] [--depth 3]
+//   query methods <name> [--return-type <type>] [--params <params>]
+//   query library <package> <class>
+//   query try-catch | loops
+//   query calls [--caller-class ..] [--caller-method ..] [--called-class ..] [--called-method ..]
+//   export [call filters] [--format csv|jsonl|tsv]
+//   visualize <kind> [call filters] [--out <file>]
+//   generate <dir> [--packages N] [--classes N] [--methods N] [--fan-out N] [--nesting N]
+//                  [--static-imports N] [--inheritance N] [--seed N]
+//
+// "index" also precomputes the artifacts the analysis server serves (see ArtifactStore)
+// unless --no-artifacts is given.
+//
+// Global options: --db <file> (default -Ddb.url) and --format jsonl|tsv (default jsonl).
+// Exit status is 0 on success, 1 on failure and 2 on a usage error.
+//
+// With -Dcli.timing=true, JVM start-up (JVM start to main) and command time are
+// reported on stderr; startup-times.sh uses this to compare launcher start-up with
+// default JVM flags against the class-data-sharing archive built by cds.sh.
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
+    private static final int DEFAULT_TRANSITIVE_DEPTH = 3;
+    private static final String[] VISUALIZATIONS = {"call-graph", "call-tree", "matrix", "statistics",
+            "sequence", "dependencies", "hierarchy", "complexity", "interactive"};
+
+    static class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
 
     public static void main(String[] args) {
+        long start = System.nanoTime();
+        int status = run(args, System.out, System.err);
+        if (Boolean.getBoolean("cli.timing")) {
+            // Read only after the command so untimed runs never load java.management
+            long commandMillis = (System.nanoTime() - start) / 1_000_000;
+            long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            System.err.println("timing: startup=" + (uptimeMillis - commandMillis) + "ms command="
+                    + commandMillis + "ms");
+        }
+        System.exit(status);
+    }
+
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
         try {
-            // Initialize database
-            DatabaseManager dbManager = DatabaseManager.getInstance();
-            dbManager.createTables();
-
-            // Parse Java project
-            if (args.length > 0) {
-                Path projectRoot = Paths.get(args[0]);
-                System.out.println("Parsing Java files in " + projectRoot);
-                
-                JavaSourceParser parser = new JavaSourceParser();
-                parser.parseProject(projectRoot);
-                
-                // Find method calls
-                MethodQuery methodQuery = new MethodQuery();
-                List<MethodQuery.MethodCall> calls = methodQuery.findMethodCalls("TestClass", "testMethod", "[]");
-                if (!calls.isEmpty()) {
-                    System.out.println("Method calls from TestClass.testMethod:");
-                    for (MethodQuery.MethodCall call : calls) {
-                        System.out.println(call.getCalledClass() + "." + call.getCalledMethod());
-                    }
-                } else {
-                    System.out.println("No method calls found from TestClass.testMethod");
+            parseArguments(args, positional, options);
+            if (positional.isEmpty()) {
+                throw new UsageException("Missing command");
+            }
+            if (options.containsKey("db")) {
+                System.setProperty("db.url", "jdbc:sqlite:" + options.get("db"));
+            }
+            String command = positional.remove(0);
+            if (command.equals("index")) {
+                index(positional, options, err);
+                return 0;
+            }
+            if (command.equals("generate")) {
+                generate(positional, options, err);
+                return 0;
+            }
+            requireIndex();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            switch (command) {
+                case "query":
+                    query(positional, options, writer);
+                    break;
+                case "export":
+                    export(options, writer);
+                    break;
+                case "visualize":
+                    visualize(positional, options, writer, err);
+                    break;
+                default:
+                    throw new UsageException("Unknown command: " + command);
+            }
+            writer.flush();
+            return 0;
+        } catch (UsageException | IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
+            printUsage(err);
+            return 2;
+        } catch (Exception e) {
+            logger.error("Command failed", e);
+            err.println("Error: " + e.getMessage());
+            return 1;
+        } finally {
+            DatabaseManager.getInstance().close();
+        }
+    }
+
+    private static void parseArguments(String[] args, List<String> positional, Map<String, String> options)
+            throws UsageException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--bytecode") || arg.equals("--no-artifacts")) {
+                options.put(arg.substring(2), "true");
+            } else if (arg.startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    throw new UsageException("Missing value for " + arg);
                 }
-                
-                // Find method calls by scope
-                calls = methodQuery.findMethodCallsByScope("this");
-                if (!calls.isEmpty()) {
-                    System.out.println("Method calls with scope: this");
-                    for (MethodQuery.MethodCall call : calls) {
-                        System.out.println(call.getCalledClass() + "." + call.getCalledMethod());
-                    }
-                } else {
-                    System.out.println("No method calls found with scope: this");
+                options.put(arg.substring(2), args[++i]);
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+
+    private static void printUsage(PrintStream err) {
+        err.println("Usage: java -cp java-analysis.jar com.jps.analysis.cli.Main <command> [options]");
+        err.println("  index <project-root> [--bytecode] [--metrics FILE] [--no-artifacts]");
+        err.println("  query from|to <class> <method> [<params>]");
+        err.println("  query scope <scope>");
+        err.println("  query transitive <class> <method> [<params>] [--depth N]");
+        err.println("  query methods <name> [--return-type T] [--params P]");
+        err.println("  query library <package> <class>");
+        err.println("  query try-catch | loops");
+        err.println("  query calls [--caller-class C] [--caller-method M] [--called-class C] [--called-method M]");
+        err.println("  export [call filters] [--format csv|jsonl|tsv]");
+        err.println("  visualize <" + String.join("|", VISUALIZATIONS) + "> [call filters] [--out FILE]");
+        err.println("  generate <dir> [--packages N] [--classes N] [--methods N] [--fan-out N] [--nesting N]");
+        err.println("                 [--static-imports N] [--inheritance N] [--seed N]");
+        err.println("Options: --db FILE (default -Ddb.url), --format jsonl|tsv (default jsonl)");
+    }
+
+    // Querying a missing SQLite file would silently create an empty index
+    private static void requireIndex() throws UsageException {
+        String url = DatabaseManager.getInstance().getDbUrl();
+        if (url.startsWith("jdbc:sqlite:") && !url.contains(":memory:")) {
+            Path file = Paths.get(url.substring("jdbc:sqlite:".length()));
+            if (!Files.exists(file)) {
+                throw new UsageException("No index at " + file + "; run the index command first");
+            }
+        }
+    }
+
+    private static void index(List<String> args, Map<String, String> options, PrintStream err)
+            throws UsageException, IOException {
+        if (args.size() != 1) {
+            throw new UsageException("index takes exactly one project root");
+        }
+        Path projectRoot = Paths.get(args.get(0));
+        if (options.containsKey("metrics")) {
+            // JSON summary of per-phase counters and latencies, see IndexingMetrics
+            System.setProperty("index.metrics.file", options.get("metrics"));
+        }
+        long start = System.nanoTime();
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.createTables();
+        if (options.containsKey("bytecode")) {
+            IndexWriter writer = new IndexWriter(dbManager);
+            writer.setLibraryCatalog(new LibraryIndex().attachConfigured(dbManager));
+            new BytecodeIndexer(writer).index(projectRoot);
+        } else {
+            new JavaSourceParser().parseProject(projectRoot);
+        }
+        err.println("Indexed " + projectRoot + " into " + dbManager.getDbUrl() + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        if (!options.containsKey("no-artifacts")) {
+            buildArtifacts(dbManager, err);
+        }
+    }
+
+    // Rendered here rather than when a server starts, into the directory it adopts them from
+    private static void buildArtifacts(DatabaseManager dbManager, PrintStream err) throws IOException {
+        Path directory = ArtifactStore.directoryFor(dbManager.getDbUrl());
+        if (directory == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (ArtifactStore artifacts = new ArtifactStore(directory, false)) {
+            artifacts.rebuild(CallGraph.load(new MethodQuery()));
+            err.println("Built " + artifacts.size() + " artifacts into " + directory + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    // A synthetic source tree for scale tests; writes no index
+    private static void generate(List<String> args, Map<String, String> options, PrintStream err)
+            throws UsageException, IOException {
+        if (args.size() != 1) {
+            throw new UsageException("generate takes exactly one output directory");
+        }
+        SyntheticProjectGenerator.Shape defaults = new SyntheticProjectGenerator.Shape();
+        SyntheticProjectGenerator.Shape shape = new SyntheticProjectGenerator.Shape()
+                .packages(intOption(options, "packages", defaults.getPackages()))
+                .classesPerPackage(intOption(options, "classes", defaults.getClassesPerPackage()))
+                .methodsPerClass(intOption(options, "methods", defaults.getMethodsPerClass()))
+                .fanOut(intOption(options, "fan-out", defaults.getFanOut()))
+                .nestingDepth(intOption(options, "nesting", defaults.getNestingDepth()))
+                .staticImports(intOption(options, "static-imports", defaults.getStaticImports()))
+                .inheritanceDepth(intOption(options, "inheritance", defaults.getInheritanceDepth()));
+        Path root = Paths.get(args.get(0));
+        SyntheticProjectGenerator.Result result = new SyntheticProjectGenerator(shape,
+                intOption(options, "seed", 42)).generate(root);
+        err.println("Generated " + result.getFiles() + " files, " + result.getMethods() + " methods and "
+                + result.getCalls() + " calls under " + root);
+    }
+
+    private static void query(List<String> args, Map<String, String> options, Writer writer)
+            throws UsageException, IOException {
+        if (args.isEmpty()) {
+            throw new UsageException("Missing query type");
+        }
+        RecordWriter records = new RecordWriter(writer, RecordWriter.Format.parse(options.getOrDefault("format",
+                "jsonl")));
+        MethodQuery methodQuery = new MethodQuery();
+        String type = args.get(0);
+        List<MethodCall> calls;
+        switch (type) {
+            case "from":
+                requireArguments(type, args, 3, 4);
+                calls = methodQuery.findMethodCalls(args.get(1), args.get(2), optional(args, 3));
+                break;
+            case "to":
+                requireArguments(type, args, 3, 4);
+                calls = methodQuery.findMethodCallsTo(args.get(1), args.get(2), optional(args, 3));
+                break;
+            case "scope":
+                requireArguments(type, args, 2, 2);
+                calls = methodQuery.findMethodCallsByScope(args.get(1));
+                break;
+            case "transitive":
+                requireArguments(type, args, 3, 4);
+                calls = methodQuery.findTransitiveCalls(args.get(1), args.get(2), optional(args, 3),
+                        intOption(options, "depth", DEFAULT_TRANSITIVE_DEPTH));
+                break;
+            case "try-catch":
+                requireArguments(type, args, 1, 1);
+                calls = methodQuery.findMethodCallsInTryCatch();
+                break;
+            case "loops":
+                requireArguments(type, args, 1, 1);
+                calls = methodQuery.findMethodCallsInLoops();
+                break;
+            case "calls":
+                requireArguments(type, args, 1, 1);
+                forEachFilteredCall(methodQuery, options, records::writeCall);
+                return;
+            case "methods":
+                requireArguments(type, args, 2, 2);
+                for (MethodInfo method : methodQuery.findMethodsBySignature(args.get(1),
+                        options.getOrDefault("return-type", ""), options.getOrDefault("params", ""))) {
+                    records.writeMethod(method);
+                }
+                return;
+            case "library":
+                // Methods of a dependency class, read from its shared library index
+                requireArguments(type, args, 3, 3);
+                for (MethodInfo method : methodQuery.findLibraryMethods(args.get(1), args.get(2))) {
+                    records.writeMethod(method);
                 }
+                return;
+            default:
+                throw new UsageException("Unknown query: " + type);
+        }
+        for (MethodCall call : calls) {
+            records.writeCall(call);
+        }
+    }
+
+    private static void export(Map<String, String> options, Writer writer) throws IOException {
+        MethodQuery methodQuery = new MethodQuery();
+        String format = options.getOrDefault("format", "csv");
+        if (format.equalsIgnoreCase("csv")) {
+            methodQuery.writeCSVHeader(writer);
+            forEachFilteredCall(methodQuery, options, call -> methodQuery.writeCSVRow(call, writer));
+            return;
+        }
+        RecordWriter records = new RecordWriter(writer, RecordWriter.Format.parse(format));
+        forEachFilteredCall(methodQuery, options, records::writeCall);
+    }
+
+    private static void visualize(List<String> args, Map<String, String> options, Writer writer, PrintStream err)
+            throws UsageException, IOException {
+        requireArguments("visualize", args, 1, 1);
+        String kind = args.get(0);
+        // Renderers need every call at once, but only the matching ones are loaded
+        List<MethodCall> calls = new ArrayList<>();
+        forEachFilteredCall(new MethodQuery(), options, calls::add);
+        MethodCallVisualizer visualizer = new MethodCallVisualizer();
+        String outputPath = options.get("out");
+        if (outputPath == null) {
+            // These two render straight to a stream; the others only write files
+            if (kind.equals("dependencies")) {
+                visualizer.generateDependencyGraph(calls, writer);
+                return;
+            }
+            if (kind.equals("interactive")) {
+                visualizer.generateInteractiveVisualization(calls, writer);
+                return;
+            }
+        }
+        Path target = outputPath != null ? Paths.get(outputPath) : Files.createTempFile("jps-visualization", "");
+        try {
+            render(visualizer, kind, calls, target.toString());
+            if (outputPath == null) {
+                writer.flush();
+                copy(target, writer);
             } else {
-                System.out.println("Please provide the project root directory as an argument");
+                err.println("Wrote " + calls.size() + " calls to " + target);
             }
-        } catch (Exception e) {
-            logger.error("Error: ", e);
-            System.exit(1);
+        } finally {
+            if (outputPath == null) {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    private static void render(MethodCallVisualizer visualizer, String kind, List<MethodCall> calls,
+                               String outputPath) throws UsageException, IOException {
+        switch (kind) {
+            case "call-graph":
+                visualizer.generateCallGraph(calls, outputPath);
+                break;
+            case "call-tree":
+                visualizer.generateCallTree(calls, outputPath);
+                break;
+            case "matrix":
+                visualizer.generateCallMatrix(calls, outputPath);
+                break;
+            case "statistics":
+                visualizer.generateCallStatistics(calls, outputPath);
+                break;
+            case "sequence":
+                visualizer.generateSequenceDiagram(calls, outputPath);
+                break;
+            case "dependencies":
+                visualizer.generateDependencyGraph(calls, outputPath);
+                break;
+            case "hierarchy":
+                visualizer.generateClassHierarchy(calls, outputPath);
+                break;
+            case "complexity":
+                visualizer.generateMethodComplexityGraph(calls, outputPath);
+                break;
+            case "interactive":
+                visualizer.generateInteractiveVisualization(calls, outputPath);
+                break;
+            default:
+                throw new UsageException("Unknown visualization: " + kind);
+        }
+    }
+
+    private static void copy(Path file, Writer writer) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.transferTo(writer);
+        }
+    }
+
+    // Same case-insensitive substring filters as the viewer's /api/method_calls, applied
+    // by the database so rows stream through without loading the whole call graph
+    private static void forEachFilteredCall(MethodQuery methodQuery, Map<String, String> options,
+                                            MethodQuery.CallVisitor visitor) throws IOException {
+        methodQuery.forEachMethodCall(options.get("caller-class"), options.get("caller-method"),
+                options.get("called-class"), options.get("called-method"), visitor);
+    }
+
+    private static void requireArguments(String command, List<String> args, int min, int max)
+            throws UsageException {
+        if (args.size() < min || args.size() > max) {
+            throw new UsageException("Wrong number of arguments for " + command);
+        }
+    }
+
+    private static String optional(List<String> args, int index) {
+        return args.size() > index ? args.get(index) : null;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be a number");
         }
     }
-} 
\ No newline at end of file
+}
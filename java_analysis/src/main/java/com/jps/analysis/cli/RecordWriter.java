@@ -0,0 +1,108 @@
+package com.jps.analysis.cli;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import com.jps.analysis.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+// Writes query results one record per line as they are produced, either as JSON lines
+// (field names as in the HTTP API) or as TSV with a header row. Tabs, newlines and
+// backslashes inside TSV values are escaped so every record stays on one line.
+public class RecordWriter {
+    public enum Format {
+        JSONL, TSV;
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format: " + value + " (expected jsonl or tsv)");
+            }
+        }
+    }
+
+    private static final String[] CALL_COLUMNS = {"id", "lineNumber", "callerClass", "callerMethod",
+            "callerParameters", "calledClass", "calledMethod", "calledParameters", "scope", "callContext",
+            "inTryBlock", "inCatchBlock", "inFinallyBlock", "inLoop", "loopType", "inConditional",
+            "conditionalType"};
+    private static final String[] METHOD_COLUMNS = {"id", "packageName", "className", "methodName",
+            "returnType", "parameters", "static", "public"};
+
+    private final Writer out;
+    private final Format format;
+    private boolean headerWritten;
+    private long records;
+
+    public RecordWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void writeCall(MethodCall call) throws IOException {
+        Object[] values = {call.getId(), call.getLineNumber(), call.getCallerClass(), call.getCallerMethod(),
+                call.getCallerParameters(), call.getCalledClass(), call.getCalledMethod(),
+                call.getCalledParameters(), call.getScope(), call.getCallContext(), call.isInTryBlock(),
+                call.isInCatchBlock(), call.isInFinallyBlock(), call.isInLoop(), call.getLoopType(),
+                call.isInConditional(), call.getConditionalType()};
+        write(CALL_COLUMNS, values);
+    }
+
+    public void writeMethod(MethodInfo method) throws IOException {
+        Object[] values = {method.getId(), method.getPackageName(), method.getClassName(), method.getMethodName(),
+                method.getReturnType(), method.getParameters(), method.isStatic(), method.isPublic()};
+        write(METHOD_COLUMNS, values);
+    }
+
+    private void write(String[] columns, Object[] values) throws IOException {
+        if (format == Format.JSONL) {
+            JsonWriter json = new JsonWriter().beginObject();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = values[i];
+                if (value instanceof Number) {
+                    json.field(columns[i], ((Number) value).longValue());
+                } else if (value instanceof Boolean) {
+                    json.field(columns[i], (Boolean) value);
+                } else {
+                    json.field(columns[i], (String) value);
+                }
+            }
+            out.write(json.endObject().toString());
+        } else {
+            if (!headerWritten) {
+                out.write(String.join("\t", columns));
+                out.write('\n');
+                headerWritten = true;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write('\t');
+                }
+                out.write(escape(values[i]));
+            }
+        }
+        out.write('\n');
+        records++;
+    }
+
+    private static String escape(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf('\t') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0 && text.indexOf('\\') < 0) {
+            return text;
+        }
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
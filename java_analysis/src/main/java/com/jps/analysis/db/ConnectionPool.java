@@ -0,0 +1,145 @@
+package com.jps.analysis.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Bounded pool of long-lived, read-only connections for servers. Connections keep a
+// warm page cache; close() on a leased connection hands it back instead of closing it.
+// Callers beyond the pool size wait, which bounds concurrent SQLite work no matter how
+// many request threads (virtual or not) are running.
+public class ConnectionPool implements ConnectionSource, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private final String dbUrl;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final List<Connection> opened = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String dbUrl) {
+        this(dbUrl, Integer.getInteger("db.pool.size", Runtime.getRuntime().availableProcessors() * 2),
+                Long.getLong("db.pool.timeout.ms", DEFAULT_TIMEOUT_MILLIS));
+    }
+
+    public ConnectionPool(String dbUrl, int maxSize, long timeoutMillis) {
+        this.dbUrl = dbUrl;
+        this.maxSize = Math.max(1, maxSize);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = openIfBelowLimit();
+        }
+        if (connection == null) {
+            try {
+                connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a database connection");
+            }
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        return lease(connection);
+    }
+
+    private synchronized Connection openIfBelowLimit() throws SQLException {
+        if (opened.size() >= maxSize) {
+            return null;
+        }
+        Connection connection = DriverManager.getConnection(dbUrl);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA query_only = ON");
+            // Keep the index in memory once it has been read
+            stmt.execute("PRAGMA cache_size = -65536");
+            stmt.execute("PRAGMA mmap_size = 268435456");
+        }
+        opened.add(connection);
+        return connection;
+    }
+
+    private void release(Connection connection) {
+        if (closed) {
+            closeQuietly(connection);
+        } else {
+            idle.offer(connection);
+        }
+    }
+
+    // Each lease gets its own proxy so a second close() cannot return the connection twice
+    private Connection lease(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        if (released.compareAndSet(false, true)) {
+                            release(connection);
+                        }
+                        return null;
+                    }
+                    if (method.getName().equals("isClosed")) {
+                        return released.get() || connection.isClosed();
+                    }
+                    if (released.get()) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    public int getOpenConnections() {
+        return opened.size();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection connection : opened) {
+            closeQuietly(connection);
+        }
+        opened.clear();
+        idle.clear();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.error("Failed to close database connection", e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.jps.analysis.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Where queries get their connections. Callers always close what they get; the
+// source decides whether that really closes the connection or keeps it for reuse.
+public interface ConnectionSource {
+    Connection getConnection() throws SQLException;
+}
@@ -1,25 +1,47 @@
 package com.jps.analysis.db;
 
+import com.jps.analysis.jfr.BatchFlushedEvent;
+import com.jps.analysis.metrics.IndexingMetrics;
+import com.jps.analysis.metrics.IndexingMetrics.Counter;
+import com.jps.analysis.metrics.IndexingMetrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
 
-public class DatabaseManager {
+public class DatabaseManager implements ConnectionSource {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     private static final String DEFAULT_DB_URL = "jdbc:sqlite:java_analysis.db";
     private static DatabaseManager instance;
+    private final String dbUrl;
+    private final IndexingMetrics metrics = IndexingMetrics.getInstance();
     private Connection connection;
+    // What callers get: closing it leaves the connection open for everyone else
+    private Connection shared;
 
     private DatabaseManager() {
+        this(null);
+    }
+
+    // A database other than the project's, such as a shared library index
+    public DatabaseManager(String dbUrl) {
         // Don't create connection in constructor
+        this.dbUrl = dbUrl;
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -29,16 +51,39 @@ public class DatabaseManager {
         return instance;
     }
 
-    private String getDbUrl() {
-        return System.getProperty("db.url", DEFAULT_DB_URL);
+    public String getDbUrl() {
+        return dbUrl != null ? dbUrl : System.getProperty("db.url", DEFAULT_DB_URL);
+    }
+
+    public IndexingMetrics getMetrics() {
+        return metrics;
     }
 
-    public Connection getConnection() throws SQLException {
+    // One connection per manager, shared by every caller. Queries close what they get,
+    // as ConnectionSource asks; that must not close it under a transaction another
+    // thread has open, so only close() on the manager really closes it.
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
             connection = DriverManager.getConnection(getDbUrl());
+            shared = unclosable(connection);
             createTables(); // Create tables when connection is first established
         }
-        return connection;
+        return shared;
+    }
+
+    private static Connection unclosable(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
     }
 
     public void createTables() {
@@ -48,6 +93,11 @@ public class DatabaseManager {
                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                         "package_name TEXT NOT NULL, " +
                         "class_name TEXT NOT NULL, " +
+                        "file_path TEXT, " +
+                        "begin_line INTEGER, " +
+                        "end_line INTEGER, " +
+                        "begin_offset INTEGER, " +
+                        "end_offset INTEGER, " +
                         "UNIQUE(package_name, class_name))");
             
             // Create methods table
@@ -59,6 +109,10 @@ public class DatabaseManager {
                         "parameters TEXT NOT NULL, " +
                         "is_static BOOLEAN NOT NULL, " +
                         "is_public BOOLEAN NOT NULL, " +
+                        "begin_line INTEGER, " +
+                        "end_line INTEGER, " +
+                        "begin_offset INTEGER, " +
+                        "end_offset INTEGER, " +
                         "FOREIGN KEY(class_id) REFERENCES classes(id), " +
                         "UNIQUE(class_id, method_name, parameters))");
             
@@ -79,18 +133,109 @@ public class DatabaseManager {
                         "conditional_type TEXT, " +
                         "FOREIGN KEY(caller_method_id) REFERENCES methods(id), " +
                         "FOREIGN KEY(called_method_id) REFERENCES methods(id))");
+
+            // Shared library indexes referenced by this project
+            stmt.execute("CREATE TABLE IF NOT EXISTS libraries (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "jar_name TEXT NOT NULL, " +
+                        "sha256 TEXT NOT NULL UNIQUE, " +
+                        "index_path TEXT NOT NULL)");
+
+            // Checkpoints of indexing runs: a run is unfinished until finished is set, and
+            // indexed_files lists the files whose rows it has committed. Paths are relative to
+            // the run's project root, so two roots sharing a database can both have a
+            // src/Main.java; a run's files are deleted once it finishes.
+            stmt.execute("CREATE TABLE IF NOT EXISTS index_runs (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "project_root TEXT NOT NULL, " +
+                        "started INTEGER NOT NULL, " +
+                        "updated INTEGER, " +
+                        "finished INTEGER, " +
+                        "files_done INTEGER NOT NULL DEFAULT 0)");
+            boolean rekeyed = setAsideUnkeyedIndexedFiles(stmt);
+            stmt.execute("CREATE TABLE IF NOT EXISTS indexed_files (" +
+                        "run_id INTEGER NOT NULL REFERENCES index_runs(id), " +
+                        "file_path TEXT NOT NULL, " +
+                        "size INTEGER NOT NULL, " +
+                        "modified INTEGER NOT NULL, " +
+                        "PRIMARY KEY (run_id, file_path))");
+            if (rekeyed) {
+                stmt.execute("INSERT INTO indexed_files (run_id, file_path, size, modified) " +
+                            "SELECT run_id, file_path, size, modified FROM indexed_files_old " +
+                            "WHERE run_id IN (SELECT id FROM index_runs WHERE finished IS NULL)");
+                stmt.execute("DROP TABLE indexed_files_old");
+            }
+
+            // Databases created before source spans were recorded lack these columns
+            addColumnIfMissing(stmt, "classes", "file_path", "TEXT");
+            for (String table : new String[] {"classes", "methods"}) {
+                addColumnIfMissing(stmt, table, "begin_line", "INTEGER");
+                addColumnIfMissing(stmt, table, "end_line", "INTEGER");
+                addColumnIfMissing(stmt, table, "begin_offset", "INTEGER");
+                addColumnIfMissing(stmt, table, "end_offset", "INTEGER");
+            }
+            addColumnIfMissing(stmt, "classes", "library_id", "INTEGER REFERENCES libraries(id)");
+
+            // Lookups by name and joins along call edges would otherwise scan whole tables
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_classes_class_name ON classes(class_name)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_methods_method_name ON methods(method_name)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_method_calls_caller ON method_calls(caller_method_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_method_calls_called ON method_calls(called_method_id)");
         } catch (SQLException e) {
             throw new RuntimeException("Failed to create database tables", e);
         }
     }
 
+    // Databases from before runs were part of the key have file_path as the only key.
+    // Their table is set aside to be rebuilt, keeping the checkpoints of unfinished runs.
+    private boolean setAsideUnkeyedIndexedFiles(Statement stmt) throws SQLException {
+        boolean exists = false;
+        boolean keyedByRun = false;
+        try (Statement pragma = stmt.getConnection().createStatement();
+             ResultSet rs = pragma.executeQuery("PRAGMA table_info(indexed_files)")) {
+            while (rs.next()) {
+                exists = true;
+                if ("run_id".equalsIgnoreCase(rs.getString("name"))) {
+                    keyedByRun = rs.getInt("pk") > 0;
+                }
+            }
+        }
+        if (!exists || keyedByRun) {
+            return false;
+        }
+        stmt.execute("ALTER TABLE indexed_files RENAME TO indexed_files_old");
+        return true;
+    }
+
+    private void addColumnIfMissing(Statement stmt, String table, String column, String type) throws SQLException {
+        try (Statement pragma = stmt.getConnection().createStatement();
+             ResultSet rs = pragma.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
     public int storeClass(String packageName, String className) throws SQLException {
-        String sql = "INSERT INTO classes (package_name, class_name) VALUES (?, ?)";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        return storeClass(packageName, className, null, null);
+    }
+
+    public int storeClass(String packageName, String className, String filePath, SourceSpan span) throws SQLException {
+        String sql = "INSERT INTO classes (package_name, class_name, file_path, begin_line, end_line, " +
+                    "begin_offset, end_offset) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        long start = System.nanoTime();
+        Connection conn = getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, packageName);
             stmt.setString(2, className);
+            stmt.setString(3, filePath);
+            setSpan(stmt, 4, span);
             stmt.executeUpdate();
+            metrics.record(Phase.CLASS_STORE, System.nanoTime() - start);
+            metrics.increment(Counter.CLASSES_STORED);
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -101,16 +246,26 @@ public class DatabaseManager {
     }
 
     public int storeMethod(int classId, String methodName, String returnType, String parameters, boolean isStatic, boolean isPublic) throws SQLException {
-        String sql = "INSERT INTO methods (class_id, method_name, return_type, parameters, is_static, is_public) VALUES (?, ?, ?, ?, ?, ?)";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        return storeMethod(classId, methodName, returnType, parameters, isStatic, isPublic, null);
+    }
+
+    public int storeMethod(int classId, String methodName, String returnType, String parameters, boolean isStatic,
+                           boolean isPublic, SourceSpan span) throws SQLException {
+        String sql = "INSERT INTO methods (class_id, method_name, return_type, parameters, is_static, is_public, " +
+                    "begin_line, end_line, begin_offset, end_offset) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        long start = System.nanoTime();
+        Connection conn = getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, classId);
             stmt.setString(2, methodName);
             stmt.setString(3, returnType);
             stmt.setString(4, parameters);
             stmt.setBoolean(5, isStatic);
             stmt.setBoolean(6, isPublic);
+            setSpan(stmt, 7, span);
             stmt.executeUpdate();
+            metrics.record(Phase.METHOD_STORE, System.nanoTime() - start);
+            metrics.increment(Counter.METHODS_STORED);
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -127,8 +282,9 @@ public class DatabaseManager {
                     "is_in_try_block, is_in_catch_block, is_in_finally_block, is_in_loop, loop_type, " +
                     "is_in_conditional, conditional_type) " +
                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        long start = System.nanoTime();
+        Connection conn = getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, callerMethodId);
             stmt.setInt(2, calledMethodId);
             stmt.setInt(3, lineNumber);
@@ -142,6 +298,8 @@ public class DatabaseManager {
             stmt.setBoolean(11, isInConditional);
             stmt.setString(12, conditionalType);
             stmt.executeUpdate();
+            metrics.record(Phase.CALL_STORE, System.nanoTime() - start);
+            metrics.increment(Counter.CALLS_STORED);
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -151,11 +309,391 @@ public class DatabaseManager {
         return -1;
     }
 
+    private void setSpan(PreparedStatement stmt, int index, SourceSpan span) throws SQLException {
+        if (span == null) {
+            for (int i = 0; i < 4; i++) {
+                stmt.setNull(index + i, Types.INTEGER);
+            }
+            return;
+        }
+        stmt.setInt(index, span.getBeginLine());
+        stmt.setInt(index + 1, span.getEndLine());
+        stmt.setLong(index + 2, span.getBeginOffset());
+        stmt.setLong(index + 3, span.getEndOffset());
+    }
+
+    // Writes all queued rows in one transaction; either the whole batch is stored or none of it.
+    // New classes and methods are upserted one at a time so SQLite assigns their ids and a
+    // row another writer committed meanwhile is reused instead of failing the batch on its
+    // unique key. A declaration fills in the location of such a row if it was only a stub.
+    // Writers sharing this manager's connection take turns, one transaction at a time.
+    public synchronized void flush(IndexBatch batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        long start = System.nanoTime();
+        BatchFlushedEvent event = new BatchFlushedEvent();
+        event.begin();
+        boolean committed = false;
+        try {
+            List<Integer> removedClasses = new ArrayList<>();
+            List<Integer> removedMethods = new ArrayList<>();
+            for (String filePath : batch.removedFiles) {
+                removeFile(conn, filePath, removedClasses, removedMethods);
+            }
+            batch.classIds = upsertReturningIds(conn, Phase.CLASS_STORE, "INSERT INTO classes (package_name, " +
+                    "class_name, file_path, begin_line, end_line, begin_offset, end_offset) VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT(package_name, class_name) DO UPDATE SET " +
+                    "file_path = COALESCE(file_path, excluded.file_path), " +
+                    "begin_line = CASE WHEN file_path IS NULL THEN excluded.begin_line ELSE begin_line END, " +
+                    "end_line = CASE WHEN file_path IS NULL THEN excluded.end_line ELSE end_line END, " +
+                    "begin_offset = CASE WHEN file_path IS NULL THEN excluded.begin_offset ELSE begin_offset END, " +
+                    "end_offset = CASE WHEN file_path IS NULL THEN excluded.end_offset ELSE end_offset END " +
+                    "RETURNING id", batch.classInserts);
+            resolveIds(batch.classUpdates, batch::getClassId, 5);
+            resolveIds(batch.classLibraries, batch::getClassId, 1);
+            resolveIds(batch.methodInserts, batch::getClassId, 0);
+            executeBatch(conn, "UPDATE classes SET file_path = ?, begin_line = ?, end_line = ?, begin_offset = ?, " +
+                    "end_offset = ? WHERE id = ?", batch.classUpdates);
+            executeBatch(conn, "UPDATE classes SET library_id = ? WHERE id = ?", batch.classLibraries);
+            batch.methodIds = upsertReturningIds(conn, Phase.METHOD_STORE, "INSERT INTO methods (class_id, " +
+                    "method_name, return_type, parameters, is_static, is_public, begin_line, end_line, begin_offset, " +
+                    "end_offset) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT(class_id, method_name, parameters) DO UPDATE SET " +
+                    "return_type = CASE WHEN begin_offset IS NULL THEN excluded.return_type ELSE return_type END, " +
+                    "is_static = CASE WHEN begin_offset IS NULL THEN excluded.is_static ELSE is_static END, " +
+                    "is_public = CASE WHEN begin_offset IS NULL THEN excluded.is_public ELSE is_public END, " +
+                    "begin_line = CASE WHEN begin_offset IS NULL THEN excluded.begin_line ELSE begin_line END, " +
+                    "end_line = CASE WHEN begin_offset IS NULL THEN excluded.end_line ELSE end_line END, " +
+                    "begin_offset = COALESCE(begin_offset, excluded.begin_offset), " +
+                    "end_offset = CASE WHEN begin_offset IS NULL THEN excluded.end_offset ELSE end_offset END " +
+                    "RETURNING id", batch.methodInserts);
+            resolveIds(batch.methodUpdates, batch::getMethodId, 7);
+            resolveIds(batch.callInserts, batch::getMethodId, 0, 1);
+            executeBatch(conn, "UPDATE methods SET return_type = ?, is_static = ?, is_public = ?, begin_line = ?, " +
+                    "end_line = ?, begin_offset = ?, end_offset = ? WHERE id = ?", batch.methodUpdates);
+            timedBatch(conn, Phase.CALL_STORE, "INSERT INTO method_calls (caller_method_id, called_method_id, " +
+                    "line_number, scope, call_context, is_in_try_block, is_in_catch_block, is_in_finally_block, " +
+                    "is_in_loop, loop_type, is_in_conditional, conditional_type) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch.callInserts);
+            // Declarations the new version of a file dropped; rows still called from
+            // elsewhere stay behind as stubs so those calls keep a target
+            batch.prunedMethodIds = deleteEach(conn, "DELETE FROM methods WHERE id = ? AND begin_offset IS NULL " +
+                    "AND NOT EXISTS (SELECT 1 FROM method_calls WHERE called_method_id = methods.id " +
+                    "OR caller_method_id = methods.id)", removedMethods);
+            batch.prunedClassIds = deleteEach(conn, "DELETE FROM classes WHERE id = ? AND file_path IS NULL " +
+                    "AND NOT EXISTS (SELECT 1 FROM methods WHERE class_id = classes.id)", removedClasses);
+            // The checkpoint commits with the rows it describes
+            executeBatch(conn, "INSERT OR REPLACE INTO indexed_files (file_path, run_id, size, modified) " +
+                    "VALUES (?, ?, ?, ?)", batch.completedFiles);
+            if (batch.checkpointRunId > 0) {
+                executeBatch(conn, "UPDATE index_runs SET updated = ?, files_done = files_done + ? WHERE id = ?",
+                        List.<Object[]>of(new Object[] {System.currentTimeMillis(), batch.completedFiles.size(),
+                        batch.checkpointRunId}));
+            }
+            conn.commit();
+            committed = true;
+            metrics.record(Phase.FLUSH, System.nanoTime() - start);
+            metrics.add(Counter.CLASSES_STORED, batch.classInserts.size());
+            metrics.add(Counter.METHODS_STORED, batch.methodInserts.size());
+            metrics.add(Counter.CALLS_STORED, batch.callInserts.size());
+            if (event.shouldCommit()) {
+                event.rows = batch.size();
+                event.classes = batch.classInserts.size();
+                event.methods = batch.methodInserts.size();
+                event.calls = batch.callInserts.size();
+                event.removedFiles = batch.removedFiles.size();
+                event.commit();
+            }
+        } finally {
+            // Restoring auto-commit commits whatever is open, so anything thrown before
+            // the commit, checked or not, has to roll the batch back first
+            if (!committed) {
+                conn.rollback();
+            }
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Collects the file's declared classes and methods before turning them into stubs
+    private void removeFile(Connection conn, String filePath, List<Integer> classIds, List<Integer> methodIds)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM classes WHERE file_path = ?")) {
+            stmt.setString(1, filePath);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    classIds.add(rs.getInt(1));
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT m.id FROM methods m " +
+                "JOIN classes c ON m.class_id = c.id WHERE c.file_path = ? AND m.begin_offset IS NOT NULL")) {
+            stmt.setString(1, filePath);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    methodIds.add(rs.getInt(1));
+                }
+            }
+        }
+        String[] statements = {
+            "DELETE FROM method_calls WHERE caller_method_id IN (SELECT m.id FROM methods m " +
+                    "JOIN classes c ON m.class_id = c.id WHERE c.file_path = ?)",
+            "UPDATE methods SET begin_line = NULL, end_line = NULL, begin_offset = NULL, end_offset = NULL " +
+                    "WHERE class_id IN (SELECT id FROM classes WHERE file_path = ?)",
+            "UPDATE classes SET file_path = NULL, begin_line = NULL, end_line = NULL, begin_offset = NULL, " +
+                    "end_offset = NULL WHERE file_path = ?"
+        };
+        for (String sql : statements) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, filePath);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    // Returns the ids whose row the statement deleted
+    private List<Integer> deleteEach(Connection conn, String sql, List<Integer> ids) throws SQLException {
+        List<Integer> deleted = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return deleted;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Integer id : ids) {
+                stmt.setInt(1, id);
+                if (stmt.executeUpdate() > 0) {
+                    deleted.add(id);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    // Indexed source files below a directory, for when the whole directory is gone
+    public List<String> getFilePathsUnder(String directory) throws SQLException {
+        return getFilePathsStartingWith(directory.endsWith(File.separator) ? directory : directory + File.separator);
+    }
+
+    // Stored file paths that begin with the prefix, such as the class locations of a jar
+    public List<String> getFilePathsStartingWith(String prefix) throws SQLException {
+        List<String> paths = new ArrayList<>();
+        try (PreparedStatement stmt = getConnection().prepareStatement(
+                "SELECT DISTINCT file_path FROM classes WHERE substr(file_path, 1, ?) = ?")) {
+            stmt.setInt(1, prefix.length());
+            stmt.setString(2, prefix);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    paths.add(rs.getString(1));
+                }
+            }
+        }
+        return paths;
+    }
+
+    // Runs an INSERT ... RETURNING id per row; the ids come back in row order
+    private int[] upsertReturningIds(Connection conn, Phase phase, String sql, List<Object[]> rows) throws SQLException {
+        int[] ids = new int[rows.size()];
+        if (rows.isEmpty()) {
+            return ids;
+        }
+        long start = System.nanoTime();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.length; i++) {
+                Object[] row = rows.get(i);
+                for (int j = 0; j < row.length; j++) {
+                    stmt.setObject(j + 1, row[j]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("No id returned for row " + Arrays.toString(row));
+                    }
+                    ids[i] = rs.getInt(1);
+                }
+            }
+        }
+        metrics.record(phase, System.nanoTime() - start);
+        return ids;
+    }
+
+    // Replaces provisional ids in the given columns with the ids the rows were stored under
+    private static void resolveIds(List<Object[]> rows, IntUnaryOperator ids, int... columns) {
+        for (Object[] row : rows) {
+            for (int column : columns) {
+                row[column] = ids.applyAsInt((Integer) row[column]);
+            }
+        }
+    }
+
+    private void timedBatch(Connection conn, Phase phase, String sql, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        executeBatch(conn, sql, rows);
+        metrics.record(phase, System.nanoTime() - start);
+    }
+
+    private void executeBatch(Connection conn, String sql, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    stmt.setObject(i + 1, row[i]);
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    public int getMaxId(String table) throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public RowRef findClass(String packageName, String className) throws SQLException {
+        String sql = "SELECT id, file_path FROM classes WHERE package_name = ? AND class_name = ?";
+        long start = System.nanoTime();
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, packageName);
+            stmt.setString(2, className);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new RowRef(rs.getInt("id"), rs.getString("file_path") != null);
+                }
+            }
+        } finally {
+            metrics.record(Phase.LOOKUP, System.nanoTime() - start);
+        }
+        return null;
+    }
+
+    public RowRef findMethod(int classId, String methodName, String parameters) throws SQLException {
+        String sql = "SELECT id, begin_offset FROM methods WHERE class_id = ? AND method_name = ? AND parameters = ?";
+        long start = System.nanoTime();
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, classId);
+            stmt.setString(2, methodName);
+            stmt.setString(3, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int id = rs.getInt("id");
+                    rs.getLong("begin_offset");
+                    return new RowRef(id, !rs.wasNull());
+                }
+            }
+        } finally {
+            metrics.record(Phase.LOOKUP, System.nanoTime() - start);
+        }
+        return null;
+    }
+
+    public int storeLibrary(String jarName, String sha256, String indexPath) throws SQLException {
+        String sql = "INSERT INTO libraries (jar_name, sha256, index_path) VALUES (?, ?, ?) " +
+                    "ON CONFLICT(sha256) DO UPDATE SET jar_name = excluded.jar_name, index_path = excluded.index_path";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, jarName);
+            stmt.setString(2, sha256);
+            stmt.setString(3, indexPath);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = getConnection().prepareStatement("SELECT id FROM libraries WHERE sha256 = ?")) {
+            stmt.setString(1, sha256);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    // The project's unfinished run if an earlier one was interrupted, otherwise a new run
+    public IndexRun startIndexRun(String projectRoot) throws SQLException {
+        try (PreparedStatement stmt = getConnection().prepareStatement(
+                "SELECT id, files_done FROM index_runs " +
+                "WHERE project_root = ? AND finished IS NULL ORDER BY id DESC LIMIT 1")) {
+            stmt.setString(1, projectRoot);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new IndexRun(rs.getInt("id"), projectRoot, true, rs.getLong("files_done"));
+                }
+            }
+        }
+        try (PreparedStatement stmt = getConnection().prepareStatement(
+                "INSERT INTO index_runs (project_root, started) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, projectRoot);
+            stmt.setLong(2, System.currentTimeMillis());
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return new IndexRun(rs.getInt(1), projectRoot, false, 0);
+                }
+                throw new SQLException("Failed to get generated key for index run");
+            }
+        }
+    }
+
+    // Files committed by a run, keyed by their path relative to the project root
+    public Map<String, FileStamp> getIndexedFiles(int runId) throws SQLException {
+        Map<String, FileStamp> files = new HashMap<>();
+        try (PreparedStatement stmt = getConnection().prepareStatement(
+                "SELECT file_path, size, modified FROM indexed_files WHERE run_id = ?")) {
+            stmt.setInt(1, runId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    files.put(rs.getString("file_path"), new FileStamp(rs.getLong("size"), rs.getLong("modified")));
+                }
+            }
+        }
+        return files;
+    }
+
+    // A finished run is never resumed, so its checkpoints go with it; both change in one
+    // transaction, taking turns with flush on the shared connection
+    public synchronized void finishIndexRun(int runId) throws SQLException {
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE index_runs SET finished = ? WHERE id = ?")) {
+                stmt.setLong(1, System.currentTimeMillis());
+                stmt.setInt(2, runId);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM indexed_files WHERE run_id = ?")) {
+                stmt.setInt(1, runId);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    public List<Library> getLibraries() throws SQLException {
+        List<Library> libraries = new ArrayList<>();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, jar_name, sha256, index_path FROM libraries ORDER BY id")) {
+            while (rs.next()) {
+                libraries.add(new Library(rs.getInt("id"), rs.getString("jar_name"), rs.getString("sha256"),
+                        rs.getString("index_path")));
+            }
+        }
+        return libraries;
+    }
+
     public List<String> getPackagesForClass(String className) throws SQLException {
         List<String> packages = new ArrayList<>();
         String sql = "SELECT package_name FROM classes WHERE class_name = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Connection conn = getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, className);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -175,4 +713,75 @@ public class DatabaseManager {
             }
         }
     }
-} 
\ No newline at end of file
+
+    // Id of an existing class or method row, and whether its source location is known
+    public static class RowRef {
+        private final int id;
+        private final boolean hasSource;
+
+        public RowRef(int id, boolean hasSource) {
+            this.id = id;
+            this.hasSource = hasSource;
+        }
+
+        public int getId() { return id; }
+        public boolean hasSource() { return hasSource; }
+    }
+
+    // An indexing run and the checkpoint it last committed
+    public static class IndexRun {
+        private final int id;
+        private final String projectRoot;
+        private final boolean resumed;
+        private final long filesDone;
+
+        public IndexRun(int id, String projectRoot, boolean resumed, long filesDone) {
+            this.id = id;
+            this.projectRoot = projectRoot;
+            this.resumed = resumed;
+            this.filesDone = filesDone;
+        }
+
+        public int getId() { return id; }
+        public String getProjectRoot() { return projectRoot; }
+        public boolean isResumed() { return resumed; }
+        public long getFilesDone() { return filesDone; }
+    }
+
+    // Size and modification time of a file when its rows were committed
+    public static class FileStamp {
+        private final long size;
+        private final long modified;
+
+        public FileStamp(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        public long getSize() { return size; }
+        public long getModified() { return modified; }
+
+        public boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+
+    public static class Library {
+        private final int id;
+        private final String jarName;
+        private final String sha256;
+        private final String indexPath;
+
+        public Library(int id, String jarName, String sha256, String indexPath) {
+            this.id = id;
+            this.jarName = jarName;
+            this.sha256 = sha256;
+            this.indexPath = indexPath;
+        }
+
+        public int getId() { return id; }
+        public String getJarName() { return jarName; }
+        public String getSha256() { return sha256; }
+        public String getIndexPath() { return indexPath; }
+    }
+}
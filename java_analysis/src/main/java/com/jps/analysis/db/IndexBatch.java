@@ -0,0 +1,139 @@
+package com.jps.analysis.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Rows queued for a single transactional flush. New classes and methods get a
+// provisional negative id so rows can reference each other before they exist; the
+// flush lets SQLite assign the real ids and replaces the provisional ones, which the
+// caller reads back with getClassId/getMethodId once the flush has committed.
+public class IndexBatch {
+    final List<String> removedFiles = new ArrayList<>();
+    final List<Object[]> classInserts = new ArrayList<>();
+    final List<Object[]> classUpdates = new ArrayList<>();
+    final List<Object[]> classLibraries = new ArrayList<>();
+    final List<Object[]> methodInserts = new ArrayList<>();
+    final List<Object[]> methodUpdates = new ArrayList<>();
+    final List<Object[]> callInserts = new ArrayList<>();
+    final List<Object[]> completedFiles = new ArrayList<>();
+    int checkpointRunId;
+    // Real ids of the inserted rows, by insertion order; filled in by the flush
+    int[] classIds = new int[0];
+    int[] methodIds = new int[0];
+    // Rows of removed or refreshed files that were not declared again; filled in by the flush
+    List<Integer> prunedClassIds = new ArrayList<>();
+    List<Integer> prunedMethodIds = new ArrayList<>();
+
+    // Drops the calls made from a file and turns its classes and methods back into
+    // stubs; rows still declared by the new version of the file are updated again
+    // in the same flush. Stubs keep calls from other files pointing at valid rows.
+    public void removeFile(String filePath) {
+        removedFiles.add(filePath);
+    }
+
+    // Returns the provisional id of the new row
+    public int addClass(String packageName, String className, String filePath, SourceSpan span) {
+        classInserts.add(row(new Object[] {packageName, className, filePath}, span));
+        return -classInserts.size();
+    }
+
+    // Fills in the location of a class that was first stored as a call target
+    public void updateClassSource(int id, String filePath, SourceSpan span) {
+        classUpdates.add(withId(row(new Object[] {filePath}, span), id));
+    }
+
+    // Marks a class as declared in a shared library index
+    public void setClassLibrary(int id, int libraryId) {
+        classLibraries.add(new Object[] {libraryId, id});
+    }
+
+    // Returns the provisional id of the new row; classId may be provisional too
+    public int addMethod(int classId, String methodName, String returnType, String parameters,
+                         boolean isStatic, boolean isPublic, SourceSpan span) {
+        methodInserts.add(row(new Object[] {classId, methodName, returnType, parameters, isStatic, isPublic}, span));
+        return -methodInserts.size();
+    }
+
+    // Replaces the placeholder details of a method that was first stored as a call target
+    public void updateMethod(int id, String returnType, boolean isStatic, boolean isPublic, SourceSpan span) {
+        methodUpdates.add(withId(row(new Object[] {returnType, isStatic, isPublic}, span), id));
+    }
+
+    public void addMethodCall(int callerMethodId, int calledMethodId, int lineNumber, String scope, String callContext,
+                              boolean isInTryBlock, boolean isInCatchBlock, boolean isInFinallyBlock, boolean isInLoop,
+                              String loopType, boolean isInConditional, String conditionalType) {
+        callInserts.add(new Object[] {callerMethodId, calledMethodId, lineNumber, scope, callContext,
+                isInTryBlock, isInCatchBlock, isInFinallyBlock, isInLoop, loopType, isInConditional, conditionalType});
+    }
+
+    // A file whose rows are all in this batch, recorded in the same transaction
+    public void completeFile(String relativePath, int runId, long size, long modified) {
+        completedFiles.add(new Object[] {relativePath, runId, size, modified});
+    }
+
+    // Progress of a run as of this batch
+    public void checkpoint(int runId) {
+        this.checkpointRunId = runId;
+    }
+
+    // The id a row got in the database, for provisional and real ids alike
+    public int getClassId(int id) {
+        return id < 0 ? classIds[-id - 1] : id;
+    }
+
+    public int getMethodId(int id) {
+        return id < 0 ? methodIds[-id - 1] : id;
+    }
+
+    public List<Integer> getPrunedClassIds() {
+        return prunedClassIds;
+    }
+
+    public List<Integer> getPrunedMethodIds() {
+        return prunedMethodIds;
+    }
+
+    // Spans occupy the begin_line, end_line, begin_offset and end_offset columns
+    private static Object[] row(Object[] values, SourceSpan span) {
+        Object[] row = Arrays.copyOf(values, values.length + 4);
+        if (span != null) {
+            row[values.length] = span.getBeginLine();
+            row[values.length + 1] = span.getEndLine();
+            row[values.length + 2] = span.getBeginOffset();
+            row[values.length + 3] = span.getEndOffset();
+        }
+        return row;
+    }
+
+    private static Object[] withId(Object[] values, int id) {
+        Object[] row = Arrays.copyOf(values, values.length + 1);
+        row[values.length] = id;
+        return row;
+    }
+
+    public int size() {
+        return removedFiles.size() + classInserts.size() + classUpdates.size() + classLibraries.size() + methodInserts.size() + methodUpdates.size()
+                + callInserts.size() + completedFiles.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        removedFiles.clear();
+        classInserts.clear();
+        classUpdates.clear();
+        classLibraries.clear();
+        methodInserts.clear();
+        methodUpdates.clear();
+        callInserts.clear();
+        completedFiles.clear();
+        checkpointRunId = 0;
+        classIds = new int[0];
+        methodIds = new int[0];
+        prunedClassIds = new ArrayList<>();
+        prunedMethodIds = new ArrayList<>();
+    }
+}
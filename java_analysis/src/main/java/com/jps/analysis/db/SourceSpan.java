@@ -0,0 +1,32 @@
+package com.jps.analysis.db;
+
+// Location of a declaration in its source file. Lines are 1-based and inclusive,
+// offsets are UTF-8 byte offsets with an exclusive end so the region can be read
+// back directly from the file.
+public class SourceSpan {
+    private final int beginLine;
+    private final int endLine;
+    private final long beginOffset;
+    private final long endOffset;
+
+    public SourceSpan(int beginLine, int endLine, long beginOffset, long endOffset) {
+        this.beginLine = beginLine;
+        this.endLine = endLine;
+        this.beginOffset = beginOffset;
+        this.endOffset = endOffset;
+    }
+
+    public int getBeginLine() { return beginLine; }
+    public int getEndLine() { return endLine; }
+    public long getBeginOffset() { return beginOffset; }
+    public long getEndOffset() { return endOffset; }
+
+    public long getLength() {
+        return endOffset - beginOffset;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lines %d-%d, bytes %d-%d", beginLine, endLine, beginOffset, endOffset);
+    }
+}
@@ -0,0 +1,32 @@
+package com.jps.analysis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.jps.analysis.BatchFlushed")
+@Label("Batch Flushed")
+@Description("An IndexBatch written to the database in one transaction")
+@Category({"Java Analysis", "Database"})
+@Enabled(false)
+@StackTrace(false)
+public class BatchFlushedEvent extends Event {
+    @Label("Rows")
+    public int rows;
+
+    @Label("Classes Inserted")
+    public int classes;
+
+    @Label("Methods Inserted")
+    public int methods;
+
+    @Label("Calls Inserted")
+    public int calls;
+
+    @Label("Files Removed")
+    public int removedFiles;
+}
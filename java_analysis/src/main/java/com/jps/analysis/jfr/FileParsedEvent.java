@@ -0,0 +1,34 @@
+package com.jps.analysis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One source file parsed and extracted; symbol resolution events for its calls are
+// nested inside it on the same thread
+@Name("com.jps.analysis.FileParsed")
+@Label("File Parsed")
+@Description("A Java source file parsed and its classes, methods and calls extracted")
+@Category({"Java Analysis", "Indexing"})
+@Enabled(false)
+@StackTrace(false)
+public class FileParsedEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Parsed")
+    @Description("False when the file has syntax errors")
+    public boolean parsed;
+
+    @Label("Calls")
+    public int calls;
+}
@@ -0,0 +1,32 @@
+package com.jps.analysis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.jps.analysis.QueryExecuted")
+@Label("Query Executed")
+@Description("A MethodQuery lookup against the index database")
+@Category({"Java Analysis", "Query"})
+@Enabled(false)
+@StackTrace(false)
+public class QueryExecutedEvent extends Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Rows")
+    public int rows;
+
+    // Only fills in the fields when the event is recorded
+    public void finish(String method, int rows) {
+        if (shouldCommit()) {
+            this.method = method;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.jps.analysis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.jps.analysis.SymbolResolution")
+@Label("Symbol Resolution")
+@Description("An attempt to resolve a call target with the symbol solver")
+@Category({"Java Analysis", "Indexing"})
+@Enabled(false)
+@StackTrace(false)
+public class SymbolResolutionEvent extends Event {
+    public static final String KIND_SCOPE_TYPE = "scope-type";
+    public static final String KIND_METHOD = "method";
+
+    @Label("Kind")
+    @Description("scope-type for the type of a call's scope variable, method for an unscoped call")
+    public String kind;
+
+    @Label("Symbol")
+    public String symbol;
+
+    @Label("Resolved")
+    public boolean resolved;
+
+    // Only fills in the fields when the event is recorded
+    public void finish(String kind, String symbol, boolean resolved) {
+        if (shouldCommit()) {
+            this.kind = kind;
+            this.symbol = symbol;
+            this.resolved = resolved;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.jps.analysis.library;
+
+import com.jps.analysis.db.DatabaseManager;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Classes declared by the libraries attached to a project, by class key.
+// Lets the index writer mark external classes as belonging to a library
+// instead of leaving them as anonymous stubs.
+//
+// Nothing is loaded up front: a JDK index alone declares tens of thousands of classes
+// while a project references a few hundred of them. Each key is looked up in the
+// library indexes the first time it is asked for, and the answer, a miss included, is
+// remembered for the last MAX_REMEMBERED keys. Only the index writer thread uses it.
+public class LibraryCatalog implements AutoCloseable {
+    private static final int MAX_REMEMBERED = 10_000;
+    private static final int NOT_DECLARED = 0;
+
+    // In class path order; the first library declaring a class wins, as it would at runtime
+    private final List<Library> libraries = new ArrayList<>();
+    private final Map<String, Integer> remembered = new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    };
+
+    void add(int libraryId, Path indexPath) {
+        libraries.add(new Library(libraryId, new DatabaseManager("jdbc:sqlite:" + indexPath)));
+    }
+
+    public Integer findLibrary(String classKey) throws SQLException {
+        Integer libraryId = remembered.get(classKey);
+        if (libraryId == null) {
+            libraryId = lookUp(classKey);
+            remembered.put(classKey, libraryId);
+        }
+        return libraryId == NOT_DECLARED ? null : libraryId;
+    }
+
+    // Library indexes are built from bytecode, so class names hold no dots and the key
+    // splits at its last one
+    private int lookUp(String classKey) throws SQLException {
+        int dot = classKey.lastIndexOf('.');
+        if (dot < 0) {
+            return NOT_DECLARED;
+        }
+        String packageName = classKey.substring(0, dot);
+        String className = classKey.substring(dot + 1);
+        for (Library library : libraries) {
+            if (library.declares(packageName, className)) {
+                return library.id;
+            }
+        }
+        return NOT_DECLARED;
+    }
+
+    public int getLibraryCount() {
+        return libraries.size();
+    }
+
+    @Override
+    public void close() {
+        for (Library library : libraries) {
+            library.close();
+        }
+    }
+
+    private static class Library {
+        private final int id;
+        private final DatabaseManager db;
+        private PreparedStatement lookup;
+
+        Library(int id, DatabaseManager db) {
+            this.id = id;
+            this.db = db;
+        }
+
+        boolean declares(String packageName, String className) throws SQLException {
+            if (lookup == null) {
+                lookup = db.getConnection().prepareStatement("SELECT 1 FROM classes " +
+                        "WHERE package_name = ? AND class_name = ? AND file_path IS NOT NULL");
+            }
+            lookup.setString(1, packageName);
+            lookup.setString(2, className);
+            try (ResultSet rs = lookup.executeQuery()) {
+                return rs.next();
+            }
+        }
+
+        void close() {
+            if (lookup != null) {
+                try {
+                    lookup.close();
+                } catch (SQLException e) {
+                    // Closing the connection releases it anyway
+                }
+                lookup = null;
+            }
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.jps.analysis.library;
+
+import com.jps.analysis.bytecode.BytecodeIndexer;
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Shared, per-jar indexes of dependency libraries. Each jar is indexed once from its
+// bytecode into <library.index.dir>/<sha256>.db and reused by every project that
+// depends on the same jar; projects only record which libraries they reference.
+//
+// Configuration:
+//   library.index.dir  - where shared indexes live (default ~/.jps-analysis/libraries)
+//   library.jars       - jars or directories of jars, separated by the path separator
+//   library.jdk        - also index the running JDK's modules (default false)
+//   library.jdk.modules - comma separated JDK modules to index (default java.base)
+public class LibraryIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LibraryIndex.class);
+    private static final String DEFAULT_INDEX_DIR =
+            Paths.get(System.getProperty("user.home"), ".jps-analysis", "libraries").toString();
+
+    private final Path indexDir;
+
+    public LibraryIndex() {
+        this(Paths.get(System.getProperty("library.index.dir", DEFAULT_INDEX_DIR)));
+    }
+
+    public LibraryIndex(Path indexDir) {
+        this.indexDir = indexDir;
+    }
+
+    // Attaches the libraries named by the system properties, or returns null if there are none
+    public LibraryCatalog attachConfigured(DatabaseManager project) throws IOException {
+        List<Path> jars = configuredJars();
+        boolean includeJdk = Boolean.getBoolean("library.jdk");
+        if (jars.isEmpty() && !includeJdk) {
+            return null;
+        }
+        return attach(project, jars, includeJdk);
+    }
+
+    // Builds any missing library indexes, records them in the project database and
+    // returns a catalog of the classes they declare
+    public LibraryCatalog attach(DatabaseManager project, List<Path> jars, boolean includeJdk) throws IOException {
+        LibraryCatalog catalog = new LibraryCatalog();
+        try {
+            if (includeJdk) {
+                String name = "jdk-" + System.getProperty("java.runtime.version");
+                String hash = sha256((System.getProperty("java.vendor") + ":" + name + ":" + jdkModules())
+                        .getBytes(StandardCharsets.UTF_8));
+                Path index = buildIfMissing(hash, name, this::indexJdk);
+                catalog.add(project.storeLibrary(name, hash, index.toString()), index);
+            }
+            for (Path jar : jars) {
+                String hash = sha256(jar);
+                Path index = buildIfMissing(hash, jar.getFileName().toString(), indexer -> indexer.index(jar));
+                catalog.add(project.storeLibrary(jar.getFileName().toString(), hash, index.toString()), index);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to attach library indexes", e);
+        }
+        logger.info("Attached " + catalog.getLibraryCount() + " libraries");
+        return catalog;
+    }
+
+    // Returns the shared index for a jar, building it only if this exact jar has not been indexed before
+    public Path indexJar(Path jar) throws IOException {
+        return buildIfMissing(sha256(jar), jar.getFileName().toString(), indexer -> indexer.index(jar));
+    }
+
+    private Path buildIfMissing(String hash, String name, IndexTask task) throws IOException {
+        Path index = indexDir.resolve(hash + ".db");
+        if (Files.exists(index)) {
+            logger.debug("Reusing library index for " + name + ": " + index);
+            return index;
+        }
+
+        // Build under a temporary name so other processes never see a partial index
+        Files.createDirectories(indexDir);
+        Path tmp = Files.createTempFile(indexDir, hash, ".tmp");
+        long start = System.nanoTime();
+        DatabaseManager libraryDb = new DatabaseManager("jdbc:sqlite:" + tmp);
+        try {
+            libraryDb.createTables();
+            task.run(new BytecodeIndexer(new IndexWriter(libraryDb)));
+        } catch (IOException | RuntimeException e) {
+            libraryDb.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        libraryDb.close();
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Built library index for " + name + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return index;
+    }
+
+    private void indexJdk(BytecodeIndexer indexer) throws IOException {
+        Path modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("modules");
+        for (String module : jdkModules()) {
+            indexer.index(modules.resolve(module));
+        }
+    }
+
+    private static List<String> jdkModules() {
+        List<String> modules = new ArrayList<>();
+        for (String module : System.getProperty("library.jdk.modules", "java.base").split(",")) {
+            if (!module.trim().isEmpty()) {
+                modules.add(module.trim());
+            }
+        }
+        return modules;
+    }
+
+    static List<Path> configuredJars() throws IOException {
+        List<Path> jars = new ArrayList<>();
+        String property = System.getProperty("library.jars", "");
+        for (String entry : property.split(File.pathSeparator)) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(entry.trim());
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    jars.addAll(files.filter(p -> p.toString().endsWith(".jar")).sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                jars.add(path);
+            }
+        }
+        return jars;
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String sha256(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private interface IndexTask {
+        void run(BytecodeIndexer indexer) throws IOException;
+    }
+}
@@ -0,0 +1,267 @@
+package com.jps.analysis.metrics;
+
+import com.jps.analysis.util.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters and latency histograms for every phase of indexing, shared by the parser,
+// the index writer and the database layer of one process. Recording is lock-free, so
+// the parsing threads and the writer thread update it concurrently.
+//
+// Store phases time one statement when rows are written one at a time, and one JDBC
+// batch when an IndexBatch is flushed; lookup times the findClass/findMethod queries
+// that a class or method cache miss costs on a non-empty database.
+//
+// Gauges are current values owned by other components, such as the size of the
+// writer's caches; they are read when the metrics are, never pushed. An owner removes
+// its gauges when it is done, so they never report, or keep reachable, a dead object.
+//
+// Published over JMX once an indexing run starts (-Dmetrics.jmx=false to disable) and
+// summarized as JSON at the end of the run.
+public class IndexingMetrics implements IndexingMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(IndexingMetrics.class);
+    public static final String OBJECT_NAME = "com.jps.analysis:type=IndexingMetrics";
+    private static IndexingMetrics instance;
+
+    public enum Phase {
+        FILE_READ("file_read"),
+        PARSE("parse"),
+        SYMBOL_RESOLVED("symbol_resolved"),
+        SYMBOL_UNRESOLVED("symbol_unresolved"),
+        LOOKUP("lookup"),
+        CLASS_STORE("class_store"),
+        METHOD_STORE("method_store"),
+        CALL_STORE("call_store"),
+        FLUSH("flush");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+    }
+
+    public enum Counter {
+        FILES_READ("files_read"),
+        BYTES_READ("bytes_read"),
+        PARSE_FAILURES("parse_failures"),
+        DECLARATION_ONLY_FILES("declaration_only_files"),
+        CLASSES_STORED("classes_stored"),
+        METHODS_STORED("methods_stored"),
+        CALLS_STORED("calls_stored"),
+        CLASS_CACHE_HITS("class_cache_hits"),
+        CLASS_CACHE_MISSES("class_cache_misses"),
+        METHOD_CACHE_HITS("method_cache_hits"),
+        METHOD_CACHE_MISSES("method_cache_misses"),
+        CLASS_CACHE_EVICTIONS("class_cache_evictions"),
+        METHOD_CACHE_EVICTIONS("method_cache_evictions"),
+        PARSER_RECYCLES("parser_recycles"),
+        FILE_TIMEOUTS("file_timeouts");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private boolean registered;
+
+    public IndexingMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public static synchronized IndexingMetrics getInstance() {
+        if (instance == null) {
+            instance = new IndexingMetrics();
+        }
+        return instance;
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].recordNanos(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    // Replaces any gauge of the same name, so the latest owner wins
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // Only removes the gauge if it is still this owner's
+    public void unregisterGauge(String name, LongSupplier value) {
+        gauges.remove(name, value);
+    }
+
+    // Loads java.management, so only indexing runs call this, never the query commands
+    public synchronized void registerMBean() {
+        if (registered || !Boolean.parseBoolean(System.getProperty("metrics.jmx", "true"))) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (InstanceAlreadyExistsException e) {
+            logger.debug("Indexing metrics already registered by another instance");
+        } catch (JMException e) {
+            logger.warn("Could not register indexing metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) {
+            values.put(counter.label, get(counter));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.label, getHistogram(phase).getCount());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTotalMillis() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.label, totalMillis(getHistogram(phase)));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getP50Micros() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getP99Micros() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getMaxMicros() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.label, getHistogram(phase).getMaxMicros());
+        }
+        return values;
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.label, getHistogram(phase).percentileMicros(percentile));
+        }
+        return values;
+    }
+
+    private static long totalMillis(LatencyHistogram histogram) {
+        return Math.round(histogram.getMeanMicros() * histogram.getCount() / 1000);
+    }
+
+    @Override
+    public double getClassCacheHitRate() {
+        return rate(get(Counter.CLASS_CACHE_HITS), get(Counter.CLASS_CACHE_MISSES));
+    }
+
+    @Override
+    public double getMethodCacheHitRate() {
+        return rate(get(Counter.METHOD_CACHE_HITS), get(Counter.METHOD_CACHE_MISSES));
+    }
+
+    @Override
+    public double getSymbolResolutionSuccessRate() {
+        return rate(getHistogram(Phase.SYMBOL_RESOLVED).getCount(), getHistogram(Phase.SYMBOL_UNRESOLVED).getCount());
+    }
+
+    private static double rate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String getSummaryJson() {
+        JsonWriter json = new JsonWriter().beginObject();
+        json.name("counters").beginObject();
+        for (Counter counter : Counter.values()) {
+            json.field(counter.label, get(counter));
+        }
+        json.endObject();
+        json.name("gauges").beginObject();
+        getGauges().forEach(json::field);
+        json.endObject();
+        json.name("rates").beginObject()
+                .field("class_cache_hit_rate", getClassCacheHitRate())
+                .field("method_cache_hit_rate", getMethodCacheHitRate())
+                .field("symbol_resolution_success_rate", getSymbolResolutionSuccessRate())
+                .endObject();
+        json.name("phases").beginObject();
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = getHistogram(phase);
+            json.name(phase.label).beginObject()
+                    .field("count", histogram.getCount())
+                    .field("total_ms", totalMillis(histogram))
+                    .field("mean_us", Math.round(histogram.getMeanMicros()))
+                    .field("p50_us", histogram.percentileMicros(50))
+                    .field("p90_us", histogram.percentileMicros(90))
+                    .field("p99_us", histogram.percentileMicros(99))
+                    .field("max_us", histogram.getMaxMicros())
+                    .endObject();
+        }
+        json.endObject();
+        return json.endObject().toString();
+    }
+}
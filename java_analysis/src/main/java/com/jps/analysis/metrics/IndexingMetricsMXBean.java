@@ -0,0 +1,29 @@
+package com.jps.analysis.metrics;
+
+import java.util.Map;
+
+// JMX view of IndexingMetrics, registered as com.jps.analysis:type=IndexingMetrics.
+// Maps are keyed by counter, gauge or phase name; latencies are in microseconds.
+public interface IndexingMetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Long> getPhaseTotalMillis();
+
+    Map<String, Long> getP50Micros();
+
+    Map<String, Long> getP99Micros();
+
+    Map<String, Long> getMaxMicros();
+
+    double getClassCacheHitRate();
+
+    double getMethodCacheHitRate();
+
+    double getSymbolResolutionSuccessRate();
+
+    String getSummaryJson();
+}
@@ -0,0 +1,229 @@
+package com.jps.analysis.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Progress of one indexing run: files done out of the candidates counted at discovery,
+// files and rows per second, and an estimate of the time left. The pipeline threads
+// only bump LongAdders; a single reporting thread turns them into a snapshot on a fixed
+// interval (-Dindex.progress.interval seconds, default 10), logs it and publishes it
+// over JMX as com.jps.analysis:type=IndexingProgress.
+//
+// Rates are measured over the last interval, so a stuck run shows 0 files/s right away
+// instead of a slowly decaying average. The ETA divides the remaining files by a
+// smoothed rate, which keeps it from jumping around with the size of the last few files.
+public class ProgressReporter implements ProgressReporterMXBean, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressReporter.class);
+    public static final String OBJECT_NAME = "com.jps.analysis:type=IndexingProgress";
+    private static final long DEFAULT_INTERVAL_SECONDS = 10;
+    // Weight of the latest interval in the rate used for the ETA
+    private static final double SMOOTHING = 0.3;
+
+    private final LongSupplier rowsWritten;
+    // The writer outlives a run, so rows are counted from where it stood at the start
+    private final long rowsAtStart;
+    private final long startNanos;
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private volatile long filesTotal = -1;
+    private volatile Snapshot latest;
+    private ScheduledExecutorService scheduler;
+
+    // Guarded by this; only touched when a report is taken
+    private long lastNanos;
+    private long lastFiles;
+    private long lastRows;
+    // Starts from the first interval that finished any files, not from the idle start-up
+    private double smoothedFilesPerSecond;
+
+    public ProgressReporter(LongSupplier rowsWritten) {
+        this(rowsWritten, System.nanoTime());
+    }
+
+    ProgressReporter(LongSupplier rowsWritten, long startNanos) {
+        this.rowsWritten = rowsWritten;
+        this.rowsAtStart = rowsWritten.getAsLong();
+        this.startNanos = startNanos;
+        this.lastNanos = startNanos;
+        this.latest = new Snapshot(-1, 0, 0, 0, 0, 0, -1, 0, false);
+    }
+
+    // Number of candidate files, known once discovery has walked the tree
+    public void setFilesTotal(long total) {
+        this.filesTotal = total;
+    }
+
+    public void fileDone() {
+        filesDone.increment();
+    }
+
+    // A file that could not be read or parsed still counts towards the total
+    public void fileFailed() {
+        filesFailed.increment();
+        filesDone.increment();
+    }
+
+    public void start() {
+        long interval = Long.getLong("index.progress.interval", DEFAULT_INTERVAL_SECONDS);
+        registerMBean();
+        if (interval <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "index-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> logger.info("Progress: " + report(System.nanoTime(), false)),
+                interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized Snapshot report(long nowNanos, boolean finished) {
+        long files = filesDone.sum();
+        long rows = rowsWritten.getAsLong() - rowsAtStart;
+        // The final report gives the rates of the whole run
+        long since = finished ? startNanos : lastNanos;
+        double seconds = (nowNanos - since) / 1e9;
+        double filesPerSecond = seconds > 0 ? (files - (finished ? 0 : lastFiles)) / seconds : 0;
+        double rowsPerSecond = seconds > 0 ? (rows - (finished ? 0 : lastRows)) / seconds : 0;
+        smoothedFilesPerSecond = smoothedFilesPerSecond <= 0 ? filesPerSecond
+                : SMOOTHING * filesPerSecond + (1 - SMOOTHING) * smoothedFilesPerSecond;
+        lastNanos = nowNanos;
+        lastFiles = files;
+        lastRows = rows;
+
+        long total = filesTotal;
+        long eta = -1;
+        if (finished) {
+            eta = 0;
+        } else if (total >= 0 && smoothedFilesPerSecond > 0) {
+            eta = Math.round(Math.max(0, total - files) / smoothedFilesPerSecond);
+        }
+        latest = new Snapshot(total, files, filesFailed.sum(), rows, filesPerSecond, rowsPerSecond, eta,
+                nowNanos - startNanos, finished);
+        return latest;
+    }
+
+    public Snapshot getLatest() {
+        return latest;
+    }
+
+    private void registerMBean() {
+        if (!Boolean.parseBoolean(System.getProperty("metrics.jmx", "true"))) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // The previous run's progress stays visible until the next run replaces it
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Could not register indexing progress with JMX: " + e.getMessage());
+        }
+    }
+
+    // Stops periodic reporting and takes the final snapshot
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        report(System.nanoTime(), true);
+    }
+
+    @Override public long getFilesTotal() { return latest.filesTotal; }
+    @Override public long getFilesDone() { return latest.filesDone; }
+    @Override public long getFilesFailed() { return latest.filesFailed; }
+    @Override public long getRowsWritten() { return latest.rowsWritten; }
+    @Override public double getFilesPerSecond() { return latest.filesPerSecond; }
+    @Override public double getRowsPerSecond() { return latest.rowsPerSecond; }
+    @Override public long getEtaSeconds() { return latest.etaSeconds; }
+    @Override public long getElapsedSeconds() { return latest.elapsedNanos / 1_000_000_000L; }
+    @Override public boolean isFinished() { return latest.finished; }
+
+    public static class Snapshot {
+        private final long filesTotal;
+        private final long filesDone;
+        private final long filesFailed;
+        private final long rowsWritten;
+        private final double filesPerSecond;
+        private final double rowsPerSecond;
+        private final long etaSeconds;
+        private final long elapsedNanos;
+        private final boolean finished;
+
+        Snapshot(long filesTotal, long filesDone, long filesFailed, long rowsWritten, double filesPerSecond,
+                 double rowsPerSecond, long etaSeconds, long elapsedNanos, boolean finished) {
+            this.filesTotal = filesTotal;
+            this.filesDone = filesDone;
+            this.filesFailed = filesFailed;
+            this.rowsWritten = rowsWritten;
+            this.filesPerSecond = filesPerSecond;
+            this.rowsPerSecond = rowsPerSecond;
+            this.etaSeconds = etaSeconds;
+            this.elapsedNanos = elapsedNanos;
+            this.finished = finished;
+        }
+
+        public long getFilesTotal() { return filesTotal; }
+        public long getFilesDone() { return filesDone; }
+        public long getFilesFailed() { return filesFailed; }
+        public long getRowsWritten() { return rowsWritten; }
+        public double getFilesPerSecond() { return filesPerSecond; }
+        public double getRowsPerSecond() { return rowsPerSecond; }
+        public long getEtaSeconds() { return etaSeconds; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public boolean isFinished() { return finished; }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (filesTotal >= 0) {
+                sb.append(String.format("%d/%d files (%.1f%%)", filesDone, filesTotal,
+                        filesTotal == 0 ? 100.0 : Math.min(100.0, 100.0 * filesDone / filesTotal)));
+            } else {
+                sb.append(filesDone).append(" files (counting)");
+            }
+            if (filesFailed > 0) {
+                sb.append(", ").append(filesFailed).append(" failed");
+            }
+            sb.append(String.format(", %.1f files/s, %.0f rows/s, %d rows", filesPerSecond, rowsPerSecond,
+                    rowsWritten));
+            if (finished) {
+                sb.append(", done in ").append(formatSeconds(elapsedNanos / 1_000_000_000L));
+            } else {
+                if (etaSeconds >= 0) {
+                    sb.append(", ETA ").append(formatSeconds(etaSeconds));
+                }
+                // Nothing finished during the whole interval
+                if (filesPerSecond == 0 && filesDone < filesTotal) {
+                    sb.append(", stalled");
+                }
+            }
+            return sb.toString();
+        }
+
+        static String formatSeconds(long seconds) {
+            if (seconds < 60) {
+                return seconds + "s";
+            }
+            if (seconds < 3600) {
+                return String.format("%dm%02ds", seconds / 60, seconds % 60);
+            }
+            return String.format("%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+        }
+    }
+}
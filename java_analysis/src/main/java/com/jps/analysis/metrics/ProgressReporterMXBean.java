@@ -0,0 +1,24 @@
+package com.jps.analysis.metrics;
+
+// JMX view of the running (or last) indexing run, registered as
+// com.jps.analysis:type=IndexingProgress. Rates are those of the last report interval;
+// totals and ETA are -1 until discovery has counted the candidate files.
+public interface ProgressReporterMXBean {
+    long getFilesTotal();
+
+    long getFilesDone();
+
+    long getFilesFailed();
+
+    long getRowsWritten();
+
+    double getFilesPerSecond();
+
+    double getRowsPerSecond();
+
+    long getEtaSeconds();
+
+    long getElapsedSeconds();
+
+    boolean isFinished();
+}
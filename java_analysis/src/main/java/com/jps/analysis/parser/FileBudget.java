@@ -0,0 +1,98 @@
+package com.jps.analysis.parser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Time and memory allowance for extracting one file, checked by the extraction
+// visitor before each symbol resolution. Once either is used up the rest of the file is
+// not resolved and only its declarations are kept, so one pathological file costs at
+// most its budget instead of holding a parsing thread for the rest of the run.
+//
+// The checks are cooperative: a single resolution or parse that never returns is not
+// stopped by them. IndexingPipeline therefore also waits for each file only up to
+// watchdogMillis() and then falls back to the declarations, see there.
+//
+// The memory limit applies to the total bytes the extracting thread allocated since
+// the budget was created, garbage included, not to the live heap the file occupies. It
+// measures how much work resolution did, which is what grows without bound on a huge
+// generated file. It needs HotSpot's ThreadMXBean and is not checked elsewhere.
+// Configured with index.file.budget.ms (default 30000), index.file.budget.mb (default
+// 1024) and index.file.timeout.ms (default twice the time budget); 0 disables any of them.
+class FileBudget {
+    private static final long DEFAULT_BUDGET_MILLIS = 30_000;
+    private static final long DEFAULT_BUDGET_MB = 1024;
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+    private static final FileBudget UNLIMITED = new FileBudget(0, 0);
+
+    private final long maxNanos;
+    private final long maxAllocatedBytes;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+    private String exceeded;
+
+    FileBudget(long maxNanos, long maxAllocatedBytes) {
+        this.maxNanos = maxNanos;
+        this.maxAllocatedBytes = ALLOCATIONS != null ? maxAllocatedBytes : 0;
+        this.startNanos = System.nanoTime();
+        this.startAllocatedBytes = this.maxAllocatedBytes > 0 ? allocatedBytes() : 0;
+    }
+
+    static FileBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    // Used up from the start, so nothing is resolved
+    static FileBudget exhausted(String reason) {
+        FileBudget budget = new FileBudget(0, 0);
+        budget.exceeded = reason;
+        return budget;
+    }
+
+    // A fresh budget for the file the current thread is about to extract
+    static FileBudget configured() {
+        long millis = Long.getLong("index.file.budget.ms", DEFAULT_BUDGET_MILLIS);
+        long megabytes = Long.getLong("index.file.budget.mb", DEFAULT_BUDGET_MB);
+        return new FileBudget(millis * 1_000_000L, megabytes * 1024 * 1024);
+    }
+
+    // How long the pipeline waits for one file before abandoning it; 0 waits forever
+    static long watchdogMillis() {
+        long budgetMillis = Long.getLong("index.file.budget.ms", DEFAULT_BUDGET_MILLIS);
+        return Long.getLong("index.file.timeout.ms", 2 * budgetMillis);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) threads;
+        }
+        return null;
+    }
+
+    static boolean isMemoryMeasured() {
+        return ALLOCATIONS != null;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Must be called from the thread that created the budget
+    boolean isExceeded() {
+        if (exceeded != null) {
+            return true;
+        }
+        if (maxNanos > 0 && System.nanoTime() - startNanos > maxNanos) {
+            exceeded = "time";
+        } else if (maxAllocatedBytes > 0 && allocatedBytes() - startAllocatedBytes > maxAllocatedBytes) {
+            exceeded = "memory";
+        }
+        return exceeded != null;
+    }
+
+    // "time" or "memory" once exceeded, otherwise null
+    String getExceeded() {
+        return exceeded;
+    }
+}
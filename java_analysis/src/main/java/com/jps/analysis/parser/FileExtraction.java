@@ -0,0 +1,225 @@
+package com.jps.analysis.parser;
+
+import com.jps.analysis.db.SourceSpan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rows extracted from one source file, keyed by name rather than database id.
+// Extraction never touches the database; IndexWriter resolves keys to ids when
+// the rows are persisted.
+public class FileExtraction {
+    private final String filePath;
+    private final long sizeBytes;
+    private final Map<String, ClassRecord> classes = new LinkedHashMap<>();
+    private final Map<String, MethodRecord> methods = new LinkedHashMap<>();
+    private final List<CallRecord> calls = new ArrayList<>();
+    private boolean parseFailed;
+    private String declarationsOnly;
+    // Set for files read from a project; lets an interrupted run recognize what it stored
+    private String relativePath;
+    private long fileBytes;
+    private long lastModified;
+
+    public FileExtraction(String filePath, long sizeBytes) {
+        this.filePath = filePath;
+        this.sizeBytes = sizeBytes;
+    }
+
+    public static String classKey(String packageName, String className) {
+        return packageName + "." + className;
+    }
+
+    public static String methodKey(String classKey, String methodName, String parameters) {
+        return classKey + "." + methodName + "[" + parameters + "]";
+    }
+
+    // Parameters are stored with a space after each comma
+    public static String formatParameters(String parameters) {
+        return parameters.replaceAll(",", ", ");
+    }
+
+    public void addClass(String packageName, String className, SourceSpan span) {
+        String key = classKey(packageName, className);
+        ClassRecord existing = classes.get(key);
+        if (existing == null || existing.isStub()) {
+            classes.put(key, new ClassRecord(packageName, className, filePath, span));
+        }
+    }
+
+    public void addClassStub(String classKey) {
+        if (!classes.containsKey(classKey)) {
+            String packageName = classKey.substring(0, classKey.lastIndexOf('.'));
+            String className = classKey.substring(classKey.lastIndexOf('.') + 1);
+            classes.put(classKey, new ClassRecord(packageName, className, null, null));
+        }
+    }
+
+    public boolean hasClass(String classKey) {
+        return classes.containsKey(classKey);
+    }
+
+    public void addMethod(String classKey, String methodName, String returnType, String parameters,
+                          boolean isStatic, boolean isPublic, SourceSpan span) {
+        String formatted = formatParameters(parameters);
+        String key = methodKey(classKey, methodName, formatted);
+        MethodRecord existing = methods.get(key);
+        if (existing == null || existing.isStub()) {
+            methods.put(key, new MethodRecord(classKey, methodName, returnType, formatted, isStatic, isPublic,
+                    span, false));
+        }
+    }
+
+    public void addMethodStub(String classKey, String methodName, String parameters, boolean isStatic) {
+        String formatted = formatParameters(parameters);
+        String key = methodKey(classKey, methodName, formatted);
+        if (!methods.containsKey(key)) {
+            methods.put(key, new MethodRecord(classKey, methodName, "void", formatted, isStatic, true,
+                    null, true));
+        }
+    }
+
+    public void addCall(CallRecord call) {
+        calls.add(call);
+    }
+
+    void setParseFailed(boolean parseFailed) {
+        this.parseFailed = parseFailed;
+    }
+
+    // Falls back to the declarations of the file: calls and the call-target stubs they
+    // added are dropped, so a partly resolved file never contributes half its calls
+    void keepDeclarationsOnly(String reason) {
+        calls.clear();
+        classes.values().removeIf(ClassRecord::isStub);
+        methods.values().removeIf(MethodRecord::isStub);
+        this.declarationsOnly = reason;
+    }
+
+    public void setFileStamp(String relativePath, long fileBytes, long lastModified) {
+        this.relativePath = relativePath;
+        this.fileBytes = fileBytes;
+        this.lastModified = lastModified;
+    }
+
+    public String getFilePath() { return filePath; }
+    public long getSizeBytes() { return sizeBytes; }
+    public String getRelativePath() { return relativePath; }
+    public long getFileBytes() { return fileBytes; }
+    public long getLastModified() { return lastModified; }
+    public Collection<ClassRecord> getClasses() { return classes.values(); }
+    public Collection<MethodRecord> getMethods() { return methods.values(); }
+    public List<CallRecord> getCalls() { return calls; }
+    public boolean isParseFailed() { return parseFailed; }
+    public boolean isDeclarationsOnly() { return declarationsOnly != null; }
+    public String getDeclarationsOnlyReason() { return declarationsOnly; }
+
+    public int getRowCount() {
+        return classes.size() + methods.size() + calls.size();
+    }
+
+    public static class ClassRecord {
+        private final String packageName;
+        private final String className;
+        private final String filePath;
+        private final SourceSpan span;
+
+        public ClassRecord(String packageName, String className, String filePath, SourceSpan span) {
+            this.packageName = packageName;
+            this.className = className;
+            this.filePath = filePath;
+            this.span = span;
+        }
+
+        public String getKey() { return classKey(packageName, className); }
+        public String getPackageName() { return packageName; }
+        public String getClassName() { return className; }
+        public String getFilePath() { return filePath; }
+        public SourceSpan getSpan() { return span; }
+
+        // Classes referenced by a call but not declared in the file being indexed
+        public boolean isStub() { return filePath == null; }
+    }
+
+    public static class MethodRecord {
+        private final String classKey;
+        private final String methodName;
+        private final String returnType;
+        private final String parameters;
+        private final boolean isStatic;
+        private final boolean isPublic;
+        private final SourceSpan span;
+        private final boolean stub;
+
+        public MethodRecord(String classKey, String methodName, String returnType, String parameters,
+                            boolean isStatic, boolean isPublic, SourceSpan span, boolean stub) {
+            this.classKey = classKey;
+            this.methodName = methodName;
+            this.returnType = returnType;
+            this.parameters = parameters;
+            this.isStatic = isStatic;
+            this.isPublic = isPublic;
+            this.span = span;
+            this.stub = stub;
+        }
+
+        public String getKey() { return methodKey(classKey, methodName, parameters); }
+        public String getClassKey() { return classKey; }
+        public String getMethodName() { return methodName; }
+        public String getReturnType() { return returnType; }
+        public String getParameters() { return parameters; }
+        public boolean isStatic() { return isStatic; }
+        public boolean isPublic() { return isPublic; }
+        public SourceSpan getSpan() { return span; }
+        public boolean isStub() { return stub; }
+    }
+
+    public static class CallRecord {
+        private final String callerMethodKey;
+        private final String calledMethodKey;
+        private final int lineNumber;
+        private final String scope;
+        private final String callContext;
+        private final boolean isInTryBlock;
+        private final boolean isInCatchBlock;
+        private final boolean isInFinallyBlock;
+        private final boolean isInLoop;
+        private final String loopType;
+        private final boolean isInConditional;
+        private final String conditionalType;
+
+        public CallRecord(String callerMethodKey, String calledMethodKey, int lineNumber, String scope,
+                          String callContext, boolean isInTryBlock, boolean isInCatchBlock,
+                          boolean isInFinallyBlock, boolean isInLoop, String loopType,
+                          boolean isInConditional, String conditionalType) {
+            this.callerMethodKey = callerMethodKey;
+            this.calledMethodKey = calledMethodKey;
+            this.lineNumber = lineNumber;
+            this.scope = scope;
+            this.callContext = callContext;
+            this.isInTryBlock = isInTryBlock;
+            this.isInCatchBlock = isInCatchBlock;
+            this.isInFinallyBlock = isInFinallyBlock;
+            this.isInLoop = isInLoop;
+            this.loopType = loopType;
+            this.isInConditional = isInConditional;
+            this.conditionalType = conditionalType;
+        }
+
+        public String getCallerMethodKey() { return callerMethodKey; }
+        public String getCalledMethodKey() { return calledMethodKey; }
+        public int getLineNumber() { return lineNumber; }
+        public String getScope() { return scope; }
+        public String getCallContext() { return callContext; }
+        public boolean isInTryBlock() { return isInTryBlock; }
+        public boolean isInCatchBlock() { return isInCatchBlock; }
+        public boolean isInFinallyBlock() { return isInFinallyBlock; }
+        public boolean isInLoop() { return isInLoop; }
+        public String getLoopType() { return loopType; }
+        public boolean isInConditional() { return isInConditional; }
+        public String getConditionalType() { return conditionalType; }
+    }
+}
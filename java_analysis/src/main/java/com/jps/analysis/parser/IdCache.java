@@ -0,0 +1,97 @@
+package com.jps.analysis.parser;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// Key -> row id map of the index writer, kept in least-recently-used order with a
+// running estimate of its heap footprint. Only the writer thread touches the map; the
+// size and byte counts are volatile so metrics can read them from any thread.
+//
+// The estimate counts a LinkedHashMap entry, its key string and a boxed id. Keys are
+// mostly ASCII, which compact strings store one byte per character.
+class IdCache {
+    // Entry (40) + String (24) + byte[] header (16) + Integer (16), rounded up for the table slot
+    static final int ENTRY_OVERHEAD_BYTES = 104;
+
+    private final LinkedHashMap<String, Integer> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private volatile int size;
+    private volatile long estimatedBytes;
+    private long evictions;
+
+    static long estimateBytes(String key) {
+        return ENTRY_OVERHEAD_BYTES + key.length();
+    }
+
+    Integer get(String key) {
+        return entries.get(key);
+    }
+
+    void put(String key, int id) {
+        if (entries.put(key, id) == null) {
+            size = entries.size();
+            estimatedBytes += estimateBytes(key);
+        }
+    }
+
+    // Drops the least recently used entries until the estimate fits; every dropped id
+    // is handed to onEvict. Returns how many entries were dropped.
+    int trimTo(long maxBytes, IntConsumer onEvict) {
+        int dropped = 0;
+        long bytes = estimatedBytes;
+        Iterator<Map.Entry<String, Integer>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Integer> entry = eldest.next();
+            eldest.remove();
+            bytes -= estimateBytes(entry.getKey());
+            onEvict.accept(entry.getValue());
+            dropped++;
+        }
+        estimatedBytes = bytes;
+        size = entries.size();
+        evictions += dropped;
+        return dropped;
+    }
+
+    // Forgets the keys of rows that no longer exist; a scan, so only for the rare batch
+    // that deleted rows
+    void removeIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<Integer> removed = new HashSet<>(ids);
+        long bytes = estimatedBytes;
+        Iterator<Map.Entry<String, Integer>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            if (removed.contains(entry.getValue())) {
+                it.remove();
+                bytes -= estimateBytes(entry.getKey());
+            }
+        }
+        estimatedBytes = bytes;
+        size = entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+        size = 0;
+        estimatedBytes = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,365 @@
+package com.jps.analysis.parser;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.DatabaseManager.IndexRun;
+import com.jps.analysis.db.DatabaseManager.RowRef;
+import com.jps.analysis.db.IndexBatch;
+import com.jps.analysis.library.LibraryCatalog;
+import com.jps.analysis.metrics.IndexingMetrics;
+import com.jps.analysis.metrics.IndexingMetrics.Counter;
+import com.jps.analysis.parser.FileExtraction.CallRecord;
+import com.jps.analysis.parser.FileExtraction.ClassRecord;
+import com.jps.analysis.parser.FileExtraction.MethodRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+// Persists extracted rows. Only one thread may use a writer: it owns the key -> id
+// caches, so whole files can be queued and flushed in a single transaction. Rows new
+// to the writer get provisional ids from the batch; SQLite assigns the real ones when
+// the batch is flushed, and the caches are updated from the batch afterwards. Other
+// writers on the same database (a second parser, the bytecode indexer, a watcher) can
+// therefore run alongside: ids never collide, and a key one of them stored first is
+// reused by the flush instead of failing it.
+//
+// The caches share a heap budget (-Dindex.cache.budget.mb, default a quarter of the
+// maximum heap). It is enforced right after each flush, when every cached id is in the
+// database: the least recently used keys are dropped and looked up again with
+// findClass/findMethod if they come back, so an evicted key never gets a second row.
+// Between flushes the caches can overshoot the budget by at most one batch.
+//
+// During an indexing run every flush also checkpoints the run: the files whose rows
+// the batch completes are recorded in the same transaction, and a batch only ever
+// holds whole files.
+public class IndexWriter {
+    private static final Logger logger = LoggerFactory.getLogger(IndexWriter.class);
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+
+    private final DatabaseManager dbManager;
+    private final IndexingMetrics metrics;
+    private final int batchSize;
+    private final long cacheBudgetBytes;
+    private final IdCache classCache = new IdCache();
+    private final IdCache methodCache = new IdCache();
+    // Rows first stored as call targets, still waiting for their declaration
+    private final Set<Integer> stubClassIds = new HashSet<>();
+    private final Set<Integer> stubMethodIds = new HashSet<>();
+    // Stub classes already looked up in the current library catalog
+    private final Set<Integer> checkedStubIds = new HashSet<>();
+    // Keys of the rows inserted by the pending batch, in provisional id order
+    private final List<String> pendingClassKeys = new ArrayList<>();
+    private final List<String> pendingMethodKeys = new ArrayList<>();
+    private final IndexBatch batch = new IndexBatch();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private LibraryCatalog libraries;
+    private IndexRun run;
+
+    private boolean initialized;
+    private boolean emptyDatabase;
+
+    private long filesWritten;
+    private long rowsWritten;
+    private long batchesFlushed;
+    private long flushNanos;
+
+    public IndexWriter(DatabaseManager dbManager) {
+        this(dbManager, DEFAULT_BATCH_SIZE);
+    }
+
+    public IndexWriter(DatabaseManager dbManager, int batchSize) {
+        this(dbManager, batchSize, configuredCacheBudget());
+    }
+
+    public IndexWriter(DatabaseManager dbManager, int batchSize, long cacheBudgetBytes) {
+        this.dbManager = dbManager;
+        this.metrics = dbManager.getMetrics();
+        this.batchSize = batchSize;
+        this.cacheBudgetBytes = cacheBudgetBytes;
+        gauges.put("class_cache_entries", classCache::size);
+        gauges.put("class_cache_bytes", classCache::getEstimatedBytes);
+        gauges.put("method_cache_entries", methodCache::size);
+        gauges.put("method_cache_bytes", methodCache::getEstimatedBytes);
+        gauges.put("cache_budget_bytes", () -> cacheBudgetBytes);
+    }
+
+    // The metrics are shared by every writer in the process, and library indexes,
+    // watchers and the bytecode indexer all create short-lived ones, so only the writer
+    // of an indexing run reports its caches, and only while the run lasts
+    public void registerGauges() {
+        gauges.forEach(metrics::registerGauge);
+    }
+
+    public void unregisterGauges() {
+        gauges.forEach(metrics::unregisterGauge);
+    }
+
+    private static long configuredCacheBudget() {
+        long defaultBudget = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+        return Long.getLong("index.cache.budget.mb", defaultBudget) * 1024 * 1024;
+    }
+
+    // Classes that are only referenced here but declared in an attached library get linked to it.
+    // The writer owns the catalog from then on and closes the one it replaces.
+    public void setLibraryCatalog(LibraryCatalog libraries) {
+        if (this.libraries != null && this.libraries != libraries) {
+            this.libraries.close();
+        }
+        this.libraries = libraries;
+        checkedStubIds.clear();
+    }
+
+    public void setRun(IndexRun run) {
+        this.run = run;
+    }
+
+    public void write(FileExtraction extraction) throws SQLException {
+        write(extraction, false);
+    }
+
+    // In refresh mode the file was indexed before: its old calls are dropped and the
+    // locations of classes and methods it still declares are rewritten
+    public void write(FileExtraction extraction, boolean refresh) throws SQLException {
+        initialize();
+        if (refresh) {
+            batch.removeFile(extraction.getFilePath());
+        }
+
+        // Declarations first so a declared class or method wins over a call-target stub
+        for (ClassRecord record : extraction.getClasses()) {
+            if (!record.isStub()) {
+                resolveClass(record, refresh);
+            }
+        }
+        for (ClassRecord record : extraction.getClasses()) {
+            if (record.isStub()) {
+                resolveClass(record, false);
+            }
+        }
+        for (MethodRecord record : extraction.getMethods()) {
+            if (!record.isStub()) {
+                resolveMethod(record, refresh);
+            }
+        }
+        for (MethodRecord record : extraction.getMethods()) {
+            if (record.isStub()) {
+                resolveMethod(record, false);
+            }
+        }
+
+        for (CallRecord call : extraction.getCalls()) {
+            Integer callerMethodId = methodCache.get(call.getCallerMethodKey());
+            if (callerMethodId == null) {
+                logger.warn("Caller method not found in cache: " + call.getCallerMethodKey());
+                continue;
+            }
+            Integer calledMethodId = methodCache.get(call.getCalledMethodKey());
+            if (calledMethodId == null) {
+                logger.warn("Failed to store called method: " + call.getCalledMethodKey());
+                continue;
+            }
+            batch.addMethodCall(callerMethodId, calledMethodId, call.getLineNumber(), call.getScope(),
+                    call.getCallContext(), call.isInTryBlock(), call.isInCatchBlock(), call.isInFinallyBlock(),
+                    call.isInLoop(), call.getLoopType(), call.isInConditional(), call.getConditionalType());
+        }
+
+        if (run != null && extraction.getRelativePath() != null) {
+            batch.completeFile(extraction.getRelativePath(), run.getId(), extraction.getFileBytes(),
+                    extraction.getLastModified());
+        }
+        filesWritten++;
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    public void remove(String filePath) throws SQLException {
+        initialize();
+        batch.removeFile(filePath);
+    }
+
+    // Locations an earlier writer already stored, so writing them again can refresh them
+    public Set<String> getStoredPaths(String prefix) throws SQLException {
+        return new HashSet<>(dbManager.getFilePathsStartingWith(prefix));
+    }
+
+    public void flush() throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int rows = batch.size();
+        if (run != null) {
+            batch.checkpoint(run.getId());
+        }
+        dbManager.flush(batch);
+        resolvePendingIds();
+        batch.clear();
+        flushNanos += System.nanoTime() - start;
+        rowsWritten += rows;
+        batchesFlushed++;
+        logger.debug("Flushed batch of " + rows + " rows");
+        trimCaches();
+    }
+
+    // After a failed run: rows that were never committed must not be referenced by ids
+    // in the caches, so everything is dropped
+    public void discardPending() {
+        batch.clear();
+        pendingClassKeys.clear();
+        pendingMethodKeys.clear();
+        classCache.clear();
+        methodCache.clear();
+        stubClassIds.clear();
+        stubMethodIds.clear();
+        checkedStubIds.clear();
+        initialized = false;
+    }
+
+    // Swaps the provisional ids of the flushed batch for the stored ones. Nothing is
+    // trimmed between flushes, so every pending key is still cached.
+    private void resolvePendingIds() {
+        for (int i = 0; i < pendingClassKeys.size(); i++) {
+            int provisional = -(i + 1);
+            int id = batch.getClassId(provisional);
+            classCache.put(pendingClassKeys.get(i), id);
+            if (stubClassIds.remove(provisional)) {
+                stubClassIds.add(id);
+            }
+            if (checkedStubIds.remove(provisional)) {
+                checkedStubIds.add(id);
+            }
+        }
+        for (int i = 0; i < pendingMethodKeys.size(); i++) {
+            int provisional = -(i + 1);
+            int id = batch.getMethodId(provisional);
+            methodCache.put(pendingMethodKeys.get(i), id);
+            if (stubMethodIds.remove(provisional)) {
+                stubMethodIds.add(id);
+            }
+        }
+        pendingClassKeys.clear();
+        pendingMethodKeys.clear();
+
+        // Declarations a refreshed file dropped are gone from the database
+        classCache.removeIds(batch.getPrunedClassIds());
+        methodCache.removeIds(batch.getPrunedMethodIds());
+        stubClassIds.removeAll(batch.getPrunedClassIds());
+        checkedStubIds.removeAll(batch.getPrunedClassIds());
+        stubMethodIds.removeAll(batch.getPrunedMethodIds());
+    }
+
+    // Classes may use up to half of the budget, methods get the rest
+    private void trimCaches() {
+        if (classCache.getEstimatedBytes() + methodCache.getEstimatedBytes() <= cacheBudgetBytes) {
+            return;
+        }
+        // An evicted stub is found again as a row without source, which marks it once more
+        int classes = classCache.trimTo(cacheBudgetBytes / 2, id -> {
+            stubClassIds.remove(id);
+            checkedStubIds.remove(id);
+        });
+        int methods = methodCache.trimTo(cacheBudgetBytes - classCache.getEstimatedBytes(),
+                id -> stubMethodIds.remove(id));
+        metrics.add(Counter.CLASS_CACHE_EVICTIONS, classes);
+        metrics.add(Counter.METHOD_CACHE_EVICTIONS, methods);
+        // Misses may now be rows that exist, so they have to be looked up
+        emptyDatabase = false;
+        logger.debug("Evicted " + classes + " classes and " + methods + " methods from the id caches");
+    }
+
+    private void initialize() throws SQLException {
+        if (initialized) {
+            return;
+        }
+        // Nothing to look up in a new database; every cache miss is a new row. Should
+        // another writer add the same key meanwhile, the flush picks up its row.
+        emptyDatabase = dbManager.getMaxId("classes") == 0 && dbManager.getMaxId("methods") == 0;
+        initialized = true;
+    }
+
+    private void resolveClass(ClassRecord record, boolean refresh) throws SQLException {
+        String key = record.getKey();
+        Integer classId = classCache.get(key);
+        metrics.increment(classId != null ? Counter.CLASS_CACHE_HITS : Counter.CLASS_CACHE_MISSES);
+        if (classId == null && !emptyDatabase) {
+            RowRef existing = dbManager.findClass(record.getPackageName(), record.getClassName());
+            if (existing != null) {
+                classId = existing.getId();
+                if (!existing.hasSource()) {
+                    stubClassIds.add(classId);
+                }
+            }
+        }
+
+        if (classId == null) {
+            classId = batch.addClass(record.getPackageName(), record.getClassName(), record.getFilePath(),
+                    record.getSpan());
+            pendingClassKeys.add(key);
+            if (record.isStub()) {
+                stubClassIds.add(classId);
+            }
+        } else if (!record.isStub() && (stubClassIds.remove(classId) || refresh)) {
+            batch.updateClassSource(classId, record.getFilePath(), record.getSpan());
+        }
+        // Any stub gets linked, including stubs stored by earlier runs or before the
+        // library was attached; each one is looked up once per catalog
+        if (record.isStub() && libraries != null && stubClassIds.contains(classId) && checkedStubIds.add(classId)) {
+            Integer libraryId = libraries.findLibrary(key);
+            if (libraryId != null) {
+                batch.setClassLibrary(classId, libraryId);
+            }
+        }
+        classCache.put(key, classId);
+    }
+
+    private void resolveMethod(MethodRecord record, boolean refresh) throws SQLException {
+        Integer classId = classCache.get(record.getClassKey());
+        if (classId == null) {
+            logger.warn("Class not found in cache: " + record.getClassKey());
+            return;
+        }
+
+        String key = record.getKey();
+        Integer methodId = methodCache.get(key);
+        metrics.increment(methodId != null ? Counter.METHOD_CACHE_HITS : Counter.METHOD_CACHE_MISSES);
+        if (methodId == null && !emptyDatabase) {
+            RowRef existing = dbManager.findMethod(classId, record.getMethodName(), record.getParameters());
+            if (existing != null) {
+                methodId = existing.getId();
+                if (!existing.hasSource()) {
+                    stubMethodIds.add(methodId);
+                }
+            }
+        }
+
+        if (methodId == null) {
+            methodId = batch.addMethod(classId, record.getMethodName(), record.getReturnType(),
+                    record.getParameters(), record.isStatic(), record.isPublic(), record.getSpan());
+            pendingMethodKeys.add(key);
+            if (record.isStub()) {
+                stubMethodIds.add(methodId);
+            }
+        } else if (!record.isStub() && (stubMethodIds.remove(methodId) || refresh)) {
+            batch.updateMethod(methodId, record.getReturnType(), record.isStatic(), record.isPublic(),
+                    record.getSpan());
+        }
+        methodCache.put(key, methodId);
+    }
+
+    public long getFilesWritten() { return filesWritten; }
+    public long getRowsWritten() { return rowsWritten; }
+    public long getBatchesFlushed() { return batchesFlushed; }
+    public long getFlushNanos() { return flushNanos; }
+    public int getPendingRows() { return batch.size(); }
+    public int getClassCacheSize() { return classCache.size(); }
+    public int getMethodCacheSize() { return methodCache.size(); }
+    public long getCacheBytes() { return classCache.getEstimatedBytes() + methodCache.getEstimatedBytes(); }
+}
@@ -0,0 +1,670 @@
+package com.jps.analysis.parser;
+
+import com.github.javaparser.JavaParser;
+import com.jps.analysis.db.DatabaseManager.FileStamp;
+import com.jps.analysis.metrics.IndexingMetrics.Counter;
+import com.jps.analysis.metrics.ProgressReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Indexes a project in four stages connected by bounded queues:
+// file discovery -> read -> parse/extract (one thread per core) -> persist.
+// A full queue blocks the stage feeding it, so memory stays bounded no matter how
+// large the project is, and a single writer thread batches rows into SQLite while
+// the parsing threads keep working.
+//
+// Discovery first counts the candidate files so that progress can be reported as a
+// fraction with an ETA; see ProgressReporter.
+//
+// When resuming an interrupted run, files it already committed are skipped if their
+// size and modification time are unchanged. Changed ones, and any file an earlier run
+// left rows for, are indexed again in refresh mode so their old rows are replaced
+// rather than duplicated.
+//
+// Every file is extracted within a FileBudget; files that exceed it keep only their
+// declarations. The budget is only checked between resolutions, so each parsing thread
+// hands the extraction to a worker thread and waits at most FileBudget.watchdogMillis().
+// A file still running by then keeps only its declarations too, parsed again without a
+// symbol solver. The worker is abandoned together with its parser, which may be left half
+// way through resolving, and the parsing thread goes on with a new worker and parser; at
+// most index.file.abandoned.max (default 4) abandoned workers may be running at once.
+// Past that limit the parsing thread keeps its stuck worker and indexes only the
+// declarations of its next files too, until the worker returns or a slot frees up.
+// A file that overflows the stack keeps only its declarations as well, or fails on its
+// own if even those overflow; other errors still fail the run.
+// The slowest files are reported at the end of the run (index.slow.files, default 10).
+public class IndexingPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+    private static final int PATH_QUEUE_CAPACITY = 1024;
+    private static final int EXTRACTIONS_PER_DRAIN = 64;
+    private static final long REPORT_INTERVAL_MILLIS = 10_000;
+    private static final int DEFAULT_FILES_PER_PARSER = 500;
+    private static final int DEFAULT_LARGEST_FIRST = 1024;
+    private static final int DEFAULT_SLOW_FILES = 10;
+    private static final int DEFAULT_MAX_ABANDONED = 4;
+
+    // End-of-stream markers, compared by identity
+    private static final Path END_OF_PATHS = Paths.get("");
+    private static final SourceFile END_OF_SOURCES = new SourceFile(null, null, 0, 0);
+    private static final FileExtraction END_OF_EXTRACTIONS = new FileExtraction("", 0);
+
+    private final JavaSourceParser sourceParser;
+    private final IndexWriter writer;
+    private final int parseThreads;
+    private final int filesPerParser;
+    private final int largestFirst;
+    private final int slowFilesReported;
+    private final int maxAbandoned;
+    // Threads of abandoned workers, possibly still extracting; guarded by itself
+    private final List<Thread> abandoned = new ArrayList<>();
+    // Slowest files so far, fastest first; guarded by itself. Files faster than the
+    // threshold cannot make the list and skip the lock.
+    private final PriorityQueue<FileTiming> slowest = new PriorityQueue<>();
+    private volatile long slowThresholdNanos;
+    private final BlockingQueue<Path> paths;
+    private final BlockingQueue<SourceFile> sources;
+    private final BlockingQueue<FileExtraction> extractions;
+    private final StageStats discoverStats;
+    private final StageStats readStats;
+    private final StageStats parseStats;
+    private final StageStats persistStats;
+    private final ProgressReporter progress;
+    private final Map<String, FileStamp> indexedFiles;
+    private final Set<String> refreshPaths = ConcurrentHashMap.newKeySet();
+    // Stored paths of every source file found, skipped ones included; written by the
+    // discovering thread and read once it has been joined
+    private final Set<String> discoveredPaths = new HashSet<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private Path projectRoot;
+    // Counted by the discovering thread, read by whoever reports on the run
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private volatile Throwable failure;
+    private long startNanos;
+
+    public IndexingPipeline(JavaSourceParser sourceParser, IndexWriter writer, int parseThreads) {
+        this(sourceParser, writer, parseThreads, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    // indexedFiles: files committed by the run being resumed, keyed by relative path
+    // storedFiles: stored paths of the files that already have rows in the database
+    public IndexingPipeline(JavaSourceParser sourceParser, IndexWriter writer, int parseThreads,
+                            Map<String, FileStamp> indexedFiles, Set<String> storedFiles) {
+        this.sourceParser = sourceParser;
+        this.refreshPaths.addAll(storedFiles);
+        this.indexedFiles = indexedFiles;
+        this.writer = writer;
+        this.parseThreads = Math.max(1, parseThreads);
+        this.filesPerParser = Math.max(1, Integer.getInteger("index.parser.recycle.files", DEFAULT_FILES_PER_PARSER));
+        this.largestFirst = Integer.getInteger("index.schedule.largest", DEFAULT_LARGEST_FIRST);
+        this.slowFilesReported = Math.max(1, Integer.getInteger("index.slow.files", DEFAULT_SLOW_FILES));
+        this.maxAbandoned = Math.max(0, Integer.getInteger("index.file.abandoned.max", DEFAULT_MAX_ABANDONED));
+        this.paths = new ArrayBlockingQueue<>(PATH_QUEUE_CAPACITY);
+        this.sources = new ArrayBlockingQueue<>(this.parseThreads * 2);
+        this.extractions = new ArrayBlockingQueue<>(this.parseThreads * 4);
+        this.discoverStats = new StageStats("discover", null);
+        this.readStats = new StageStats("read", paths);
+        this.parseStats = new StageStats("parse", sources);
+        this.persistStats = new StageStats("persist", extractions);
+        this.progress = new ProgressReporter(writer::getRowsWritten);
+    }
+
+    public void run(Path projectRoot) throws IOException {
+        this.projectRoot = projectRoot;
+        startNanos = System.nanoTime();
+        progress.start();
+        startThread("index-discover", () -> discover(projectRoot));
+        startThread("index-read", this::read);
+        for (int i = 0; i < parseThreads; i++) {
+            startThread("index-parse-" + i, this::parse);
+        }
+        startThread("index-writer", this::persist);
+
+        try {
+            long lastReport = System.currentTimeMillis();
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    thread.join(500);
+                    if (failure != null) {
+                        threads.forEach(Thread::interrupt);
+                    }
+                    if (logger.isDebugEnabled() && System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MILLIS) {
+                        logger.debug("Indexing: " + getStats());
+                        lastReport = System.currentTimeMillis();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing interrupted", e);
+        } finally {
+            progress.close();
+        }
+
+        if (failure != null) {
+            throw new IOException("Indexing failed", failure);
+        }
+        logger.info("Indexing finished: " + progress.getLatest());
+        logger.info("Indexing stages: " + getStats());
+        List<FileTiming> slowFiles = getStats().getSlowestFiles();
+        if (!slowFiles.isEmpty()) {
+            logger.info("Slowest files: " + slowFiles);
+        }
+    }
+
+    private void startThread(String name, StageTask task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                // Another stage failed and the pipeline is shutting down
+            } catch (Throwable t) {
+                logger.error("Indexing stage " + Thread.currentThread().getName() + " failed", t);
+                if (failure == null) {
+                    failure = t;
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    // The largest files go first: started last, a huge generated file would be parsed
+    // alone while every other thread sits idle. Only the top index.schedule.largest
+    // files are ordered; the rest follow in directory order, so memory stays bounded.
+    private void discover(Path projectRoot) throws IOException, InterruptedException {
+        try {
+            // Walking the tree only lists directories, which is cheap next to reading and
+            // parsing the files, so it is done twice rather than holding every path in memory
+            PriorityQueue<SizedPath> largest = new PriorityQueue<>();
+            long candidates = 0;
+            try (Stream<Path> walk = Files.walk(projectRoot)) {
+                for (Path path : (Iterable<Path>) walk.filter(IndexingPipeline::isSourceFile)::iterator) {
+                    discoveredPaths.add(JavaSourceParser.storedPath(path));
+                    if (isIndexed(path)) {
+                        skippedFiles.incrementAndGet();
+                        continue;
+                    }
+                    candidates++;
+                    if (largestFirst > 0) {
+                        largest.add(new SizedPath(path, sizeOf(path)));
+                        if (largest.size() > largestFirst) {
+                            largest.poll();
+                        }
+                    }
+                }
+            }
+            progress.setFilesTotal(candidates);
+
+            List<SizedPath> first = new ArrayList<>(largest);
+            first.sort(Collections.reverseOrder());
+            Set<Path> scheduled = new HashSet<>();
+            for (SizedPath file : first) {
+                paths.put(file.path);
+                scheduled.add(file.path);
+                discoverStats.record(0, 0);
+            }
+            try (Stream<Path> walk = Files.walk(projectRoot)) {
+                for (Path path : (Iterable<Path>) walk.filter(IndexingPipeline::isSourceFile)::iterator) {
+                    if (scheduled.contains(path) || isIndexed(path)) {
+                        continue;
+                    }
+                    paths.put(path);
+                    discoverStats.record(0, 0);
+                }
+            }
+        } finally {
+            paths.put(END_OF_PATHS);
+        }
+        if (skippedFiles.get() > 0) {
+            logger.info("Skipped " + skippedFiles.get() + " files committed before the run was interrupted");
+        }
+    }
+
+    // Whether the run being resumed already committed this file as it is now
+    private boolean isIndexed(Path path) {
+        FileStamp stamp = indexedFiles.get(relativePath(path));
+        if (stamp == null) {
+            return false;
+        }
+        try {
+            if (stamp.matches(Files.size(path), Files.getLastModifiedTime(path).toMillis())) {
+                return true;
+            }
+        } catch (IOException e) {
+            // Left to the read stage, which reports it
+        }
+        refreshPaths.add(JavaSourceParser.storedPath(path));
+        return false;
+    }
+
+    private String relativePath(Path path) {
+        return projectRoot.relativize(path).toString();
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            // Reported by the read stage
+            return 0;
+        }
+    }
+
+    private static boolean isSourceFile(Path path) {
+        return path.toString().endsWith(".java");
+    }
+
+    private void read() throws InterruptedException {
+        while (true) {
+            Path path = paths.take();
+            if (path == END_OF_PATHS) {
+                for (int i = 0; i < parseThreads; i++) {
+                    sources.put(END_OF_SOURCES);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                // Taken before reading, so an edit made meanwhile shows up as a changed file on resume
+                long lastModified = Files.getLastModifiedTime(path).toMillis();
+                byte[] bytes = Files.readAllBytes(path);
+                long nanos = System.nanoTime() - start;
+                readStats.record(bytes.length, nanos);
+                sourceParser.recordRead(bytes.length, nanos);
+                sources.put(new SourceFile(path, new String(bytes, StandardCharsets.UTF_8), bytes.length,
+                        lastModified));
+            } catch (IOException e) {
+                logger.error("Failed to read file: " + path, e);
+                progress.fileFailed();
+            }
+        }
+    }
+
+    // The symbol solver caches what it resolved for every node it has seen, for as long
+    // as its parser lives, so each thread starts over with a new parser every so often
+    private void parse() throws InterruptedException {
+        String name = Thread.currentThread().getName();
+        long watchdogMillis = FileBudget.watchdogMillis();
+        ExtractionWorker worker = new ExtractionWorker(name);
+        JavaParser parser = sourceParser.createParser();
+        int parsedWithParser = 0;
+        // The extraction the worker is still stuck in when it could not be abandoned
+        Future<FileExtraction> stuck = null;
+        try {
+            while (true) {
+                SourceFile source = sources.take();
+                if (source == END_OF_SOURCES) {
+                    extractions.put(END_OF_EXTRACTIONS);
+                    return;
+                }
+                if (stuck != null) {
+                    if (stuck.isDone()) {
+                        stuck = null;
+                    } else if (abandon(worker)) {
+                        worker = new ExtractionWorker(name);
+                        stuck = null;
+                    }
+                }
+                if (parsedWithParser++ >= filesPerParser) {
+                    parser = sourceParser.createParser();
+                    parsedWithParser = 1;
+                    sourceParser.getMetrics().increment(Counter.PARSER_RECYCLES);
+                }
+                long start = System.nanoTime();
+                try {
+                    FileExtraction extraction;
+                    try {
+                        if (stuck != null) {
+                            // No worker to hand it to, and none may be abandoned yet
+                            extraction = sourceParser.extractDeclarations(source.path, source.content, "timeout");
+                        } else {
+                            JavaParser current = parser;
+                            Future<FileExtraction> future = worker.submit(() ->
+                                    sourceParser.extract(source.path, source.content, current, FileBudget.configured()));
+                            extraction = await(future, watchdogMillis);
+                            if (extraction == null) {
+                                sourceParser.getMetrics().increment(Counter.FILE_TIMEOUTS);
+                                if (abandon(worker)) {
+                                    logger.error("Abandoned the extraction of " + source.path + " after "
+                                            + watchdogMillis + " ms; indexing its declarations only");
+                                    worker = new ExtractionWorker(name);
+                                } else {
+                                    logger.error("Gave up on the extraction of " + source.path + " after "
+                                            + watchdogMillis + " ms; the limit of " + maxAbandoned + " abandoned "
+                                            + "extractions is reached, so files are indexed as declarations only "
+                                            + "until it returns");
+                                    stuck = future;
+                                }
+                                // The extraction still running keeps the old parser
+                                parser = sourceParser.createParser();
+                                parsedWithParser = 0;
+                                sourceParser.getMetrics().increment(Counter.PARSER_RECYCLES);
+                                extraction = sourceParser.extractDeclarations(source.path, source.content, "timeout");
+                            }
+                        }
+                    } catch (StackOverflowError e) {
+                        // Deeply nested, usually generated, code. The solver may have overflowed half
+                        // way through resolving, so its parser is replaced; if the file overflows the
+                        // parser itself, the declarations overflow it too and the file fails below.
+                        logger.error("Extracting " + source.path + " overflowed the stack; indexing its "
+                                + "declarations only");
+                        parser = sourceParser.createParser();
+                        parsedWithParser = 0;
+                        sourceParser.getMetrics().increment(Counter.PARSER_RECYCLES);
+                        extraction = sourceParser.extractDeclarations(source.path, source.content, "stack");
+                    }
+                    extraction.setFileStamp(relativePath(source.path), source.sizeBytes, source.lastModified);
+                    long nanos = System.nanoTime() - start;
+                    parseStats.record(source.sizeBytes, nanos);
+                    if (extraction.isDeclarationsOnly()) {
+                        logger.warn("Indexed only the declarations of " + source.path + ": it exceeded its "
+                                + extraction.getDeclarationsOnlyReason() + " budget after " + nanos / 1_000_000 + " ms");
+                    }
+                    recordTiming(new FileTiming(source.path.toString(), source.sizeBytes, nanos,
+                            extraction.isDeclarationsOnly()));
+                    extractions.put(extraction);
+                } catch (RuntimeException | StackOverflowError e) {
+                    logger.error("Failed to parse file: " + source.path, e);
+                    progress.fileFailed();
+                }
+            }
+        } finally {
+            worker.shutdown();
+        }
+    }
+
+    // The extraction's result, or null if it is still running after watchdogMillis (0 waits forever)
+    private static FileExtraction await(Future<FileExtraction> future, long watchdogMillis)
+            throws InterruptedException {
+        try {
+            return watchdogMillis > 0 ? future.get(watchdogMillis, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    // Parsing and resolution ignore interrupts, so an abandoned worker keeps its CPU and
+    // its parser until the extraction returns on its own. At most maxAbandoned of them may
+    // be running at once; beyond that the parsing thread keeps its worker until it returns.
+    private boolean abandon(ExtractionWorker worker) {
+        synchronized (abandoned) {
+            abandoned.removeIf(thread -> !thread.isAlive());
+            if (abandoned.size() >= maxAbandoned) {
+                return false;
+            }
+            worker.shutdown();
+            abandoned.add(worker.thread);
+            return true;
+        }
+    }
+
+    // The daemon thread a parsing thread hands its extractions to, so it can stop waiting
+    // for one; daemon, so an extraction that never returns does not keep the process alive
+    private static final class ExtractionWorker {
+        private final ExecutorService executor;
+        private volatile Thread thread;
+
+        ExtractionWorker(String parseThreadName) {
+            executor = Executors.newSingleThreadExecutor(task -> {
+                Thread created = new Thread(task, parseThreadName + "-extract");
+                created.setDaemon(true);
+                thread = created;
+                return created;
+            });
+        }
+
+        Future<FileExtraction> submit(Callable<FileExtraction> extraction) {
+            return executor.submit(extraction);
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+
+    private void recordTiming(FileTiming timing) {
+        if (timing.nanos <= slowThresholdNanos) {
+            return;
+        }
+        synchronized (slowest) {
+            slowest.add(timing);
+            if (slowest.size() > slowFilesReported) {
+                slowest.poll();
+                slowThresholdNanos = slowest.peek().nanos;
+            }
+        }
+    }
+
+    // Slowest first
+    public List<FileTiming> getSlowestFiles() {
+        List<FileTiming> files;
+        synchronized (slowest) {
+            files = new ArrayList<>(slowest);
+        }
+        files.sort(Collections.reverseOrder());
+        return files;
+    }
+
+    private void persist() throws InterruptedException, SQLException {
+        List<FileExtraction> drained = new ArrayList<>(EXTRACTIONS_PER_DRAIN);
+        int finishedParsers = 0;
+        while (finishedParsers < parseThreads) {
+            drained.add(extractions.take());
+            extractions.drainTo(drained, EXTRACTIONS_PER_DRAIN - 1);
+
+            long start = System.nanoTime();
+            long bytes = 0;
+            int files = 0;
+            for (FileExtraction extraction : drained) {
+                if (extraction == END_OF_EXTRACTIONS) {
+                    finishedParsers++;
+                    continue;
+                }
+                writer.write(extraction, refreshPaths.contains(extraction.getFilePath()));
+                progress.fileDone();
+                bytes += extraction.getSizeBytes();
+                files++;
+            }
+            if (files > 0) {
+                persistStats.record(files, bytes, System.nanoTime() - start);
+            }
+            drained.clear();
+        }
+        writer.flush();
+    }
+
+    public Stats getStats() {
+        long elapsed = startNanos == 0 ? 0 : System.nanoTime() - startNanos;
+        return new Stats(Arrays.asList(discoverStats, readStats, parseStats, persistStats), elapsed,
+                writer.getRowsWritten(), writer.getBatchesFlushed(), getSlowestFiles());
+    }
+
+    // Only complete after run() has returned
+    public Set<String> getDiscoveredPaths() {
+        return Collections.unmodifiableSet(discoveredPaths);
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public ProgressReporter getProgress() {
+        return progress;
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    private static class SourceFile {
+        private final Path path;
+        private final String content;
+        private final long sizeBytes;
+        private final long lastModified;
+
+        SourceFile(Path path, String content, long sizeBytes, long lastModified) {
+            this.path = path;
+            this.content = content;
+            this.sizeBytes = sizeBytes;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class SizedPath implements Comparable<SizedPath> {
+        private final Path path;
+        private final long size;
+
+        SizedPath(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        @Override
+        public int compareTo(SizedPath other) {
+            return Long.compare(size, other.size);
+        }
+    }
+
+    // Time spent extracting one file
+    public static class FileTiming implements Comparable<FileTiming> {
+        private final String path;
+        private final long sizeBytes;
+        private final long nanos;
+        private final boolean declarationsOnly;
+
+        FileTiming(String path, long sizeBytes, long nanos, boolean declarationsOnly) {
+            this.path = path;
+            this.sizeBytes = sizeBytes;
+            this.nanos = nanos;
+            this.declarationsOnly = declarationsOnly;
+        }
+
+        public String getPath() { return path; }
+        public long getSizeBytes() { return sizeBytes; }
+        public long getNanos() { return nanos; }
+        public boolean isDeclarationsOnly() { return declarationsOnly; }
+
+        @Override
+        public int compareTo(FileTiming other) {
+            return Long.compare(nanos, other.nanos);
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + nanos / 1_000_000 + " ms (" + sizeBytes / 1024 + " KB"
+                    + (declarationsOnly ? ", declarations only" : "") + ")";
+        }
+    }
+
+    // Items handled by one stage, time spent working and the depth of its input queue
+    public static class StageStats {
+        private final String name;
+        private final BlockingQueue<?> input;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        StageStats(String name, BlockingQueue<?> input) {
+            this.name = name;
+            this.input = input;
+        }
+
+        void record(long itemBytes, long nanos) {
+            record(1, itemBytes, nanos);
+        }
+
+        void record(long count, long itemBytes, long nanos) {
+            items.addAndGet(count);
+            bytes.addAndGet(itemBytes);
+            busyNanos.addAndGet(nanos);
+        }
+
+        public String getName() { return name; }
+        public long getItems() { return items.get(); }
+        public long getBytes() { return bytes.get(); }
+        public long getBusyNanos() { return busyNanos.get(); }
+        public int getQueueDepth() { return input == null ? 0 : input.size(); }
+        public int getQueueCapacity() { return input == null ? 0 : input.size() + input.remainingCapacity(); }
+    }
+
+    public static class Stats {
+        private final List<StageStats> stages;
+        private final long elapsedNanos;
+        private final long rowsWritten;
+        private final long batchesFlushed;
+        private final List<FileTiming> slowestFiles;
+
+        Stats(List<StageStats> stages, long elapsedNanos, long rowsWritten, long batchesFlushed,
+              List<FileTiming> slowestFiles) {
+            this.stages = Collections.unmodifiableList(stages);
+            this.elapsedNanos = elapsedNanos;
+            this.rowsWritten = rowsWritten;
+            this.batchesFlushed = batchesFlushed;
+            this.slowestFiles = Collections.unmodifiableList(slowestFiles);
+        }
+
+        public List<StageStats> getStages() { return stages; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public long getRowsWritten() { return rowsWritten; }
+        public long getBatchesFlushed() { return batchesFlushed; }
+        public List<FileTiming> getSlowestFiles() { return slowestFiles; }
+
+        public double getThroughput(StageStats stage) {
+            double seconds = elapsedNanos / 1e9;
+            return seconds > 0 ? stage.getItems() / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (StageStats stage : stages) {
+                sb.append(String.format("%s: %d files (%.1f/s, queue %d/%d); ", stage.getName(), stage.getItems(),
+                        getThroughput(stage), stage.getQueueDepth(), stage.getQueueCapacity()));
+            }
+            sb.append(String.format("%d rows in %d batches, %.1fs elapsed", rowsWritten, batchesFlushed,
+                    elapsedNanos / 1e9));
+            return sb.toString();
+        }
+    }
+}
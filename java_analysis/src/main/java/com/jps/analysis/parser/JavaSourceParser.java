@@ -2,17 +2,15 @@ package com.jps.analysis.parser;
 
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.ImportDeclaration;
-import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.InitializerDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.expr.LambdaExpr;
 import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.CatchClause;
@@ -27,81 +25,331 @@ import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.jfr.FileParsedEvent;
+import com.jps.analysis.jfr.SymbolResolutionEvent;
+import com.jps.analysis.library.LibraryIndex;
+import com.jps.analysis.metrics.IndexingMetrics;
+import com.jps.analysis.metrics.IndexingMetrics.Counter;
+import com.jps.analysis.metrics.IndexingMetrics.Phase;
+import com.jps.analysis.metrics.ProgressReporter;
+import com.jps.analysis.trace.TraceSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class JavaSourceParser {
     private static final Logger logger = LoggerFactory.getLogger(JavaSourceParser.class);
+    private static final long DEFAULT_SOLVER_CACHE_SIZE = 256;
     private final DatabaseManager dbManager;
-    private final Map<String, Integer> classCache;
-    private final Map<String, Integer> methodCache;
-    private final Stack<ClassOrInterfaceDeclaration> classStack;
-    private final Stack<MethodDeclaration> methodStack;
-    private final Stack<Node> statementStack;
-    private final Map<String, String> parameterTypes;
+    private final IndexWriter writer;
+    private final IndexingMetrics metrics;
+    private final TraceSink trace = TraceSink.getInstance();
     private Path projectRoot;
-    private String packageName;
-    private Map<String, String> importMap = new HashMap<>();
+    private IndexingPipeline.Stats lastRunStats;
+    private ProgressReporter.Snapshot lastRunProgress;
 
     public JavaSourceParser() {
-        this.dbManager = DatabaseManager.getInstance();
-        this.classCache = new HashMap<>();
-        this.methodCache = new HashMap<>();
-        this.classStack = new Stack<>();
-        this.methodStack = new Stack<>();
-        this.statementStack = new Stack<>();
-        this.parameterTypes = new HashMap<>();
+        this(DatabaseManager.getInstance());
     }
 
+    public JavaSourceParser(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.writer = new IndexWriter(dbManager);
+        this.metrics = dbManager.getMetrics();
+    }
+
+    // A parser for the same project that writes through another database manager, so
+    // its transactions never share a connection with queries on this one
+    public JavaSourceParser forDatabase(DatabaseManager other) throws IOException {
+        JavaSourceParser parser = new JavaSourceParser(other);
+        parser.projectRoot = projectRoot;
+        parser.writer.setLibraryCatalog(new LibraryIndex().attachConfigured(other));
+        return parser;
+    }
+
+    public DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+
+    // Resumes the project's last run if it was interrupted: files committed by it are
+    // skipped and the run carries on from its last checkpoint
     public void parseProject(Path projectRoot) throws IOException {
         this.projectRoot = projectRoot;
+        metrics.registerMBean();
+        writer.setLibraryCatalog(new LibraryIndex().attachConfigured(dbManager));
+        DatabaseManager.IndexRun run;
+        Map<String, DatabaseManager.FileStamp> indexedFiles = Collections.emptyMap();
+        Set<String> storedFiles;
+        try {
+            run = dbManager.startIndexRun(projectRoot.toAbsolutePath().normalize().toString());
+            if (run.isResumed()) {
+                indexedFiles = dbManager.getIndexedFiles(run.getId());
+                logger.info("Resuming interrupted index run " + run.getId() + " of " + projectRoot + ": "
+                        + indexedFiles.size() + " files already committed");
+            }
+            // Files indexed by earlier runs are refreshed, or a new run would add their calls again
+            storedFiles = new HashSet<>(dbManager.getFilePathsUnder(storedPath(projectRoot)));
+        } catch (SQLException e) {
+            throw new IOException("Failed to start index run", e);
+        }
+        writer.setRun(run);
+        writer.registerGauges();
+        IndexingPipeline pipeline = new IndexingPipeline(this, writer, getParserThreads(), indexedFiles, storedFiles);
+        boolean finished = false;
+        try {
+            pipeline.run(projectRoot);
+            removeDeletedFiles(storedFiles, pipeline.getDiscoveredPaths());
+            dbManager.finishIndexRun(run.getId());
+            finished = true;
+        } catch (SQLException e) {
+            throw new IOException("Failed to finish index run " + run.getId(), e);
+        } finally {
+            if (!finished) {
+                // Whatever was not committed is redone when the run is resumed
+                writer.discardPending();
+            }
+            writer.setRun(null);
+            lastRunStats = pipeline.getStats();
+            lastRunProgress = pipeline.getProgress().getLatest();
+            writeMetricsSummary();
+            writer.unregisterGauges();
+            trace.flush();
+        }
+    }
+
+    // Source files indexed by an earlier run that are gone now. Nothing else would drop
+    // their rows: the pipeline only sees the files that are still there.
+    private void removeDeletedFiles(Set<String> storedFiles, Set<String> discoveredPaths) throws SQLException {
+        int removed = 0;
+        for (String path : storedFiles) {
+            // Class locations of a jar under the project belong to the bytecode indexer
+            if (path.endsWith(".java") && !discoveredPaths.contains(path)) {
+                writer.remove(path);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            writer.flush();
+            logger.info("Removed " + removed + " files deleted since they were indexed");
+        }
+    }
+
+    // Logged at the end of every run, and also written to -Dindex.metrics.file when set
+    private void writeMetricsSummary() {
+        String summary = metrics.getSummaryJson();
+        logger.info("Indexing metrics: " + summary);
+        String file = System.getProperty("index.metrics.file");
+        if (file != null) {
+            try {
+                Files.writeString(Paths.get(file), summary + "\n");
+            } catch (IOException e) {
+                logger.warn("Could not write indexing metrics to " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Each parsing thread gets its own parser and type solver; neither is thread-safe.
+    // The source type solver keeps at most -Dindex.solver.cache.size parsed files and
+    // types; the facade that caches resolved nodes is dropped with the parser, see
+    // IndexingPipeline. JDK types are resolved once per process, see SharedJdkTypeSolver.
+    // Public so benchmarks measure the same configuration as indexing.
+    public JavaParser createParser() {
         CombinedTypeSolver typeSolver = new CombinedTypeSolver();
-        typeSolver.add(new ReflectionTypeSolver());
-        typeSolver.add(new JavaParserTypeSolver(projectRoot));
-        
+        typeSolver.add(new SharedJdkTypeSolver());
+        for (Path sourceRoot : sourceRoots(projectRoot)) {
+            typeSolver.add(new JavaParserTypeSolver(sourceRoot, new ParserConfiguration(),
+                    Long.getLong("index.solver.cache.size", DEFAULT_SOLVER_CACHE_SIZE)));
+        }
+
         JavaParser parser = new JavaParser();
         parser.getParserConfiguration().setSymbolResolver(new JavaSymbolSolver(typeSolver));
+        return parser;
+    }
 
-        Files.walk(projectRoot)
-                .filter(path -> path.toString().endsWith(".java"))
-                .forEach(path -> {
-                    try {
-                        parseJavaFile(path, parser);
-                    } catch (IOException e) {
-                        logger.error("Failed to parse file: " + path, e);
-                    }
-                });
+    // Types are looked up by package under a source root, so a Maven or Gradle layout
+    // needs its src/main/java and src/test/java as well as the project root itself
+    static List<Path> sourceRoots(Path projectRoot) {
+        List<Path> roots = new ArrayList<>();
+        for (String conventional : new String[] {"src/main/java", "src/test/java"}) {
+            Path root = projectRoot.resolve(conventional);
+            if (Files.isDirectory(root)) {
+                roots.add(root);
+            }
+        }
+        roots.add(projectRoot);
+        return roots;
+    }
+
+    private int getParserThreads() {
+        int defaultThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        return Integer.getInteger("parser.threads", defaultThreads);
+    }
+
+    public IndexingPipeline.Stats getLastRunStats() {
+        return lastRunStats;
+    }
+
+    public ProgressReporter.Snapshot getLastRunProgress() {
+        return lastRunProgress;
+    }
+
+    public IndexingMetrics getMetrics() {
+        return metrics;
+    }
+
+    String readSource(Path filePath) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = Files.readAllBytes(filePath);
+        recordRead(bytes.length, System.nanoTime() - start);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void recordRead(long bytes, long nanos) {
+        metrics.record(Phase.FILE_READ, nanos);
+        metrics.increment(Counter.FILES_READ);
+        metrics.add(Counter.BYTES_READ, bytes);
     }
 
     public void parseJavaFile(Path filePath, JavaParser parser) throws IOException {
         if (projectRoot == null) {
             projectRoot = filePath.getParent();
         }
-        
+
         // Read the file content
-        String content = Files.readString(filePath);
-        
+        String content = readSource(filePath);
+        FileExtraction extraction = extract(filePath, content, parser);
+
+        try {
+            writer.write(extraction);
+            writer.flush();
+        } catch (SQLException e) {
+            throw new IOException("Failed to store " + filePath, e);
+        }
+    }
+
+    // Indexed files below a directory that has been deleted or moved away
+    public List<Path> indexedFilesUnder(Path directory) throws IOException {
+        try {
+            List<Path> files = new ArrayList<>();
+            for (String path : dbManager.getFilePathsUnder(storedPath(directory))) {
+                files.add(Paths.get(path));
+            }
+            return files;
+        } catch (SQLException e) {
+            throw new IOException("Failed to list indexed files under " + directory, e);
+        }
+    }
+
+    // Brings the index up to date with edited and deleted files in one transaction.
+    // Declarations a file no longer has are deleted unless other files still call them.
+    // Files that no longer parse keep their previous rows until they are fixed.
+    public void reindexFiles(Collection<Path> changed, Collection<Path> deleted) throws IOException {
+        // A fresh parser per batch; the type solver caches declarations from the old file contents
+        JavaParser parser = createParser();
+        try {
+            for (Path filePath : deleted) {
+                writer.remove(storedPath(filePath));
+            }
+            for (Path filePath : changed) {
+                String content;
+                try {
+                    content = readSource(filePath);
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable file: " + filePath + " (" + e.getMessage() + ")");
+                    continue;
+                }
+                FileExtraction extraction = extract(filePath, content, parser);
+                if (extraction.isParseFailed()) {
+                    logger.warn("Skipping file with syntax errors: " + filePath);
+                    continue;
+                }
+                writer.write(extraction, true);
+            }
+            writer.flush();
+        } catch (SQLException e) {
+            // Nothing was committed; the caller may retry the batch on a clean writer
+            writer.discardPending();
+            throw new IOException("Failed to update index", e);
+        }
+    }
+
+    // Symbol solver calls, timed for IndexingMetrics and the SymbolResolution JFR event
+    private com.github.javaparser.resolution.types.ResolvedType resolveScopeType(NameExpr scope) {
+        long start = System.nanoTime();
+        SymbolResolutionEvent event = new SymbolResolutionEvent();
+        event.begin();
+        try {
+            com.github.javaparser.resolution.types.ResolvedType resolved = scope.calculateResolvedType();
+            metrics.record(Phase.SYMBOL_RESOLVED, System.nanoTime() - start);
+            event.finish(SymbolResolutionEvent.KIND_SCOPE_TYPE, scope.getNameAsString(), true);
+            return resolved;
+        } catch (RuntimeException e) {
+            metrics.record(Phase.SYMBOL_UNRESOLVED, System.nanoTime() - start);
+            event.finish(SymbolResolutionEvent.KIND_SCOPE_TYPE, scope.getNameAsString(), false);
+            throw e;
+        }
+    }
+
+    private ResolvedMethodDeclaration resolveMethod(MethodCallExpr call) {
+        long start = System.nanoTime();
+        SymbolResolutionEvent event = new SymbolResolutionEvent();
+        event.begin();
+        try {
+            ResolvedMethodDeclaration resolved = call.resolve();
+            metrics.record(Phase.SYMBOL_RESOLVED, System.nanoTime() - start);
+            event.finish(SymbolResolutionEvent.KIND_METHOD, call.getNameAsString(), true);
+            return resolved;
+        } catch (RuntimeException e) {
+            metrics.record(Phase.SYMBOL_UNRESOLVED, System.nanoTime() - start);
+            event.finish(SymbolResolutionEvent.KIND_METHOD, call.getNameAsString(), false);
+            throw e;
+        }
+    }
+
+    // file_path as stored: absolute and normalized, so sources can be read back whatever
+    // the working directory of the process serving queries
+    static String storedPath(Path filePath) {
+        return filePath.toAbsolutePath().normalize().toString();
+    }
+
+    // Extracts classes, methods and calls from one file without touching the database.
+    // Safe to call from several threads as long as each uses its own JavaParser.
+    public FileExtraction extract(Path filePath, String content, JavaParser parser) {
+        return extract(filePath, content, parser, FileBudget.unlimited());
+    }
+
+    // Declarations only, parsed without a symbol solver so nothing gets resolved; for files
+    // whose full extraction the pipeline had to abandon
+    FileExtraction extractDeclarations(Path filePath, String content, String reason) {
+        return extract(filePath, content, new JavaParser(), FileBudget.exhausted(reason));
+    }
+
+    // Stops resolving calls once the budget is used up and keeps only the declarations
+    FileExtraction extract(Path filePath, String content, JavaParser parser, FileBudget budget) {
+        FileParsedEvent event = new FileParsedEvent();
+        event.begin();
+        SourcePositions positions = new SourcePositions(content);
+        FileExtraction extraction = new FileExtraction(storedPath(filePath), positions.byteLength());
+
         // Parse the file
+        long parseStart = System.nanoTime();
         ParseResult<CompilationUnit> result = parser.parse(content);
+        metrics.record(Phase.PARSE, System.nanoTime() - parseStart);
         
         if (result.isSuccessful()) {
             CompilationUnit cu = result.getResult().get();
             
             // Get package name
-            packageName = cu.getPackageDeclaration()
+            String packageName = cu.getPackageDeclaration()
                     .map(pd -> pd.getNameAsString())
                     .orElseGet(() -> {
                         Path relativePath = projectRoot.relativize(filePath.getParent());
@@ -110,7 +358,7 @@ public class JavaSourceParser {
                     });
             
             // Build import map
-            importMap.clear();
+            Map<String, String> importMap = new HashMap<>();
             cu.getImports().forEach(imp -> {
                 String name = imp.getNameAsString();
                 if (imp.isStatic()) {
@@ -123,6 +371,7 @@ public class JavaSourceParser {
                     importMap.put(parts[parts.length - 1], name);
                 }
             });
+            Stack<MethodDeclaration> methodStack = new Stack<>();
             
             // Visit the compilation unit
             cu.accept(new VoidVisitorAdapter<Void>() {
@@ -135,41 +384,26 @@ public class JavaSourceParser {
                     classStack.pop();
 
                     String className = n.getNameAsString();
-                    System.out.println("Found class: " + className);
-                    boolean isAnonymous = n.getParentNode()
-                            .map(p -> p instanceof ObjectCreationExpr)
-                            .orElse(false);
-                    boolean isNested = !classStack.isEmpty();
-                    Integer parentClassId = null;
-                    if (isNested) {
-                        parentClassId = classCache.get(packageName + "." + 
-                            classStack.peek().getNameAsString());
+                    if (trace.shouldTrace(TraceSink.Level.CLASSES)) {
+                        trace.emit(trace.record("class").field("file", extraction.getFilePath())
+                                .field("class", packageName + "." + className));
                     }
-
-                    storeClass(packageName, className, n.toString(), filePath.toString(), 
-                            isAnonymous, isNested, parentClassId);
+                    extraction.addClass(packageName, className, positions.spanOf(n));
                 }
 
                 @Override
                 public void visit(MethodDeclaration n, Void arg) {
                     String className = classStack.peek().getNameAsString();
                     String classKey = packageName + "." + className;
-                    System.out.println("Found method in class " + classKey + ": " + n.getNameAsString());
+                    if (trace.shouldTrace(TraceSink.Level.METHODS)) {
+                        trace.emit(trace.record("method").field("file", extraction.getFilePath())
+                                .field("class", classKey).field("method", n.getNameAsString())
+                                .field("line", n.getBegin().map(p -> p.line).orElse(0)));
+                    }
                     
-                    // Store the class first if it doesn't exist in the cache
-                    if (!classCache.containsKey(classKey)) {
-                        ClassOrInterfaceDeclaration classDecl = classStack.peek();
-                        boolean isAnonymous = classDecl.getParentNode()
-                                .map(p -> p instanceof ObjectCreationExpr)
-                                .orElse(false);
-                        boolean isNested = !classStack.isEmpty();
-                        Integer parentClassId = null;
-                        if (isNested) {
-                            parentClassId = classCache.get(packageName + "." + 
-                                classStack.peek().getNameAsString());
-                        }
-                        storeClass(packageName, className, classDecl.toString(), filePath.toString(), 
-                                isAnonymous, isNested, parentClassId);
+                    // Record the class first if it hasn't been seen yet
+                    if (!extraction.hasClass(classKey)) {
+                        extraction.addClass(packageName, className, positions.spanOf(classStack.peek()));
                     }
                     
                     String methodName = n.getNameAsString();
@@ -177,19 +411,14 @@ public class JavaSourceParser {
                     String parameters = n.getParameters().stream()
                             .map(p -> p.getNameAsString())
                             .collect(Collectors.joining(",", "[", "]"));
-                    String parameterTypes = n.getParameters().stream()
-                            .map(p -> p.getType().toString())
-                            .collect(Collectors.joining(","));
                     boolean isStatic = n.isStatic();
                     boolean isPublic = n.isPublic();
-                    boolean isConstructor = n.isConstructorDeclaration();
-                    boolean isInitializer = n.isInitializerDeclaration();
-                    boolean isLambda = false;
-                    boolean isAnonymous = false;
 
-                    // Store the method before processing its body
-                    storeMethod(classKey, methodName, returnType, parameters, parameterTypes,
-                            isStatic, isPublic, isConstructor, isInitializer, isLambda, isAnonymous);
+                    // Record the method before processing its body
+                    extraction.addMethod(classKey, methodName, returnType, parameters, isStatic, isPublic,
+                            positions.spanOf(n));
+                    String callerMethodKey = FileExtraction.methodKey(classKey, methodName,
+                            FileExtraction.formatParameters(parameters));
 
                     // Visit method body to find method calls
                     n.getBody().ifPresent(body -> {
@@ -283,12 +512,11 @@ public class JavaSourceParser {
 
                             @Override
                             public void visit(MethodCallExpr n, Void arg) {
-                                System.out.println("Found method call: " + n.getNameAsString());
                                 super.visit(n, arg);
+                                if (budget.isExceeded()) {
+                                    return;
+                                }
                                 
-                                String callerClass = classKey;
-                                String callerMethod = methodName;
-                                String callerParameters = parameters;
                                 String calledMethod = n.getNameAsString();
                                 String calledParameters = n.getArguments().toString();
                                 
@@ -303,7 +531,7 @@ public class JavaSourceParser {
                                                 }
                                                 // Try to resolve variable to class type
                                                 try {
-                                                    com.github.javaparser.resolution.types.ResolvedType resolvedType = ((NameExpr) scope).calculateResolvedType();
+                                                    com.github.javaparser.resolution.types.ResolvedType resolvedType = resolveScopeType((NameExpr) scope);
                                                     if (resolvedType.isReferenceType()) {
                                                         String qualifiedName = resolvedType.asReferenceType().getQualifiedName();
                                                         if (qualifiedName != null) {
@@ -328,7 +556,7 @@ public class JavaSourceParser {
                                                 }
                                                 
                                                 // Try to resolve using symbol solver
-                                                ResolvedMethodDeclaration resolvedMethod = n.resolve();
+                                                ResolvedMethodDeclaration resolvedMethod = resolveMethod(n);
                                                 if (resolvedMethod != null) {
                                                     return resolvedMethod.getClassName();
                                                 }
@@ -336,37 +564,37 @@ public class JavaSourceParser {
                                                 // If we can't resolve it, return null to avoid incorrect class assignment
                                                 return null;
                                             } catch (Exception e) {
-                                                logger.debug("Failed to resolve static method: " + n.getNameAsString(), e);
+                                                if (logger.isDebugEnabled()) {
+                                                    logger.debug("Failed to resolve static method: " + n.getNameAsString(), e);
+                                                }
                                                 return null;
                                             }
                                         });
 
-                                // Only store class if calledClass is a real class name (contains a dot)
+                                // Only record class if calledClass is a real class name (contains a dot)
                                 if (calledClass != null && calledClass.contains(".")) {
-                                    String calledMethodKey = calledClass + "." + calledMethod + "[" + calledParameters + "]";
-                                    if (!methodCache.containsKey(calledMethodKey)) {
-                                        if (!classCache.containsKey(calledClass)) {
-                                            String packageName = calledClass.substring(0, calledClass.lastIndexOf('.'));
-                                            String className = calledClass.substring(calledClass.lastIndexOf('.') + 1);
-                                            storeClass(packageName, className, "", filePath.toString(), false, false, null);
-                                        }
-                                        // Check if this is a static method call
-                                        boolean isStatic = n.getScope().isEmpty() && 
-                                            (importMap.containsKey(calledMethod) || 
-                                             n.getNameAsString().equals(calledMethod));
-                                        storeMethod(calledClass, calledMethod, "void", calledParameters, calledParameters,
-                                                isStatic, true, false, false, false, false);
-                                    }
-
-                                    // Store the method call with context
-                                    storeMethodCall(
-                                        callerClass, callerMethod, callerParameters,
-                                        calledClass, calledMethod, calledParameters,
+                                    extraction.addClassStub(calledClass);
+                                    // Check if this is a static method call
+                                    boolean isStatic = n.getScope().isEmpty() && 
+                                        (importMap.containsKey(calledMethod) || 
+                                         n.getNameAsString().equals(calledMethod));
+                                    extraction.addMethodStub(calledClass, calledMethod, calledParameters, isStatic);
+
+                                    // Record the method call with context
+                                    extraction.addCall(new FileExtraction.CallRecord(
+                                        callerMethodKey,
+                                        FileExtraction.methodKey(calledClass, calledMethod,
+                                                FileExtraction.formatParameters(calledParameters)),
                                         n.getBegin().get().line, "this", "direct",
                                         inTryBlock, inCatchBlock, inFinallyBlock,
-                                        inLoop, loopType, inConditional, conditionalType,
-                                        filePath.toString()
-                                    );
+                                        inLoop, loopType, inConditional, conditionalType
+                                    ));
+                                }
+                                if (trace.shouldTrace(TraceSink.Level.CALLS)) {
+                                    trace.emit(trace.record("call").field("file", extraction.getFilePath())
+                                            .field("caller", callerMethodKey).field("called", n.getNameAsString())
+                                            .field("calledClass", calledClass)
+                                            .field("line", n.getBegin().map(p -> p.line).orElse(0)));
                                 }
                             }
                         }, null);
@@ -382,26 +610,15 @@ public class JavaSourceParser {
                     String methodName = n.getNameAsString();
                     String returnType = "void";
                     String parameters = n.getParameters().toString();
-                    List<String> paramTypes = new ArrayList<>();
-                    for (Parameter parameter : n.getParameters()) {
-                        paramTypes.add(parameter.getType().asString());
-                    }
-                    String parameterTypes = String.join(",", paramTypes);
                     boolean isStatic = false;
                     boolean isPublic = n.isPublic();
-                    boolean isConstructor = true;
-                    boolean isInitializer = false;
-                    boolean isLambda = false;
-                    boolean isAnonymous = n.getParentNode()
-                            .map(p -> p instanceof ObjectCreationExpr)
-                            .orElse(false);
 
                     String classKey = packageName + "." + n.findAncestor(ClassOrInterfaceDeclaration.class)
                             .map(ClassOrInterfaceDeclaration::getNameAsString)
                             .orElse("");
 
-                    storeMethod(classKey, methodName, returnType, parameters, parameterTypes, 
-                            isStatic, isPublic, isConstructor, isInitializer, isLambda, isAnonymous);
+                    extraction.addMethod(classKey, methodName, returnType, parameters, isStatic, isPublic,
+                            positions.spanOf(n));
                 }
 
                 @Override
@@ -413,20 +630,15 @@ public class JavaSourceParser {
                     String methodName = n.isStatic() ? "<clinit>" : "<init>";
                     String returnType = "void";
                     String parameters = "()";
-                    String parameterTypes = "";
                     boolean isStatic = n.isStatic();
                     boolean isPublic = true;
-                    boolean isConstructor = false;
-                    boolean isInitializer = true;
-                    boolean isLambda = false;
-                    boolean isAnonymous = false;
 
                     String classKey = packageName + "." + n.findAncestor(ClassOrInterfaceDeclaration.class)
                             .map(ClassOrInterfaceDeclaration::getNameAsString)
                             .orElse("");
 
-                    storeMethod(classKey, methodName, returnType, parameters, parameterTypes, 
-                            isStatic, isPublic, isConstructor, isInitializer, isLambda, isAnonymous);
+                    extraction.addMethod(classKey, methodName, returnType, parameters, isStatic, isPublic,
+                            positions.spanOf(n));
                 }
 
                 @Override
@@ -436,129 +648,35 @@ public class JavaSourceParser {
                     methodStack.pop();
 
                     String methodName = "lambda$" + methodStack.peek().getNameAsString();
-                    String returnType = n.calculateResolvedType().describe();
+                    String returnType = budget.isExceeded() ? "?" : n.calculateResolvedType().describe();
                     String parameters = n.getParameters().toString();
-                    List<String> paramTypes = new ArrayList<>();
-                    for (Parameter parameter : n.getParameters()) {
-                        paramTypes.add(parameter.getType().asString());
-                    }
-                    String parameterTypes = String.join(",", paramTypes);
                     boolean isStatic = false;
                     boolean isPublic = true;
-                    boolean isConstructor = false;
-                    boolean isInitializer = false;
-                    boolean isLambda = true;
-                    boolean isAnonymous = false;
 
                     String classKey = packageName + "." + n.findAncestor(ClassOrInterfaceDeclaration.class)
                             .map(ClassOrInterfaceDeclaration::getNameAsString)
                             .orElse("");
 
-                    storeMethod(classKey, methodName, returnType, parameters, parameterTypes, 
-                            isStatic, isPublic, isConstructor, isInitializer, isLambda, isAnonymous);
+                    extraction.addMethod(classKey, methodName, returnType, parameters, isStatic, isPublic,
+                            positions.spanOf(n));
                 }
             }, null);
-        }
-    }
-
-    protected void storeClass(String packageName, String className, String sourceCode, 
-                          String filePath, boolean isAnonymous, boolean isNested, 
-                          Integer parentClassId) {
-        try {
-            String classKey = packageName + "." + className;
-            
-            // Check if class is already in cache
-            if (classCache.containsKey(classKey)) {
-                return;
-            }
-            
-            // Store class in database
-            int classId = dbManager.storeClass(packageName, className);
-            if (classId > 0) {
-                classCache.put(classKey, classId);
-                logger.debug("Stored class in cache: " + classKey + " -> " + classId);
-            } else {
-                logger.warn("Failed to store class: " + classKey);
+            // Only if resolution was cut short, not if the budget ran out right after it
+            if (budget.getExceeded() != null) {
+                extraction.keepDeclarationsOnly(budget.getExceeded());
+                metrics.increment(Counter.DECLARATION_ONLY_FILES);
             }
-        } catch (SQLException e) {
-            logger.error("Failed to store class: " + className, e);
+        } else {
+            extraction.setParseFailed(true);
+            metrics.increment(Counter.PARSE_FAILURES);
         }
-    }
-
-    protected void storeMethod(String classKey, String methodName, String returnType, 
-                           String parameters, String parameterTypes, boolean isStatic, 
-                           boolean isPublic, boolean isConstructor, boolean isInitializer,
-                           boolean isLambda, boolean isAnonymous) {
-        try {
-            // Format parameters with spaces after commas
-            String formattedParameters = parameters.replaceAll(",", ", ");
-            String methodKey = classKey + "." + methodName + "[" + formattedParameters + "]";
-            
-            // Check if method is already in cache
-            if (methodCache.containsKey(methodKey)) {
-                return;
-            }
-            
-            // Ensure class exists in cache
-            Integer classId = classCache.get(classKey);
-            if (classId == null) {
-                logger.warn("Class not found in cache: " + classKey);
-                return;
-            }
-            
-            // Store method in database
-            int methodId = dbManager.storeMethod(classId, methodName, returnType, formattedParameters, isStatic, isPublic);
-            if (methodId > 0) {
-                methodCache.put(methodKey, methodId);
-                logger.debug("Stored method in cache: " + methodKey + " -> " + methodId);
-            } else {
-                logger.warn("Failed to store method: " + methodKey);
-            }
-        } catch (SQLException e) {
-            logger.error("Failed to store method: " + methodName, e);
-        }
-    }
-
-    protected void storeMethodCall(String callerClass, String callerMethod, String callerParameters,
-            String calledClass, String calledMethod, String calledParameters,
-            int lineNumber, String scope, String callContext,
-            boolean isInTryBlock, boolean isInCatchBlock, boolean isInFinallyBlock,
-            boolean isInLoop, String loopType, boolean isInConditional, String conditionalType,
-            String filePath) {
-        try {
-            // Get caller method ID
-            String callerMethodKey = callerClass + "." + callerMethod + "[" + callerParameters + "]";
-            Integer callerMethodId = methodCache.get(callerMethodKey);
-            if (callerMethodId == null) {
-                logger.warn("Caller method not found in cache: " + callerMethodKey);
-                return;
-            }
-
-            // Get called method ID
-            String calledMethodKey = calledClass + "." + calledMethod + "[" + calledParameters + "]";
-            Integer calledMethodId = methodCache.get(calledMethodKey);
-            if (calledMethodId == null) {
-                // Try to store the called method if it's not in the cache
-                if (!classCache.containsKey(calledClass)) {
-                    String packageName = calledClass.substring(0, calledClass.lastIndexOf('.'));
-                    String className = calledClass.substring(calledClass.lastIndexOf('.') + 1);
-                    storeClass(packageName, className, "", filePath, false, false, null);
-                }
-                storeMethod(calledClass, calledMethod, "void", calledParameters, calledParameters,
-                        false, true, false, false, false, false);
-                calledMethodId = methodCache.get(calledMethodKey);
-                if (calledMethodId == null) {
-                    logger.warn("Failed to store called method: " + calledMethodKey);
-                    return;
-                }
-            }
-
-            // Store method call in database
-            dbManager.storeMethodCall(callerMethodId, calledMethodId, lineNumber, scope, callContext,
-                    isInTryBlock, isInCatchBlock, isInFinallyBlock, isInLoop, loopType,
-                    isInConditional, conditionalType);
-        } catch (SQLException e) {
-            logger.error("Failed to store method call", e);
+        if (event.shouldCommit()) {
+            event.path = extraction.getFilePath();
+            event.bytes = extraction.getSizeBytes();
+            event.parsed = !extraction.isParseFailed();
+            event.calls = extraction.getCalls().size();
+            event.commit();
         }
+        return extraction;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.jps.analysis.parser;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// JDK types for the symbol solver, resolved once per process. Each parser used to get
+// its own ReflectionTypeSolver, so every recycled parser, every parsing thread and every
+// project a long-running process indexed resolved java.lang.String and friends by
+// reflection all over again. Every parser now gets one of these in front of a single
+// ReflectionTypeSolver whose answers are shared.
+//
+// The shared solver has no parent: JDK types only refer to other JDK types, so they are
+// resolved against the JDK alone and a cached declaration never points at the sources
+// of whichever project asked first. Names outside java.* and javax.* are never JDK
+// types and go straight through. Misses are remembered too, since the solver tries
+// java.lang.<name> for every simple name, but only up to MAX_REMEMBERED names.
+class SharedJdkTypeSolver implements TypeSolver {
+    private static final int MAX_REMEMBERED = 50_000;
+    private static final ReflectionTypeSolver JDK = new ReflectionTypeSolver();
+    private static final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> SOLVED =
+            new ConcurrentHashMap<>();
+
+    private TypeSolver parent;
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        if (!name.startsWith("java.") && !name.startsWith("javax.")) {
+            return SymbolReference.unsolved();
+        }
+        SymbolReference<ResolvedReferenceTypeDeclaration> solved = SOLVED.get(name);
+        if (solved == null) {
+            solved = JDK.tryToSolveType(name);
+            if (solved.isSolved() || SOLVED.size() < MAX_REMEMBERED) {
+                SOLVED.putIfAbsent(name, solved);
+            }
+        }
+        return solved;
+    }
+
+    static int getRememberedCount() {
+        return SOLVED.size();
+    }
+}
@@ -0,0 +1,123 @@
+package com.jps.analysis.parser;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.jps.analysis.db.SourceSpan;
+
+import java.util.Arrays;
+
+// Maps JavaParser line/column positions of one file onto UTF-8 byte offsets.
+// Built once per file so spans can be recorded without re-rendering the AST.
+// Byte offsets of line starts are computed in the same pass, so an offset only costs
+// the UTF-8 length of the columns before it on its own line.
+class SourcePositions {
+    private final String content;
+    private final int[] lineStarts;
+    private final long[] lineByteStarts;
+    private final boolean ascii;
+
+    SourcePositions(String content) {
+        this.content = content;
+        this.lineStarts = computeLineStarts(content);
+        this.ascii = isAscii(content);
+        this.lineByteStarts = ascii ? null : computeLineByteStarts(content, lineStarts);
+    }
+
+    // UTF-8 length of the whole file, as read from disk when that was its encoding
+    long byteLength() {
+        if (ascii) {
+            return content.length();
+        }
+        int lastLine = lineStarts.length - 1;
+        return lineByteStarts[lastLine] + utf8Length(content, lineStarts[lastLine], content.length());
+    }
+
+    SourceSpan spanOf(Node node) {
+        Range range = node.getRange().orElse(null);
+        if (range == null) {
+            return null;
+        }
+        int begin = charIndex(range.begin);
+        // JavaParser end positions are inclusive
+        int end = charIndex(range.end) + 1;
+        if (begin < 0 || end <= begin) {
+            return null;
+        }
+        return new SourceSpan(range.begin.line, range.end.line, byteOffset(range.begin.line, begin),
+                byteOffset(range.end.line, end));
+    }
+
+    private int charIndex(Position position) {
+        if (position.line < 1 || position.line > lineStarts.length) {
+            return -1;
+        }
+        int index = lineStarts[position.line - 1] + position.column - 1;
+        return Math.min(index, content.length());
+    }
+
+    private long byteOffset(int line, int charIndex) {
+        if (ascii) {
+            return charIndex;
+        }
+        int lineStart = lineStarts[line - 1];
+        return lineByteStarts[line - 1] + utf8Length(content, lineStart, charIndex);
+    }
+
+    private static long[] computeLineByteStarts(String content, int[] lineStarts) {
+        long[] starts = new long[lineStarts.length];
+        for (int line = 1; line < lineStarts.length; line++) {
+            starts[line] = starts[line - 1] + utf8Length(content, lineStarts[line - 1], lineStarts[line]);
+        }
+        return starts;
+    }
+
+    // Same count as encoding content[from, to) with UTF-8; an unpaired surrogate
+    // becomes a one-byte '?' as String.getBytes does
+    static long utf8Length(CharSequence content, int from, int to) {
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(content.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static int[] computeLineStarts(String content) {
+        int[] starts = new int[64];
+        int count = 1;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+                i++;
+            } else if (c != '\r' && c != '\n') {
+                continue;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i + 1;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    private static boolean isAscii(String content) {
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
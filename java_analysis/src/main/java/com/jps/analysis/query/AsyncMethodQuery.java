@@ -0,0 +1,70 @@
+package com.jps.analysis.query;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// CompletableFuture variants of the MethodQuery lookups. Each query runs on the given
+// executor, so independent lookups such as callers and callees proceed concurrently
+// on separate connections. The executor must not be the one whose threads wait on
+// these futures unless it creates threads on demand (virtual threads do).
+public class AsyncMethodQuery {
+    private final MethodQuery methodQuery;
+    private final Executor executor;
+
+    public AsyncMethodQuery(MethodQuery methodQuery, Executor executor) {
+        this.methodQuery = methodQuery;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<List<MethodInfo>> findMethodsBySignature(String methodName, String returnType,
+                                                                     String parameters) {
+        return CompletableFuture.supplyAsync(
+                () -> methodQuery.findMethodsBySignature(methodName, returnType, parameters), executor);
+    }
+
+    public CompletableFuture<List<MethodCall>> findMethodCalls(String className, String methodName,
+                                                               String parameters) {
+        return CompletableFuture.supplyAsync(
+                () -> methodQuery.findMethodCalls(className, methodName, parameters), executor);
+    }
+
+    public CompletableFuture<List<MethodCall>> findMethodCallsTo(String className, String methodName,
+                                                                 String parameters) {
+        return CompletableFuture.supplyAsync(
+                () -> methodQuery.findMethodCallsTo(className, methodName, parameters), executor);
+    }
+
+    public CompletableFuture<List<MethodCall>> findTransitiveCalls(String className, String methodName,
+                                                                   String parameters, int maxDepth) {
+        return CompletableFuture.supplyAsync(
+                () -> methodQuery.findTransitiveCalls(className, methodName, parameters, maxDepth), executor);
+    }
+
+    public CompletableFuture<List<MethodCall>> findMethodCallsByScope(String scope) {
+        return CompletableFuture.supplyAsync(() -> methodQuery.findMethodCallsByScope(scope), executor);
+    }
+
+    // Callers and callees of one method, fetched together
+    public CompletableFuture<Neighbourhood> findNeighbourhood(String className, String methodName,
+                                                              String parameters) {
+        return findMethodCallsTo(className, methodName, parameters)
+                .thenCombine(findMethodCalls(className, methodName, parameters), Neighbourhood::new);
+    }
+
+    public static class Neighbourhood {
+        private final List<MethodCall> callers;
+        private final List<MethodCall> callees;
+
+        public Neighbourhood(List<MethodCall> callers, List<MethodCall> callees) {
+            this.callers = callers;
+            this.callees = callees;
+        }
+
+        public List<MethodCall> getCallers() { return callers; }
+        public List<MethodCall> getCallees() { return callees; }
+    }
+}
@@ -0,0 +1,146 @@
+package com.jps.analysis.query;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+// Immutable in-memory snapshot of every call edge, indexed by caller and called class
+// and method name. Filters match like the viewer's SQL LIKE '%value%': case-insensitive
+// substrings, so "Helper" matches "com.example.Helper". Only the distinct names are
+// scanned per lookup, never the edges themselves.
+public class CallGraph {
+    // Rough 64-bit, compressed-oops costs: a MethodCall with its fields, a String with
+    // its backing array, and one slot in the call list plus each of the four indexes
+    private static final long CALL_BYTES = 72;
+    private static final long STRING_BYTES = 40;
+    private static final long REFERENCE_BYTES = 5 * 4;
+    // For sizing a graph before it is loaded: eight short strings per call, the flags
+    // and the usually empty loop and conditional types aside
+    private static final long ESTIMATED_CALL_BYTES = CALL_BYTES + REFERENCE_BYTES + 8 * (STRING_BYTES + 20);
+
+    private final List<MethodCall> calls;
+    private final Map<String, List<MethodCall>> byCallerClass;
+    private final Map<String, List<MethodCall>> byCallerMethod;
+    private final Map<String, List<MethodCall>> byCalledClass;
+    private final Map<String, List<MethodCall>> byCalledMethod;
+    private final long estimatedBytes;
+
+    public CallGraph(List<MethodCall> calls) {
+        this.calls = Collections.unmodifiableList(new ArrayList<>(calls));
+        this.byCallerClass = index(calls, MethodCall::getCallerClass);
+        this.byCallerMethod = index(calls, MethodCall::getCallerMethod);
+        this.byCalledClass = index(calls, MethodCall::getCalledClass);
+        this.byCalledMethod = index(calls, MethodCall::getCalledMethod);
+        this.estimatedBytes = estimateBytes(calls);
+    }
+
+    public static CallGraph load(MethodQuery methodQuery) {
+        return new CallGraph(methodQuery.findAllMethodCalls());
+    }
+
+    private static Map<String, List<MethodCall>> index(List<MethodCall> calls, Function<MethodCall, String> key) {
+        Map<String, List<MethodCall>> index = new HashMap<>();
+        for (MethodCall call : calls) {
+            index.computeIfAbsent(normalize(key.apply(call)), k -> new ArrayList<>()).add(call);
+        }
+        return index;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static long estimateBytes(List<MethodCall> calls) {
+        long bytes = 0;
+        for (MethodCall call : calls) {
+            bytes += CALL_BYTES + REFERENCE_BYTES
+                    + stringBytes(call.getCallerClass()) + stringBytes(call.getCallerMethod())
+                    + stringBytes(call.getCallerParameters()) + stringBytes(call.getCalledClass())
+                    + stringBytes(call.getCalledMethod()) + stringBytes(call.getCalledParameters())
+                    + stringBytes(call.getScope()) + stringBytes(call.getCallContext())
+                    + stringBytes(call.getLoopType()) + stringBytes(call.getConditionalType());
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_BYTES + value.length();
+    }
+
+    // Approximate heap a graph of this many calls will hold, known before loading it
+    public static long estimateBytes(long calls) {
+        return calls * ESTIMATED_CALL_BYTES;
+    }
+
+    // Approximate heap held by this graph, for budgeting how many graphs stay resident
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    public List<MethodCall> getCalls() {
+        return calls;
+    }
+
+    // Null or empty filters are ignored; results are in index order
+    public List<MethodCall> findCalls(String callerClass, String callerMethod, String calledClass, String calledMethod) {
+        List<List<MethodCall>> candidates = new ArrayList<>();
+        if (!addCandidates(candidates, byCallerClass, callerClass)
+                || !addCandidates(candidates, byCallerMethod, callerMethod)
+                || !addCandidates(candidates, byCalledClass, calledClass)
+                || !addCandidates(candidates, byCalledMethod, calledMethod)) {
+            return Collections.emptyList();
+        }
+        if (candidates.isEmpty()) {
+            return calls;
+        }
+
+        // Walk the most selective filter and check the others per edge
+        List<MethodCall> smallest = Collections.min(candidates, Comparator.comparingInt(List::size));
+        String callerClassFilter = normalize(callerClass);
+        String callerMethodFilter = normalize(callerMethod);
+        String calledClassFilter = normalize(calledClass);
+        String calledMethodFilter = normalize(calledMethod);
+        List<MethodCall> result = new ArrayList<>();
+        for (MethodCall call : smallest) {
+            if (normalize(call.getCallerClass()).contains(callerClassFilter)
+                    && normalize(call.getCallerMethod()).contains(callerMethodFilter)
+                    && normalize(call.getCalledClass()).contains(calledClassFilter)
+                    && normalize(call.getCalledMethod()).contains(calledMethodFilter)) {
+                result.add(call);
+            }
+        }
+        result.sort(Comparator.comparingInt(MethodCall::getId));
+        return result;
+    }
+
+    // Returns false when a filter is set but matches nothing
+    private static boolean addCandidates(List<List<MethodCall>> candidates, Map<String, List<MethodCall>> index,
+                                         String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return true;
+        }
+        String needle = normalize(filter);
+        List<MethodCall> matches = new ArrayList<>();
+        for (Map.Entry<String, List<MethodCall>> entry : index.entrySet()) {
+            if (entry.getKey().contains(needle)) {
+                matches.addAll(entry.getValue());
+            }
+        }
+        if (matches.isEmpty()) {
+            return false;
+        }
+        candidates.add(matches);
+        return true;
+    }
+}
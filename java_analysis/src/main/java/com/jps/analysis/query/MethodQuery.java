@@ -1,31 +1,49 @@
 package com.jps.analysis.query;
 
+import com.jps.analysis.db.ConnectionSource;
 import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.SourceSpan;
+import com.jps.analysis.jfr.QueryExecutedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.HashMap;
 
 public class MethodQuery {
     private static final Logger logger = LoggerFactory.getLogger(MethodQuery.class);
-    private final DatabaseManager dbManager;
+    private final ConnectionSource connections;
+    private final SourceRegionReader sourceReader;
 
     public MethodQuery() {
-        this.dbManager = DatabaseManager.getInstance();
+        this(DatabaseManager.getInstance());
+    }
+
+    public MethodQuery(ConnectionSource connections) {
+        this.connections = connections;
+        this.sourceReader = new SourceRegionReader();
     }
 
     public List<MethodInfo> findMethodsBySignature(String methodName, String returnType, String parameters) {
         List<MethodInfo> methods = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT m.id, c.package_name, c.class_name, m.method_name, m.return_type, " +
                 "m.parameters, m.is_static, m.is_public " +
                 "FROM methods m " +
@@ -34,7 +52,7 @@ public class MethodQuery {
                 "AND m.return_type LIKE ? " +
                 "AND m.parameters LIKE ?";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, "%" + methodName + "%");
             stmt.setString(2, "%" + returnType + "%");
@@ -58,11 +76,82 @@ public class MethodQuery {
             logger.error("Failed to query methods", e);
         }
 
+        event.finish("findMethodsBySignature", methods.size());
+        return methods;
+    }
+
+    // Methods of a class declared in a shared library index rather than in this project.
+    // The index is read on a connection of its own, so nothing is attached to the
+    // project's connections, which may be shared or pooled.
+    public List<MethodInfo> findLibraryMethods(String packageName, String className) {
+        List<MethodInfo> methods = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
+        String librarySql = "SELECT l.index_path FROM classes c " +
+                "JOIN libraries l ON c.library_id = l.id " +
+                "WHERE c.package_name = ? AND c.class_name = ?";
+        String sql = "SELECT m.id, c.package_name, c.class_name, m.method_name, m.return_type, " +
+                "m.parameters, m.is_static, m.is_public " +
+                "FROM methods m " +
+                "JOIN classes c ON m.class_id = c.id " +
+                "WHERE c.package_name = ? AND c.class_name = ?";
+
+        try {
+            String indexPath = null;
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(librarySql)) {
+                stmt.setString(1, packageName);
+                stmt.setString(2, className);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        indexPath = rs.getString("index_path");
+                    }
+                }
+            }
+            // Opening a missing file would create an empty index in its place
+            if (indexPath == null || !Files.exists(Paths.get(indexPath))) {
+                if (indexPath != null) {
+                    logger.warn("Library index not found: " + indexPath);
+                }
+                event.finish("findLibraryMethods", methods.size());
+                return methods;
+            }
+
+            try (Connection library = DriverManager.getConnection("jdbc:sqlite:" + indexPath)) {
+                try (Statement pragma = library.createStatement()) {
+                    pragma.execute("PRAGMA query_only = ON");
+                }
+                try (PreparedStatement stmt = library.prepareStatement(sql)) {
+                    stmt.setString(1, packageName);
+                    stmt.setString(2, className);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            methods.add(new MethodInfo(
+                                    rs.getInt("id"),
+                                    rs.getString("package_name"),
+                                    rs.getString("class_name"),
+                                    rs.getString("method_name"),
+                                    rs.getString("return_type"),
+                                    rs.getString("parameters"),
+                                    rs.getBoolean("is_static"),
+                                    rs.getBoolean("is_public")
+                            ));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to query library methods", e);
+        }
+
+        event.finish("findLibraryMethods", methods.size());
         return methods;
     }
 
     public List<MethodCall> findMethodCalls(String className, String methodName, String parameters) {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
                 "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
@@ -80,7 +169,7 @@ public class MethodQuery {
                 "WHERE caller.class_name = ? AND caller_method.method_name = ? " +
                 "AND (caller_method.parameters = ? OR ? = '' OR ? IS NULL)";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, className);
             stmt.setString(2, methodName);
@@ -100,11 +189,14 @@ public class MethodQuery {
             logger.error("Failed to find method calls", e);
         }
 
+        event.finish("findMethodCalls", calls.size());
         return calls;
     }
 
     public List<MethodCall> findMethodCallsTo(String className, String methodName, String parameters) {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
                 "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
@@ -122,7 +214,7 @@ public class MethodQuery {
                 "WHERE called.class_name = ? AND called_method.method_name = ? " +
                 "AND (called_method.parameters = ? OR ? = '' OR ? IS NULL)";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, className);
             stmt.setString(2, methodName);
@@ -139,12 +231,70 @@ public class MethodQuery {
             logger.error("Failed to find method calls to", e);
         }
 
+        event.finish("findMethodCallsTo", calls.size());
+        return calls;
+    }
+
+    // Every call reachable from a method within maxDepth hops, breadth first
+    public List<MethodCall> findTransitiveCalls(String className, String methodName, String parameters,
+                                                int maxDepth) {
+        List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
+        String sql = "WITH RECURSIVE reachable(method_id, depth) AS (" +
+                "SELECT m.id, 0 FROM methods m " +
+                "JOIN classes c ON m.class_id = c.id " +
+                "WHERE c.class_name = ? AND m.method_name = ? " +
+                "AND (m.parameters = ? OR ? = '' OR ? IS NULL) " +
+                "UNION " +
+                "SELECT mc.called_method_id, r.depth + 1 FROM method_calls mc " +
+                "JOIN reachable r ON mc.caller_method_id = r.method_id " +
+                "WHERE r.depth + 1 < ?) " +
+                "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
+                "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
+                "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
+                "caller.package_name as caller_package, caller.class_name as caller_class, " +
+                "caller_method.method_name as caller_method, " +
+                "caller_method.parameters as caller_parameters, " +
+                "called.package_name as called_package, called.class_name as called_class, " +
+                "called_method.method_name as called_method, " +
+                "called_method.parameters as called_parameters " +
+                "FROM method_calls mc " +
+                "JOIN (SELECT method_id, MIN(depth) AS depth FROM reachable GROUP BY method_id) r " +
+                "ON mc.caller_method_id = r.method_id " +
+                "JOIN methods caller_method ON mc.caller_method_id = caller_method.id " +
+                "JOIN classes caller ON caller_method.class_id = caller.id " +
+                "JOIN methods called_method ON mc.called_method_id = called_method.id " +
+                "JOIN classes called ON called_method.class_id = called.id " +
+                "ORDER BY r.depth, mc.id";
+
+        try (Connection conn = connections.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, className);
+            stmt.setString(2, methodName);
+            stmt.setString(3, parameters);
+            stmt.setString(4, parameters);
+            stmt.setString(5, parameters);
+            stmt.setInt(6, maxDepth);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    calls.add(createMethodCallFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to find transitive method calls", e);
+        }
+
+        event.finish("findTransitiveCalls", calls.size());
         return calls;
     }
 
     public List<MethodCall> findMethodCallsByContext(String className, String methodName, String parameters,
                                                    Map<String, Object> contextFilters) {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         StringBuilder sql = new StringBuilder(
                 "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
@@ -176,7 +326,7 @@ public class MethodQuery {
             }
         }
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
             for (int i = 0; i < params.size(); i++) {
                 stmt.setObject(i + 1, params.get(i));
@@ -191,11 +341,14 @@ public class MethodQuery {
             logger.error("Failed to find method calls by context", e);
         }
 
+        event.finish("findMethodCallsByContext", calls.size());
         return calls;
     }
 
     public List<MethodCall> findMethodCallsByScope(String scope) {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
                 "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
@@ -212,7 +365,7 @@ public class MethodQuery {
                 "JOIN classes called ON called_method.class_id = called.id " +
                 "WHERE mc.scope = ? OR mc.scope = 'this' OR mc.scope IS NULL";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, scope);
 
@@ -225,11 +378,123 @@ public class MethodQuery {
             logger.error("Failed to find method calls by scope", e);
         }
 
+        event.finish("findMethodCallsByScope", calls.size());
         return calls;
     }
 
+    public long countMethodCalls() {
+        try (Connection conn = connections.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM method_calls")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            logger.error("Failed to count method calls", e);
+            return 0;
+        }
+    }
+
+    public List<MethodCall> findAllMethodCalls() {
+        List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
+        String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
+                "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
+                "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
+                "caller.package_name as caller_package, caller.class_name as caller_class, " +
+                "caller_method.method_name as caller_method, " +
+                "caller_method.parameters as caller_parameters, " +
+                "called.package_name as called_package, called.class_name as called_class, " +
+                "called_method.method_name as called_method, " +
+                "called_method.parameters as called_parameters " +
+                "FROM method_calls mc " +
+                "JOIN methods caller_method ON mc.caller_method_id = caller_method.id " +
+                "JOIN classes caller ON caller_method.class_id = caller.id " +
+                "JOIN methods called_method ON mc.called_method_id = called_method.id " +
+                "JOIN classes called ON called_method.class_id = called.id " +
+                "ORDER BY mc.id";
+
+        try (Connection conn = connections.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    calls.add(createMethodCallFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to find all method calls", e);
+        }
+
+        event.finish("findAllMethodCalls", calls.size());
+        return calls;
+    }
+
+    // Receives rows as they are read, so a caller can write them out without holding them
+    public interface CallVisitor {
+        void visit(MethodCall call) throws IOException;
+    }
+
+    // Same case-insensitive substring filters as CallGraph.findCalls, evaluated by SQLite;
+    // null or empty filters match everything. Rows come in id order and are handed to the
+    // visitor one at a time. Returns the number of calls visited.
+    public int forEachMethodCall(String callerClass, String callerMethod, String calledClass, String calledMethod,
+                                 CallVisitor visitor) throws IOException {
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
+        StringBuilder sql = new StringBuilder("SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
+                "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
+                "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
+                "caller.package_name as caller_package, caller.class_name as caller_class, " +
+                "caller_method.method_name as caller_method, " +
+                "caller_method.parameters as caller_parameters, " +
+                "called.package_name as called_package, called.class_name as called_class, " +
+                "called_method.method_name as called_method, " +
+                "called_method.parameters as called_parameters " +
+                "FROM method_calls mc " +
+                "JOIN methods caller_method ON mc.caller_method_id = caller_method.id " +
+                "JOIN classes caller ON caller_method.class_id = caller.id " +
+                "JOIN methods called_method ON mc.called_method_id = called_method.id " +
+                "JOIN classes called ON called_method.class_id = called.id " +
+                "WHERE 1 = 1");
+        List<String> needles = new ArrayList<>();
+        // Class names are matched as createMethodCallFromResultSet spells them, null package included
+        addContainsFilter(sql, needles, "ifnull(caller.package_name, 'null') || '.' || caller.class_name", callerClass);
+        addContainsFilter(sql, needles, "caller_method.method_name", callerMethod);
+        addContainsFilter(sql, needles, "ifnull(called.package_name, 'null') || '.' || called.class_name", calledClass);
+        addContainsFilter(sql, needles, "called_method.method_name", calledMethod);
+        sql.append(" ORDER BY mc.id");
+
+        int count = 0;
+        try (Connection conn = connections.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < needles.size(); i++) {
+                stmt.setString(i + 1, needles.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    visitor.visit(createMethodCallFromResultSet(rs));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read method calls", e);
+        }
+
+        event.finish("forEachMethodCall", count);
+        return count;
+    }
+
+    private static void addContainsFilter(StringBuilder sql, List<String> needles, String column, String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return;
+        }
+        sql.append(" AND instr(lower(").append(column).append("), ?) > 0");
+        needles.add(filter.toLowerCase(Locale.ROOT));
+    }
+
     public List<MethodCall> findMethodCallsInTryCatch() {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
                 "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
@@ -246,7 +511,7 @@ public class MethodQuery {
                 "JOIN classes called ON called_method.class_id = called.id " +
                 "WHERE mc.is_in_try_block = true OR mc.is_in_catch_block = true OR mc.is_in_finally_block = true";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -257,11 +522,14 @@ public class MethodQuery {
             logger.error("Failed to find method calls in try-catch blocks", e);
         }
 
+        event.finish("findMethodCallsInTryCatch", calls.size());
         return calls;
     }
 
     public List<MethodCall> findMethodCallsInLoops() {
         List<MethodCall> calls = new ArrayList<>();
+        QueryExecutedEvent event = new QueryExecutedEvent();
+        event.begin();
         String sql = "SELECT mc.id, mc.line_number, mc.scope, mc.call_context, " +
                 "mc.is_in_try_block, mc.is_in_catch_block, mc.is_in_finally_block, " +
                 "mc.is_in_loop, mc.loop_type, mc.is_in_conditional, mc.conditional_type, " +
@@ -278,7 +546,7 @@ public class MethodQuery {
                 "JOIN classes called ON called_method.class_id = called.id " +
                 "WHERE mc.is_in_loop = true";
 
-        try (Connection conn = dbManager.getConnection();
+        try (Connection conn = connections.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -289,42 +557,141 @@ public class MethodQuery {
             logger.error("Failed to find method calls in loops", e);
         }
 
+        event.finish("findMethodCallsInLoops", calls.size());
         return calls;
     }
 
+    public String getClassSource(String packageName, String className) {
+        String sql = "SELECT file_path, begin_line, end_line, begin_offset, end_offset " +
+                "FROM classes WHERE package_name = ? AND class_name = ?";
+
+        try (Connection conn = connections.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, packageName);
+            stmt.setString(2, className);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return readSource(conn, rs.getString("file_path"), rs);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to find class source", e);
+        }
+
+        return null;
+    }
+
+    public String getMethodSource(String className, String methodName, String parameters) {
+        String sql = "SELECT c.file_path, m.begin_line, m.end_line, m.begin_offset, m.end_offset " +
+                "FROM methods m " +
+                "JOIN classes c ON m.class_id = c.id " +
+                "WHERE c.class_name = ? AND m.method_name = ? " +
+                "AND (m.parameters = ? OR ? = '' OR ? IS NULL)";
+
+        try (Connection conn = connections.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, className);
+            stmt.setString(2, methodName);
+            stmt.setString(3, parameters);
+            stmt.setString(4, parameters);
+            stmt.setString(5, parameters);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return readSource(conn, rs.getString("file_path"), rs);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to find method source", e);
+        }
+
+        return null;
+    }
+
+    // Source is not stored in the database; it is read from the indexed file on demand
+    private String readSource(Connection conn, String filePath, ResultSet rs) throws SQLException {
+        long beginOffset = rs.getLong("begin_offset");
+        if (filePath == null || rs.wasNull()) {
+            return null;
+        }
+        SourceSpan span = new SourceSpan(rs.getInt("begin_line"), rs.getInt("end_line"),
+                beginOffset, rs.getLong("end_offset"));
+        try {
+            return sourceReader.read(resolveIndexedPath(conn, filePath), span);
+        } catch (IOException e) {
+            logger.error("Failed to read source from " + filePath, e);
+            return null;
+        }
+    }
+
+    // Paths are stored absolute; databases indexed before that hold them as given on the
+    // command line, which is taken relative to the root of the latest index run
+    private Path resolveIndexedPath(Connection conn, String filePath) throws SQLException {
+        Path path = Paths.get(filePath);
+        if (path.isAbsolute()) {
+            return path;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT project_root FROM index_runs ORDER BY id DESC LIMIT 1")) {
+            if (rs.next()) {
+                Path root = Paths.get(rs.getString("project_root"));
+                // Older paths usually repeat the root's own relative prefix, so the
+                // root's ancestors are tried as well
+                for (Path base = root; base != null; base = base.getParent()) {
+                    Path resolved = base.resolve(path).normalize();
+                    if (Files.exists(resolved)) {
+                        return resolved;
+                    }
+                }
+                return root.resolve(path).normalize();
+            }
+        }
+        return path;
+    }
+
     public void exportMethodCallsToCSV(List<MethodCall> calls, String filePath) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Write header
-            writer.write("ID,Line Number,Caller Class,Caller Method,Caller Parameters," +
-                        "Called Class,Called Method,Called Parameters,Scope,Call Context," +
-                        "In Try Block,In Catch Block,In Finally Block,In Loop,Loop Type," +
-                        "In Conditional,Conditional Type\n");
-
-            // Write data
-            for (MethodCall call : calls) {
-                writer.write(String.format("%d,%d,%s,%s,%s,%s,%s,%s,%s,%s,%b,%b,%b,%b,%s,%b,%s\n",
-                    call.getId(),
-                    call.getLineNumber(),
-                    escapeCSV(call.getCallerClass()),
-                    escapeCSV(call.getCallerMethod()),
-                    escapeCSV(call.getCallerParameters()),
-                    escapeCSV(call.getCalledClass()),
-                    escapeCSV(call.getCalledMethod()),
-                    escapeCSV(call.getCalledParameters()),
-                    escapeCSV(call.getScope()),
-                    escapeCSV(call.getCallContext()),
-                    call.isInTryBlock(),
-                    call.isInCatchBlock(),
-                    call.isInFinallyBlock(),
-                    call.isInLoop(),
-                    escapeCSV(call.getLoopType()),
-                    call.isInConditional(),
-                    escapeCSV(call.getConditionalType())
-                ));
-            }
+            exportMethodCallsToCSV(calls, writer);
+        }
+    }
+
+    public void exportMethodCallsToCSV(List<MethodCall> calls, Writer writer) throws IOException {
+        writeCSVHeader(writer);
+        for (MethodCall call : calls) {
+            writeCSVRow(call, writer);
         }
     }
 
+    public void writeCSVHeader(Writer writer) throws IOException {
+        writer.write("ID,Line Number,Caller Class,Caller Method,Caller Parameters," +
+                    "Called Class,Called Method,Called Parameters,Scope,Call Context," +
+                    "In Try Block,In Catch Block,In Finally Block,In Loop,Loop Type," +
+                    "In Conditional,Conditional Type\n");
+    }
+
+    public void writeCSVRow(MethodCall call, Writer writer) throws IOException {
+        writer.write(String.format("%d,%d,%s,%s,%s,%s,%s,%s,%s,%s,%b,%b,%b,%b,%s,%b,%s\n",
+                call.getId(),
+                call.getLineNumber(),
+                escapeCSV(call.getCallerClass()),
+                escapeCSV(call.getCallerMethod()),
+                escapeCSV(call.getCallerParameters()),
+                escapeCSV(call.getCalledClass()),
+                escapeCSV(call.getCalledMethod()),
+                escapeCSV(call.getCalledParameters()),
+                escapeCSV(call.getScope()),
+                escapeCSV(call.getCallContext()),
+                call.isInTryBlock(),
+                call.isInCatchBlock(),
+                call.isInFinallyBlock(),
+                call.isInLoop(),
+                escapeCSV(call.getLoopType()),
+                call.isInConditional(),
+                escapeCSV(call.getConditionalType())
+        ));
+    }
+
     protected String escapeCSV(String value) {
         if (value == null) {
             return "";
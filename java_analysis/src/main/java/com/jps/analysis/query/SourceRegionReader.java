@@ -0,0 +1,50 @@
+package com.jps.analysis.query;
+
+import com.jps.analysis.db.SourceSpan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads the source of a stored declaration straight from its original file.
+// Only the recorded byte range is touched; large regions are memory-mapped.
+public class SourceRegionReader {
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    public String read(Path file, SourceSpan span) throws IOException {
+        long length = span.getLength();
+        if (length <= 0) {
+            return "";
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Source region too large: " + span);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (span.getEndOffset() > channel.size()) {
+                throw new IOException("File " + file + " is shorter than recorded span " + span +
+                        "; it may have changed since indexing");
+            }
+
+            ByteBuffer buffer;
+            if (length >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, span.getBeginOffset(), length);
+            } else {
+                buffer = ByteBuffer.allocate((int) length);
+                long position = span.getBeginOffset();
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                }
+                buffer.flip();
+            }
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        }
+    }
+}
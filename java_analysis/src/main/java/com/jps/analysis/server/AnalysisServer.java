@@ -0,0 +1,829 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.ConnectionPool;
+import com.jps.analysis.metrics.LatencyHistogram;
+import com.jps.analysis.query.AsyncMethodQuery;
+import com.jps.analysis.query.CallGraph;
+import com.jps.analysis.query.MethodQuery;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import com.jps.analysis.util.JsonWriter;
+import com.jps.analysis.watch.ProjectWatcher;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+// Serves MethodQuery over HTTP as JSON so one warm JVM and index can answer queries
+// from many clients. Requests run on virtual threads where available (see
+// RequestExecutors) and share a bounded pool of read-only connections.
+//
+//   GET /api/calls/from?class=&method=[&params=]
+//   GET /api/calls/to?class=&method=[&params=]
+//   GET /api/calls/scope?scope=
+//   GET /api/calls/context?class=&method=&params=[&is_in_loop=true&loop_type=for...]
+//   GET /api/calls/transitive?class=&method=[&params=][&depth=3]    (batch)
+//   GET /api/calls/neighbourhood?class=&method=[&params=]
+//   GET /api/methods/search?name=[&returnType=][&params=]
+//   GET /api/method_calls?[caller_class=][&caller_method=][&called_class=][&called_method=][&limit=]
+//   GET /api/stats                                              (batch)
+//   GET /api/export/calls?[caller_class=]...  as CSV             (batch)
+//   GET /api/artifacts/{dependencies.dot,interactive.html,packages/<package>.dot,classes/<class>.json}
+//   GET /api/health
+//   GET /api/metrics
+//   GET /api/projects
+//   GET /api/projects/<name>/{method_calls,calls/from,calls/to,calls/scope,methods/search}
+//
+// Artifacts are the ones the index command precomputed next to the database (see
+// ArtifactStore); the server renders them again only after a reindex.
+//
+// /api/method_calls is the viewer's contract: snake_case fields, substring matching,
+// answered from an in-memory CallGraph. Responses are cached until the next reindex,
+// and identical requests that arrive together are coalesced into one query.
+//
+// Requests run in one of two lanes (see Lane) so exports and transitive closures
+// cannot starve interactive lookups; a lane that is full answers 503 with Retry-After.
+// Batch responses are streamed to the client as they are written and never cached:
+// one export can be larger than every interactive response put together.
+// /api/metrics reports per-lane latency percentiles and shed counts.
+//
+// /api/projects/<name>/... answers the same lookups for the other indexes in
+// ProjectRegistry, whose graphs share one memory budget and are loaded on demand. A
+// project whose graph cannot fit in that budget gets 507 from method_calls.
+//
+// When server.socket names a path, the same MethodQuery is also answered over a Unix
+// domain socket in BinaryProtocol (see LocalSocketServer) for local tools that would
+// otherwise pay for HTTP and JSON on every small lookup.
+//
+// Configured with server.port (default 8080), server.threads (platform threads when
+// virtual threads are unavailable, default 2 per core), server.backlog (default 1024),
+// server.cache.size (default 1024 responses, 0 disables), db.pool.size and the
+// server.lane.{interactive,batch}.{threads,queue,timeout.ms} limits.
+public class AnalysisServer implements AutoCloseable, ProjectWatcher.IndexListener {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisServer.class);
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_TRANSITIVE_DEPTH = 3;
+    private static final int MAX_TRANSITIVE_DEPTH = 20;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final int DEFAULT_BACKLOG = 1024;
+    private static final int DEFAULT_METHOD_CALLS_LIMIT = 1000;
+    private static final int TOP_METHODS = 10;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String CSV = "text/csv; charset=utf-8";
+    private static final String ARTIFACTS_PATH = "/api/artifacts/";
+    private static final String PROJECTS_PATH = "/api/projects/";
+    private static final Set<String> PROJECT_ENDPOINTS = Set.of("method_calls", "calls/from", "calls/to",
+            "calls/scope", "methods/search");
+    // Columns the context endpoint may filter on; anything else is rejected
+    private static final List<String> BOOLEAN_FILTERS = Arrays.asList("is_in_try_block", "is_in_catch_block",
+            "is_in_finally_block", "is_in_loop", "is_in_conditional");
+    private static final List<String> TEXT_FILTERS = Arrays.asList("loop_type", "conditional_type",
+            "call_context", "scope");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService queryExecutor;
+    private final ConnectionPool connections;
+    private final MethodQuery methodQuery;
+    private final AsyncMethodQuery asyncQuery;
+    private final ResponseCache cache;
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final Lane interactive;
+    private final Lane batch;
+    private volatile CallGraph callGraph;
+    private final ArtifactStore artifacts;
+    private final LocalSocketServer localSocket;
+    private final ProjectRegistry projects;
+    private final long startedAt = System.currentTimeMillis();
+
+    public AnalysisServer() throws IOException {
+        this(Integer.getInteger("server.port", DEFAULT_PORT), DatabaseManager.getInstance());
+    }
+
+    public AnalysisServer(int port, DatabaseManager dbManager) throws IOException {
+        enableConcurrentReads(dbManager);
+        this.connections = new ConnectionPool(dbManager.getDbUrl());
+        this.methodQuery = new MethodQuery(connections);
+        // Sub-queries get their own executor so handlers waiting on them never starve it
+        this.queryExecutor = RequestExecutors.create("analysis-query", connections.getMaxSize());
+        this.asyncQuery = new AsyncMethodQuery(methodQuery, queryExecutor);
+        this.cache = new ResponseCache(Integer.getInteger("server.cache.size", DEFAULT_CACHE_SIZE));
+        this.callGraph = loadCallGraph();
+        this.artifacts = ArtifactStore.create(dbManager.getDbUrl());
+        this.projects = ProjectRegistry.configured();
+        // Normally adopts what the index command built; renders only if the index changed since
+        buildArtifacts();
+        // Batch work may hold at most a quarter of the connections
+        this.interactive = Lane.configured("interactive", connections.getMaxSize() * 2, 1000, 2_000);
+        this.batch = Lane.configured("batch", Math.max(1, connections.getMaxSize() / 4), 16, 30_000);
+
+        int threads = Integer.getInteger("server.threads", Runtime.getRuntime().availableProcessors() * 2);
+        this.executor = RequestExecutors.create("analysis-server", threads);
+        String socketPath = System.getProperty("server.socket");
+        this.localSocket = socketPath == null ? null : new LocalSocketServer(Path.of(socketPath), methodQuery);
+
+        this.server = HttpServer.create(new InetSocketAddress(port),
+                Integer.getInteger("server.backlog", DEFAULT_BACKLOG));
+        server.setExecutor(executor);
+        route("/api/health", null, this::health);
+        route("/api/metrics", null, this::metrics);
+        route("/api/calls/from", (exchange, params) -> writeCalls(methodQuery.findMethodCalls(
+                required(params, "class"), required(params, "method"), params.get("params"))));
+        route("/api/calls/to", (exchange, params) -> writeCalls(methodQuery.findMethodCallsTo(
+                required(params, "class"), required(params, "method"), params.get("params"))));
+        route("/api/calls/scope", (exchange, params) -> writeCalls(methodQuery.findMethodCallsByScope(
+                required(params, "scope"))));
+        route("/api/calls/context", this::callsByContext);
+        stream("/api/calls/transitive", JSON, (exchange, params) -> text(transitiveCalls(exchange, params)));
+        route("/api/calls/neighbourhood", this::neighbourhood);
+        route("/api/methods/search", (exchange, params) -> writeMethods(methodQuery.findMethodsBySignature(
+                required(params, "name"), params.getOrDefault("returnType", ""), params.getOrDefault("params", ""))));
+        route("/api/method_calls", (exchange, params) -> methodCalls(callGraph, params));
+        stream("/api/stats", JSON, (exchange, params) -> text(statistics(exchange, params)));
+        stream("/api/export/calls", CSV, this::exportCalls);
+        server.createContext(ARTIFACTS_PATH, this::serveArtifact);
+        route("/api/projects", null, this::listProjects);
+        server.createContext(PROJECTS_PATH, this::serveProject);
+    }
+
+    private CallGraph loadCallGraph() {
+        long start = System.nanoTime();
+        CallGraph graph = CallGraph.load(methodQuery);
+        logger.info("Loaded call graph with " + graph.size() + " calls in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return graph;
+    }
+
+    // Invalidated on both sides of the swap: requests that start during the reload still
+    // read the old graph and must not leave their results behind
+    @Override
+    public void filesReindexed(Set<Path> changed, Set<Path> deleted) {
+        cache.invalidate();
+        callGraph = loadCallGraph();
+        cache.invalidate();
+        buildArtifacts();
+    }
+
+    private void buildArtifacts() {
+        try {
+            artifacts.rebuild(callGraph);
+        } catch (IOException e) {
+            logger.error("Failed to build artifacts", e);
+        }
+    }
+
+    // WAL lets readers keep answering while an indexer or watcher writes
+    private static void enableConcurrentReads(DatabaseManager dbManager) {
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+        } catch (SQLException e) {
+            logger.warn("Could not enable WAL mode: " + e.getMessage());
+        }
+    }
+
+    public void start() {
+        server.start();
+        if (localSocket != null) {
+            localSocket.start();
+        }
+        logger.info("Analysis server listening on port " + getPort()
+                + (RequestExecutors.useVirtualThreads() ? " using virtual threads" : ""));
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        if (localSocket != null) {
+            localSocket.close();
+        }
+        executor.shutdown();
+        interactive.shutdown();
+        batch.shutdown();
+        queryExecutor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            interactive.awaitTermination(5, TimeUnit.SECONDS);
+            batch.awaitTermination(5, TimeUnit.SECONDS);
+            queryExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.close();
+        artifacts.close();
+        projects.close();
+    }
+
+    private interface Handler {
+        String handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    // Validates the request and prepares its body; a failure here still gets a status
+    private interface StreamingHandler {
+        Body prepare(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    // Writes a response body after the status line has been sent
+    private interface Body {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    private void route(String path, Handler handler) {
+        route(path, interactive, handler);
+    }
+
+    // Cache hits are answered on the dispatching thread; everything else is admitted
+    // into its lane. A null lane runs inline, uncached, for cheap introspection.
+    private void route(String path, Lane lane, Handler handler) {
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            Map<String, String> params = acceptGet(exchange);
+            if (params == null) {
+                return;
+            }
+            if (lane == null) {
+                respond(exchange, JSON, () -> handler.handle(exchange, params));
+                return;
+            }
+
+            String key = requestKey(path, params);
+            String cached = cache.get(key);
+            if (cached != null) {
+                send(exchange, 200, JSON, cached);
+                lane.recordLatency(System.nanoTime() - start);
+                return;
+            }
+            lane.submit(() -> {
+                // Identical requests arriving together share one computation; the
+                // generation keeps a request made after a reindex off an older flight
+                long generation = cache.getGeneration();
+                respond(exchange, JSON, () -> flights.execute(key + "@" + generation, () -> {
+                    String result = handler.handle(exchange, params);
+                    cache.put(key, result, generation);
+                    return result;
+                }));
+                lane.recordLatency(System.nanoTime() - start);
+            }, () -> shed(exchange, lane));
+        });
+    }
+
+    // Batch lane, bypassing the response cache and request coalescing, which would both
+    // hold the whole body in memory
+    private void stream(String path, String contentType, StreamingHandler handler) {
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            Map<String, String> params = acceptGet(exchange);
+            if (params == null) {
+                return;
+            }
+            batch.submit(() -> {
+                respondStreaming(exchange, contentType, handler, params);
+                batch.recordLatency(System.nanoTime() - start);
+            }, () -> shed(exchange, batch));
+        });
+    }
+
+    // The query parameters of a GET, or null once an error has been sent
+    private Map<String, String> acceptGet(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, JSON, error("Only GET is supported"));
+            return null;
+        }
+        try {
+            return parseQuery(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, JSON, error("Malformed query string"));
+            return null;
+        }
+    }
+
+    // Lookups against a registered project run in the interactive lane but bypass the
+    // response cache, which is invalidated only when this server's own index changes
+    private void serveProject(HttpExchange exchange) {
+        long start = System.nanoTime();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, JSON, error("Only GET is supported"));
+                return;
+            }
+            String rest = exchange.getRequestURI().getPath().substring(PROJECTS_PATH.length());
+            int slash = rest.indexOf('/');
+            String name = slash < 0 ? rest : rest.substring(0, slash);
+            ProjectRegistry.Project project = projects.get(name);
+            if (project == null) {
+                send(exchange, 404, JSON, error("Unknown project: " + name));
+                return;
+            }
+            String endpoint = slash < 0 ? "" : rest.substring(slash + 1);
+            if (!PROJECT_ENDPOINTS.contains(endpoint)) {
+                send(exchange, 404, JSON, error("Unknown endpoint: " + endpoint));
+                return;
+            }
+            Map<String, String> params;
+            try {
+                params = parseQuery(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, JSON, error("Malformed query string"));
+                return;
+            }
+            interactive.submit(() -> {
+                respond(exchange, JSON, () -> projectQuery(project, endpoint, params));
+                interactive.recordLatency(System.nanoTime() - start);
+            }, () -> shed(exchange, interactive));
+        } catch (IOException e) {
+            logger.debug("Could not send response for " + exchange.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    private String projectQuery(ProjectRegistry.Project project, String endpoint, Map<String, String> params)
+            throws Exception {
+        MethodQuery query = project.getMethodQuery();
+        switch (endpoint) {
+            case "method_calls":
+                return methodCalls(projects.graph(project), params);
+            case "calls/from":
+                return writeCalls(query.findMethodCalls(required(params, "class"), required(params, "method"),
+                        params.get("params")));
+            case "calls/to":
+                return writeCalls(query.findMethodCallsTo(required(params, "class"), required(params, "method"),
+                        params.get("params")));
+            case "calls/scope":
+                return writeCalls(query.findMethodCallsByScope(required(params, "scope")));
+            default:
+                return writeMethods(query.findMethodsBySignature(required(params, "name"),
+                        params.getOrDefault("returnType", ""), params.getOrDefault("params", "")));
+        }
+    }
+
+    private String listProjects(HttpExchange exchange, Map<String, String> params) {
+        JsonWriter json = new JsonWriter().beginObject()
+                .field("budgetBytes", projects.getBudgetBytes())
+                .field("residentBytes", projects.getResidentBytes())
+                .field("loads", projects.getLoads())
+                .field("evictions", projects.getEvictions())
+                .name("projects").beginArray();
+        for (ProjectRegistry.Project project : projects.getProjects()) {
+            json.beginObject()
+                    .field("name", project.getName())
+                    .field("resident", project.isResident())
+                    .field("graphBytes", project.getGraphBytes())
+                    .field("openConnections", project.getOpenConnections())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    // Precomputed artifacts are copied from disk as stored, gzip and all, so a request
+    // costs a file open and a transfer; a matching If-None-Match costs nothing at all
+    private void serveArtifact(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, JSON, error("Only GET is supported"));
+                return;
+            }
+            String name = exchange.getRequestURI().getPath().substring(ARTIFACTS_PATH.length());
+            try (ArtifactStore.Lease lease = artifacts.open(name)) {
+                if (lease == null) {
+                    send(exchange, 404, JSON, error("Unknown artifact: " + name));
+                    return;
+                }
+                sendArtifact(exchange, lease.getArtifact());
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send artifact " + exchange.getRequestURI() + ": " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // The lease keeps the artifact's file in place until the transfer is done
+    private void sendArtifact(HttpExchange exchange, ArtifactStore.Artifact artifact) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", artifact.getEtag());
+        // Clients may keep the artifact but must revalidate, which is a 304 until the next reindex
+        headers.set("Cache-Control", "no-cache");
+        if (matchesEtag(exchange.getRequestHeaders().getFirst("If-None-Match"), artifact.getEtag())) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        headers.set("Content-Type", artifact.getContentType());
+        headers.set("Vary", "Accept-Encoding");
+        boolean gzip = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(artifact.getPath(), StandardOpenOption.READ)) {
+            if (gzip) {
+                exchange.sendResponseHeaders(200, file.size());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long position = 0;
+                    long size = file.size();
+                    while (position < size) {
+                        position += file.transferTo(position, size - position, target);
+                    }
+                }
+            } else {
+                // Rare: clients that cannot take gzip get it inflated on the way out
+                exchange.sendResponseHeaders(200, 0);
+                try (InputStream in = new GZIPInputStream(Channels.newInputStream(file));
+                     OutputStream out = exchange.getResponseBody()) {
+                    in.transferTo(out);
+                }
+            }
+        }
+    }
+
+    static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").equals("q=0");
+            }
+        }
+        return false;
+    }
+
+    private void respond(HttpExchange exchange, String contentType, Callable<String> handler) {
+        try {
+            try {
+                send(exchange, 200, contentType, handler.call());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, JSON, error(e.getMessage()));
+            } catch (ProjectRegistry.GraphTooLargeException e) {
+                // Retrying will not help, unlike a 503; the SQL-backed endpoints still answer
+                send(exchange, 507, JSON, error(e.getMessage()));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Failed to handle " + exchange.getRequestURI(), e);
+                send(exchange, 500, JSON, error("Internal error"));
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send response for " + exchange.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    // Chunked, so the body goes out as it is written; an error after the status line can
+    // only cut the response short
+    private void respondStreaming(HttpExchange exchange, String contentType, StreamingHandler handler,
+                                  Map<String, String> params) {
+        try {
+            Body body;
+            try {
+                body = handler.prepare(exchange, params);
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, JSON, error(e.getMessage()));
+                return;
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Failed to handle " + exchange.getRequestURI(), e);
+                send(exchange, 500, JSON, error("Internal error"));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                    StandardCharsets.UTF_8))) {
+                body.writeTo(out);
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send response for " + exchange.getRequestURI() + ": " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Body text(String body) {
+        return out -> out.write(body);
+    }
+
+    private void shed(HttpExchange exchange, Lane lane) {
+        logger.debug("Shedding " + exchange.getRequestURI() + " from the " + lane.getName() + " lane");
+        exchange.getResponseHeaders().set("Retry-After", Long.toString(lane.getRetryAfterSeconds()));
+        try {
+            send(exchange, 503, JSON, error("Server busy, retry later"));
+        } catch (IOException e) {
+            logger.debug("Could not send response for " + exchange.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String health(HttpExchange exchange, Map<String, String> params) {
+        return new JsonWriter().beginObject()
+                .field("status", "ok")
+                .field("uptimeMillis", System.currentTimeMillis() - startedAt)
+                .field("virtualThreads", RequestExecutors.useVirtualThreads())
+                .field("connections", connections.getOpenConnections())
+                .field("idleConnections", connections.getIdleConnections())
+                .field("graphCalls", callGraph.size())
+                .field("cachedResponses", cache.size())
+                .field("cacheHits", cache.getHits())
+                .field("cacheMisses", cache.getMisses())
+                .field("queryExecutions", flights.getExecutions())
+                .field("coalescedRequests", flights.getCoalesced())
+                .field("inFlightQueries", flights.getInFlight())
+                .field("artifacts", artifacts.size())
+                .endObject().toString();
+    }
+
+    private String metrics(HttpExchange exchange, Map<String, String> params) {
+        JsonWriter json = new JsonWriter().beginObject().name("lanes").beginArray();
+        for (Lane lane : Arrays.asList(interactive, batch)) {
+            LatencyHistogram latency = lane.getLatency();
+            json.beginObject()
+                    .field("name", lane.getName())
+                    .field("threads", lane.getThreads())
+                    .field("active", lane.getActive())
+                    .field("queued", lane.getQueued())
+                    .field("completed", lane.getCompleted())
+                    .field("rejected", lane.getRejected())
+                    .field("timedOut", lane.getTimedOut())
+                    .field("requests", latency.getCount())
+                    .field("meanMicros", latency.getMeanMicros())
+                    .field("p50Micros", latency.percentileMicros(50))
+                    .field("p90Micros", latency.percentileMicros(90))
+                    .field("p99Micros", latency.percentileMicros(99))
+                    .field("maxMicros", latency.getMaxMicros())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    private String callsByContext(HttpExchange exchange, Map<String, String> params) {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (BOOLEAN_FILTERS.contains(param.getKey())) {
+                filters.put(param.getKey(), Boolean.parseBoolean(param.getValue()));
+            } else if (TEXT_FILTERS.contains(param.getKey())) {
+                filters.put(param.getKey(), param.getValue());
+            } else if (!param.getKey().equals("class") && !param.getKey().equals("method")
+                    && !param.getKey().equals("params")) {
+                throw new IllegalArgumentException("Unknown filter: " + param.getKey());
+            }
+        }
+        return writeCalls(methodQuery.findMethodCallsByContext(required(params, "class"),
+                required(params, "method"), required(params, "params"), filters));
+    }
+
+    private String transitiveCalls(HttpExchange exchange, Map<String, String> params) {
+        int depth = DEFAULT_TRANSITIVE_DEPTH;
+        if (params.containsKey("depth")) {
+            try {
+                depth = Integer.parseInt(params.get("depth"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("depth must be a number");
+            }
+            if (depth < 1 || depth > MAX_TRANSITIVE_DEPTH) {
+                throw new IllegalArgumentException("depth must be between 1 and " + MAX_TRANSITIVE_DEPTH);
+            }
+        }
+        return writeCalls(methodQuery.findTransitiveCalls(required(params, "class"), required(params, "method"),
+                params.get("params"), depth));
+    }
+
+    private String neighbourhood(HttpExchange exchange, Map<String, String> params) {
+        AsyncMethodQuery.Neighbourhood result = asyncQuery.findNeighbourhood(required(params, "class"),
+                required(params, "method"), params.get("params")).join();
+        JsonWriter json = new JsonWriter().beginObject();
+        json.name("callers").raw(writeCalls(result.getCallers()));
+        json.name("callees").raw(writeCalls(result.getCallees()));
+        return json.endObject().toString();
+    }
+
+    // Whole-project statistics, computed from the in-memory graph
+    private String statistics(HttpExchange exchange, Map<String, String> params) {
+        List<MethodCall> calls = callGraph.getCalls();
+        JsonWriter json = new JsonWriter().beginObject().field("totalCalls", calls.size());
+        writeCounts(json, "byScope", countBy(calls, MethodCall::getScope), Integer.MAX_VALUE);
+        writeCounts(json, "byContext", countBy(calls, MethodCall::getCallContext), Integer.MAX_VALUE);
+        writeCounts(json, "mostCalled", countBy(calls, call ->
+                call.getCalledClass() + "." + call.getCalledMethod() + call.getCalledParameters()), TOP_METHODS);
+        writeCounts(json, "mostCalling", countBy(calls, call ->
+                call.getCallerClass() + "." + call.getCallerMethod() + call.getCallerParameters()), TOP_METHODS);
+        return json.endObject().toString();
+    }
+
+    private static Map<String, Long> countBy(List<MethodCall> calls, Function<MethodCall, String> key) {
+        return calls.stream().collect(Collectors.groupingBy(call -> String.valueOf(key.apply(call)),
+                Collectors.counting()));
+    }
+
+    private static void writeCounts(JsonWriter json, String name, Map<String, Long> counts, int limit) {
+        json.name(name).beginArray();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .forEach(entry -> json.beginObject()
+                        .field("name", entry.getKey())
+                        .field("count", entry.getValue())
+                        .endObject());
+        json.endArray();
+    }
+
+    private Body exportCalls(HttpExchange exchange, Map<String, String> params) {
+        List<MethodCall> calls = callGraph.findCalls(params.get("caller_class"), params.get("caller_method"),
+                params.get("called_class"), params.get("called_method"));
+        return out -> methodQuery.exportMethodCallsToCSV(calls, out);
+    }
+
+    private static String methodCalls(CallGraph graph, Map<String, String> params) {
+        int limit = DEFAULT_METHOD_CALLS_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit must be a number");
+            }
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+        }
+        List<MethodCall> calls = graph.findCalls(params.get("caller_class"), params.get("caller_method"),
+                params.get("called_class"), params.get("called_method"));
+        return writeViewerCalls(calls, limit);
+    }
+
+    // Same shape as the Flask viewer's responses: {"success": true, "method_calls": [...]}
+    static String writeViewerCalls(List<MethodCall> calls, int limit) {
+        int count = Math.min(calls.size(), limit);
+        JsonWriter json = new JsonWriter().beginObject()
+                .field("success", true)
+                .field("total", calls.size())
+                .field("count", count)
+                .name("method_calls").beginArray();
+        for (MethodCall call : calls.subList(0, count)) {
+            json.beginObject()
+                    .field("id", call.getId())
+                    .field("caller_class", call.getCallerClass())
+                    .field("caller_method", call.getCallerMethod())
+                    .field("caller_parameters", call.getCallerParameters())
+                    .field("called_class", call.getCalledClass())
+                    .field("called_method", call.getCalledMethod())
+                    .field("called_parameters", call.getCalledParameters())
+                    .field("line_number", call.getLineNumber())
+                    .field("scope", call.getScope())
+                    .field("call_context", call.getCallContext())
+                    .field("is_in_try_block", call.isInTryBlock())
+                    .field("is_in_catch_block", call.isInCatchBlock())
+                    .field("is_in_finally_block", call.isInFinallyBlock())
+                    .field("is_in_loop", call.isInLoop())
+                    .field("loop_type", call.getLoopType())
+                    .field("is_in_conditional", call.isInConditional())
+                    .field("conditional_type", call.getConditionalType())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    static String writeCalls(List<MethodCall> calls) {
+        JsonWriter json = new JsonWriter().beginObject().field("count", calls.size()).name("calls").beginArray();
+        for (MethodCall call : calls) {
+            json.beginObject()
+                    .field("id", call.getId())
+                    .field("lineNumber", call.getLineNumber())
+                    .field("callerClass", call.getCallerClass())
+                    .field("callerMethod", call.getCallerMethod())
+                    .field("callerParameters", call.getCallerParameters())
+                    .field("calledClass", call.getCalledClass())
+                    .field("calledMethod", call.getCalledMethod())
+                    .field("calledParameters", call.getCalledParameters())
+                    .field("scope", call.getScope())
+                    .field("callContext", call.getCallContext())
+                    .field("inTryBlock", call.isInTryBlock())
+                    .field("inCatchBlock", call.isInCatchBlock())
+                    .field("inFinallyBlock", call.isInFinallyBlock())
+                    .field("inLoop", call.isInLoop())
+                    .field("loopType", call.getLoopType())
+                    .field("inConditional", call.isInConditional())
+                    .field("conditionalType", call.getConditionalType())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    static String writeMethods(List<MethodInfo> methods) {
+        JsonWriter json = new JsonWriter().beginObject().field("count", methods.size()).name("methods").beginArray();
+        for (MethodInfo method : methods) {
+            json.beginObject()
+                    .field("id", method.getId())
+                    .field("packageName", method.getPackageName())
+                    .field("className", method.getClassName())
+                    .field("methodName", method.getMethodName())
+                    .field("returnType", method.getReturnType())
+                    .field("parameters", method.getParameters())
+                    .field("static", method.isStatic())
+                    .field("public", method.isPublic())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    private static String error(String message) {
+        return new JsonWriter().beginObject().field("error", message).endObject().toString();
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    // Same request regardless of parameter order or percent-encoding
+    static String requestKey(String path, Map<String, String> params) {
+        StringBuilder key = new StringBuilder(path);
+        char separator = '?';
+        for (Map.Entry<String, String> param : new TreeMap<>(params).entrySet()) {
+            key.append(separator)
+                    .append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8)).append('=')
+                    .append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,472 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.CallGraph;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.util.JsonWriter;
+import com.jps.analysis.visualization.MethodCallVisualizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Artifacts rendered once per index instead of once per request, stored gzip-compressed
+// on disk with a strong ETag over the compressed bytes:
+//
+//   dependencies.dot               class dependency graph of the whole project
+//   interactive.html               the interactive D3 visualization
+//   packages/<package>.dot         dependency graph of the calls made from one package
+//   classes/<class>.json           callers and callees of one class
+//
+// Each rebuild writes a fresh generation directory and then swaps the index. Readers
+// open artifacts through a Lease, and a replaced generation is deleted only once its
+// last lease is closed, so a request that looked an artifact up just before a rebuild
+// can still open and stream it.
+//
+// A rebuild renders only the artifacts whose calls changed. Every artifact records a
+// digest of the calls it was rendered from; when the new graph gives the same digest,
+// the previous file is linked into the new generation as it is, ETag included. A
+// reindex of a few files therefore rewrites the class and package artifacts those
+// files' calls appear in, plus the two whole-project artifacts. A graph whose calls
+// all digest the same as the current generation's builds nothing at all.
+//
+// The index command builds the artifacts next to the database (artifacts.dir, default
+// <database file>-artifacts) and each generation ends with a manifest, so a store opened
+// later, such as the analysis server's, adopts the newest complete generation instead
+// of rendering its own. Only one process should write a directory at a time: opening a
+// store removes unfinished and superseded generations, and a server only sees what a
+// later index command built once it is restarted or reindexes itself.
+public class ArtifactStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactStore.class);
+    private static final String MANIFEST = "manifest.tsv";
+    private static final String GENERATION_PREFIX = "gen-";
+
+    private final Path root;
+    private final boolean temporary;
+    private final MethodCallVisualizer visualizer = new MethodCallVisualizer();
+    private volatile Generation current = new Generation(null, Collections.emptyMap());
+    private int generation;
+
+    public static class Artifact {
+        private final String name;
+        private final Path path;
+        private final String etag;
+        private final String contentType;
+        private final long compressedLength;
+        private final String inputs;
+
+        Artifact(String name, Path path, String etag, String contentType, long compressedLength, String inputs) {
+            this.name = name;
+            this.path = path;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.compressedLength = compressedLength;
+            this.inputs = inputs;
+        }
+
+        public String getName() { return name; }
+        public Path getPath() { return path; }
+        public String getEtag() { return etag; }
+        public String getContentType() { return contentType; }
+        public long getCompressedLength() { return compressedLength; }
+    }
+
+    // The persistent artifact directory of an index, or null for an in-memory database
+    public static Path directoryFor(String dbUrl) {
+        String dir = System.getProperty("artifacts.dir");
+        if (dir != null) {
+            return Path.of(dir);
+        }
+        if (!dbUrl.startsWith("jdbc:sqlite:") || dbUrl.contains(":memory:")) {
+            return null;
+        }
+        return Path.of(dbUrl.substring("jdbc:sqlite:".length()) + "-artifacts");
+    }
+
+    // The index's persistent store, or a temporary directory removed on close when there is none
+    public static ArtifactStore create(String dbUrl) throws IOException {
+        Path dir = directoryFor(dbUrl);
+        if (dir != null) {
+            return new ArtifactStore(dir, false);
+        }
+        return new ArtifactStore(Files.createTempDirectory("jps-artifacts"), true);
+    }
+
+    public ArtifactStore(Path root, boolean temporary) throws IOException {
+        this.root = root;
+        this.temporary = temporary;
+        Files.createDirectories(root);
+        Path newest = null;
+        List<Path> generations = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(root)) {
+            entries.filter(path -> generationNumber(path) > 0).forEach(generations::add);
+        }
+        for (Path directory : generations) {
+            int number = generationNumber(directory);
+            generation = Math.max(generation, number);
+            if (Files.exists(directory.resolve(MANIFEST))
+                    && (newest == null || number > generationNumber(newest))) {
+                newest = directory;
+            }
+        }
+        if (newest != null) {
+            try {
+                current = new Generation(newest, readManifest(newest));
+                logger.info("Adopted " + current.artifacts.size() + " artifacts from " + newest);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not read artifacts in " + newest + ": " + e.getMessage());
+                newest = null;
+            }
+        }
+        // Unfinished generations and the ones the adopted one replaced
+        for (Path directory : generations) {
+            if (!directory.equals(newest)) {
+                deleteTree(directory);
+            }
+        }
+    }
+
+    // The number in a gen-<n> directory name, or 0 for anything else
+    private static int generationNumber(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(GENERATION_PREFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // A replaced generation may vanish at any time; use open() to read the file
+    public Artifact get(String name) {
+        return current.artifacts.get(name);
+    }
+
+    // The current artifact, kept on disk until the lease is closed; null if there is none
+    public Lease open(String name) {
+        while (true) {
+            Generation generation = current;
+            Artifact artifact = generation.artifacts.get(name);
+            if (artifact == null) {
+                return null;
+            }
+            if (generation.acquire()) {
+                return new Lease(generation, artifact);
+            }
+            // Replaced and deleted since it was read; its successor is current by now
+        }
+    }
+
+    public int size() {
+        return current.artifacts.size();
+    }
+
+    public synchronized void rebuild(CallGraph graph) throws IOException {
+        long start = System.nanoTime();
+        Generation previous = current;
+        List<MethodCall> calls = graph.getCalls();
+        String allCalls = fingerprint(calls);
+        // Every artifact is rendered from these calls, so none of them would change
+        Artifact whole = previous.artifacts.get("dependencies.dot");
+        if (whole != null && whole.inputs.equals(allCalls)) {
+            logger.info("Artifacts are up to date with the " + calls.size() + " calls in the index");
+            return;
+        }
+        Path target = root.resolve(GENERATION_PREFIX + (++generation));
+        deleteTree(target);
+        Files.createDirectories(target);
+
+        Map<String, Artifact> built = new HashMap<>();
+        Builder builder = new Builder(previous, target, built);
+        builder.write("dependencies.dot", "text/vnd.graphviz; charset=utf-8", allCalls,
+                writer -> visualizer.generateDependencyGraph(calls, writer));
+        builder.write("interactive.html", "text/html; charset=utf-8", allCalls,
+                writer -> visualizer.generateInteractiveVisualization(calls, writer));
+
+        Map<String, List<MethodCall>> byPackage = new TreeMap<>();
+        Map<String, List<MethodCall>> outgoing = new TreeMap<>();
+        Map<String, List<MethodCall>> incoming = new HashMap<>();
+        for (MethodCall call : calls) {
+            byPackage.computeIfAbsent(packageOf(call.getCallerClass()), k -> new ArrayList<>()).add(call);
+            outgoing.computeIfAbsent(call.getCallerClass(), k -> new ArrayList<>()).add(call);
+            incoming.computeIfAbsent(call.getCalledClass(), k -> new ArrayList<>()).add(call);
+        }
+        for (Map.Entry<String, List<MethodCall>> entry : byPackage.entrySet()) {
+            builder.write("packages/" + entry.getKey() + ".dot", "text/vnd.graphviz; charset=utf-8",
+                    fingerprint(entry.getValue()), writer -> visualizer.generateDependencyGraph(entry.getValue(), writer));
+        }
+        Map<String, List<MethodCall>> classes = new TreeMap<>(outgoing);
+        for (String className : incoming.keySet()) {
+            classes.putIfAbsent(className, Collections.emptyList());
+        }
+        for (String className : classes.keySet()) {
+            List<MethodCall> callers = incoming.getOrDefault(className, Collections.emptyList());
+            List<MethodCall> callees = outgoing.getOrDefault(className, Collections.emptyList());
+            builder.write("classes/" + className + ".json", "application/json; charset=utf-8",
+                    fingerprint(callers, callees), writer -> {
+                JsonWriter json = new JsonWriter().beginObject().field("class", className);
+                json.name("callers").raw(AnalysisServer.writeCalls(callers));
+                json.name("callees").raw(AnalysisServer.writeCalls(callees));
+                writer.write(json.endObject().toString());
+            });
+        }
+
+        writeManifest(target, built);
+        current = new Generation(target, Collections.unmodifiableMap(built));
+        previous.retire();
+        logger.info("Built " + built.size() + " artifacts (" + builder.reused + " unchanged) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Written last and moved into place, so only a complete generation has one
+    private static void writeManifest(Path directory, Map<String, Artifact> artifacts) throws IOException {
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Artifact artifact : new TreeMap<>(artifacts).values()) {
+                writer.write(String.join("\t", artifact.name, artifact.contentType, artifact.etag,
+                        Long.toString(artifact.compressedLength), artifact.inputs));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, Artifact> readManifest(Path directory) throws IOException {
+        Map<String, Artifact> artifacts = new HashMap<>();
+        for (String line : Files.readAllLines(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 5) {
+                throw new IOException("Malformed manifest line: " + line);
+            }
+            Path path = directory.resolve(fields[0] + ".gz");
+            if (!Files.exists(path)) {
+                throw new IOException("Missing artifact " + path);
+            }
+            artifacts.put(fields[0], new Artifact(fields[0], path, fields[2], fields[1],
+                    Long.parseLong(fields[3]), fields[4]));
+        }
+        return Collections.unmodifiableMap(artifacts);
+    }
+
+    private static String packageOf(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot <= 0 ? "(default)" : className.substring(0, dot);
+    }
+
+    private interface Renderer {
+        void render(Writer writer) throws IOException;
+    }
+
+    // Writes the artifacts of one generation, taking over unchanged ones from the previous
+    private static class Builder {
+        private final Generation previous;
+        private final Path directory;
+        private final Map<String, Artifact> built;
+        private int reused;
+
+        Builder(Generation previous, Path directory, Map<String, Artifact> built) {
+            this.previous = previous;
+            this.directory = directory;
+            this.built = built;
+        }
+
+        void write(String name, String contentType, String inputs, Renderer renderer) throws IOException {
+            Path path = directory.resolve(name + ".gz");
+            Files.createDirectories(path.getParent());
+            Artifact old = previous.artifacts.get(name);
+            if (old != null && old.inputs.equals(inputs)) {
+                try {
+                    Files.createLink(path, old.path);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(old.path, path);
+                }
+                built.put(name, new Artifact(name, path, old.etag, contentType, old.compressedLength, inputs));
+                reused++;
+                return;
+            }
+            MessageDigest digest = sha256();
+            try (OutputStream file = Files.newOutputStream(path);
+                 DigestOutputStream digested = new DigestOutputStream(file, digest);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(
+                         new GZIPOutputStream(digested, 8192), StandardCharsets.UTF_8))) {
+                renderer.render(writer);
+            }
+            String etag = "\"" + toHex(digest.digest(), 16) + "\"";
+            built.put(name, new Artifact(name, path, etag, contentType, Files.size(path), inputs));
+        }
+    }
+
+    // Digest of every call field a renderer may read, in order
+    @SafeVarargs
+    private static String fingerprint(List<MethodCall>... parts) {
+        MessageDigest digest = sha256();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            for (List<MethodCall> calls : parts) {
+                out.writeInt(calls.size());
+                for (MethodCall call : calls) {
+                    out.writeInt(call.getId());
+                    out.writeInt(call.getLineNumber());
+                    for (String text : new String[] {call.getCallerClass(), call.getCallerMethod(),
+                            call.getCallerParameters(), call.getCalledClass(), call.getCalledMethod(),
+                            call.getCalledParameters(), call.getScope(), call.getCallContext(), call.getLoopType(),
+                            call.getConditionalType()}) {
+                        writeText(out, text);
+                    }
+                    out.writeBoolean(call.isInTryBlock());
+                    out.writeBoolean(call.isInCatchBlock());
+                    out.writeBoolean(call.isInFinallyBlock());
+                    out.writeBoolean(call.isInLoop());
+                    out.writeBoolean(call.isInConditional());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Digest stream failed", e);
+        }
+        return toHex(digest.digest(), 16);
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            hex.append(String.format("%02x", bytes[i]));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteTree(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    logger.warn("Could not delete artifact " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not clean up " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // A persistent store keeps its current generation on disk for the next one opened
+    @Override
+    public synchronized void close() {
+        Generation last = current;
+        current = new Generation(null, Collections.emptyMap());
+        if (temporary) {
+            last.retire();
+            deleteTree(root);
+        }
+    }
+
+    // Artifacts published together, and the readers still using their files
+    private static class Generation {
+        private final Path directory;
+        private final Map<String, Artifact> artifacts;
+        private int readers;
+        private boolean retired;
+        private boolean deleted;
+
+        Generation(Path directory, Map<String, Artifact> artifacts) {
+            this.directory = directory;
+            this.artifacts = artifacts;
+        }
+
+        synchronized boolean acquire() {
+            if (deleted) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        synchronized void release() {
+            if (--readers == 0 && retired) {
+                delete();
+            }
+        }
+
+        synchronized void retire() {
+            retired = true;
+            if (readers == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            deleted = true;
+            if (directory != null) {
+                deleteTree(directory);
+            }
+        }
+    }
+
+    // An artifact whose file stays in place until the lease is closed
+    public static class Lease implements AutoCloseable {
+        private final Generation generation;
+        private final Artifact artifact;
+        private boolean closed;
+
+        Lease(Generation generation, Artifact artifact) {
+            this.generation = generation;
+            this.artifact = artifact;
+        }
+
+        public Artifact getArtifact() {
+            return artifact;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                generation.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact framing used by LocalSocketServer. Every message is a varint payload length
+// followed by the payload. Integers are unsigned LEB128 varints; strings are a varint
+// byte length and UTF-8 bytes.
+//
+// Request:  op byte, then the op's arguments (strings, depth as a varint)
+//   0 PING
+//   1 CALLS_FROM      class, method, params ("" matches any overload)
+//   2 CALLS_TO        class, method, params
+//   3 CALLS_BY_SCOPE  scope
+//   4 TRANSITIVE      class, method, params, depth (1 to 20)
+//   5 METHOD_SEARCH   name, returnType, params
+//
+// Response: status byte (0 ok, 1 error). Errors carry a message string. Results start
+// with a dictionary of the distinct strings they use; rows then refer to strings by
+// varint index + 1, with 0 meaning null, so repeated class and method names cost a
+// byte or two each.
+//   calls:   id, line, callerClass, callerMethod, callerParams, calledClass, calledMethod,
+//            calledParams, scope, callContext, flags (try, catch, finally, loop,
+//            conditional from bit 0), loopType, conditionalType
+//   methods: id, package, class, method, returnType, params, flags (static, public)
+//
+// A server with too many connections sends one error response without waiting for a
+// request, then closes the connection.
+public final class BinaryProtocol {
+    public static final byte PING = 0;
+    public static final byte CALLS_FROM = 1;
+    public static final byte CALLS_TO = 2;
+    public static final byte CALLS_BY_SCOPE = 3;
+    public static final byte TRANSITIVE = 4;
+    public static final byte METHOD_SEARCH = 5;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    // Requests are a handful of names; anything larger is a confused or hostile client
+    public static final int MAX_REQUEST_BYTES = 64 * 1024;
+
+    private BinaryProtocol() {
+    }
+
+    // Growable output buffer
+    public static class Encoder {
+        private byte[] bytes;
+        private int size;
+
+        public Encoder() {
+            this(256);
+        }
+
+        public Encoder(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        public Encoder writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        public Encoder writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        // Null is sent as "", which every MethodQuery filter treats as absent
+        public Encoder writeString(String value) {
+            byte[] utf8 = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+            return this;
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Writes the length prefix and payload in one gathering write where possible
+        public void writeFrame(WritableByteChannel channel) throws IOException {
+            byte[] prefix = new byte[5];
+            int prefixLength = 0;
+            int length = size;
+            while ((length & ~0x7F) != 0) {
+                prefix[prefixLength++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            prefix[prefixLength++] = (byte) length;
+            ByteBuffer head = ByteBuffer.wrap(prefix, 0, prefixLength);
+            ByteBuffer body = ByteBuffer.wrap(bytes, 0, size);
+            if (channel instanceof GatheringByteChannel) {
+                ByteBuffer[] buffers = {head, body};
+                while (body.hasRemaining()) {
+                    ((GatheringByteChannel) channel).write(buffers);
+                }
+            } else {
+                while (head.hasRemaining()) {
+                    channel.write(head);
+                }
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            }
+        }
+    }
+
+    // Reads one payload at a time from a buffered channel
+    public static class Decoder {
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer;
+        private int frameEnd;
+
+        public Decoder(ReadableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(16 * 1024);
+            buffer.flip();
+        }
+
+        // Decodes a payload already in memory
+        public Decoder(byte[] payload) {
+            this.channel = null;
+            this.buffer = ByteBuffer.wrap(payload);
+            this.frameEnd = payload.length;
+        }
+
+        // Returns false on a clean end of stream between frames
+        public boolean nextFrame(int maxBytes) throws IOException {
+            buffer.position(Math.max(buffer.position(), frameEnd));
+            if (!fill(1, true)) {
+                return false;
+            }
+            long length = 0;
+            for (int shift = 0; ; shift += 7) {
+                fill(1, false);
+                byte b = buffer.get();
+                length |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                if (shift > 28) {
+                    throw new IOException("Malformed frame length");
+                }
+            }
+            if (length > maxBytes) {
+                throw new IOException("Frame of " + length + " bytes exceeds limit of " + maxBytes);
+            }
+            fill((int) length, false);
+            frameEnd = buffer.position() + (int) length;
+            return true;
+        }
+
+        private boolean fill(int needed, boolean eofAllowed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return true;
+            }
+            if (channel == null) {
+                throw new EOFException("Truncated payload");
+            }
+            if (buffer.capacity() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            frameEnd = 0;
+            while (buffer.position() < needed) {
+                if (channel.read(buffer) < 0) {
+                    if (eofAllowed && buffer.position() == 0) {
+                        buffer.flip();
+                        return false;
+                    }
+                    throw new EOFException("Connection closed mid-frame");
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.position() + bytes > frameEnd) {
+                throw new EOFException("Read past end of frame");
+            }
+        }
+
+        public int readByte() throws IOException {
+            require(1);
+            return buffer.get() & 0xFF;
+        }
+
+        public long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        public int readInt() throws IOException {
+            long value = readVarint();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Value out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        public String readString() throws IOException {
+            int length = readInt();
+            require(length);
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+
+    // Assigns each distinct string an index in order of first use
+    private static class Dictionary {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(value, index);
+                strings.add(value);
+            }
+            return index + 1;
+        }
+
+        void writeTo(Encoder out) {
+            out.writeVarint(strings.size());
+            for (String value : strings) {
+                out.writeString(value);
+            }
+        }
+    }
+
+    private static String[] readDictionary(Decoder in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readString();
+        }
+        return strings;
+    }
+
+    private static String deref(String[] dictionary, Decoder in) throws IOException {
+        int ref = in.readInt();
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > dictionary.length) {
+            throw new IOException("Dictionary reference out of range: " + ref);
+        }
+        return dictionary[ref - 1];
+    }
+
+    public static void writeCalls(Encoder out, List<MethodCall> calls) {
+        // Rows are encoded first so the dictionary is complete before it is written
+        Dictionary dictionary = new Dictionary();
+        Encoder rows = new Encoder(calls.size() * 16 + 16);
+        rows.writeVarint(calls.size());
+        for (MethodCall call : calls) {
+            rows.writeVarint(call.getId())
+                    .writeVarint(call.getLineNumber())
+                    .writeVarint(dictionary.ref(call.getCallerClass()))
+                    .writeVarint(dictionary.ref(call.getCallerMethod()))
+                    .writeVarint(dictionary.ref(call.getCallerParameters()))
+                    .writeVarint(dictionary.ref(call.getCalledClass()))
+                    .writeVarint(dictionary.ref(call.getCalledMethod()))
+                    .writeVarint(dictionary.ref(call.getCalledParameters()))
+                    .writeVarint(dictionary.ref(call.getScope()))
+                    .writeVarint(dictionary.ref(call.getCallContext()))
+                    .writeByte((call.isInTryBlock() ? 1 : 0)
+                            | (call.isInCatchBlock() ? 2 : 0)
+                            | (call.isInFinallyBlock() ? 4 : 0)
+                            | (call.isInLoop() ? 8 : 0)
+                            | (call.isInConditional() ? 16 : 0))
+                    .writeVarint(dictionary.ref(call.getLoopType()))
+                    .writeVarint(dictionary.ref(call.getConditionalType()));
+        }
+        dictionary.writeTo(out);
+        out.ensure(rows.size);
+        System.arraycopy(rows.bytes, 0, out.bytes, out.size, rows.size);
+        out.size += rows.size;
+    }
+
+    public static List<MethodCall> readCalls(Decoder in) throws IOException {
+        String[] dictionary = readDictionary(in);
+        int count = in.readInt();
+        List<MethodCall> calls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            int line = in.readInt();
+            String callerClass = deref(dictionary, in);
+            String callerMethod = deref(dictionary, in);
+            String callerParameters = deref(dictionary, in);
+            String calledClass = deref(dictionary, in);
+            String calledMethod = deref(dictionary, in);
+            String calledParameters = deref(dictionary, in);
+            String scope = deref(dictionary, in);
+            String callContext = deref(dictionary, in);
+            int flags = in.readByte();
+            String loopType = deref(dictionary, in);
+            String conditionalType = deref(dictionary, in);
+            calls.add(new MethodCall(id, line, callerClass, callerMethod, callerParameters, calledClass,
+                    calledMethod, calledParameters, scope, callContext, (flags & 1) != 0, (flags & 2) != 0,
+                    (flags & 4) != 0, (flags & 8) != 0, loopType, (flags & 16) != 0, conditionalType));
+        }
+        return calls;
+    }
+
+    public static void writeMethods(Encoder out, List<MethodInfo> methods) {
+        Dictionary dictionary = new Dictionary();
+        Encoder rows = new Encoder(methods.size() * 8 + 16);
+        rows.writeVarint(methods.size());
+        for (MethodInfo method : methods) {
+            rows.writeVarint(method.getId())
+                    .writeVarint(dictionary.ref(method.getPackageName()))
+                    .writeVarint(dictionary.ref(method.getClassName()))
+                    .writeVarint(dictionary.ref(method.getMethodName()))
+                    .writeVarint(dictionary.ref(method.getReturnType()))
+                    .writeVarint(dictionary.ref(method.getParameters()))
+                    .writeByte((method.isStatic() ? 1 : 0) | (method.isPublic() ? 2 : 0));
+        }
+        dictionary.writeTo(out);
+        out.ensure(rows.size);
+        System.arraycopy(rows.bytes, 0, out.bytes, out.size, rows.size);
+        out.size += rows.size;
+    }
+
+    public static List<MethodInfo> readMethods(Decoder in) throws IOException {
+        String[] dictionary = readDictionary(in);
+        int count = in.readInt();
+        List<MethodInfo> methods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            String packageName = deref(dictionary, in);
+            String className = deref(dictionary, in);
+            String methodName = deref(dictionary, in);
+            String returnType = deref(dictionary, in);
+            String parameters = deref(dictionary, in);
+            int flags = in.readByte();
+            methods.add(new MethodInfo(id, packageName, className, methodName, returnType, parameters,
+                    (flags & 1) != 0, (flags & 2) != 0));
+        }
+        return methods;
+    }
+}
@@ -0,0 +1,88 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.metrics.LatencyHistogram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// A priority lane: its own bounded executor, so slow batch work can only ever occupy
+// the batch lane's threads and queue. Work is shed instead of queued without bound:
+// when the queue is full, or when a task waited longer than the queue timeout by the
+// time a thread picks it up, the caller's onShed runs instead and the client is told
+// to retry later.
+//
+// Each lane reads server.lane.<name>.threads, .queue and .timeout.ms.
+public class Lane {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutNanos;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public static Lane configured(String name, int defaultThreads, int defaultQueue, long defaultTimeoutMillis) {
+        return new Lane(name, Integer.getInteger("server.lane." + name + ".threads", defaultThreads),
+                Integer.getInteger("server.lane." + name + ".queue", defaultQueue),
+                Long.getLong("server.lane." + name + ".timeout.ms", defaultTimeoutMillis));
+    }
+
+    public Lane(String name, int threads, int queueCapacity, long queueTimeoutMillis) {
+        this.name = name;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                RequestExecutors.threadFactory("analysis-" + name));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void submit(Runnable task, Runnable onShed) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                if (System.nanoTime() - enqueuedAt > queueTimeoutNanos) {
+                    timedOut.increment();
+                    onShed.run();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            onShed.run();
+        }
+    }
+
+    public void recordLatency(long nanos) {
+        latency.recordNanos(nanos);
+    }
+
+    // Suggested client back-off when this lane sheds a request
+    public long getRetryAfterSeconds() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(queueTimeoutNanos));
+    }
+
+    public String getName() { return name; }
+    public LatencyHistogram getLatency() { return latency; }
+    public int getActive() { return executor.getActiveCount(); }
+    public int getQueued() { return executor.getQueue().size(); }
+    public int getThreads() { return executor.getMaximumPoolSize(); }
+    public long getCompleted() { return completed.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getTimedOut() { return timedOut.sum(); }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,100 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+// Blocking client for LocalSocketServer; one request in flight per client
+public class LocalSocketClient implements AutoCloseable {
+    // Responses can be large, unlike requests
+    private static final int MAX_RESPONSE_BYTES = 256 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final BinaryProtocol.Decoder in;
+    private final BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+
+    public LocalSocketClient(Path socketPath) throws IOException {
+        this.channel = UnixSockets.openClient();
+        channel.connect(UnixSockets.address(socketPath));
+        this.in = new BinaryProtocol.Decoder(channel);
+    }
+
+    public void ping() throws IOException {
+        out.reset();
+        out.writeByte(BinaryProtocol.PING);
+        call();
+    }
+
+    public List<MethodCall> findMethodCalls(String className, String methodName, String parameters)
+            throws IOException {
+        return calls(BinaryProtocol.CALLS_FROM, className, methodName, parameters);
+    }
+
+    public List<MethodCall> findMethodCallsTo(String className, String methodName, String parameters)
+            throws IOException {
+        return calls(BinaryProtocol.CALLS_TO, className, methodName, parameters);
+    }
+
+    public List<MethodCall> findMethodCallsByScope(String scope) throws IOException {
+        out.reset();
+        out.writeByte(BinaryProtocol.CALLS_BY_SCOPE).writeString(scope);
+        call();
+        return BinaryProtocol.readCalls(in);
+    }
+
+    public List<MethodCall> findTransitiveCalls(String className, String methodName, String parameters,
+                                                int maxDepth) throws IOException {
+        out.reset();
+        out.writeByte(BinaryProtocol.TRANSITIVE).writeString(className).writeString(methodName)
+                .writeString(parameters).writeVarint(maxDepth);
+        call();
+        return BinaryProtocol.readCalls(in);
+    }
+
+    public List<MethodInfo> findMethodsBySignature(String methodName, String returnType, String parameters)
+            throws IOException {
+        out.reset();
+        out.writeByte(BinaryProtocol.METHOD_SEARCH).writeString(methodName)
+                .writeString(returnType).writeString(parameters);
+        call();
+        return BinaryProtocol.readMethods(in);
+    }
+
+    private List<MethodCall> calls(byte op, String className, String methodName, String parameters)
+            throws IOException {
+        out.reset();
+        out.writeByte(op).writeString(className).writeString(methodName)
+                .writeString(parameters);
+        call();
+        return BinaryProtocol.readCalls(in);
+    }
+
+    // A server that refused the connection has already answered and hung up, so its
+    // error is read even when sending the request failed
+    private void call() throws IOException {
+        IOException writeFailure = null;
+        try {
+            out.writeFrame(channel);
+        } catch (IOException e) {
+            writeFailure = e;
+        }
+        if (!in.nextFrame(MAX_RESPONSE_BYTES)) {
+            throw writeFailure != null ? writeFailure : new IOException("Server closed the connection");
+        }
+        if (in.readByte() != BinaryProtocol.STATUS_OK) {
+            throw new IOException("Server error: " + in.readString());
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
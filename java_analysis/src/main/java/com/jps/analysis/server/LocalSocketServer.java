@@ -0,0 +1,235 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.MethodQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// Answers BinaryProtocol requests over a Unix domain socket for local tools such as
+// editor plugins and git hooks, which keep one connection open and ask many small
+// questions. Each connection is served by its own thread (virtual where available)
+// reading frames in a loop; there is no HTTP parsing, no JSON and no TCP stack.
+// Connections beyond server.socket.connections (default 1024) are sent an error frame
+// and closed rather than left waiting for a thread.
+//
+// The socket file is only accessible to the user running the server (0600): it is
+// bound in a private directory and moved into place once its permissions are set.
+//
+// Started by AnalysisServer when server.socket names a socket path.
+public class LocalSocketServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LocalSocketServer.class);
+    private static final int MAX_TRANSITIVE_DEPTH = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS = 1024;
+
+    private final Path socketPath;
+    private final MethodQuery methodQuery;
+    private final ServerSocketChannel serverChannel;
+    private final ThreadFactory threads = RequestExecutors.threadFactory("analysis-socket");
+    private final int maxConnections = Integer.getInteger("server.socket.connections", DEFAULT_MAX_CONNECTIONS);
+    private final Set<SocketChannel> open = ConcurrentHashMap.newKeySet();
+    private final LongAdder requests = new LongAdder();
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public LocalSocketServer(Path socketPath, MethodQuery methodQuery) throws IOException {
+        this.socketPath = socketPath;
+        this.methodQuery = methodQuery;
+        // A socket file left by a previous run would make bind fail
+        Files.deleteIfExists(socketPath);
+        this.serverChannel = UnixSockets.openServer();
+        try {
+            bindPrivately();
+        } catch (IOException | RuntimeException e) {
+            serverChannel.close();
+            throw e;
+        }
+    }
+
+    // Binding creates the file with the process umask, so it is bound where nobody else
+    // can reach it, restricted, and then renamed into place
+    private void bindPrivately() throws IOException {
+        Path absolute = socketPath.toAbsolutePath();
+        Path privateDir;
+        try {
+            privateDir = Files.createTempDirectory(absolute.getParent(), ".jps-socket",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            logger.warn("Cannot restrict access to " + socketPath + " on this file system");
+            serverChannel.bind(UnixSockets.address(socketPath));
+            return;
+        }
+        Path bound = privateDir.resolve("s");
+        try {
+            serverChannel.bind(UnixSockets.address(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            Files.move(bound, absolute, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(bound);
+            Files.deleteIfExists(privateDir);
+        }
+    }
+
+    public synchronized void start() {
+        running = true;
+        acceptor = new Thread(this::accept, "analysis-socket-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Answering binary queries on " + socketPath);
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (open.size() >= maxConnections) {
+                    reject(channel);
+                    continue;
+                }
+                open.add(channel);
+                threads.newThread(() -> serve(channel)).start();
+            } catch (AsynchronousCloseException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Failed to accept connection on " + socketPath, e);
+                }
+            }
+        }
+    }
+
+    // Answers whatever the client sends first with the error, then hangs up
+    private void reject(SocketChannel channel) {
+        logger.warn("Refusing local connection: " + maxConnections + " connections are open");
+        try (channel) {
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder(64);
+            out.writeByte(BinaryProtocol.STATUS_ERROR).writeString("Too many connections, retry later");
+            out.writeFrame(channel);
+        } catch (IOException e) {
+            logger.debug("Could not refuse local connection: " + e.getMessage());
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        BinaryProtocol.Decoder in = new BinaryProtocol.Decoder(channel);
+        BinaryProtocol.Encoder out = new BinaryProtocol.Encoder(4096);
+        try (channel) {
+            while (in.nextFrame(BinaryProtocol.MAX_REQUEST_BYTES)) {
+                out.reset();
+                try {
+                    handle(in, out);
+                } catch (IllegalArgumentException e) {
+                    out.reset();
+                    out.writeByte(BinaryProtocol.STATUS_ERROR).writeString(e.getMessage());
+                } catch (RuntimeException e) {
+                    logger.error("Failed to answer binary request", e);
+                    out.reset();
+                    out.writeByte(BinaryProtocol.STATUS_ERROR).writeString("Internal error");
+                }
+                // Counted before the reply goes out, so a client that has its answer sees it counted
+                requests.increment();
+                out.writeFrame(channel);
+            }
+        } catch (IOException e) {
+            // Malformed frames and dropped clients end the connection
+            logger.debug("Closing local connection: " + e.getMessage());
+        } finally {
+            open.remove(channel);
+        }
+    }
+
+    private void handle(BinaryProtocol.Decoder in, BinaryProtocol.Encoder out) throws IOException {
+        int op = in.readByte();
+        switch (op) {
+            case BinaryProtocol.PING:
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                break;
+            case BinaryProtocol.CALLS_FROM: {
+                String className = in.readString();
+                String methodName = in.readString();
+                String parameters = in.readString();
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeCalls(out, methodQuery.findMethodCalls(className, methodName, parameters));
+                break;
+            }
+            case BinaryProtocol.CALLS_TO: {
+                String className = in.readString();
+                String methodName = in.readString();
+                String parameters = in.readString();
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeCalls(out, methodQuery.findMethodCallsTo(className, methodName, parameters));
+                break;
+            }
+            case BinaryProtocol.CALLS_BY_SCOPE: {
+                String scope = in.readString();
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeCalls(out, methodQuery.findMethodCallsByScope(scope));
+                break;
+            }
+            case BinaryProtocol.TRANSITIVE: {
+                String className = in.readString();
+                String methodName = in.readString();
+                String parameters = in.readString();
+                int depth = in.readInt();
+                if (depth <= 0 || depth > MAX_TRANSITIVE_DEPTH) {
+                    throw new IllegalArgumentException("depth must be between 1 and " + MAX_TRANSITIVE_DEPTH);
+                }
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeCalls(out, methodQuery.findTransitiveCalls(className, methodName, parameters,
+                        depth));
+                break;
+            }
+            case BinaryProtocol.METHOD_SEARCH: {
+                String name = in.readString();
+                String returnType = in.readString();
+                String parameters = in.readString();
+                out.writeByte(BinaryProtocol.STATUS_OK);
+                BinaryProtocol.writeMethods(out, methodQuery.findMethodsBySignature(name, returnType, parameters));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.error("Failed to close " + socketPath, e);
+        }
+        for (SocketChannel channel : open) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close local connection: " + e.getMessage());
+            }
+        }
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            logger.warn("Could not remove socket file " + socketPath + ": " + e.getMessage());
+        }
+    }
+}
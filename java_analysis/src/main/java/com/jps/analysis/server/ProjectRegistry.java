@@ -0,0 +1,308 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.db.ConnectionPool;
+import com.jps.analysis.query.CallGraph;
+import com.jps.analysis.query.MethodQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Many project indexes served from one process. Every project keeps its own small
+// read-only connection pool, so SQL lookups work for all of them at once; in-memory
+// call graphs are the expensive part and share one heap budget. Graphs are loaded on
+// first use and kept in least-recently-used order; the next request for an evicted
+// project reloads it from its database.
+//
+// Room is made before a load, not after: the graph's size is estimated from its row
+// count (CallGraph.estimateBytes, or the bytes per call measured when the project was
+// last loaded), the coldest graphs are dropped until the estimate fits, and the
+// estimate stays reserved until the graph is admitted. Cold loads are limited to
+// server.projects.loads at a time (default 1), so concurrent requests for different
+// projects cannot each pull a graph into memory at once. A project whose graph cannot
+// fit even in an empty budget fails with GraphTooLargeException instead of being
+// loaded; one that turns out larger than estimated is answered once and refused after.
+//
+// Configured with server.projects.dir (every *.db file in it is a project named after
+// the file), server.projects.budget.mb (default a quarter of the maximum heap),
+// server.projects.pool.size (connections per project, default 2) and
+// server.projects.loads.
+public class ProjectRegistry implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectRegistry.class);
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int DEFAULT_POOL_SIZE = 2;
+    private static final long POOL_TIMEOUT_MILLIS = 30_000;
+    private static final int DEFAULT_CONCURRENT_LOADS = 1;
+
+    private final long budgetBytes;
+    private final int poolSize;
+    private final Function<MethodQuery, CallGraph> loader;
+    private final ToLongFunction<MethodQuery> callCounter;
+    private final Semaphore coldLoads = new Semaphore(Math.max(1,
+            Integer.getInteger("server.projects.loads", DEFAULT_CONCURRENT_LOADS)), true);
+    private final Map<String, Project> projects = new ConcurrentHashMap<>();
+    // Access-ordered, guarded by this; eldest entry is the coldest resident graph
+    private final LinkedHashMap<String, Project> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final SingleFlight<String, CallGraph> loads = new SingleFlight<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long residentBytes;
+    // Estimates of the graphs being loaded; guarded by this
+    private long reservedBytes;
+
+    // The project's call graph would not fit in the budget even with nothing else resident
+    public static class GraphTooLargeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        GraphTooLargeException(String name, long bytes, long budgetBytes) {
+            super("The call graph of " + name + " needs ~" + bytes / (1024 * 1024) + " MB, more than the "
+                    + budgetBytes / (1024 * 1024) + " MB budget (server.projects.budget.mb)");
+        }
+    }
+
+    public static class Project {
+        private final String name;
+        private final String dbUrl;
+        private final ConnectionPool connections;
+        private final MethodQuery methodQuery;
+        private volatile CallGraph graph;
+        // Measured on the last load, 0 until then
+        private volatile long bytesPerCall;
+
+        Project(String name, String dbUrl, int poolSize) {
+            this.name = name;
+            this.dbUrl = dbUrl;
+            this.connections = new ConnectionPool(dbUrl, poolSize, POOL_TIMEOUT_MILLIS);
+            this.methodQuery = new MethodQuery(connections);
+        }
+
+        public String getName() { return name; }
+        public String getDbUrl() { return dbUrl; }
+        public MethodQuery getMethodQuery() { return methodQuery; }
+        public boolean isResident() { return graph != null; }
+        public int getOpenConnections() { return connections.getOpenConnections(); }
+
+        public long getGraphBytes() {
+            CallGraph current = graph;
+            return current == null ? 0 : current.getEstimatedBytes();
+        }
+    }
+
+    public static ProjectRegistry configured() throws IOException {
+        long defaultBudget = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+        ProjectRegistry registry = new ProjectRegistry(
+                Long.getLong("server.projects.budget.mb", defaultBudget) * 1024 * 1024,
+                Integer.getInteger("server.projects.pool.size", DEFAULT_POOL_SIZE));
+        String dir = System.getProperty("server.projects.dir");
+        if (dir != null) {
+            registry.registerDirectory(Path.of(dir));
+        }
+        return registry;
+    }
+
+    public ProjectRegistry(long budgetBytes, int poolSize) {
+        this(budgetBytes, poolSize, CallGraph::load, MethodQuery::countMethodCalls);
+    }
+
+    ProjectRegistry(long budgetBytes, int poolSize, Function<MethodQuery, CallGraph> loader,
+                    ToLongFunction<MethodQuery> callCounter) {
+        this.budgetBytes = budgetBytes;
+        this.poolSize = poolSize;
+        this.loader = loader;
+        this.callCounter = callCounter;
+    }
+
+    public void registerDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(".db") && Files.isRegularFile(file)) {
+                    register(fileName.substring(0, fileName.length() - 3), "jdbc:sqlite:" + file);
+                }
+            }
+        }
+        logger.info("Registered " + projects.size() + " projects from " + directory);
+    }
+
+    public Project register(String name, String dbUrl) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid project name: " + name);
+        }
+        Project project = new Project(name, dbUrl, poolSize);
+        if (projects.putIfAbsent(name, project) != null) {
+            project.connections.close();
+            throw new IllegalArgumentException("Project already registered: " + name);
+        }
+        return project;
+    }
+
+    public Project get(String name) {
+        return projects.get(name);
+    }
+
+    public Collection<Project> getProjects() {
+        return new TreeMap<>(projects).values();
+    }
+
+    // The project's graph, loading it from disk if it is not resident. Concurrent
+    // requests for a cold project share one load.
+    public CallGraph graph(Project project) throws Exception {
+        CallGraph graph = touch(project);
+        if (graph != null) {
+            return graph;
+        }
+        return loads.execute(project.name, () -> {
+            coldLoads.acquire();
+            try {
+                CallGraph current = touch(project);
+                if (current != null) {
+                    return current;
+                }
+                return load(project);
+            } finally {
+                coldLoads.release();
+            }
+        });
+    }
+
+    private CallGraph load(Project project) throws GraphTooLargeException, InterruptedException {
+        long calls = callCounter.applyAsLong(project.methodQuery);
+        long estimate = project.bytesPerCall > 0 ? calls * project.bytesPerCall : CallGraph.estimateBytes(calls);
+        reserve(project, estimate);
+        boolean admitted = false;
+        try {
+            long start = System.nanoTime();
+            CallGraph loaded = loader.apply(project.methodQuery);
+            loadCount.increment();
+            logger.info("Loaded " + project.name + " with " + loaded.size() + " calls (~"
+                    + loaded.getEstimatedBytes() / 1024 + " KB, estimated " + estimate / 1024 + " KB) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            admit(project, loaded, estimate);
+            admitted = true;
+            return loaded;
+        } finally {
+            if (!admitted) {
+                unreserve(estimate);
+            }
+        }
+    }
+
+    private synchronized CallGraph touch(Project project) {
+        if (project.graph != null) {
+            // Refreshes the access order
+            resident.get(project.name);
+        }
+        return project.graph;
+    }
+
+    // Waits while other loads hold the room this one needs
+    private synchronized void reserve(Project project, long bytes) throws GraphTooLargeException,
+            InterruptedException {
+        if (bytes > budgetBytes) {
+            throw new GraphTooLargeException(project.name, bytes, budgetBytes);
+        }
+        evictFor(bytes);
+        while (residentBytes + reservedBytes + bytes > budgetBytes) {
+            wait();
+            evictFor(bytes);
+        }
+        reservedBytes += bytes;
+    }
+
+    private synchronized void unreserve(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+
+    // Replaces the reservation with the graph's measured size; a graph larger than its
+    // estimate is only kept if the coldest graphs can make room for the difference
+    private synchronized void admit(Project project, CallGraph graph, long reserved) {
+        reservedBytes -= reserved;
+        notifyAll();
+        long bytes = graph.getEstimatedBytes();
+        if (graph.size() > 0) {
+            project.bytesPerCall = (bytes + graph.size() - 1) / graph.size();
+        }
+        evictFor(bytes);
+        if (residentBytes + reservedBytes + bytes > budgetBytes) {
+            logger.warn("Graph of " + project.name + " (~" + bytes / (1024 * 1024) + " MB) is larger than estimated "
+                    + "and does not fit in the budget of " + budgetBytes / (1024 * 1024) + " MB; it is not kept");
+            return;
+        }
+        project.graph = graph;
+        resident.put(project.name, project);
+        residentBytes += bytes;
+    }
+
+    // Drops the coldest graphs until bytes more fit next to the resident and reserved ones
+    private void evictFor(long bytes) {
+        Iterator<Project> coldest = resident.values().iterator();
+        while (residentBytes + reservedBytes + bytes > budgetBytes && coldest.hasNext()) {
+            Project victim = coldest.next();
+            coldest.remove();
+            residentBytes -= victim.getGraphBytes();
+            victim.graph = null;
+            evictions.increment();
+            logger.info("Evicted graph of " + victim.name + " to stay within the memory budget");
+        }
+    }
+
+    // Drops a project's graph, e.g. after its index was rebuilt; the next use reloads it
+    public synchronized void invalidate(String name) {
+        Project project = resident.remove(name);
+        if (project != null) {
+            residentBytes -= project.getGraphBytes();
+            project.graph = null;
+        }
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized List<String> getResidentProjects() {
+        return new ArrayList<>(resident.keySet());
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getLoads() {
+        return loadCount.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return projects.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Project project : projects.values()) {
+            project.graph = null;
+            project.connections.close();
+        }
+        resident.clear();
+        residentBytes = 0;
+    }
+}
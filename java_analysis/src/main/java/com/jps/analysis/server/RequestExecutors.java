@@ -0,0 +1,71 @@
+package com.jps.analysis.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Picks how requests and their sub-queries run. On Java 21+ each task gets its own
+// virtual thread, so requests blocked in JDBC cost almost nothing; the connection pool
+// is what bounds real database concurrency. Older JDKs, or server.virtualThreads=false,
+// get a fixed pool of daemon threads. Looked up reflectively so the build stays on 11.
+public final class RequestExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(RequestExecutors.class);
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private RequestExecutors() {
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean useVirtualThreads() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null
+                && Boolean.parseBoolean(System.getProperty("server.virtualThreads", "true"));
+    }
+
+    public static ExecutorService create(String name, int platformThreads) {
+        if (useVirtualThreads()) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Could not create virtual thread executor, using a pool of " + platformThreads
+                        + " threads: " + e.getMessage());
+            }
+        }
+        return Executors.newFixedThreadPool(platformThreads, platformThreadFactory(name));
+    }
+
+    // Threads for executors that bound their own size; virtual when available
+    public static ThreadFactory threadFactory(String name) {
+        if (useVirtualThreads()) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Could not create virtual thread factory: " + e.getMessage());
+            }
+        }
+        return platformThreadFactory(name);
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
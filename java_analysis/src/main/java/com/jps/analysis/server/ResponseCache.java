@@ -0,0 +1,62 @@
+package com.jps.analysis.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// LRU cache of rendered responses keyed by request URI. Every reindex bumps the
+// generation; a response computed against an older generation is never stored, so
+// a slow request racing a reindex cannot put stale results back into the cache.
+public class ResponseCache {
+    private final int capacity;
+    private final Map<String, String> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    public ResponseCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > ResponseCache.this.capacity;
+            }
+        };
+    }
+
+    public synchronized String get(String key) {
+        String value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized void put(String key, String value, long generation) {
+        if (capacity > 0 && generation == this.generation) {
+            entries.put(key, value);
+        }
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
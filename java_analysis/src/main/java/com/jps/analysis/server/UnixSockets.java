@@ -0,0 +1,65 @@
+package com.jps.analysis.server;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+// Unix domain socket channels arrived in JDK 16; reached reflectively so the build
+// stays on 11 and older runtimes get a clear error instead of a linkage failure
+final class UnixSockets {
+    private UnixSockets() {
+    }
+
+    static boolean isSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    static SocketAddress address(Path path) throws IOException {
+        try {
+            Class<?> type = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) type.getMethod("of", Path.class).invoke(null, path);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unix domain sockets need JDK 16 or newer");
+        } catch (InvocationTargetException e) {
+            throw new IOException("Invalid socket path: " + path, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unix domain sockets are not available", e);
+        }
+    }
+
+    static ServerSocketChannel openServer() throws IOException {
+        return (ServerSocketChannel) open(ServerSocketChannel.class);
+    }
+
+    static SocketChannel openClient() throws IOException {
+        return (SocketChannel) open(SocketChannel.class);
+    }
+
+    private static Object open(Class<?> channelType) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            Method open = channelType.getMethod("open", ProtocolFamily.class);
+            return open.invoke(null, unix);
+        } catch (IllegalArgumentException | NoSuchMethodException e) {
+            throw new IOException("Unix domain sockets need JDK 16 or newer");
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not open Unix domain socket", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("Could not open Unix domain socket", e);
+        }
+    }
+}
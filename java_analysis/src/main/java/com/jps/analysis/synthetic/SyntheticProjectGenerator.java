@@ -0,0 +1,264 @@
+package com.jps.analysis.synthetic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Writes a synthetic Java source tree for scale tests and benchmarks. The output is a
+// pure function of the shape and the seed: every class draws from its own Random seeded
+// with (seed, class index), so the same arguments always produce byte-identical files.
+//
+// Classes are named C<n> with a unique global index n and live in packages
+// com.synthetic.p<k>. Within a package they form inheritance chains of
+// inheritanceDepth classes. Every method makes fanOut calls, each to a method of the
+// same class, of the superclass, of a class elsewhere in the tree (imported), or to a
+// statically imported helper, wrapped in up to nestingDepth loops, try blocks and
+// conditionals. The generated code compiles.
+public class SyntheticProjectGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticProjectGenerator.class);
+    public static final String BASE_PACKAGE = "com.synthetic";
+
+    private final Shape shape;
+    private final long seed;
+
+    public static class Shape {
+        private int packages = 10;
+        private int classesPerPackage = 10;
+        private int methodsPerClass = 10;
+        private int fanOut = 5;
+        private int nestingDepth = 2;
+        private int staticImports = 2;
+        private int inheritanceDepth = 3;
+
+        public Shape packages(int value) { packages = positive("packages", value); return this; }
+        public Shape classesPerPackage(int value) { classesPerPackage = positive("classesPerPackage", value); return this; }
+        public Shape methodsPerClass(int value) { methodsPerClass = positive("methodsPerClass", value); return this; }
+        public Shape fanOut(int value) { fanOut = notNegative("fanOut", value); return this; }
+        public Shape nestingDepth(int value) { nestingDepth = notNegative("nestingDepth", value); return this; }
+        public Shape staticImports(int value) { staticImports = notNegative("staticImports", value); return this; }
+        public Shape inheritanceDepth(int value) { inheritanceDepth = positive("inheritanceDepth", value); return this; }
+
+        public int getPackages() { return packages; }
+        public int getClassesPerPackage() { return classesPerPackage; }
+        public int getMethodsPerClass() { return methodsPerClass; }
+        public int getFanOut() { return fanOut; }
+        public int getNestingDepth() { return nestingDepth; }
+        public int getStaticImports() { return staticImports; }
+        public int getInheritanceDepth() { return inheritanceDepth; }
+
+        public long getClassCount() {
+            return (long) packages * classesPerPackage;
+        }
+
+        private static int positive(String name, int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1");
+            }
+            return value;
+        }
+
+        private static int notNegative(String name, int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return value;
+        }
+    }
+
+    public static class Result {
+        private final long files;
+        private final long methods;
+        private final long calls;
+        private final long bytes;
+
+        Result(long files, long methods, long calls, long bytes) {
+            this.files = files;
+            this.methods = methods;
+            this.calls = calls;
+            this.bytes = bytes;
+        }
+
+        public long getFiles() { return files; }
+        public long getMethods() { return methods; }
+        public long getCalls() { return calls; }
+        public long getBytes() { return bytes; }
+    }
+
+    public SyntheticProjectGenerator(Shape shape, long seed) {
+        if (shape.getClassCount() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many classes: " + shape.getClassCount());
+        }
+        this.shape = shape;
+        this.seed = seed;
+    }
+
+    public Result generate(Path root) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        long calls = 0;
+        int classes = (int) shape.getClassCount();
+        for (int p = 0; p < shape.packages; p++) {
+            Path directory = root.resolve(BASE_PACKAGE.replace('.', '/')).resolve("p" + p);
+            Files.createDirectories(directory);
+            for (int k = 0; k < shape.classesPerPackage; k++) {
+                int index = p * shape.classesPerPackage + k;
+                ClassSource source = generateClass(index, classes);
+                byte[] content = source.text.getBytes(StandardCharsets.UTF_8);
+                Files.write(directory.resolve(className(index) + ".java"), content);
+                bytes += content.length;
+                calls += source.calls;
+            }
+        }
+        long methods = (long) classes * (shape.methodsPerClass + 1);
+        logger.info("Generated " + classes + " files with " + calls + " calls (" + bytes / 1024 + " KB) under "
+                + root + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return new Result(classes, methods, calls, bytes);
+    }
+
+    public static String className(int index) {
+        return "C" + index;
+    }
+
+    private String packageName(int index) {
+        return BASE_PACKAGE + ".p" + index / shape.classesPerPackage;
+    }
+
+    private static String helperName(int index) {
+        return "helper" + index;
+    }
+
+    // Position within its inheritance chain; 0 is the root of a chain
+    private int chainPosition(int index) {
+        return index % shape.classesPerPackage % shape.inheritanceDepth;
+    }
+
+    private static class ClassSource {
+        final String text;
+        final long calls;
+
+        ClassSource(String text, long calls) {
+            this.text = text;
+            this.calls = calls;
+        }
+    }
+
+    private ClassSource generateClass(int index, int classes) {
+        Random random = new Random(seed * 1_000_003L + index);
+        String packageName = packageName(index);
+        Set<String> imports = new TreeSet<>();
+        Set<String> staticImports = new TreeSet<>();
+        int[] helpers = new int[shape.staticImports];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = random.nextInt(classes);
+            if (helpers[i] != index) {
+                staticImports.add(packageName(helpers[i]) + "." + className(helpers[i]) + "." + helperName(helpers[i]));
+            }
+        }
+
+        boolean hasSuper = chainPosition(index) > 0;
+        StringBuilder body = new StringBuilder(shape.methodsPerClass * shape.fanOut * 80);
+        long calls = 0;
+        for (int m = 0; m < shape.methodsPerClass; m++) {
+            body.append("\n    public int m").append(m).append("(int x) {\n")
+                    .append("        int total = x;\n");
+            for (int c = 0; c < shape.fanOut; c++) {
+                String call = callExpression(index, classes, hasSuper, helpers, imports, random);
+                appendNested(body, call, random.nextInt(shape.nestingDepth + 1), 2, random);
+                calls++;
+            }
+            body.append("        return total;\n")
+                    .append("    }\n");
+        }
+        body.append("\n    public static int ").append(helperName(index)).append("(int x) {\n")
+                .append("        return x * 31 + ").append(index % 97).append(";\n")
+                .append("    }\n");
+
+        StringBuilder source = new StringBuilder(body.length() + 512);
+        source.append("package ").append(packageName).append(";\n\n");
+        for (String imported : imports) {
+            source.append("import ").append(imported).append(";\n");
+        }
+        for (String imported : staticImports) {
+            source.append("import static ").append(imported).append(";\n");
+        }
+        if (!imports.isEmpty() || !staticImports.isEmpty()) {
+            source.append("\n");
+        }
+        source.append("public class ").append(className(index));
+        if (hasSuper) {
+            source.append(" extends ").append(className(index - 1));
+        }
+        source.append(" {\n").append(body).append("}\n");
+        return new ClassSource(source.toString(), calls);
+    }
+
+    private String callExpression(int index, int classes, boolean hasSuper, int[] helpers, Set<String> imports,
+                                  Random random) {
+        int method = random.nextInt(shape.methodsPerClass);
+        switch (random.nextInt(4)) {
+            case 0:
+                return "m" + method + "(total)";
+            case 1:
+                if (hasSuper) {
+                    return "super.m" + method + "(total)";
+                }
+                // Roots of a chain have no superclass; call another class instead
+                return callOnOtherClass(index, classes, method, imports, random);
+            case 2:
+                return callOnOtherClass(index, classes, method, imports, random);
+            default:
+                if (helpers.length == 0) {
+                    return "m" + method + "(total)";
+                }
+                return helperName(helpers[random.nextInt(helpers.length)]) + "(total)";
+        }
+    }
+
+    private String callOnOtherClass(int index, int classes, int method, Set<String> imports, Random random) {
+        int target = random.nextInt(classes);
+        if (!packageName(target).equals(packageName(index))) {
+            imports.add(packageName(target) + "." + className(target));
+        }
+        return "new " + className(target) + "().m" + method + "(total)";
+    }
+
+    private void appendNested(StringBuilder body, String call, int depth, int level, Random random) {
+        String indent = "    ".repeat(level);
+        if (depth == 0) {
+            body.append(indent).append("total += ").append(call).append(";\n");
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                String counter = "i" + level;
+                body.append(indent).append("for (int ").append(counter).append(" = 0; ").append(counter)
+                        .append(" < x; ").append(counter).append("++) {\n");
+                appendNested(body, call, depth - 1, level + 1, random);
+                body.append(indent).append("}\n");
+                break;
+            case 1:
+                body.append(indent).append("while (total < x) {\n");
+                appendNested(body, call, depth - 1, level + 1, random);
+                body.append(indent).append("}\n");
+                break;
+            case 2:
+                body.append(indent).append("try {\n");
+                appendNested(body, call, depth - 1, level + 1, random);
+                body.append(indent).append("} catch (RuntimeException e").append(level).append(") {\n")
+                        .append(indent).append("    total--;\n")
+                        .append(indent).append("}\n");
+                break;
+            default:
+                body.append(indent).append("if (total > ").append(random.nextInt(100)).append(") {\n");
+                appendNested(body, call, depth - 1, level + 1, random);
+                body.append(indent).append("}\n");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.jps.analysis.trace;
+
+import com.jps.analysis.util.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Opt-in structured trace of what the parser finds, one JSON object per line:
+//
+//   {"ts":1718000000000,"thread":"index-parse-0","event":"call","file":"...","caller":"...","called":"...","line":12}
+//
+// Off unless -Dtrace.file is set. -Dtrace.level (classes, methods or calls, default
+// methods) picks the most detailed event kind and -Dtrace.sample (0..1, default 1)
+// keeps that fraction of events. Callers check shouldTrace before building a record,
+// so a disabled or unsampled event costs a comparison and a random number. Records
+// are written by a background thread; when it falls behind, records are dropped and
+// counted rather than slowing the parsing threads down.
+public class TraceSink implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TraceSink.class);
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final String END_OF_TRACE = "";
+    private static TraceSink instance;
+
+    public enum Level {
+        CLASSES, METHODS, CALLS
+    }
+
+    private final Level level;
+    private final double sampleRate;
+    private final BlockingQueue<String> queue;
+    private final Writer writer;
+    private final Thread writerThread;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    // Guards flushedUpTo: records written and flushed to disk so far
+    private final Object flushLock = new Object();
+    private long flushedUpTo;
+    private volatile boolean flushRequested;
+    private volatile boolean closed;
+
+    // The disabled sink
+    private TraceSink() {
+        this.level = null;
+        this.sampleRate = 0;
+        this.queue = null;
+        this.writer = null;
+        this.writerThread = null;
+    }
+
+    public TraceSink(Writer writer, Level level, double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Trace sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.level = level;
+        this.sampleRate = sampleRate;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.writer = writer;
+        this.writerThread = new Thread(this::drain, "trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public static synchronized TraceSink getInstance() {
+        if (instance == null) {
+            instance = configured();
+        }
+        return instance;
+    }
+
+    private static TraceSink configured() {
+        String file = System.getProperty("trace.file");
+        if (file == null) {
+            return new TraceSink();
+        }
+        try {
+            Level level = Level.valueOf(System.getProperty("trace.level", "methods").toUpperCase());
+            double sampleRate = Double.parseDouble(System.getProperty("trace.sample", "1"));
+            Path path = Paths.get(file);
+            BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            TraceSink sink = new TraceSink(writer, level, sampleRate);
+            Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "trace-shutdown"));
+            logger.info("Tracing " + level.name().toLowerCase() + " to " + path
+                    + (sampleRate < 1 ? " (sampling " + sampleRate + ")" : ""));
+            return sink;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Tracing disabled, bad trace configuration: " + e.getMessage());
+            return new TraceSink();
+        }
+    }
+
+    public boolean isEnabled() {
+        return level != null;
+    }
+
+    // Level check first, then sampling; build the record only when this returns true
+    public boolean shouldTrace(Level eventLevel) {
+        if (level == null || eventLevel.compareTo(level) > 0) {
+            return false;
+        }
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    // A record with the common fields; pass it to emit once the event's own fields are added
+    public JsonWriter record(String event) {
+        return new JsonWriter().beginObject()
+                .field("ts", System.currentTimeMillis())
+                .field("thread", Thread.currentThread().getName())
+                .field("event", event);
+    }
+
+    public void emit(JsonWriter record) {
+        if (level == null) {
+            return;
+        }
+        if (!closed && queue.offer(record.endObject().toString())) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void drain() {
+        List<String> lines = new ArrayList<>(256);
+        try {
+            while (true) {
+                lines.add(queue.take());
+                queue.drainTo(lines, 255);
+                boolean end = false;
+                for (String line : lines) {
+                    if (line == END_OF_TRACE) {
+                        end = true;
+                        break;
+                    }
+                    writer.write(line);
+                    writer.write('\n');
+                    written.increment();
+                }
+                lines.clear();
+                if (queue.isEmpty() || flushRequested || end) {
+                    writer.flush();
+                    synchronized (flushLock) {
+                        flushedUpTo = written.sum();
+                        flushLock.notifyAll();
+                    }
+                }
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Trace writer failed, tracing stops: " + e.getMessage());
+            closed = true;
+        }
+    }
+
+    // Waits until everything emitted so far is on disk, e.g. at the end of an indexing run
+    public void flush() {
+        if (level == null || closed) {
+            return;
+        }
+        long target = enqueued.sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        flushRequested = true;
+        try {
+            synchronized (flushLock) {
+                while (!closed && flushedUpTo < target && System.nanoTime() < deadline) {
+                    flushLock.wait(50);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushRequested = false;
+        }
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        if (level == null || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // The writer may already have stopped after an I/O error and left the queue full
+            queue.offer(END_OF_TRACE, 1, TimeUnit.SECONDS);
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            writer.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Could not close trace: " + e.getMessage());
+        }
+        if (dropped.sum() > 0) {
+            logger.warn("Trace dropped " + dropped.sum() + " records because the writer fell behind");
+        }
+    }
+}
@@ -7,13 +7,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.batik.transcoder.SVGAbstractTranscoder;
-import org.apache.fop.svg.PDFTranscoder;
+import java.nio.file.Paths;
 
 public class MethodCallVisualizer {
     private static final Logger logger = LoggerFactory.getLogger(MethodCallVisualizer.class);
@@ -256,6 +250,12 @@ public class MethodCallVisualizer {
     }
 
     public void generateDependencyGraph(List<MethodCall> calls, String outputPath) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
+            generateDependencyGraph(calls, writer);
+        }
+    }
+
+    public void generateDependencyGraph(List<MethodCall> calls, Writer writer) throws IOException {
         StringBuilder dotContent = new StringBuilder();
         dotContent.append("digraph Dependencies {\n");
         dotContent.append("  node [shape=box, style=filled, fillcolor=lightblue];\n");
@@ -303,9 +303,7 @@ public class MethodCallVisualizer {
 
         dotContent.append("}\n");
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write(dotContent.toString());
-        }
+        writer.write(dotContent.toString());
     }
 
     public void generateClassHierarchy(List<MethodCall> calls, String outputPath) throws IOException {
@@ -476,6 +474,12 @@ public class MethodCallVisualizer {
     }
 
     public void generateInteractiveVisualization(List<MethodCall> calls, String outputPath) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
+            generateInteractiveVisualization(calls, writer);
+        }
+    }
+
+    public void generateInteractiveVisualization(List<MethodCall> calls, Writer writer) throws IOException {
         StringBuilder htmlContent = new StringBuilder();
         htmlContent.append("<!DOCTYPE html>\n");
         htmlContent.append("<html>\n");
@@ -774,9 +778,7 @@ public class MethodCallVisualizer {
         htmlContent.append("</body>\n");
         htmlContent.append("</html>");
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write(htmlContent.toString());
-        }
+        writer.write(htmlContent.toString());
     }
 
     private Map<String, Object> createNodeData(MethodCall call, boolean isCaller) {
@@ -812,60 +814,44 @@ public class MethodCallVisualizer {
 
     public void exportVisualization(String inputPath, String outputPath, String format) throws IOException {
         try {
-            switch (format.toLowerCase()) {
-                case "png":
-                    exportToPNG(inputPath, outputPath);
-                    break;
-                case "svg":
-                    exportToSVG(inputPath, outputPath);
-                    break;
-                case "pdf":
-                    exportToPDF(inputPath, outputPath);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unsupported export format: " + format);
+            VisualizationExporter exporter = Exporters.forFormat(format.toLowerCase(Locale.ROOT));
+            if (exporter == null) {
+                throw new IllegalArgumentException("Unsupported export format: " + format
+                        + " (available: " + String.join(", ", Exporters.formats()) + ")");
             }
+            exporter.export(Paths.get(inputPath), Paths.get(outputPath));
             logger.info("Successfully exported visualization to {} format", format);
-        } catch (Exception e) {
+        } catch (Exception | LinkageError e) {
+            // LinkageError: the format's rendering library is missing from the classpath
             logger.error("Failed to export visualization: {}", e.getMessage());
             throw new IOException("Failed to export visualization", e);
         }
     }
 
-    private void exportToPNG(String inputPath, String outputPath) throws Exception {
-        PNGTranscoder transcoder = new PNGTranscoder();
-        transcoder.addTranscodingHint(PNGTranscoder.KEY_WIDTH, 1200f);
-        transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, 800f);
-        
-        try (InputStream in = new FileInputStream(inputPath);
-             OutputStream out = new FileOutputStream(outputPath)) {
-            TranscoderInput input = new TranscoderInput(in);
-            TranscoderOutput output = new TranscoderOutput(out);
-            transcoder.transcode(input, output);
-        }
+    public static Set<String> getExportFormats() {
+        return Exporters.formats();
     }
 
-    private void exportToSVG(String inputPath, String outputPath) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputPath));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                writer.write(line);
-                writer.newLine();
+    // Holder class: exporters are discovered on the first export, not when the
+    // visualizer is loaded
+    private static final class Exporters {
+        private static final Map<String, VisualizationExporter> BY_FORMAT = load();
+
+        private static Map<String, VisualizationExporter> load() {
+            Map<String, VisualizationExporter> exporters = new TreeMap<>();
+            for (VisualizationExporter exporter : ServiceLoader.load(VisualizationExporter.class,
+                    MethodCallVisualizer.class.getClassLoader())) {
+                exporters.putIfAbsent(exporter.getFormat(), exporter);
             }
+            return Collections.unmodifiableMap(exporters);
         }
-    }
 
-    private void exportToPDF(String inputPath, String outputPath) throws Exception {
-        PDFTranscoder transcoder = new PDFTranscoder();
-        transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_WIDTH, 1200f);
-        transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_HEIGHT, 800f);
-        
-        try (InputStream in = new FileInputStream(inputPath);
-             OutputStream out = new FileOutputStream(outputPath)) {
-            TranscoderInput input = new TranscoderInput(in);
-            TranscoderOutput output = new TranscoderOutput(out);
-            transcoder.transcode(input, output);
+        static VisualizationExporter forFormat(String format) {
+            return BY_FORMAT.get(format);
+        }
+
+        static Set<String> formats() {
+            return BY_FORMAT.keySet();
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.jps.analysis.visualization;
+
+import java.nio.file.Path;
+
+public class PdfExporter implements VisualizationExporter {
+    @Override
+    public String getFormat() {
+        return "pdf";
+    }
+
+    @Override
+    public void export(Path svgInput, Path output) throws Exception {
+        SvgTranscoding.toPdf(svgInput, output);
+    }
+}
@@ -0,0 +1,15 @@
+package com.jps.analysis.visualization;
+
+import java.nio.file.Path;
+
+public class PngExporter implements VisualizationExporter {
+    @Override
+    public String getFormat() {
+        return "png";
+    }
+
+    @Override
+    public void export(Path svgInput, Path output) throws Exception {
+        SvgTranscoding.toPng(svgInput, output);
+    }
+}
@@ -0,0 +1,40 @@
+package com.jps.analysis.visualization;
+
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.Transcoder;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.fop.svg.PDFTranscoder;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The only class that references Batik and FOP. The exporters call into it from their
+// method bodies, so loading or verifying an exporter does not load the libraries.
+final class SvgTranscoding {
+    private static final float WIDTH = 1200f;
+    private static final float HEIGHT = 800f;
+
+    private SvgTranscoding() {
+    }
+
+    static void toPng(Path svgInput, Path output) throws Exception {
+        transcode(new PNGTranscoder(), svgInput, output);
+    }
+
+    static void toPdf(Path svgInput, Path output) throws Exception {
+        transcode(new PDFTranscoder(), svgInput, output);
+    }
+
+    private static void transcode(Transcoder transcoder, Path svgInput, Path output) throws Exception {
+        transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_WIDTH, WIDTH);
+        transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_HEIGHT, HEIGHT);
+        try (InputStream in = Files.newInputStream(svgInput);
+             OutputStream out = Files.newOutputStream(output)) {
+            transcoder.transcode(new TranscoderInput(in), new TranscoderOutput(out));
+        }
+    }
+}
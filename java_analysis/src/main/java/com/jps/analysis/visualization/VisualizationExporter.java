@@ -0,0 +1,15 @@
+package com.jps.analysis.visualization;
+
+import java.nio.file.Path;
+
+// Converts a generated SVG into another file format. Implementations are discovered
+// with ServiceLoader the first time an export is requested, so runs that never export
+// never load the rendering libraries behind them (Batik and FOP for PNG and PDF).
+// Additional formats can be added by listing a class in
+// META-INF/services/com.jps.analysis.visualization.VisualizationExporter.
+public interface VisualizationExporter {
+    // Lower-case format name, such as "png"
+    String getFormat();
+
+    void export(Path svgInput, Path output) throws Exception;
+}
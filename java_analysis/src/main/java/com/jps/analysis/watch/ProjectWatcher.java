@@ -0,0 +1,278 @@
+package com.jps.analysis.watch;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.JavaSourceParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Keeps the index of a project live after the initial parseProject. Blocks on the
+// WatchService while nothing changes, collects events until the project has been
+// quiet for watch.debounce.ms (default 200), then re-extracts only the touched files.
+// A deleted or renamed directory drops the rows of every file that was indexed below it.
+// A batch that fails to commit, say because the database is busy, is kept and retried
+// after watch.retry.ms (default 1000) together with whatever changed meanwhile.
+//
+// Reindexing writes through a database connection of the watcher's own, so a query
+// running meanwhile on the shared connection never lands inside a reindex transaction.
+public class ProjectWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectWatcher.class);
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+    private static final long RETRY_MILLIS = Long.getLong("watch.retry.ms", 1000);
+
+    private final JavaSourceParser parser;
+    private final DatabaseManager database;
+    private final Path projectRoot;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final List<IndexListener> listeners = new CopyOnWriteArrayList<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    // Notified on the watcher thread after each batch of changes has been committed
+    public interface IndexListener {
+        void filesReindexed(Set<Path> changed, Set<Path> deleted);
+    }
+
+    public ProjectWatcher(JavaSourceParser parser, Path projectRoot) throws IOException {
+        this(parser, projectRoot, Long.getLong("watch.debounce.ms", DEFAULT_DEBOUNCE_MILLIS));
+    }
+
+    public ProjectWatcher(JavaSourceParser parser, Path projectRoot, long debounceMillis) throws IOException {
+        this.database = new DatabaseManager(parser.getDatabaseManager().getDbUrl());
+        this.parser = parser.forDatabase(database);
+        // Event paths are compared with the absolute paths the index stores
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+        this.debounceMillis = debounceMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    public void addListener(IndexListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        registerTree(projectRoot, null);
+        running = true;
+        thread = new Thread(this::watch, "project-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching " + directories.size() + " directories under " + projectRoot);
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.error("Failed to close watch service", e);
+        }
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        database.close();
+    }
+
+    private void watch() {
+        Set<Path> touched = new LinkedHashSet<>();
+        try {
+            while (running) {
+                // Idle until something happens, or until a failed batch is due again
+                WatchKey key = touched.isEmpty() ? watchService.take()
+                        : watchService.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                try {
+                    if (key != null) {
+                        handle(key, touched);
+                        // Keep collecting until the burst of events is over
+                        while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                            handle(key, touched);
+                        }
+                    }
+                    if (reindex(touched)) {
+                        touched.clear();
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    // Retrying would most likely fail the same way; the files are picked
+                    // up again when they next change
+                    logger.error("Failed to reindex " + touched.size() + " files", e);
+                    touched.clear();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Watcher closed
+        }
+    }
+
+    private void handle(WatchKey key, Set<Path> touched) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.warn("Missed file events under " + projectRoot + ", rescanning");
+                touched.addAll(javaFiles(projectRoot));
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // Files can land in a new directory before it is registered
+                try {
+                    registerTree(path, touched);
+                } catch (IOException e) {
+                    logger.error("Failed to watch directory: " + path, e);
+                }
+            } else if (path.toString().endsWith(".java")) {
+                touched.add(path);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && isWatchedDirectory(path)) {
+                // Gone already, so only the watch keys tell it was a directory. One moved
+                // out of the project keeps its keys valid; they must not report it any more.
+                unregisterTree(path);
+                touched.add(path);
+            }
+        }
+        if (!key.reset()) {
+            // The directory itself was deleted; its files are dropped by path
+            directories.remove(key);
+            if (directory != null) {
+                touched.add(directory);
+            }
+        }
+    }
+
+    // False when nothing was committed, so the touched paths have to be tried again
+    private boolean reindex(Set<Path> touched) {
+        if (touched.isEmpty()) {
+            return true;
+        }
+        Set<Path> changed = new LinkedHashSet<>();
+        Set<Path> deleted = new LinkedHashSet<>();
+        for (Path path : touched) {
+            if (Files.isRegularFile(path)) {
+                changed.add(path);
+            } else if (path.toString().endsWith(".java")) {
+                deleted.add(path);
+            } else if (!Files.isDirectory(path)) {
+                try {
+                    deleted.addAll(parser.indexedFilesUnder(path));
+                } catch (IOException e) {
+                    logger.error("Failed to find the indexed files under deleted directory " + path, e);
+                }
+            }
+        }
+        // A recreated directory was rescanned when it came back
+        deleted.removeAll(changed);
+
+        long start = System.nanoTime();
+        try {
+            parser.reindexFiles(changed, deleted);
+        } catch (IOException e) {
+            logger.error("Failed to reindex " + touched.size() + " files, retrying in " + RETRY_MILLIS + " ms", e);
+            return false;
+        }
+        logger.info("Reindexed " + changed.size() + " changed and " + deleted.size() + " deleted files in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        Set<Path> changedView = Collections.unmodifiableSet(changed);
+        Set<Path> deletedView = Collections.unmodifiableSet(deleted);
+        for (IndexListener listener : listeners) {
+            try {
+                listener.filesReindexed(changedView, deletedView);
+            } catch (RuntimeException e) {
+                logger.error("Index listener failed", e);
+            }
+        }
+        return true;
+    }
+
+    private void registerTree(Path root, Set<Path> touched) throws IOException {
+        // Each directory is registered before its entries are read, so anything created
+        // while walking is either seen by the walk or reported as an event
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+                if (isHidden(directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (touched != null) {
+            touched.addAll(javaFiles(root));
+        }
+    }
+
+    private void unregisterTree(Path root) {
+        directories.entrySet().removeIf(entry -> {
+            if (entry.getValue().startsWith(root)) {
+                entry.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private boolean isWatchedDirectory(Path path) {
+        return directories.containsValue(path);
+    }
+
+    // Skips .git, .idea and other dot directories
+    private boolean isHidden(Path path) {
+        for (Path part : projectRoot.relativize(path)) {
+            if (part.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<Path> javaFiles(Path root) {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(p -> p.toString().endsWith(".java") && !isHidden(p))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        } catch (IOException e) {
+            logger.error("Failed to rescan " + root, e);
+            return Collections.emptySet();
+        }
+    }
+
+    public int getWatchedDirectoryCount() {
+        return directories.size();
+    }
+}
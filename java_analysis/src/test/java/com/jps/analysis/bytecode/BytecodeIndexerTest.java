@@ -0,0 +1,186 @@
+package com.jps.analysis.bytecode;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.FileExtraction;
+import com.jps.analysis.parser.FileExtraction.CallRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytecodeIndexerTest {
+    private static final String TEST_DB = "test_analysis.db";
+    private static final String SAMPLE_KEY = "com.jps.analysis.bytecode.BytecodeIndexerTest$Sample";
+
+    // Compiled by the test build and read back as bytecode
+    static class Sample {
+        private final List<String> items = new ArrayList<>();
+
+        public void fill(int count) {
+            for (int i = 0; i < count; i++) {
+                items.add("item");
+            }
+        }
+
+        public void parse(String value) {
+            try {
+                Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                items.clear();
+            } finally {
+                items.size();
+            }
+        }
+
+        public void check(boolean flag) {
+            if (flag) {
+                items.isEmpty();
+            }
+            fill(1);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("db.url", "jdbc:sqlite:" + TEST_DB);
+        DatabaseManager.getInstance().createTables();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        DatabaseManager.getInstance().close();
+        Files.deleteIfExists(Path.of(TEST_DB));
+    }
+
+    private FileExtraction extractSample() throws Exception {
+        try (InputStream in = Sample.class.getResourceAsStream("BytecodeIndexerTest$Sample.class")) {
+            return new BytecodeExtractor().extract("Sample.class", in.readAllBytes());
+        }
+    }
+
+    private CallRecord findCall(FileExtraction extraction, String callerMethod, String calledMethod) {
+        for (CallRecord call : extraction.getCalls()) {
+            if (call.getCallerMethodKey().startsWith(SAMPLE_KEY + "." + callerMethod + "[")
+                    && call.getCalledMethodKey().contains("." + calledMethod + "[")) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void testExtractMethodsWithDescriptorParameters() {
+        try {
+            FileExtraction extraction = extractSample();
+            assertTrue(extraction.hasClass(SAMPLE_KEY));
+            assertTrue(extraction.getMethods().stream().anyMatch(m ->
+                    m.getKey().equals(SAMPLE_KEY + ".parse[[java.lang.String]]") && !m.isStub()));
+            assertTrue(extraction.getMethods().stream().anyMatch(m ->
+                    m.getKey().equals(SAMPLE_KEY + ".fill[[int]]") && m.isPublic() && !m.isStatic()));
+
+            CallRecord call = findCall(extraction, "check", "fill");
+            assertNotNull(call, "Should find the call to fill");
+            assertEquals(SAMPLE_KEY + ".fill[[int]]", call.getCalledMethodKey());
+            assertEquals("this", call.getScope());
+            assertTrue(call.getLineNumber() > 0);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testExtractCallContext() {
+        try {
+            FileExtraction extraction = extractSample();
+
+            CallRecord add = findCall(extraction, "fill", "add");
+            assertTrue(add.isInLoop());
+            assertEquals("loop", add.getLoopType());
+            assertFalse(add.isInConditional());
+
+            CallRecord parseInt = findCall(extraction, "parse", "parseInt");
+            assertTrue(parseInt.isInTryBlock());
+            assertFalse(parseInt.isInCatchBlock());
+            CallRecord clear = findCall(extraction, "parse", "clear");
+            assertTrue(clear.isInCatchBlock());
+            assertFalse(clear.isInTryBlock());
+            for (CallRecord call : extraction.getCalls()) {
+                if (call.getCalledMethodKey().contains(".size[")) {
+                    assertTrue(call.isInFinallyBlock(), "Every inlined copy of the finally block counts");
+                }
+            }
+
+            CallRecord isEmpty = findCall(extraction, "check", "isEmpty");
+            assertTrue(isEmpty.isInConditional());
+            assertEquals("if", isEmpty.getConditionalType());
+            assertFalse(findCall(extraction, "check", "fill").isInConditional());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testIndexClassDirectory() {
+        try {
+            Path classDir = Files.createTempDirectory("test-classes");
+            try (InputStream in = Sample.class.getResourceAsStream("BytecodeIndexerTest$Sample.class")) {
+                Files.write(classDir.resolve("Sample.class"), in.readAllBytes());
+            }
+
+            new BytecodeIndexer().index(classDir);
+
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            var rs = dbManager.getConnection().createStatement().executeQuery(
+                "SELECT COUNT(*) FROM method_calls mc " +
+                "JOIN methods m ON mc.called_method_id = m.id " +
+                "WHERE m.method_name = 'fill' AND m.parameters = '[int]'");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1), "Should store the call from check to fill");
+
+            Files.delete(classDir.resolve("Sample.class"));
+            Files.delete(classDir);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testReindexJarKeepsEdgeCount() {
+        try {
+            Path jar = Files.createTempFile("sample", ".jar");
+            try (InputStream in = Sample.class.getResourceAsStream("BytecodeIndexerTest$Sample.class");
+                 JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+                out.putNextEntry(new JarEntry("com/jps/analysis/bytecode/BytecodeIndexerTest$Sample.class"));
+                out.write(in.readAllBytes());
+                out.closeEntry();
+            }
+
+            new BytecodeIndexer().index(jar);
+            int edges = countCalls();
+            assertTrue(edges > 0, "Should store the calls in the jar");
+
+            // A second run over the same jar refreshes its classes instead of adding their calls again
+            new BytecodeIndexer().index(jar);
+            assertEquals(edges, countCalls());
+
+            Files.delete(jar);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    private int countCalls() throws Exception {
+        var rs = DatabaseManager.getInstance().getConnection().createStatement()
+                .executeQuery("SELECT COUNT(*) FROM method_calls");
+        assertTrue(rs.next());
+        return rs.getInt(1);
+    }
+}
@@ -1,6 +1,7 @@
 package com.jps.analysis.cli;
 
 import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.metrics.IndexingMetrics;
 import com.jps.analysis.parser.JavaSourceParser;
 import com.jps.analysis.query.MethodQuery;
 import com.github.javaparser.JavaParser;
@@ -11,6 +12,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 
 class MainTest {
@@ -57,8 +59,14 @@ class MainTest {
         // Close database connection
         DatabaseManager.getInstance().close();
         
-        // Delete test database
+        // Delete test database and the artifacts built with it
         Files.deleteIfExists(Path.of(TEST_DB));
+        Path artifacts = Path.of(TEST_DB + "-artifacts");
+        if (Files.exists(artifacts)) {
+            Files.walk(artifacts)
+                 .sorted((a, b) -> -a.compareTo(b))
+                 .forEach(path -> path.toFile().delete());
+        }
         
         // Delete test project directory
         Files.walk(testProjectDir)
@@ -78,11 +86,11 @@ class MainTest {
             // Test parsing a Java project
             JavaSourceParser parser = new JavaSourceParser();
             parser.parseProject(testProjectDir);
-            
-            String output = outContent.toString();
-            assertTrue(output.contains("Parsing Java files in"), "Should show parsing message");
-            assertTrue(output.contains("Found class: com.example.TestClass"), "Should find TestClass");
-            assertTrue(output.contains("Found class: com.example.Helper"), "Should find Helper");
+
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            assertNotNull(dbManager.findClass("com.example", "TestClass"), "Should find TestClass");
+            assertNotNull(dbManager.findClass("com.example", "Helper"), "Should find Helper");
+            assertEquals("", outContent.toString(), "Parsing should not print to stdout");
         } catch (Exception e) {
             fail("Should not throw exception: " + e.getMessage());
         }
@@ -94,17 +102,14 @@ class MainTest {
             // First parse the project
             JavaSourceParser parser = new JavaSourceParser();
             parser.parseProject(testProjectDir);
-            
-            // Clear output buffer
-            outContent.reset();
-            
+
             // Test finding method calls
             MethodQuery methodQuery = new MethodQuery();
             var calls = methodQuery.findMethodCalls("TestClass", "testMethod", "[]");
-            
-            String output = outContent.toString();
-            assertTrue(output.contains("Method calls from TestClass.testMethod"), "Should show method calls");
-            assertTrue(output.contains("Helper.helperMethod"), "Should find helper method call");
+
+            assertEquals(1, calls.size(), "Should find one method call");
+            assertEquals("com.example.Helper", calls.get(0).getCalledClass());
+            assertEquals("helperMethod", calls.get(0).getCalledMethod());
         } catch (Exception e) {
             fail("Should not throw exception: " + e.getMessage());
         }
@@ -116,18 +121,75 @@ class MainTest {
             // First parse the project
             JavaSourceParser parser = new JavaSourceParser();
             parser.parseProject(testProjectDir);
-            
-            // Clear output buffer
-            outContent.reset();
-            
+
             // Test finding method calls by scope
             MethodQuery methodQuery = new MethodQuery();
             var calls = methodQuery.findMethodCallsByScope("this");
-            
-            String output = outContent.toString();
-            assertTrue(output.contains("Method calls with scope: this"), "Should show scope message");
+
+            assertFalse(calls.isEmpty(), "Should find calls recorded with this scope");
+            assertTrue(calls.stream().allMatch(call -> call.getScope() == null || call.getScope().equals("this")));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    private String run(int expectedStatus, String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = Main.run(args, new PrintStream(out), new PrintStream(err));
+        assertEquals(expectedStatus, status, err.toString());
+        return out.toString();
+    }
+
+    @Test
+    void testUsageErrors() {
+        run(2);
+        run(2, "frobnicate", "--db", TEST_DB);
+        run(2, "query", "from", "TestClass", "--db", TEST_DB);
+        run(2, "query", "calls", "--format", "xml", "--db", TEST_DB);
+        run(2, "query", "loops", "--db", "missing_index.db");
+        assertFalse(Files.exists(Path.of("missing_index.db")), "Queries should not create an index");
+    }
+
+    @Test
+    void testQueriesReuseExistingIndex() {
+        try {
+            run(0, "index", testProjectDir.toString(), "--db", TEST_DB);
+            try (Stream<Path> generations = Files.list(Path.of(TEST_DB + "-artifacts"))) {
+                assertTrue(generations.anyMatch(dir -> Files.exists(dir.resolve("manifest.tsv"))),
+                        "Indexing should precompute the server's artifacts");
+            }
+            IndexingMetrics metrics = IndexingMetrics.getInstance();
+            long filesRead = metrics.get(IndexingMetrics.Counter.FILES_READ);
+
+            String jsonLines = run(0, "query", "from", "TestClass", "testMethod", "[]", "--db", TEST_DB);
+            String[] lines = jsonLines.split("\n");
+            assertEquals(1, lines.length, jsonLines);
+            assertTrue(lines[0].startsWith("{\"id\":"), lines[0]);
+            assertTrue(lines[0].contains("\"calledMethod\":\"helperMethod\""), lines[0]);
+            assertEquals(filesRead, metrics.get(IndexingMetrics.Counter.FILES_READ),
+                    "Queries should not re-parse the project");
+
+            String tsv = run(0, "query", "calls", "--called-method", "helper", "--format", "tsv", "--db", TEST_DB);
+            lines = tsv.split("\n");
+            assertEquals(2, lines.length, tsv);
+            assertTrue(lines[0].startsWith("id\tlineNumber\tcallerClass"));
+            assertTrue(lines[1].contains("\thelperMethod\t"));
+
+            // Filters are matched by the database, ignoring case, against package-qualified names
+            String filtered = run(0, "query", "calls", "--caller-class", "EXAMPLE.testclass",
+                    "--called-method", "HELPER", "--db", TEST_DB);
+            assertEquals(1, filtered.split("\n").length, filtered);
+            assertEquals("", run(0, "query", "calls", "--called-class", "NoSuchClass", "--db", TEST_DB));
+
+            String csv = run(0, "export", "--caller-class", "TestClass", "--db", TEST_DB);
+            assertTrue(csv.startsWith("ID,Line Number,"), csv);
+            assertTrue(csv.contains("helperMethod"));
+
+            String dot = run(0, "visualize", "dependencies", "--db", TEST_DB);
+            assertTrue(dot.startsWith("digraph"), dot);
         } catch (Exception e) {
             fail("Should not throw exception: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+}
@@ -44,6 +44,28 @@ class DatabaseManagerTest {
         }
     }
 
+    @Test
+    void testSharedConnectionSurvivesClose() {
+        try {
+            Connection conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+            conn.createStatement().executeUpdate("INSERT INTO classes (package_name, class_name) VALUES ('p', 'Open')");
+
+            // A query closing what it got must not end the transaction another caller has open
+            try (Connection query = dbManager.getConnection()) {
+                query.createStatement().executeQuery("SELECT COUNT(*) FROM classes").close();
+            }
+            assertFalse(conn.isClosed(), "Connection should stay open");
+            conn.commit();
+            conn.setAutoCommit(true);
+            ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM classes WHERE class_name = 'Open'");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
     @Test
     void testCreateTables() {
         try {
@@ -151,4 +173,74 @@ class DatabaseManagerTest {
             fail("Should not throw exception: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testCheckpointsAreKeptPerRun() {
+        try {
+            DatabaseManager.IndexRun first = dbManager.startIndexRun("/work/first");
+            DatabaseManager.IndexRun second = dbManager.startIndexRun("/work/second");
+            IndexBatch batch = new IndexBatch();
+            batch.completeFile("src/Main.java", first.getId(), 10, 100);
+            batch.completeFile("src/Main.java", second.getId(), 20, 200);
+            dbManager.flush(batch);
+
+            // Two roots with the same relative path must not take each other's checkpoint
+            assertEquals(10, dbManager.getIndexedFiles(first.getId()).get("src/Main.java").getSize());
+            assertEquals(20, dbManager.getIndexedFiles(second.getId()).get("src/Main.java").getSize());
+
+            dbManager.finishIndexRun(first.getId());
+            assertTrue(dbManager.getIndexedFiles(first.getId()).isEmpty(), "A finished run should drop its checkpoints");
+            assertEquals(1, dbManager.getIndexedFiles(second.getId()).size());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testIndexedFilesRekeyedByRun() {
+        try {
+            Statement stmt = dbManager.getConnection().createStatement();
+            stmt.execute("DROP TABLE indexed_files");
+            stmt.execute("CREATE TABLE indexed_files (file_path TEXT PRIMARY KEY, " +
+                    "run_id INTEGER NOT NULL REFERENCES index_runs(id), size INTEGER NOT NULL, modified INTEGER NOT NULL)");
+            DatabaseManager.IndexRun finished = dbManager.startIndexRun("/work/finished");
+            dbManager.finishIndexRun(finished.getId());
+            DatabaseManager.IndexRun unfinished = dbManager.startIndexRun("/work/unfinished");
+            stmt.executeUpdate("INSERT INTO indexed_files VALUES ('A.java', " + finished.getId() + ", 1, 1)");
+            stmt.executeUpdate("INSERT INTO indexed_files VALUES ('B.java', " + unfinished.getId() + ", 2, 2)");
+
+            // Databases from before runs were part of the key keep what an unfinished run committed
+            dbManager.createTables();
+            assertEquals(1, dbManager.getIndexedFiles(unfinished.getId()).size());
+            assertTrue(dbManager.getIndexedFiles(finished.getId()).isEmpty());
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM pragma_table_info('indexed_files') WHERE pk > 0");
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            stmt.close();
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testFailedFlushStoresNothing() throws Exception {
+        DatabaseManager.IndexRun run = dbManager.startIndexRun("/work/failed");
+        IndexBatch batch = new IndexBatch();
+        int classId = batch.addClass("com.example", "Stored", "Stored.java", null);
+        batch.addMethod(classId, "run", "void", "[]", false, true, null);
+        // A provisional id no class in the batch was given
+        batch.addMethod(classId - 1, "broken", "void", "[]", false, true, null);
+        batch.completeFile("Stored.java", run.getId(), 10, 100);
+
+        // Unchecked failures after the first rows are written must not leave them committed
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> dbManager.flush(batch));
+        Connection conn = dbManager.getConnection();
+        assertTrue(conn.getAutoCommit(), "Auto-commit should be restored");
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM classes) + (SELECT COUNT(*) FROM methods)");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        assertTrue(dbManager.getIndexedFiles(run.getId()).isEmpty(), "The checkpoint should not land without its rows");
+    }
+}
@@ -0,0 +1,102 @@
+package com.jps.analysis.jfr;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.jps.analysis.parser.FileExtraction;
+import com.jps.analysis.parser.JavaSourceParser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JfrEventsTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("jfr-test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> walk = Files.walk(tempDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testEventsAreOffByDefault() {
+        assertFalse(new FileParsedEvent().isEnabled());
+        assertFalse(new SymbolResolutionEvent().isEnabled());
+        assertFalse(new BatchFlushedEvent().isEnabled());
+        assertFalse(new QueryExecutedEvent().isEnabled());
+    }
+
+    @Test
+    void testParsingEmitsEventsWhenEnabled() {
+        try {
+            Path source = tempDir.resolve("com/example/Recorded.java");
+            Files.createDirectories(source.getParent());
+            String code = "package com.example;\n\n" +
+                    "// Größe in bytes, not chars\n" +
+                    "public class Recorded {\n" +
+                    "    public int run(Recorded other) {\n" +
+                    "        return other.size() + helper();\n" +
+                    "    }\n" +
+                    "    public int size() { return 1; }\n" +
+                    "    public static int helper() { return 2; }\n" +
+                    "}";
+            Files.writeString(source, code);
+
+            CombinedTypeSolver typeSolver = new CombinedTypeSolver();
+            typeSolver.add(new ReflectionTypeSolver());
+            typeSolver.add(new JavaParserTypeSolver(tempDir));
+            JavaParser parser = new JavaParser();
+            parser.getParserConfiguration().setSymbolResolver(new JavaSymbolSolver(typeSolver));
+
+            Path output = tempDir.resolve("recording.jfr");
+            FileExtraction extraction;
+            try (Recording recording = new Recording()) {
+                recording.enable(FileParsedEvent.class);
+                recording.enable(SymbolResolutionEvent.class);
+                recording.start();
+                extraction = new JavaSourceParser().extract(source, code, parser);
+                recording.stop();
+                recording.dump(output);
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(output);
+            List<RecordedEvent> files = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("com.jps.analysis.FileParsed"))
+                    .collect(Collectors.toList());
+            assertEquals(1, files.size());
+            assertEquals(source.toString(), files.get(0).getString("path"));
+            assertEquals(code.getBytes(StandardCharsets.UTF_8).length, files.get(0).getLong("bytes"));
+            assertTrue(files.get(0).getBoolean("parsed"));
+            assertEquals(extraction.getCalls().size(), files.get(0).getInt("calls"));
+
+            List<String> kinds = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("com.jps.analysis.SymbolResolution"))
+                    .map(e -> e.getString("kind") + ":" + e.getString("symbol"))
+                    .collect(Collectors.toList());
+            assertTrue(kinds.contains("scope-type:other"), kinds.toString());
+            assertTrue(kinds.contains("method:helper"), kinds.toString());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+}
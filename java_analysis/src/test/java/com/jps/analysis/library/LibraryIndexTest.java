@@ -0,0 +1,121 @@
+package com.jps.analysis.library;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.query.MethodQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryIndexTest {
+    private static final String TEST_DB = "test_analysis.db";
+    private Path workDir;
+    private Path jar;
+
+    // Packaged into a jar to act as a dependency
+    static class LibraryHelper {
+        public String greet(String name) {
+            return name.trim();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty("db.url", "jdbc:sqlite:" + TEST_DB);
+        DatabaseManager.getInstance().createTables();
+
+        workDir = Files.createTempDirectory("test-libraries");
+        jar = workDir.resolve("helper-1.0.jar");
+        String entryName = LibraryHelper.class.getName().replace('.', '/') + ".class";
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out);
+             InputStream in = LibraryHelper.class.getResourceAsStream("LibraryIndexTest$LibraryHelper.class")) {
+            jarOut.putNextEntry(new JarEntry(entryName));
+            jarOut.write(in.readAllBytes());
+            jarOut.closeEntry();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        DatabaseManager.getInstance().close();
+        Files.deleteIfExists(Path.of(TEST_DB));
+        Files.walk(workDir)
+             .sorted((a, b) -> -a.compareTo(b))
+             .forEach(path -> {
+                 try {
+                     Files.delete(path);
+                 } catch (Exception e) {
+                     e.printStackTrace();
+                 }
+             });
+    }
+
+    @Test
+    void testIndexIsBuiltOncePerJar() {
+        try {
+            LibraryIndex libraryIndex = new LibraryIndex(workDir.resolve("index"));
+            Path first = libraryIndex.indexJar(jar);
+            long builtAt = Files.getLastModifiedTime(first).toMillis();
+
+            // Same bytes under a different name resolve to the same shared index
+            Path copy = Files.copy(jar, workDir.resolve("helper-copy.jar"));
+            Path second = libraryIndex.indexJar(copy);
+            assertEquals(first, second);
+            assertEquals(builtAt, Files.getLastModifiedTime(second).toMillis());
+            assertEquals(LibraryIndex.sha256(jar) + ".db", first.getFileName().toString());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testAttachLibraryToProject() {
+        try {
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            LibraryIndex libraryIndex = new LibraryIndex(workDir.resolve("index"));
+            LibraryCatalog catalog = libraryIndex.attach(dbManager, Collections.singletonList(jar), false);
+
+            String helperKey = "com.jps.analysis.library.LibraryIndexTest$LibraryHelper";
+            assertNotNull(catalog.findLibrary(helperKey), "Library classes should be in the catalog");
+            List<DatabaseManager.Library> libraries = dbManager.getLibraries();
+            assertEquals(1, libraries.size());
+            assertEquals("helper-1.0.jar", libraries.get(0).getJarName());
+
+            // A project class referencing the library is linked to it
+            int classId = dbManager.storeClass("com.jps.analysis.library", "LibraryIndexTest$LibraryHelper");
+            dbManager.getConnection().createStatement().executeUpdate(
+                "UPDATE classes SET library_id = " + libraries.get(0).getId() + " WHERE id = " + classId);
+            List<MethodQuery.MethodInfo> methods = new MethodQuery().findLibraryMethods(
+                "com.jps.analysis.library", "LibraryIndexTest$LibraryHelper");
+            assertTrue(methods.stream().anyMatch(m -> m.getMethodName().equals("greet")),
+                "Should read methods from the shared index");
+
+            // Reading a library must work while a flush holds the shared connection's transaction,
+            // and must leave nothing attached to it
+            Connection conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+            conn.createStatement().executeUpdate("INSERT INTO classes (package_name, class_name) VALUES ('p', 'Open')");
+            assertEquals(methods.size(), new MethodQuery().findLibraryMethods(
+                "com.jps.analysis.library", "LibraryIndexTest$LibraryHelper").size());
+            conn.commit();
+            conn.setAutoCommit(true);
+            ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM pragma_database_list");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1), "No library should stay attached");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+}
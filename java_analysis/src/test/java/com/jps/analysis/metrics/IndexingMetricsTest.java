@@ -0,0 +1,69 @@
+package com.jps.analysis.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexingMetricsTest {
+
+    @Test
+    void testCountersAndRates() {
+        IndexingMetrics metrics = new IndexingMetrics();
+        metrics.increment(IndexingMetrics.Counter.CLASS_CACHE_HITS);
+        metrics.add(IndexingMetrics.Counter.CLASS_CACHE_HITS, 2);
+        metrics.increment(IndexingMetrics.Counter.CLASS_CACHE_MISSES);
+        assertEquals(3, metrics.get(IndexingMetrics.Counter.CLASS_CACHE_HITS));
+        assertEquals(0.75, metrics.getClassCacheHitRate(), 1e-9);
+        assertEquals(0.0, metrics.getMethodCacheHitRate(), 1e-9);
+
+        metrics.record(IndexingMetrics.Phase.SYMBOL_RESOLVED, 5_000);
+        metrics.record(IndexingMetrics.Phase.SYMBOL_UNRESOLVED, 80_000);
+        assertEquals(0.5, metrics.getSymbolResolutionSuccessRate(), 1e-9);
+        assertEquals(3L, metrics.getCounters().get("class_cache_hits").longValue());
+
+        long[] entries = {7};
+        metrics.registerGauge("method_cache_entries", () -> entries[0]);
+        entries[0] = 9;
+        assertEquals(9L, metrics.getGauges().get("method_cache_entries").longValue(), "Gauges are read, not pushed");
+        assertTrue(metrics.getSummaryJson().contains("\"gauges\":{\"method_cache_entries\":9}"), metrics.getSummaryJson());
+    }
+
+    @Test
+    void testPhaseLatencies() {
+        IndexingMetrics metrics = new IndexingMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(IndexingMetrics.Phase.PARSE, i * 1_000_000L);   // 1 ms .. 100 ms
+        }
+        assertEquals(100L, metrics.getPhaseCounts().get("parse").longValue());
+        assertEquals(0L, metrics.getPhaseCounts().get("flush").longValue());
+        assertEquals(5050L, metrics.getPhaseTotalMillis().get("parse").longValue());
+        assertEquals(100_000L, metrics.getMaxMicros().get("parse").longValue());
+        long p99 = metrics.getP99Micros().get("parse");
+        assertTrue(p99 >= 99_000 && p99 <= 100_000, "p99 was " + p99);
+
+        String json = metrics.getSummaryJson();
+        assertTrue(json.startsWith("{\"counters\":{\"files_read\":0,"), json);
+        assertTrue(json.contains("\"parse\":{\"count\":100,\"total_ms\":5050,"), json);
+        assertTrue(json.contains("\"max_us\":100000}"), json);
+    }
+
+    @Test
+    void testRegisteredWithJmx() {
+        try {
+            IndexingMetrics metrics = IndexingMetrics.getInstance();
+            metrics.registerMBean();
+            metrics.registerMBean();
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(IndexingMetrics.OBJECT_NAME);
+            assertTrue(server.isRegistered(name));
+            assertTrue(server.getAttribute(name, "SummaryJson").toString().contains("\"phases\""));
+            assertNotNull(server.getAttribute(name, "P99Micros"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+}
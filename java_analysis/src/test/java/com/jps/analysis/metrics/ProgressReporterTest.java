@@ -0,0 +1,67 @@
+package com.jps.analysis.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressReporterTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testRatesAndEta() {
+        AtomicLong rows = new AtomicLong(500);
+        ProgressReporter progress = new ProgressReporter(rows::get, 0);
+
+        ProgressReporter.Snapshot snapshot = progress.report(SECOND, false);
+        assertEquals(-1L, snapshot.getFilesTotal());
+        assertEquals(-1L, snapshot.getEtaSeconds(), "No ETA before the files are counted");
+        assertTrue(snapshot.toString().contains("counting"), snapshot.toString());
+
+        progress.setFilesTotal(100);
+        for (int i = 0; i < 20; i++) {
+            progress.fileDone();
+        }
+        rows.addAndGet(400);
+        snapshot = progress.report(11 * SECOND, false);
+        assertEquals(20L, snapshot.getFilesDone());
+        assertEquals(400L, snapshot.getRowsWritten(), "Rows written before the run should not count");
+        assertEquals(2.0, snapshot.getFilesPerSecond(), 1e-9);
+        assertEquals(40.0, snapshot.getRowsPerSecond(), 1e-9);
+        assertEquals(40L, snapshot.getEtaSeconds(), "80 files left at 2 files/s");
+        assertTrue(snapshot.toString().startsWith("20/100 files (20.0%)"), snapshot.toString());
+        assertTrue(snapshot.toString().contains("ETA 40s"), snapshot.toString());
+    }
+
+    @Test
+    void testStalledAndFinished() {
+        ProgressReporter progress = new ProgressReporter(() -> 0, 0);
+        progress.setFilesTotal(3);
+        progress.fileDone();
+        progress.fileFailed();
+        progress.report(10 * SECOND, false);
+
+        ProgressReporter.Snapshot stalled = progress.report(20 * SECOND, false);
+        assertEquals(0.0, stalled.getFilesPerSecond(), 0.0);
+        assertTrue(stalled.getEtaSeconds() > 0, "The smoothed rate still gives an estimate");
+        assertTrue(stalled.toString().contains("stalled"), stalled.toString());
+        assertTrue(stalled.toString().contains("1 failed"), stalled.toString());
+
+        progress.fileDone();
+        ProgressReporter.Snapshot done = progress.report(30 * SECOND, true);
+        assertTrue(done.isFinished());
+        assertEquals(3L, done.getFilesDone());
+        // The final report covers the whole run
+        assertEquals(0.1, done.getFilesPerSecond(), 1e-9);
+        assertTrue(done.toString().contains("done in 30s"), done.toString());
+        assertEquals(3L, progress.getFilesDone());
+        assertEquals(30L, progress.getElapsedSeconds());
+    }
+
+    @Test
+    void testFormatSeconds() {
+        assertEquals("59s", ProgressReporter.Snapshot.formatSeconds(59));
+        assertEquals("2m05s", ProgressReporter.Snapshot.formatSeconds(125));
+        assertEquals("3h07m", ProgressReporter.Snapshot.formatSeconds(3 * 3600 + 7 * 60 + 30));
+    }
+}
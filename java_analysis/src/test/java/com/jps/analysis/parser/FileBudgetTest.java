@@ -0,0 +1,55 @@
+package com.jps.analysis.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileBudgetTest {
+
+    @Test
+    void testTimeBudget() throws Exception {
+        FileBudget budget = new FileBudget(1_000_000, 0);
+        Thread.sleep(5);
+        assertTrue(budget.isExceeded());
+        assertEquals("time", budget.getExceeded());
+        assertTrue(budget.isExceeded(), "An exceeded budget stays exceeded");
+    }
+
+    @Test
+    void testMemoryBudget() {
+        FileBudget budget = new FileBudget(0, 1024 * 1024);
+        long[][] garbage = new long[64][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new long[16 * 1024];
+        }
+        assertEquals(64, garbage.length);
+        // Without HotSpot's allocation counters the memory limit is not checked
+        assertEquals(FileBudget.isMemoryMeasured(), budget.isExceeded());
+        if (FileBudget.isMemoryMeasured()) {
+            assertEquals("memory", budget.getExceeded());
+        }
+    }
+
+    @Test
+    void testUnlimited() throws Exception {
+        FileBudget budget = FileBudget.unlimited();
+        Thread.sleep(2);
+        assertFalse(budget.isExceeded());
+        assertNull(budget.getExceeded());
+        assertFalse(new FileBudget(0, 0).isExceeded());
+    }
+
+    @Test
+    void testWatchdogFollowsTimeBudget() {
+        try {
+            System.setProperty("index.file.budget.ms", "1500");
+            assertEquals(3000L, FileBudget.watchdogMillis());
+            System.setProperty("index.file.timeout.ms", "0");
+            assertEquals(0L, FileBudget.watchdogMillis());
+        } finally {
+            System.clearProperty("index.file.budget.ms");
+            System.clearProperty("index.file.timeout.ms");
+        }
+        assertEquals(60_000L, FileBudget.watchdogMillis());
+    }
+}
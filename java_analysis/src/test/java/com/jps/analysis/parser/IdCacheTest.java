@@ -0,0 +1,46 @@
+package com.jps.analysis.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdCacheTest {
+
+    @Test
+    void testAccounting() {
+        IdCache cache = new IdCache();
+        cache.put("com.example.A", 1);
+        cache.put("com.example.B", 2);
+        cache.put("com.example.A", 1);
+        assertEquals(2, cache.size());
+        assertEquals(2 * IdCache.estimateBytes("com.example.A"), cache.getEstimatedBytes());
+        assertEquals(Integer.valueOf(2), cache.get("com.example.B"));
+        assertNull(cache.get("com.example.C"));
+    }
+
+    @Test
+    void testTrimEvictsLeastRecentlyUsed() {
+        IdCache cache = new IdCache();
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, i);
+        }
+        // Touching k0 makes k1 the coldest entry
+        cache.get("k0");
+
+        List<Integer> evicted = new ArrayList<>();
+        int dropped = cache.trimTo(4 * IdCache.estimateBytes("k0"), evicted::add);
+        assertEquals(6, dropped);
+        assertEquals(4, cache.size());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), evicted);
+        assertNotNull(cache.get("k0"));
+        assertNull(cache.get("k1"));
+        assertEquals(6L, cache.getEvictions());
+
+        assertEquals(0, cache.trimTo(Long.MAX_VALUE, evicted::add));
+        cache.trimTo(0, evicted::add);
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getEstimatedBytes());
+    }
+}
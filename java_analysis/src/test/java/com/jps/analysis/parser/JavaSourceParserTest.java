@@ -1,6 +1,10 @@
 package com.jps.analysis.parser;
 
 import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.db.SourceSpan;
+import com.jps.analysis.metrics.IndexingMetrics;
+import com.jps.analysis.metrics.ProgressReporter;
+import com.jps.analysis.query.MethodQuery;
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
@@ -239,4 +243,498 @@ class JavaSourceParserTest {
             fail("Should not throw exception: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testSourceSpansAndLazySource() {
+        try {
+            String javaCode = "package com.example;\n\n" +
+                            "public class SpanClass {\n" +
+                            "    public int answer() {\n" +
+                            "        return 42;\n" +
+                            "    }\n" +
+                            "}";
+            Path testFile = testProjectDir.resolve("src/main/java/com/example/SpanClass.java");
+            Files.write(testFile, javaCode.getBytes());
+
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseJavaFile(testFile, this.parser);
+
+            // Spans are recorded instead of the class source
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            var rs = dbManager.getConnection().createStatement().executeQuery(
+                "SELECT * FROM classes WHERE class_name = 'SpanClass'");
+            assertTrue(rs.next(), "Should find the parsed class");
+            assertEquals(testFile.toAbsolutePath().normalize().toString(), rs.getString("file_path"));
+            assertEquals(3, rs.getInt("begin_line"));
+            assertEquals(7, rs.getInt("end_line"));
+
+            // Source is read back from the file on demand
+            MethodQuery methodQuery = new MethodQuery();
+            String classSource = methodQuery.getClassSource("com.example", "SpanClass");
+            assertTrue(classSource.startsWith("public class SpanClass {"));
+            assertTrue(classSource.endsWith("}"));
+            assertEquals("public int answer() {\n        return 42;\n    }",
+                methodQuery.getMethodSource("SpanClass", "answer", "[]"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testParseProjectPipeline() {
+        try {
+            // Two files calling each other, indexed by the parallel pipeline
+            String callerCode = "package com.example;\n\n" +
+                            "public class PipelineCaller {\n" +
+                            "    public void run(PipelineCallee callee) {\n" +
+                            "        callee.handle();\n" +
+                            "    }\n" +
+                            "}";
+            String calleeCode = "package com.example;\n\n" +
+                            "public class PipelineCallee {\n" +
+                            "    public void handle() {\n" +
+                            "    }\n" +
+                            "}";
+            Files.write(testProjectDir.resolve("src/main/java/com/example/PipelineCaller.java"), callerCode.getBytes());
+            Files.write(testProjectDir.resolve("src/main/java/com/example/PipelineCallee.java"), calleeCode.getBytes());
+
+            System.setProperty("parser.threads", "2");
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM classes WHERE class_name LIKE 'Pipeline%'"),
+                "Each class should be stored once");
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM methods"), "Each method should be stored once");
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+
+            // The call joins to the declared caller and callee, whichever thread stored them
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM method_calls mc " +
+                "JOIN methods caller ON mc.caller_method_id = caller.id " +
+                "JOIN classes caller_class ON caller.class_id = caller_class.id " +
+                "JOIN methods called ON mc.called_method_id = called.id " +
+                "JOIN classes called_class ON called.class_id = called_class.id " +
+                "WHERE caller.method_name = 'run' AND caller_class.class_name = 'PipelineCaller' " +
+                "AND called.method_name = 'handle' AND called_class.class_name = 'PipelineCallee' " +
+                "AND called.begin_offset IS NOT NULL"));
+
+            IndexingPipeline.Stats stats = parser.getLastRunStats();
+            assertNotNull(stats);
+            for (IndexingPipeline.StageStats stage : stats.getStages()) {
+                assertEquals(2, stage.getItems(), "Stage " + stage.getName() + " should see both files");
+                assertEquals(0, stage.getQueueDepth());
+            }
+            assertTrue(stats.getRowsWritten() > 0);
+            assertEquals(2, stats.getSlowestFiles().size());
+            assertTrue(stats.getSlowestFiles().get(0).getNanos() >= stats.getSlowestFiles().get(1).getNanos());
+
+            ProgressReporter.Snapshot progress = parser.getLastRunProgress();
+            assertTrue(progress.isFinished());
+            assertEquals(2L, progress.getFilesTotal());
+            assertEquals(2L, progress.getFilesDone());
+            assertEquals(0L, progress.getEtaSeconds());
+            assertEquals(stats.getRowsWritten(), progress.getRowsWritten());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            System.clearProperty("parser.threads");
+        }
+    }
+
+    @Test
+    void testExtractFallsBackToDeclarations() {
+        try {
+            String code = "package com.example;\n\n" +
+                            "public class OverBudget {\n" +
+                            "    public void a() {\n" +
+                            "        b();\n" +
+                            "        Math.abs(-1);\n" +
+                            "    }\n" +
+                            "    public void b() {\n" +
+                            "    }\n" +
+                            "}";
+            JavaSourceParser sourceParser = new JavaSourceParser();
+            Path file = testProjectDir.resolve("src/main/java/com/example/OverBudget.java");
+
+            FileExtraction full = sourceParser.extract(file, code, parser);
+            assertFalse(full.isDeclarationsOnly());
+            assertFalse(full.getCalls().isEmpty(), "Math.abs should be recorded without a budget");
+
+            // A budget of one nanosecond is used up before the first call is resolved
+            FileBudget budget = new FileBudget(1, 0);
+            Thread.sleep(1);
+            FileExtraction degraded = sourceParser.extract(file, code, parser, budget);
+            assertTrue(degraded.isDeclarationsOnly());
+            assertEquals("time", degraded.getDeclarationsOnlyReason());
+            assertTrue(degraded.getCalls().isEmpty());
+            assertEquals(2, degraded.getMethods().size(), "Declarations should be kept");
+            assertTrue(degraded.getClasses().stream().noneMatch(FileExtraction.ClassRecord::isStub));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testWatchdogFallsBackToDeclarations() {
+        try {
+            // Thousands of calls to resolve take far longer than the one millisecond allowed
+            StringBuilder code = new StringBuilder("package com.example;\n\npublic class Slow {\n" +
+                    "    public int a(Slow other) {\n        int total = 0;\n");
+            for (int i = 0; i < 2000; i++) {
+                code.append("        total += other.b(").append(i).append(");\n");
+            }
+            code.append("        return total;\n    }\n    public int b(int x) {\n        return x;\n    }\n}");
+            Path file = testProjectDir.resolve("src/main/java/com/example/Slow.java");
+            Files.write(file, code.toString().getBytes());
+
+            JavaSourceParser sourceParser = new JavaSourceParser();
+            FileExtraction declarations = sourceParser.extractDeclarations(file, code.toString(), "timeout");
+            assertTrue(declarations.isDeclarationsOnly());
+            assertTrue(declarations.getCalls().isEmpty());
+            assertEquals(2, declarations.getMethods().size());
+
+            IndexingMetrics metrics = DatabaseManager.getInstance().getMetrics();
+            long timeouts = metrics.get(IndexingMetrics.Counter.FILE_TIMEOUTS);
+            long declarationsOnly = metrics.get(IndexingMetrics.Counter.DECLARATION_ONLY_FILES);
+            System.setProperty("index.file.timeout.ms", "1");
+            System.setProperty("index.file.abandoned.max", "1");
+            sourceParser.parseProject(testProjectDir);
+
+            assertEquals(timeouts + 1, metrics.get(IndexingMetrics.Counter.FILE_TIMEOUTS));
+            assertTrue(metrics.get(IndexingMetrics.Counter.DECLARATION_ONLY_FILES) > declarationsOnly,
+                    "The abandoned file should be indexed as declarations");
+            assertEquals(0L, sourceParser.getLastRunProgress().getFilesFailed());
+            assertEquals(1L, sourceParser.getLastRunProgress().getFilesDone());
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM methods m JOIN classes c ON m.class_id = c.id " +
+                    "WHERE c.class_name = 'Slow' AND m.begin_offset IS NOT NULL"));
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+
+            // With no more workers allowed to be abandoned, the file is not waited for either
+            System.setProperty("index.file.abandoned.max", "0");
+            declarationsOnly = metrics.get(IndexingMetrics.Counter.DECLARATION_ONLY_FILES);
+            sourceParser = new JavaSourceParser();
+            sourceParser.parseProject(testProjectDir);
+            assertEquals(timeouts + 2, metrics.get(IndexingMetrics.Counter.FILE_TIMEOUTS));
+            assertTrue(metrics.get(IndexingMetrics.Counter.DECLARATION_ONLY_FILES) > declarationsOnly,
+                    "The stuck file should be indexed as declarations");
+            assertEquals(0L, sourceParser.getLastRunProgress().getFilesFailed());
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            System.clearProperty("index.file.timeout.ms");
+            System.clearProperty("index.file.abandoned.max");
+        }
+    }
+
+    @Test
+    void testStackOverflowFailsOnlyItsFile() {
+        try {
+            // Nesting this deep overflows the parser's recursive descent
+            StringBuilder code = new StringBuilder("package com.example;\n\npublic class Deep {\n" +
+                    "    public int a() {\n        return ");
+            code.append("(".repeat(100_000)).append('1').append(")".repeat(100_000));
+            code.append(";\n    }\n}");
+            Files.write(testProjectDir.resolve("src/main/java/com/example/Deep.java"), code.toString().getBytes());
+            Files.write(testProjectDir.resolve("src/main/java/com/example/Shallow.java"),
+                    "package com.example;\n\npublic class Shallow {\n    public void b() {\n    }\n}".getBytes());
+
+            JavaSourceParser sourceParser = new JavaSourceParser();
+            sourceParser.parseProject(testProjectDir);
+
+            // Done counts failed files too
+            ProgressReporter.Snapshot progress = sourceParser.getLastRunProgress();
+            assertEquals(2L, progress.getFilesDone(), "The overflowing file should not fail the run");
+            assertEquals(1L, progress.getFilesFailed(), "Its declarations overflow the parser as well");
+            assertEquals(1, count(DatabaseManager.getInstance(),
+                    "SELECT COUNT(*) FROM classes WHERE class_name = 'Shallow' AND file_path IS NOT NULL"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testResumeInterruptedRun() {
+        try {
+            Path srcDir = testProjectDir.resolve("src/main/java/com/example");
+            String callerCode = "package com.example;\n\n" +
+                            "public class ResumeCaller {\n" +
+                            "    public void run(ResumeCallee callee) {\n" +
+                            "        callee.handle();\n" +
+                            "    }\n" +
+                            "}";
+            String calleeCode = "package com.example;\n\n" +
+                            "public class ResumeCallee {\n" +
+                            "    public void handle() {\n" +
+                            "    }\n" +
+                            "}";
+            Files.write(srcDir.resolve("ResumeCaller.java"), callerCode.getBytes());
+            Files.write(srcDir.resolve("ResumeCallee.java"), calleeCode.getBytes());
+
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            int calls = count(dbManager, "SELECT COUNT(*) FROM method_calls");
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM indexed_files"),
+                    "A finished run should drop its checkpoints");
+
+            // As if the run had died after committing both files, before a third was read
+            dbManager.getConnection().createStatement().executeUpdate("UPDATE index_runs SET finished = NULL");
+            checkpoint(dbManager, srcDir.resolve("ResumeCaller.java"));
+            checkpoint(dbManager, srcDir.resolve("ResumeCallee.java"));
+            String thirdCode = "package com.example;\n\n" +
+                            "public class ResumeThird {\n" +
+                            "    public void go(ResumeCallee callee) {\n" +
+                            "        callee.handle();\n" +
+                            "    }\n" +
+                            "}";
+            Files.write(srcDir.resolve("ResumeThird.java"), thirdCode.getBytes());
+
+            parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(1L, parser.getLastRunProgress().getFilesTotal(), "Committed files should be skipped");
+            assertEquals(calls + 1, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM index_runs"), "The run should be resumed");
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM index_runs WHERE finished IS NULL"));
+            assertEquals(3, count(dbManager, "SELECT files_done FROM index_runs"));
+
+            // A file edited since it was committed replaces its rows instead of adding to them
+            dbManager.getConnection().createStatement().executeUpdate("UPDATE index_runs SET finished = NULL");
+            checkpoint(dbManager, srcDir.resolve("ResumeCaller.java"));
+            checkpoint(dbManager, srcDir.resolve("ResumeCallee.java"));
+            checkpoint(dbManager, srcDir.resolve("ResumeThird.java"));
+            Files.write(srcDir.resolve("ResumeCaller.java"), (callerCode + "\n").getBytes());
+            parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(1L, parser.getLastRunProgress().getFilesTotal());
+            assertEquals(calls + 1, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+
+            // Once finished, the next parse is a new run over every file, which replaces their rows
+            int classes = count(dbManager, "SELECT COUNT(*) FROM classes");
+            int methods = count(dbManager, "SELECT COUNT(*) FROM methods");
+            parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM index_runs"));
+            assertEquals(3L, parser.getLastRunProgress().getFilesTotal());
+            assertEquals(calls + 1, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+            assertEquals(classes, count(dbManager, "SELECT COUNT(*) FROM classes"));
+            assertEquals(methods, count(dbManager, "SELECT COUNT(*) FROM methods"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testResumedRunRemovesDeletedFiles() {
+        try {
+            Path srcDir = testProjectDir.resolve("src/main/java/com/example");
+            Path caller = srcDir.resolve("GoneCaller.java");
+            Path callee = srcDir.resolve("GoneCallee.java");
+            Files.write(caller, ("package com.example;\n\n" +
+                    "public class GoneCaller {\n" +
+                    "    public void run(GoneCallee callee) {\n" +
+                    "        callee.handle();\n" +
+                    "    }\n" +
+                    "}").getBytes());
+            Files.write(callee, ("package com.example;\n\n" +
+                    "public class GoneCallee {\n" +
+                    "    public void handle() {\n" +
+                    "    }\n" +
+                    "}").getBytes());
+
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            int calls = count(dbManager, "SELECT COUNT(*) FROM method_calls");
+
+            // Interrupted after committing both files, then one is deleted before the resume
+            dbManager.getConnection().createStatement().executeUpdate("UPDATE index_runs SET finished = NULL");
+            checkpoint(dbManager, caller);
+            checkpoint(dbManager, callee);
+            Files.delete(caller);
+
+            parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM classes WHERE class_name = 'GoneCaller'"));
+            assertEquals(calls - 1, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM classes WHERE class_name = 'GoneCallee'"));
+
+            // A new run drops a file deleted since the last one just the same
+            Files.delete(callee);
+            parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(0, count(dbManager, "SELECT COUNT(*) FROM classes WHERE class_name = 'GoneCallee'"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    // Records a file as committed by the latest run, as its flush would have
+    private void checkpoint(DatabaseManager dbManager, Path file) throws Exception {
+        try (var stmt = dbManager.getConnection().prepareStatement("INSERT INTO indexed_files " +
+                "(run_id, file_path, size, modified) VALUES ((SELECT MAX(id) FROM index_runs), ?, ?, ?)")) {
+            stmt.setString(1, testProjectDir.relativize(file).toString());
+            stmt.setLong(2, Files.size(file));
+            stmt.setLong(3, Files.getLastModifiedTime(file).toMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    private static int count(DatabaseManager dbManager, String sql) throws Exception {
+        var rs = dbManager.getConnection().createStatement().executeQuery(sql);
+        assertTrue(rs.next());
+        return rs.getInt(1);
+    }
+
+    @Test
+    void testConcurrentWritersShareIds() {
+        try {
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            IndexWriter first = new IndexWriter(dbManager);
+            IndexWriter second = new IndexWriter(dbManager);
+            String sharedMethod = FileExtraction.methodKey("com.example.Shared", "run", "");
+
+            // Both writers start on the same database before either has flushed
+            FileExtraction caller = new FileExtraction("Caller.java", 100);
+            caller.addClass("com.example", "Caller", null);
+            caller.addMethod("com.example.Caller", "call", "void", "", false, true, null);
+            caller.addClassStub("com.example.Shared");
+            caller.addMethodStub("com.example.Shared", "run", "", true);
+            caller.addCall(new FileExtraction.CallRecord(FileExtraction.methodKey("com.example.Caller", "call", ""),
+                    sharedMethod, 3, "this", "direct", false, false, false, false, null, false, null));
+            first.write(caller);
+
+            FileExtraction shared = new FileExtraction("Shared.java", 100);
+            shared.addClass("com.example", "Shared", new SourceSpan(1, 3, 0, 40));
+            shared.addMethod("com.example.Shared", "run", "void", "", false, true,
+                    new SourceSpan(2, 2, 10, 30));
+            shared.addClass("com.example", "Other", null);
+            shared.addMethod("com.example.Other", "go", "void", "", false, true, null);
+            shared.addCall(new FileExtraction.CallRecord(FileExtraction.methodKey("com.example.Other", "go", ""),
+                    sharedMethod, 5, "this", "direct", false, false, false, false, null, false, null));
+            second.write(shared);
+
+            second.flush();
+            first.flush();
+
+            assertEquals(3, count(dbManager, "SELECT COUNT(*) FROM classes"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM classes WHERE class_name = 'Shared' " +
+                "AND begin_offset = 0"), "The declaration should survive the other writer's stub");
+            assertEquals(3, count(dbManager, "SELECT COUNT(*) FROM methods"));
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM method_calls"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(DISTINCT called_method_id) FROM method_calls"));
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM method_calls mc " +
+                "JOIN methods called ON mc.called_method_id = called.id " +
+                "JOIN classes c ON called.class_id = c.id WHERE c.class_name = 'Shared' AND called.method_name = 'run'"));
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM method_calls mc " +
+                "JOIN methods caller ON mc.caller_method_id = caller.id " +
+                "WHERE caller.method_name IN ('call', 'go')"));
+
+            // Ids the first writer cached are the stored ones, so later files still join up
+            FileExtraction again = new FileExtraction("Caller2.java", 100);
+            again.addClass("com.example", "Caller2", null);
+            again.addMethod("com.example.Caller2", "call", "void", "", false, true, null);
+            again.addClassStub("com.example.Shared");
+            again.addMethodStub("com.example.Shared", "run", "", true);
+            again.addCall(new FileExtraction.CallRecord(FileExtraction.methodKey("com.example.Caller2", "call", ""),
+                    sharedMethod, 3, "this", "direct", false, false, false, false, null, false, null));
+            first.write(again);
+            first.flush();
+            assertEquals(2, count(dbManager, "SELECT COUNT(*) FROM methods WHERE method_name = 'call'"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(*) FROM methods WHERE method_name = 'run'"));
+            assertEquals(1, count(dbManager, "SELECT COUNT(DISTINCT called_method_id) FROM method_calls"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testCacheBudgetKeepsIdsUnique() {
+        try {
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            // No budget at all: every flush empties the caches
+            IndexWriter writer = new IndexWriter(dbManager, 1, 0);
+            String sharedMethod = FileExtraction.methodKey("com.example.Shared", "run", "");
+            for (int i = 0; i < 3; i++) {
+                String classKey = "com.example.Evicted" + i;
+                FileExtraction extraction = new FileExtraction("Evicted" + i + ".java", 100);
+                extraction.addClass("com.example", "Evicted" + i, null);
+                extraction.addMethod(classKey, "m", "void", "", false, true, null);
+                extraction.addClassStub("com.example.Shared");
+                extraction.addMethodStub("com.example.Shared", "run", "", true);
+                extraction.addCall(new FileExtraction.CallRecord(FileExtraction.methodKey(classKey, "m", ""),
+                        sharedMethod, 3, "this", "direct", false, false, false, false, null, false, null));
+                writer.write(extraction);
+                writer.flush();
+                assertEquals(0L, writer.getCacheBytes(), "Caches should be trimmed after every flush");
+            }
+
+            var rs = dbManager.getConnection().createStatement().executeQuery(
+                "SELECT COUNT(*) FROM classes WHERE class_name = 'Shared'");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1), "An evicted class should be looked up, not stored again");
+            rs = dbManager.getConnection().createStatement().executeQuery(
+                "SELECT COUNT(*) FROM methods WHERE method_name = 'run'");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1), "An evicted method should be looked up, not stored again");
+            rs = dbManager.getConnection().createStatement().executeQuery(
+                "SELECT COUNT(DISTINCT called_method_id), COUNT(*) FROM method_calls");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals(3, rs.getInt(2));
+            assertTrue(dbManager.getMetrics().get(IndexingMetrics.Counter.METHOD_CACHE_EVICTIONS) > 0);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testParseProjectRecordsMetrics() {
+        try {
+            String code = "package com.example;\n\n" +
+                            "public class Metered {\n" +
+                            "    public int a() {\n" +
+                            "        return b() + Math.abs(-1);\n" +
+                            "    }\n" +
+                            "    public int b() {\n" +
+                            "        return 1;\n" +
+                            "    }\n" +
+                            "}";
+            Files.write(testProjectDir.resolve("src/main/java/com/example/Metered.java"), code.getBytes());
+            Path summary = testProjectDir.resolve("metrics.json");
+
+            // Metrics are shared by the whole process, so only the change is checked
+            IndexingMetrics metrics = DatabaseManager.getInstance().getMetrics();
+            long filesRead = metrics.get(IndexingMetrics.Counter.FILES_READ);
+            long parsed = metrics.getHistogram(IndexingMetrics.Phase.PARSE).getCount();
+            long classesStored = metrics.get(IndexingMetrics.Counter.CLASSES_STORED);
+            long methodsStored = metrics.get(IndexingMetrics.Counter.METHODS_STORED);
+
+            System.setProperty("index.metrics.file", summary.toString());
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+
+            assertSame(metrics, parser.getMetrics());
+            assertEquals(filesRead + 1, metrics.get(IndexingMetrics.Counter.FILES_READ));
+            assertEquals(parsed + 1, metrics.getHistogram(IndexingMetrics.Phase.PARSE).getCount());
+            assertTrue(metrics.get(IndexingMetrics.Counter.CLASSES_STORED) > classesStored);
+            assertTrue(metrics.get(IndexingMetrics.Counter.METHODS_STORED) >= methodsStored + 2);
+            assertTrue(metrics.getHistogram(IndexingMetrics.Phase.SYMBOL_RESOLVED).getCount() > 0);
+            assertTrue(metrics.getHistogram(IndexingMetrics.Phase.FLUSH).getCount() > 0);
+
+            String json = Files.readString(summary);
+            assertTrue(json.contains("\"phases\":{\"file_read\":{\"count\":"), json);
+            assertTrue(json.contains("\"class_cache_hit_rate\""), json);
+            assertTrue(json.contains("\"method_cache_entries\":"), "The run's writer reports its caches: " + json);
+
+            // Once the run is over its caches are not reported, nor are those of other writers
+            new IndexWriter(DatabaseManager.getInstance());
+            assertFalse(metrics.getGauges().containsKey("method_cache_entries"), metrics.getGauges().toString());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            System.clearProperty("index.metrics.file");
+        }
+    }
+}
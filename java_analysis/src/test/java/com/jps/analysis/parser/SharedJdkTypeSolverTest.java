@@ -0,0 +1,33 @@
+package com.jps.analysis.parser;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedJdkTypeSolverTest {
+
+    @Test
+    void testJdkTypesAreSharedAcrossSolvers() {
+        SymbolReference<ResolvedReferenceTypeDeclaration> first = new SharedJdkTypeSolver().tryToSolveType("java.lang.String");
+        SymbolReference<ResolvedReferenceTypeDeclaration> second = new SharedJdkTypeSolver().tryToSolveType("java.lang.String");
+        assertTrue(first.isSolved());
+        assertSame(first, second, "The second parser should reuse the first one's declaration");
+        assertEquals("java.lang.String", second.getCorrespondingDeclaration().getQualifiedName());
+
+        int remembered = SharedJdkTypeSolver.getRememberedCount();
+        assertFalse(new SharedJdkTypeSolver().tryToSolveType("com.example.NotJdk").isSolved());
+        assertEquals(remembered, SharedJdkTypeSolver.getRememberedCount(), "Non-JDK names should not be remembered");
+    }
+
+    @Test
+    void testOneParentPerSolver() {
+        SharedJdkTypeSolver solver = new SharedJdkTypeSolver();
+        CombinedTypeSolver combined = new CombinedTypeSolver();
+        combined.add(solver);
+        assertSame(combined, solver.getParent());
+        assertThrows(IllegalStateException.class, () -> solver.setParent(new CombinedTypeSolver()));
+    }
+}
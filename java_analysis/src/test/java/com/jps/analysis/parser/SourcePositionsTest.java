@@ -0,0 +1,46 @@
+package com.jps.analysis.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.jps.analysis.db.SourceSpan;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourcePositionsTest {
+
+    @Test
+    void testByteOffsetsOfNonAsciiSource() {
+        String content = "package com.example;\r\n" +
+                "// Grüße, 日本語 and an emoji 😀\n" +
+                "public class Wide {\n" +
+                "    String s = \"ñ\"; public int answer() { return 42; }\n" +
+                "    // ü\n" +
+                "    void other() {}\n" +
+                "}\n";
+        CompilationUnit cu = new JavaParser().parse(content).getResult().get();
+        SourcePositions positions = new SourcePositions(content);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("public int answer() { return 42; }", regionOf(positions, bytes, cu, "answer"));
+        assertEquals("void other() {}", regionOf(positions, bytes, cu, "other"));
+        assertEquals(bytes.length, positions.byteLength(), "File sizes are counted in bytes, not chars");
+        assertEquals(5L, new SourcePositions("ab\ncd").byteLength());
+    }
+
+    private static String regionOf(SourcePositions positions, byte[] bytes, CompilationUnit cu, String name) {
+        MethodDeclaration method = cu.findFirst(MethodDeclaration.class, m -> m.getNameAsString().equals(name)).get();
+        SourceSpan span = positions.spanOf(method);
+        assertNotNull(span);
+        return new String(bytes, (int) span.getBeginOffset(), (int) span.getLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testUtf8LengthMatchesEncoder() {
+        String text = "aé日😀\uD800z";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, SourcePositions.utf8Length(text, 0, text.length()));
+        assertEquals(3L, SourcePositions.utf8Length(text, 0, 2));
+    }
+}
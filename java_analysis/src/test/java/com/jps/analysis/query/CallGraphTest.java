@@ -0,0 +1,61 @@
+package com.jps.analysis.query;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallGraphTest {
+
+    private static MethodCall call(int id, String callerClass, String callerMethod,
+                                   String calledClass, String calledMethod) {
+        return new MethodCall(id, id * 10, callerClass, callerMethod, "[]", calledClass, calledMethod, "[]",
+                "this", "direct", false, false, false, false, "", false, "");
+    }
+
+    private final CallGraph graph = new CallGraph(Arrays.asList(
+            call(1, "com.example.Service", "run", "com.example.Helper", "help"),
+            call(2, "com.example.Service", "run", "com.example.Repository", "save"),
+            call(3, "com.example.Controller", "handle", "com.example.Service", "run"),
+            call(4, "com.example.Helper", "help", "com.example.Repository", "save")));
+
+    @Test
+    void testNoFiltersReturnsEverything() {
+        assertEquals(4, graph.size());
+        assertEquals(4, graph.findCalls(null, "", null, "").size());
+    }
+
+    @Test
+    void testFiltersMatchSubstringsIgnoringCase() {
+        List<MethodCall> calls = graph.findCalls("service", null, null, null);
+        assertEquals(2, calls.size());
+        assertEquals(1, calls.get(0).getId());
+        assertEquals(2, calls.get(1).getId());
+
+        calls = graph.findCalls(null, null, "Repository", "save");
+        assertEquals(2, calls.size());
+        assertEquals(2, calls.get(0).getId(), "Results should be ordered by id");
+        assertEquals(4, calls.get(1).getId());
+    }
+
+    @Test
+    void testFiltersAreCombined() {
+        List<MethodCall> calls = graph.findCalls("Service", "run", "Helper", null);
+        assertEquals(1, calls.size());
+        assertEquals("com.example.Helper", calls.get(0).getCalledClass());
+
+        assertTrue(graph.findCalls("Controller", null, "Repository", null).isEmpty());
+        assertTrue(graph.findCalls("Missing", null, null, null).isEmpty());
+    }
+
+    @Test
+    void testEstimatedBytesGrowWithCalls() {
+        CallGraph empty = new CallGraph(Arrays.asList());
+        CallGraph one = new CallGraph(graph.getCalls().subList(0, 1));
+        assertEquals(0, empty.getEstimatedBytes());
+        assertTrue(one.getEstimatedBytes() > 0);
+        assertTrue(graph.getEstimatedBytes() > 3 * one.getEstimatedBytes());
+    }
+}
@@ -1,11 +1,18 @@
 package com.jps.analysis.query;
 
+import com.jps.analysis.db.ConnectionPool;
 import com.jps.analysis.db.DatabaseManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.*;
 
 class MethodQueryTest {
@@ -154,4 +161,29 @@ class MethodQueryTest {
         assertTrue(calls.get(0).isInLoop(), "Method call should be in loop");
         assertEquals("for", calls.get(0).getLoopType(), "Loop type should be 'for'");
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testAsyncNeighbourhoodOverConnectionPool() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + TEST_DB, 2, 5000)) {
+            AsyncMethodQuery asyncQuery = new AsyncMethodQuery(new MethodQuery(pool), executor);
+
+            List<CompletableFuture<AsyncMethodQuery.Neighbourhood>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(asyncQuery.findNeighbourhood("Helper", "helperMethod", "[]"));
+            }
+            for (CompletableFuture<AsyncMethodQuery.Neighbourhood> future : futures) {
+                AsyncMethodQuery.Neighbourhood neighbourhood = future.get(10, TimeUnit.SECONDS);
+                assertEquals(1, neighbourhood.getCallers().size());
+                assertEquals("testMethod", neighbourhood.getCallers().get(0).getCallerMethod());
+                assertTrue(neighbourhood.getCallees().isEmpty());
+            }
+            assertTrue(pool.getOpenConnections() <= 2, "Pool should never exceed its size");
+            assertEquals(pool.getOpenConnections(), pool.getIdleConnections(), "Every connection should be returned");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
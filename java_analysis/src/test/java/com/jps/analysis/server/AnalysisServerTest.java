@@ -0,0 +1,308 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.util.JsonWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisServerTest {
+    private static final String TEST_DB = "test_analysis.db";
+    private AnalysisServer server;
+    private int classId;
+    private int leafId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty("db.url", "jdbc:sqlite:" + TEST_DB);
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.createTables();
+
+        classId = dbManager.storeClass("com.example", "TestClass");
+        int callerId = dbManager.storeMethod(classId, "caller", "void", "[]", false, true);
+        int middleId = dbManager.storeMethod(classId, "middle", "void", "[]", false, true);
+        leafId = dbManager.storeMethod(classId, "leaf", "void", "[]", false, true);
+        dbManager.storeMethodCall(callerId, middleId, 5, "this", "direct",
+                false, false, false, true, "for", false, "");
+        dbManager.storeMethodCall(middleId, leafId, 9, "this", "direct",
+                false, false, false, false, "", false, "");
+
+        server = new AnalysisServer(0, dbManager);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+        DatabaseManager.getInstance().close();
+        Files.deleteIfExists(Path.of(TEST_DB));
+        Files.deleteIfExists(Path.of(TEST_DB + "-wal"));
+        Files.deleteIfExists(Path.of(TEST_DB + "-shm"));
+        Path artifacts = Path.of(TEST_DB + "-artifacts");
+        if (Files.exists(artifacts)) {
+            try (Stream<Path> files = Files.walk(artifacts)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private HttpURLConnection get(String pathAndQuery) throws Exception {
+        URL url = new URL("http://localhost:" + server.getPort() + pathAndQuery);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private String body(HttpURLConnection conn) throws Exception {
+        try (InputStream in = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testCallsFrom() {
+        try {
+            HttpURLConnection conn = get("/api/calls/from?class=TestClass&method=caller");
+            assertEquals(200, conn.getResponseCode());
+            assertTrue(conn.getContentType().startsWith("application/json"));
+            String json = body(conn);
+            assertTrue(json.startsWith("{\"count\":1,"), json);
+            assertTrue(json.contains("\"calledMethod\":\"middle\""));
+            assertTrue(json.contains("\"loopType\":\"for\""));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testTransitiveCalls() {
+        try {
+            String json = body(get("/api/calls/transitive?class=TestClass&method=caller&depth=2"));
+            assertTrue(json.startsWith("{\"count\":2,"), json);
+            assertTrue(json.contains("\"calledMethod\":\"leaf\""));
+
+            json = body(get("/api/calls/transitive?class=TestClass&method=caller&depth=1"));
+            assertTrue(json.startsWith("{\"count\":1,"), json);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testNeighbourhoodUnderConcurrentLoad() {
+        ExecutorService clients = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                // Distinct URIs so the response cache does not answer them
+                String uri = "/api/calls/neighbourhood?class=TestClass&method=middle&n=" + i;
+                responses.add(clients.submit(() -> body(get(uri))));
+            }
+            for (Future<String> response : responses) {
+                String json = response.get(30, TimeUnit.SECONDS);
+                assertTrue(json.startsWith("{\"callers\":{\"count\":1,"), json);
+                assertTrue(json.contains("\"callees\":{\"count\":1,"), json);
+            }
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void testViewerMethodCalls() {
+        try {
+            HttpURLConnection conn = get("/api/method_calls?caller_class=testclass&called_method=leaf");
+            assertEquals(200, conn.getResponseCode());
+            String json = body(conn);
+            assertTrue(json.startsWith("{\"success\":true,\"total\":1,\"count\":1,\"method_calls\":["), json);
+            assertTrue(json.contains("\"caller_class\":\"com.example.TestClass\""));
+            assertTrue(json.contains("\"caller_method\":\"middle\""));
+            assertTrue(json.contains("\"line_number\":9"));
+
+            json = body(get("/api/method_calls?caller_class=TestClass&limit=1"));
+            assertTrue(json.startsWith("{\"success\":true,\"total\":2,\"count\":1,"), json);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testReindexRefreshesCachedResponses() {
+        try {
+            String before = body(get("/api/method_calls?called_method=extra"));
+            assertTrue(before.contains("\"total\":0"), before);
+
+            DatabaseManager dbManager = DatabaseManager.getInstance();
+            int extraId = dbManager.storeMethod(classId, "extra", "void", "[]", false, true);
+            dbManager.storeMethodCall(leafId, extraId, 12, "this", "direct",
+                    false, false, false, false, "", false, "");
+
+            assertEquals(before, body(get("/api/method_calls?called_method=extra")),
+                    "Responses stay cached until the index changes");
+
+            server.filesReindexed(Set.of(), Set.of());
+            String after = body(get("/api/method_calls?called_method=extra"));
+            assertTrue(after.contains("\"total\":1"), after);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testBatchEndpointsAndMetrics() {
+        try {
+            String stats = body(get("/api/stats"));
+            assertTrue(stats.startsWith("{\"totalCalls\":2,"), stats);
+            assertTrue(stats.contains("\"byScope\":[{\"name\":\"this\",\"count\":2}]"), stats);
+
+            HttpURLConnection conn = get("/api/export/calls?called_method=leaf");
+            assertEquals(200, conn.getResponseCode());
+            assertTrue(conn.getContentType().startsWith("text/csv"));
+            String[] lines = body(conn).split("\n");
+            assertEquals(2, lines.length, "Header plus one call");
+            assertTrue(lines[1].contains("com.example.TestClass,middle"), lines[1]);
+            assertEquals("chunked", conn.getHeaderField("Transfer-Encoding"), "Exports are streamed");
+            String health = body(get("/api/health"));
+            assertTrue(health.contains("\"cachedResponses\":0"), "Batch responses are not cached: " + health);
+
+            String metrics = body(get("/api/metrics"));
+            assertTrue(metrics.contains("\"name\":\"interactive\""), metrics);
+            assertTrue(metrics.contains("\"name\":\"batch\""), metrics);
+            assertTrue(metrics.contains("\"p99Micros\":"), metrics);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testProjectsAreServedFromTheirOwnIndex() {
+        Path projectsDir = null;
+        try {
+            projectsDir = Files.createTempDirectory("projects");
+            DatabaseManager other = new DatabaseManager("jdbc:sqlite:" + projectsDir.resolve("other.db"));
+            other.createTables();
+            int widgetId = other.storeClass("org.other", "Widget");
+            int renderId = other.storeMethod(widgetId, "render", "void", "[]", false, true);
+            int layoutId = other.storeMethod(widgetId, "layout", "void", "[]", false, true);
+            other.storeMethodCall(renderId, layoutId, 3, "this", "direct",
+                    false, false, false, false, "", false, "");
+            other.close();
+
+            System.setProperty("server.projects.dir", projectsDir.toString());
+            try (AnalysisServer multi = new AnalysisServer(0, DatabaseManager.getInstance())) {
+                multi.start();
+                String base = "http://localhost:" + multi.getPort();
+                HttpURLConnection conn = (HttpURLConnection) new URL(base
+                        + "/api/projects/other/method_calls?called_method=layout").openConnection();
+                assertEquals(200, conn.getResponseCode());
+                String json = body(conn);
+                assertTrue(json.contains("\"total\":1"), json);
+                assertTrue(json.contains("Widget"), json);
+                assertFalse(json.contains("TestClass"), "Projects should not see the default index");
+
+                conn = (HttpURLConnection) new URL(base + "/api/projects").openConnection();
+                json = body(conn);
+                assertTrue(json.contains("{\"name\":\"other\",\"resident\":true"), json);
+
+                conn = (HttpURLConnection) new URL(base + "/api/projects/missing/method_calls").openConnection();
+                assertEquals(404, conn.getResponseCode());
+            }
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            System.clearProperty("server.projects.dir");
+            if (projectsDir != null) {
+                try (Stream<Path> files = Files.walk(projectsDir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                } catch (Exception e) {
+                    fail("Should not throw exception: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testArtifactsHonourEtags() {
+        try {
+            HttpURLConnection conn = get("/api/artifacts/classes/com.example.TestClass.json");
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(200, conn.getResponseCode());
+            assertEquals("gzip", conn.getHeaderField("Content-Encoding"));
+            String etag = conn.getHeaderField("ETag");
+            assertNotNull(etag);
+            try (InputStream in = new GZIPInputStream(conn.getInputStream())) {
+                String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(json.startsWith("{\"class\":\"com.example.TestClass\""), json);
+            }
+
+            conn = get("/api/artifacts/classes/com.example.TestClass.json");
+            conn.setRequestProperty("If-None-Match", etag);
+            assertEquals(304, conn.getResponseCode(), "Repeat visits should transfer nothing");
+
+            conn = get("/api/artifacts/dependencies.dot");
+            assertEquals(200, conn.getResponseCode());
+            assertNull(conn.getHeaderField("Content-Encoding"), "Clients without gzip get plain text");
+            assertTrue(body(conn).startsWith("digraph Dependencies {"));
+
+            assertEquals(404, get("/api/artifacts/missing.json").getResponseCode());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testBadRequests() {
+        try {
+            HttpURLConnection conn = get("/api/calls/from?class=TestClass");
+            assertEquals(400, conn.getResponseCode());
+            assertEquals("{\"error\":\"Missing parameter: method\"}", body(conn));
+
+            conn = get("/api/calls/context?class=TestClass&method=caller&params=[]&1=1");
+            assertEquals(400, conn.getResponseCode(), "Unknown filter columns must be rejected");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testJsonWriterAndQueryParsing() {
+        String json = new JsonWriter().beginObject()
+                .field("text", "a \"quoted\"\nline")
+                .name("list").beginArray().value(1).value(true).value((String) null).endArray()
+                .endObject().toString();
+        assertEquals("{\"text\":\"a \\\"quoted\\\"\\nline\",\"list\":[1,true,null]}", json);
+
+        Map<String, String> params = AnalysisServer.parseQuery("class=Test%24Inner&params=%5Bint%2C+long%5D&flag");
+        assertEquals("Test$Inner", params.get("class"));
+        assertEquals("[int, long]", params.get("params"));
+        assertEquals("", params.get("flag"));
+
+        assertTrue(AnalysisServer.matchesEtag("\"a\", W/\"b\"", "\"b\""));
+        assertFalse(AnalysisServer.matchesEtag("\"a\"", "\"b\""));
+        assertTrue(AnalysisServer.acceptsGzip("deflate, gzip;q=0.8"));
+        assertFalse(AnalysisServer.acceptsGzip("gzip;q=0"));
+
+        assertEquals(AnalysisServer.requestKey("/api/calls/from", AnalysisServer.parseQuery("method=run&class=A%24B")),
+                AnalysisServer.requestKey("/api/calls/from", AnalysisServer.parseQuery("class=A$B&method=run")),
+                "Parameter order and encoding should not change the key");
+    }
+}
@@ -0,0 +1,176 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.CallGraph;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactStoreTest {
+    private Path artifactDir;
+    private ArtifactStore store;
+
+    private static MethodCall call(int id, String callerClass, String callerMethod,
+                                   String calledClass, String calledMethod) {
+        return new MethodCall(id, id * 10, callerClass, callerMethod, "[]", calledClass, calledMethod, "[]",
+                "this", "direct", false, false, false, false, "", false, "");
+    }
+
+    private final List<MethodCall> calls = Arrays.asList(
+            call(1, "com.example.Service", "run", "com.example.Helper", "help"),
+            call(2, "com.example.web.Controller", "handle", "com.example.Service", "run"));
+
+    @BeforeEach
+    void setUp() throws Exception {
+        artifactDir = Files.createTempDirectory("test-artifacts");
+        store = new ArtifactStore(artifactDir, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+        assertFalse(Files.exists(artifactDir), "Temporary artifacts should be removed");
+    }
+
+    private static String read(ArtifactStore.Artifact artifact) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(artifact.getPath()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testArtifactsArePrecomputed() {
+        try {
+            store.rebuild(new CallGraph(calls));
+
+            assertTrue(read(store.get("dependencies.dot")).contains("\"com.example.Service\" -> \"com.example.Helper\""));
+            assertTrue(read(store.get("interactive.html")).startsWith("<!DOCTYPE html>"));
+            assertNotNull(store.get("packages/com.example.dot"));
+            assertNotNull(store.get("packages/com.example.web.dot"));
+
+            String service = read(store.get("classes/com.example.Service.json"));
+            assertTrue(service.startsWith("{\"class\":\"com.example.Service\",\"callers\":{\"count\":1,"), service);
+            assertTrue(service.contains("\"callees\":{\"count\":1,"), service);
+            assertNotNull(store.get("classes/com.example.Helper.json"), "Classes that are only called get artifacts too");
+            assertNull(store.get("classes/../dependencies.dot"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testEtagsFollowContent() {
+        try {
+            store.rebuild(new CallGraph(calls));
+            ArtifactStore.Artifact before = store.get("classes/com.example.Helper.json");
+            String unchanged = store.get("classes/com.example.web.Controller.json").getEtag();
+
+            store.rebuild(new CallGraph(calls.subList(1, 2)));
+            assertNull(store.get("classes/com.example.Helper.json"));
+            assertFalse(Files.exists(before.getPath()), "Previous generation should be deleted");
+            assertNotEquals(store.get("classes/com.example.Service.json").getEtag(),
+                    before.getEtag());
+            assertEquals(unchanged, store.get("classes/com.example.web.Controller.json").getEtag(),
+                    "Unchanged artifacts keep their ETag across rebuilds");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testLeasedGenerationOutlivesRebuild() {
+        try {
+            store.rebuild(new CallGraph(calls));
+            ArtifactStore.Lease lease = store.open("classes/com.example.Helper.json");
+            assertNotNull(lease);
+
+            store.rebuild(new CallGraph(calls.subList(1, 2)));
+            assertNull(store.open("classes/com.example.Helper.json"));
+            assertTrue(Files.exists(lease.getArtifact().getPath()), "A leased generation stays until released");
+            assertTrue(read(lease.getArtifact()).startsWith("{\"class\":\"com.example.Helper\""));
+
+            lease.close();
+            assertFalse(Files.exists(lease.getArtifact().getPath()), "Released generations are deleted");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testOnlyChangedArtifactsAreRendered() {
+        try {
+            store.rebuild(new CallGraph(calls));
+            ArtifactStore.Artifact controller = store.get("classes/com.example.web.Controller.json");
+            ArtifactStore.Artifact web = store.get("packages/com.example.web.dot");
+            ArtifactStore.Artifact example = store.get("packages/com.example.dot");
+            String controllerJson = read(controller);
+
+            List<MethodCall> more = Arrays.asList(calls.get(0), calls.get(1),
+                    call(3, "com.example.Helper", "help", "com.example.Helper", "log"));
+            store.rebuild(new CallGraph(more));
+            ArtifactStore.Artifact taken = store.get("classes/com.example.web.Controller.json");
+            assertNotEquals(controller.getPath(), taken.getPath(), "Each generation has its own files");
+            assertEquals(controller.getEtag(), taken.getEtag());
+            assertEquals(controllerJson, read(taken));
+            assertEquals(web.getEtag(), store.get("packages/com.example.web.dot").getEtag());
+            assertNotEquals(example.getEtag(), store.get("packages/com.example.dot").getEtag());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testPersistentStoreAdoptsNewestGeneration() {
+        Path persistent = null;
+        try {
+            persistent = Files.createTempDirectory("test-artifacts-persistent");
+            String etag;
+            Path indexed;
+            try (ArtifactStore built = new ArtifactStore(persistent, false)) {
+                built.rebuild(new CallGraph(calls));
+                etag = built.get("classes/com.example.Service.json").getEtag();
+                indexed = built.get("classes/com.example.Service.json").getPath();
+            }
+            assertTrue(Files.exists(indexed), "A persistent store keeps its artifacts on close");
+            // What an interrupted build left behind
+            Files.createDirectories(persistent.resolve("gen-7/classes"));
+
+            try (ArtifactStore adopted = new ArtifactStore(persistent, false)) {
+                ArtifactStore.Artifact service = adopted.get("classes/com.example.Service.json");
+                assertNotNull(service, "The newest complete generation should be served as it is");
+                assertEquals(etag, service.getEtag());
+                assertEquals(indexed, service.getPath());
+                assertTrue(read(service).startsWith("{\"class\":\"com.example.Service\""));
+                assertFalse(Files.exists(persistent.resolve("gen-7")), "Unfinished generations are removed");
+
+                // The same calls render nothing, and changed ones start after the unfinished number
+                adopted.rebuild(new CallGraph(calls));
+                assertEquals(indexed, adopted.get("classes/com.example.Service.json").getPath());
+                adopted.rebuild(new CallGraph(calls.subList(0, 1)));
+                assertTrue(adopted.get("dependencies.dot").getPath().startsWith(persistent.resolve("gen-8")));
+                assertFalse(Files.exists(indexed), "The adopted generation is replaced on rebuild");
+            }
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            if (persistent != null) {
+                try (Stream<Path> files = Files.walk(persistent)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                } catch (Exception e) {
+                    fail("Should not throw exception: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    private static MethodCall call(int id, String calledMethod, String loopType) {
+        return new MethodCall(id, 10 + id, "com.example.Service", "process", "[String]",
+                "com.example.Helper", calledMethod, "[]", "this", "direct",
+                false, id % 2 == 0, false, loopType != null, loopType, true, "if");
+    }
+
+    @Test
+    void testVarintsAndStringsRoundTrip() {
+        try {
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+            out.writeVarint(0).writeVarint(127).writeVarint(128).writeVarint(Integer.MAX_VALUE)
+                    .writeString("Hällo").writeString(null).writeByte(7);
+            BinaryProtocol.Decoder in = frame(out);
+            assertEquals(0, in.readVarint());
+            assertEquals(127, in.readVarint());
+            assertEquals(128, in.readVarint());
+            assertEquals(Integer.MAX_VALUE, in.readInt());
+            assertEquals("Hällo", in.readString());
+            assertEquals("", in.readString());
+            assertEquals(7, in.readByte());
+            assertThrows(IOException.class, in::readByte);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testCallsRoundTripThroughDictionary() {
+        try {
+            List<MethodCall> calls = new ArrayList<>();
+            for (int i = 1; i <= 50; i++) {
+                calls.add(call(i, i % 3 == 0 ? "format" : "help", i % 5 == 0 ? "for" : null));
+            }
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+            BinaryProtocol.writeCalls(out, calls);
+            // Repeated class and method names are written once
+            assertTrue(out.size() < 50 * 20, "Encoded size " + out.size());
+
+            List<MethodCall> decoded = BinaryProtocol.readCalls(frame(out));
+            assertEquals(calls.size(), decoded.size());
+            for (int i = 0; i < calls.size(); i++) {
+                MethodCall expected = calls.get(i);
+                MethodCall actual = decoded.get(i);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getLineNumber(), actual.getLineNumber());
+                assertEquals(expected.getCallerClass(), actual.getCallerClass());
+                assertEquals(expected.getCalledMethod(), actual.getCalledMethod());
+                assertEquals(expected.getCallerParameters(), actual.getCallerParameters());
+                assertEquals(expected.isInCatchBlock(), actual.isInCatchBlock());
+                assertEquals(expected.isInLoop(), actual.isInLoop());
+                assertEquals(expected.getLoopType(), actual.getLoopType());
+                assertEquals(expected.isInConditional(), actual.isInConditional());
+            }
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testMethodsRoundTrip() {
+        try {
+            List<MethodInfo> methods = Arrays.asList(
+                    new MethodInfo(1, "com.example", "Helper", "help", "void", "[]", true, true),
+                    new MethodInfo(2, "com.example", "Helper", "format", "String", "[int]", false, false));
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+            BinaryProtocol.writeMethods(out, methods);
+
+            List<MethodInfo> decoded = BinaryProtocol.readMethods(frame(out));
+            assertEquals(2, decoded.size());
+            assertEquals("help", decoded.get(0).getMethodName());
+            assertTrue(decoded.get(0).isStatic());
+            assertEquals("String", decoded.get(1).getReturnType());
+            assertEquals("[int]", decoded.get(1).getParameters());
+            assertFalse(decoded.get(1).isPublic());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testFramesOverChannel() {
+        try {
+            Pipe pipe = Pipe.open();
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+            out.writeByte(BinaryProtocol.CALLS_BY_SCOPE).writeString("this");
+            out.writeFrame(pipe.sink());
+            out.reset();
+            out.writeByte(BinaryProtocol.PING);
+            out.writeFrame(pipe.sink());
+            pipe.sink().close();
+
+            BinaryProtocol.Decoder in = new BinaryProtocol.Decoder(pipe.source());
+            assertTrue(in.nextFrame(BinaryProtocol.MAX_REQUEST_BYTES));
+            assertEquals(BinaryProtocol.CALLS_BY_SCOPE, in.readByte());
+            assertEquals("this", in.readString());
+            assertTrue(in.nextFrame(BinaryProtocol.MAX_REQUEST_BYTES));
+            assertEquals(BinaryProtocol.PING, in.readByte());
+            assertFalse(in.nextFrame(BinaryProtocol.MAX_REQUEST_BYTES));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testOversizedFrameIsRejected() {
+        try {
+            Pipe pipe = Pipe.open();
+            BinaryProtocol.Encoder out = new BinaryProtocol.Encoder();
+            out.writeString(new String(new char[100]).replace('\0', 'x'));
+            out.writeFrame(pipe.sink());
+            pipe.sink().close();
+
+            BinaryProtocol.Decoder in = new BinaryProtocol.Decoder(pipe.source());
+            assertThrows(IOException.class, () -> in.nextFrame(64));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    // Encoders only write whole frames to channels; read the payload back directly
+    private static BinaryProtocol.Decoder frame(BinaryProtocol.Encoder out) throws IOException {
+        Pipe pipe = Pipe.open();
+        out.writeFrame(pipe.sink());
+        pipe.sink().close();
+        BinaryProtocol.Decoder in = new BinaryProtocol.Decoder(pipe.source());
+        assertTrue(in.nextFrame(Integer.MAX_VALUE));
+        return in;
+    }
+}
@@ -0,0 +1,70 @@
+package com.jps.analysis.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaneTest {
+
+    @Test
+    void testFullLaneShedsInsteadOfQueueing() {
+        Lane lane = new Lane("test", 1, 1, 60_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicInteger shed = new AtomicInteger();
+        try {
+            Runnable blocking = () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            };
+            lane.submit(blocking, shed::incrementAndGet);   // running
+            lane.submit(blocking, shed::incrementAndGet);   // queued
+            lane.submit(blocking, shed::incrementAndGet);   // no room
+
+            assertEquals(1, shed.get());
+            assertEquals(1, lane.getRejected());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            lane.shutdown();
+        }
+    }
+
+    @Test
+    void testTasksThatWaitedTooLongAreShed() {
+        Lane lane = new Lane("test", 1, 10, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch shed = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        try {
+            lane.submit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, () -> fail("First task should run"));
+            lane.submit(ran::incrementAndGet, shed::countDown);
+
+            Thread.sleep(150);
+            release.countDown();
+            assertTrue(shed.await(5, TimeUnit.SECONDS), "Stale task should be shed");
+            assertEquals(0, ran.get());
+            assertEquals(1, lane.getTimedOut());
+            assertEquals(1, lane.getRetryAfterSeconds(), "Retry-After is never below a second");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            lane.shutdown();
+        }
+    }
+}
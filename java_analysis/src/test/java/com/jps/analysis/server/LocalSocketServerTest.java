@@ -0,0 +1,154 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.query.MethodQuery;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import com.jps.analysis.query.MethodQuery.MethodInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LocalSocketServerTest {
+    private static final String TEST_DB = "test_analysis.db";
+    private Path socketDir;
+    private LocalSocketServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(UnixSockets.isSupported(), "Unix domain sockets need JDK 16+");
+        System.setProperty("db.url", "jdbc:sqlite:" + TEST_DB);
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.createTables();
+
+        int classId = dbManager.storeClass("com.example", "TestClass");
+        int callerId = dbManager.storeMethod(classId, "caller", "void", "[]", false, true);
+        int middleId = dbManager.storeMethod(classId, "middle", "void", "[]", false, true);
+        int leafId = dbManager.storeMethod(classId, "leaf", "String", "[]", true, true);
+        dbManager.storeMethodCall(callerId, middleId, 5, "this", "direct",
+                false, false, false, true, "for", false, "");
+        dbManager.storeMethodCall(middleId, leafId, 9, "this", "direct",
+                true, false, false, false, "", false, "");
+
+        socketDir = Files.createTempDirectory("jps-socket");
+        server = new LocalSocketServer(socketDir.resolve("analysis.sock"), new MethodQuery(dbManager));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+            Files.deleteIfExists(socketDir);
+        }
+        DatabaseManager.getInstance().close();
+        Files.deleteIfExists(Path.of(TEST_DB));
+    }
+
+    @Test
+    void testQueriesOverOneConnection() {
+        try (LocalSocketClient client = new LocalSocketClient(server.getSocketPath())) {
+            client.ping();
+
+            List<MethodCall> from = client.findMethodCalls("TestClass", "caller", "[]");
+            assertEquals(1, from.size());
+            assertEquals("middle", from.get(0).getCalledMethod());
+            assertEquals("for", from.get(0).getLoopType());
+            assertTrue(from.get(0).isInLoop());
+
+            List<MethodCall> to = client.findMethodCallsTo("TestClass", "leaf", "[]");
+            assertEquals(1, to.size());
+            assertTrue(to.get(0).isInTryBlock());
+
+            assertEquals(2, client.findMethodCallsByScope("this").size());
+            assertEquals(2, client.findTransitiveCalls("TestClass", "caller", "[]", 3).size());
+
+            List<MethodInfo> methods = client.findMethodsBySignature("leaf", "String", null);
+            assertEquals(1, methods.size());
+            assertTrue(methods.get(0).isStatic());
+            assertEquals(6, server.getRequests());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testErrorsKeepConnectionOpen() {
+        try (LocalSocketClient client = new LocalSocketClient(server.getSocketPath())) {
+            IOException error = assertThrows(IOException.class,
+                    () -> client.findTransitiveCalls("TestClass", "caller", "[]", 99));
+            assertTrue(error.getMessage().contains("depth"));
+            error = assertThrows(IOException.class,
+                    () -> client.findTransitiveCalls("TestClass", "caller", "[]", 0));
+            assertTrue(error.getMessage().contains("depth"));
+            client.ping();
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testCloseRemovesSocketFile() {
+        Path socketPath = server.getSocketPath();
+        assertTrue(Files.exists(socketPath));
+        server.close();
+        assertFalse(Files.exists(socketPath));
+        server = null;
+        try {
+            Files.deleteIfExists(socketDir);
+        } catch (IOException e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testSocketFileIsPrivate() {
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(server.getSocketPath());
+            assertEquals(PosixFilePermissions.fromString("rw-------"), permissions);
+            try (Stream<Path> entries = Files.list(socketDir)) {
+                assertEquals(1L, entries.count(), "The private bind directory should be gone");
+            }
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testConnectionsOverTheLimitAreRefused() {
+        LocalSocketServer limited = null;
+        try {
+            System.setProperty("server.socket.connections", "1");
+            limited = new LocalSocketServer(socketDir.resolve("limited.sock"),
+                    new MethodQuery(DatabaseManager.getInstance()));
+            limited.start();
+            try (LocalSocketClient first = new LocalSocketClient(limited.getSocketPath())) {
+                first.ping();
+                try (LocalSocketClient second = new LocalSocketClient(limited.getSocketPath())) {
+                    IOException error = assertThrows(IOException.class, second::ping);
+                    assertTrue(error.getMessage().contains("Too many connections"), error.getMessage());
+                }
+                first.ping();
+            }
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            System.clearProperty("server.socket.connections");
+            if (limited != null) {
+                limited.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.jps.analysis.server;
+
+import com.jps.analysis.query.CallGraph;
+import com.jps.analysis.query.MethodQuery;
+import com.jps.analysis.query.MethodQuery.MethodCall;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectRegistryTest {
+    private ProjectRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    private static CallGraph graphOf(int calls) {
+        List<MethodCall> edges = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            edges.add(new MethodCall(i, i, "com.example.Service", "process", "[]", "com.example.Helper",
+                    "help" + i, "[]", "this", "direct", false, false, false, false, null, false, null));
+        }
+        return new CallGraph(edges);
+    }
+
+    private ProjectRegistry registryWithBudget(long budgetBytes, Function<MethodQuery, CallGraph> loader,
+                                               String... names) {
+        return registryWithBudget(budgetBytes, loader, query -> 0, names);
+    }
+
+    private ProjectRegistry registryWithBudget(long budgetBytes, Function<MethodQuery, CallGraph> loader,
+                                               ToLongFunction<MethodQuery> callCounter, String... names) {
+        ProjectRegistry projects = new ProjectRegistry(budgetBytes, 1, loader, callCounter);
+        for (String name : names) {
+            projects.register(name, "jdbc:sqlite:" + name + ".db");
+        }
+        return projects;
+    }
+
+    @Test
+    void testColdestGraphIsEvictedAndReloaded() {
+        try {
+            long graphBytes = graphOf(100).getEstimatedBytes();
+            AtomicInteger loads = new AtomicInteger();
+            registry = registryWithBudget(graphBytes * 2 + graphBytes / 2, query -> {
+                loads.incrementAndGet();
+                return graphOf(100);
+            }, query -> 100, "alpha", "beta", "gamma");
+
+            registry.graph(registry.get("alpha"));
+            registry.graph(registry.get("beta"));
+            // alpha becomes the most recently used, so beta is the coldest
+            registry.graph(registry.get("alpha"));
+            registry.graph(registry.get("gamma"));
+
+            assertEquals(Arrays.asList("alpha", "gamma"), registry.getResidentProjects());
+            assertFalse(registry.get("beta").isResident());
+            assertEquals(1, registry.getEvictions());
+            assertEquals(graphBytes * 2, registry.getResidentBytes());
+            assertTrue(registry.getResidentBytes() <= registry.getBudgetBytes());
+            assertEquals(3, loads.get());
+
+            // Evicted graphs come back from disk on their next use
+            assertEquals(100, registry.graph(registry.get("beta")).size());
+            assertEquals(4, loads.get());
+            assertEquals(Arrays.asList("gamma", "beta"), registry.getResidentProjects());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testGraphLargerThanBudgetIsRefusedBeforeLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        registry = registryWithBudget(graphOf(10).getEstimatedBytes(), query -> {
+            loads.incrementAndGet();
+            return graphOf(1000);
+        }, query -> 1000, "huge");
+        assertThrows(ProjectRegistry.GraphTooLargeException.class, () -> registry.graph(registry.get("huge")));
+        assertEquals(0, loads.get(), "The estimate alone should refuse the project");
+        assertEquals(0, registry.getResidentBytes());
+    }
+
+    @Test
+    void testUnderestimatedGraphIsRefusedAfterOneLoad() {
+        try {
+            AtomicInteger loads = new AtomicInteger();
+            // Far longer names than the estimate allows for
+            String longName = "com.example." + "Generated".repeat(40);
+            List<MethodCall> edges = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                edges.add(new MethodCall(i, i, longName, "process", "[]", longName, "help" + i, "[]",
+                        "this", "direct", false, false, false, false, null, false, null));
+            }
+            registry = registryWithBudget(CallGraph.estimateBytes(100) * 2, query -> {
+                loads.incrementAndGet();
+                return new CallGraph(edges);
+            }, query -> 100, "huge");
+            assertEquals(100, registry.graph(registry.get("huge")).size());
+            assertFalse(registry.get("huge").isResident());
+            assertEquals(0, registry.getResidentBytes());
+
+            // Sized by what the first load measured, it is not loaded again
+            assertThrows(ProjectRegistry.GraphTooLargeException.class, () -> registry.graph(registry.get("huge")));
+            assertEquals(1, loads.get());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testRoomIsMadeBeforeLoading() {
+        try {
+            long graphBytes = graphOf(100).getEstimatedBytes();
+            List<Long> residentDuringLoad = new ArrayList<>();
+            registry = registryWithBudget(CallGraph.estimateBytes(100) + graphBytes / 2, query -> {
+                residentDuringLoad.add(registry.getResidentBytes());
+                return graphOf(100);
+            }, query -> 100, "alpha", "beta");
+
+            registry.graph(registry.get("alpha"));
+            registry.graph(registry.get("beta"));
+            assertEquals(Arrays.asList(0L, 0L), residentDuringLoad, "alpha should be evicted before beta loads");
+            assertEquals(Arrays.asList("beta"), registry.getResidentProjects());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testColdLoadsOfDifferentProjectsAreSerialized() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        registry = registryWithBudget(Long.MAX_VALUE, query -> {
+            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return graphOf(10);
+        }, "alpha", "beta", "gamma", "delta");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CallGraph>> futures = new ArrayList<>();
+            for (String name : Arrays.asList("alpha", "beta", "gamma", "delta")) {
+                futures.add(executor.submit(() -> registry.graph(registry.get(name))));
+            }
+            for (Future<CallGraph> future : futures) {
+                assertEquals(10, future.get(5, TimeUnit.SECONDS).size());
+            }
+            assertEquals(1, mostRunning.get());
+            assertEquals(4, registry.getLoads());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneLoad() {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        registry = registryWithBudget(Long.MAX_VALUE, query -> {
+            loads.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return graphOf(10);
+        }, "alpha");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CallGraph>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> registry.graph(registry.get("alpha"))));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            CallGraph first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<CallGraph> future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testInvalidateForcesReload() {
+        try {
+            AtomicInteger loads = new AtomicInteger();
+            registry = registryWithBudget(Long.MAX_VALUE, query -> graphOf(loads.incrementAndGet()), "alpha");
+            assertEquals(1, registry.graph(registry.get("alpha")).size());
+            registry.invalidate("alpha");
+            assertEquals(0, registry.getResidentBytes());
+            assertEquals(2, registry.graph(registry.get("alpha")).size());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testRegistration() {
+        registry = registryWithBudget(1024, query -> graphOf(1), "alpha");
+        assertThrows(IllegalArgumentException.class, () -> registry.register("alpha", "jdbc:sqlite:other.db"));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("../etc", "jdbc:sqlite:x.db"));
+        registry.register("beta", "jdbc:sqlite:beta.db");
+        assertEquals(2, registry.size());
+        assertNull(registry.get("gamma"));
+        assertEquals("jdbc:sqlite:beta.db", registry.get("beta").getDbUrl());
+    }
+}
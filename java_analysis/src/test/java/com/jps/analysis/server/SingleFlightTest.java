@@ -0,0 +1,76 @@
+package com.jps.analysis.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneExecution() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<String> leader = executor.submit(() -> flights.execute("calls-to:Helper.help", () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "result";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<Future<String>> waiters = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                waiters.add(executor.submit(() -> flights.execute("calls-to:Helper.help", () -> {
+                    runs.incrementAndGet();
+                    return "duplicate";
+                })));
+            }
+            // Waiters register before the leader is released
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (flights.getCoalesced() < 7 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+            for (Future<String> waiter : waiters) {
+                assertEquals("result", waiter.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, runs.get());
+            assertEquals(1, flights.getExecutions());
+            assertEquals(7, flights.getCoalesced());
+            assertEquals(0, flights.getInFlight());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailuresAreNotRemembered() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        assertThrows(IllegalArgumentException.class, () -> flights.execute("key", () -> {
+            throw new IllegalArgumentException("bad request");
+        }));
+        try {
+            assertEquals("ok", flights.execute("key", () -> "ok"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+        assertEquals(2, flights.getExecutions());
+        assertEquals(0, flights.getInFlight());
+    }
+}
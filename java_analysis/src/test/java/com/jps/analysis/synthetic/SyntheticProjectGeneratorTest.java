@@ -0,0 +1,103 @@
+package com.jps.analysis.synthetic;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticProjectGeneratorTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("synthetic-test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> walk = Files.walk(tempDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static SyntheticProjectGenerator.Shape shape() {
+        return new SyntheticProjectGenerator.Shape().packages(3).classesPerPackage(5).methodsPerClass(4)
+                .fanOut(6).nestingDepth(3).staticImports(2).inheritanceDepth(3);
+    }
+
+    private static List<Path> sources(Path root) throws Exception {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(path -> path.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testGeneratesConfiguredShape() {
+        try {
+            SyntheticProjectGenerator.Result result = new SyntheticProjectGenerator(shape(), 42)
+                    .generate(tempDir.resolve("out"));
+            assertEquals(15, result.getFiles());
+            assertEquals(15 * 5, result.getMethods());
+            assertEquals(15 * 4 * 6, result.getCalls());
+
+            List<Path> files = sources(tempDir.resolve("out"));
+            assertEquals(15, files.size());
+            assertTrue(Files.exists(tempDir.resolve("out/com/synthetic/p2/C14.java")));
+
+            long calls = 0;
+            for (Path file : files) {
+                ParseResult<CompilationUnit> parsed = new JavaParser().parse(file);
+                assertTrue(parsed.isSuccessful(), file + ": " + parsed.getProblems());
+                calls += parsed.getResult().get().findAll(MethodCallExpr.class).size();
+            }
+            assertEquals(result.getCalls(), calls);
+
+            // Second class of every chain extends the first
+            String source = Files.readString(tempDir.resolve("out/com/synthetic/p0/C1.java"));
+            assertTrue(source.contains("public class C1 extends C0"), source);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testSameSeedProducesIdenticalTrees() {
+        try {
+            new SyntheticProjectGenerator(shape(), 7).generate(tempDir.resolve("a"));
+            new SyntheticProjectGenerator(shape(), 7).generate(tempDir.resolve("b"));
+            new SyntheticProjectGenerator(shape(), 8).generate(tempDir.resolve("c"));
+
+            List<String> a = new ArrayList<>();
+            for (Path file : sources(tempDir.resolve("a"))) {
+                Path relative = tempDir.resolve("a").relativize(file);
+                a.add(Files.readString(file));
+                assertEquals(Files.readString(file), Files.readString(tempDir.resolve("b").resolve(relative)));
+            }
+            List<String> c = new ArrayList<>();
+            for (Path file : sources(tempDir.resolve("c"))) {
+                c.add(Files.readString(file));
+            }
+            assertNotEquals(a, c);
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testRejectsInvalidShape() {
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticProjectGenerator.Shape().packages(0));
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticProjectGenerator.Shape().fanOut(-1));
+    }
+}
@@ -0,0 +1,78 @@
+package com.jps.analysis.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceSinkTest {
+
+    @Test
+    void testLevelGuard() {
+        TraceSink sink = new TraceSink(new StringWriter(), TraceSink.Level.METHODS, 1.0);
+        try {
+            assertTrue(sink.isEnabled());
+            assertTrue(sink.shouldTrace(TraceSink.Level.CLASSES));
+            assertTrue(sink.shouldTrace(TraceSink.Level.METHODS));
+            assertFalse(sink.shouldTrace(TraceSink.Level.CALLS), "Calls are more detailed than the configured level");
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    void testSampling() {
+        TraceSink none = new TraceSink(new StringWriter(), TraceSink.Level.CALLS, 0.0);
+        TraceSink half = new TraceSink(new StringWriter(), TraceSink.Level.CALLS, 0.5);
+        try {
+            int sampled = 0;
+            for (int i = 0; i < 10_000; i++) {
+                assertFalse(none.shouldTrace(TraceSink.Level.CLASSES));
+                if (half.shouldTrace(TraceSink.Level.CALLS)) {
+                    sampled++;
+                }
+            }
+            assertTrue(sampled > 4_000 && sampled < 6_000, "sampled " + sampled);
+        } finally {
+            none.close();
+            half.close();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TraceSink(new StringWriter(), TraceSink.Level.CALLS, 1.5));
+    }
+
+    @Test
+    void testFlushWritesJsonLines() {
+        StringWriter out = new StringWriter();
+        TraceSink sink = new TraceSink(out, TraceSink.Level.CALLS, 1.0);
+        try {
+            for (int i = 0; i < 100; i++) {
+                sink.emit(sink.record("call").field("caller", "A.a()").field("called", "b").field("line", i));
+            }
+            sink.flush();
+
+            String[] lines = out.toString().split("\n");
+            assertEquals(100, lines.length);
+            assertTrue(lines[0].startsWith("{\"ts\":"), lines[0]);
+            assertTrue(lines[0].contains("\"event\":\"call\""), lines[0]);
+            assertTrue(lines[99].endsWith("\"line\":99}"), lines[99]);
+            assertEquals(100L, sink.getWritten());
+            assertEquals(0L, sink.getDropped());
+        } finally {
+            sink.close();
+        }
+
+        // Nothing is queued once the sink is closed
+        sink.emit(sink.record("class"));
+        assertEquals(1L, sink.getDropped());
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        TraceSink sink = TraceSink.getInstance();
+        assertFalse(sink.isEnabled(), "Tracing should be off without trace.file");
+        assertFalse(sink.shouldTrace(TraceSink.Level.CLASSES));
+        sink.emit(sink.record("class"));
+        sink.flush();
+        assertEquals(0L, sink.getWritten());
+    }
+}
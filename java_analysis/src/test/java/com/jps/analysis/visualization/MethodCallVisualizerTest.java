@@ -0,0 +1,56 @@
+package com.jps.analysis.visualization;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodCallVisualizerTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("visualizer-test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> walk = Files.walk(tempDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testExportersAreDiscovered() {
+        assertTrue(MethodCallVisualizer.getExportFormats().containsAll(Arrays.asList("svg", "png", "pdf")),
+                MethodCallVisualizer.getExportFormats().toString());
+    }
+
+    @Test
+    void testSvgExportCopiesInput() {
+        try {
+            Path svg = tempDir.resolve("graph.svg");
+            Files.writeString(svg, "<svg xmlns=\"http://www.w3.org/2000/svg\"/>");
+            Path output = tempDir.resolve("copy.svg");
+            new MethodCallVisualizer().exportVisualization(svg.toString(), output.toString(), "SVG");
+            assertEquals(Files.readString(svg), Files.readString(output));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testUnsupportedFormat() {
+        Path svg = tempDir.resolve("graph.svg");
+        IOException error = assertThrows(IOException.class, () -> new MethodCallVisualizer()
+                .exportVisualization(svg.toString(), tempDir.resolve("graph.gif").toString(), "gif"));
+        assertTrue(error.getCause().getMessage().contains("available: pdf, png, svg"), error.getCause().getMessage());
+    }
+}
@@ -0,0 +1,236 @@
+package com.jps.analysis.watch;
+
+import com.jps.analysis.db.DatabaseManager;
+import com.jps.analysis.parser.JavaSourceParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectWatcherTest {
+    private static final String TEST_DB = "test_analysis.db";
+    private Path testProjectDir;
+    private Path sourceFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty("db.url", "jdbc:sqlite:" + TEST_DB);
+        DatabaseManager.getInstance().createTables();
+
+        testProjectDir = Files.createTempDirectory("test-project");
+        Path srcDir = testProjectDir.resolve("src/main/java/com/example");
+        Files.createDirectories(srcDir);
+        sourceFile = srcDir.resolve("Watched.java");
+        // Scoped with this; the parser records no call for an unscoped same-class call
+        Files.write(sourceFile, ("package com.example;\n\n" +
+                "public class Watched {\n" +
+                "    public void first() {\n" +
+                "        this.second();\n" +
+                "    }\n\n" +
+                "    public void second() {\n" +
+                "    }\n" +
+                "}").getBytes());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        DatabaseManager.getInstance().close();
+        Files.deleteIfExists(Path.of(TEST_DB));
+        Files.walk(testProjectDir)
+             .sorted((a, b) -> -a.compareTo(b))
+             .forEach(path -> {
+                 try {
+                     Files.delete(path);
+                 } catch (Exception e) {
+                     e.printStackTrace();
+                 }
+             });
+    }
+
+    private int countCalls(String calledMethod) throws Exception {
+        return count("SELECT COUNT(*) FROM method_calls mc JOIN methods m ON mc.called_method_id = m.id " +
+            "WHERE m.method_name = '" + calledMethod + "'");
+    }
+
+    // Closed right away; an open read on the shared connection would block the watcher's commit
+    private int count(String sql) throws Exception {
+        try (Statement stmt = DatabaseManager.getInstance().getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Test
+    void testRemovedDeclarationsAreDeleted() {
+        try {
+            Path helper = sourceFile.resolveSibling("Helper.java");
+            Files.write(helper, ("package com.example;\n\n" +
+                    "public class Helper {\n" +
+                    "    public void kept() {\n" +
+                    "    }\n\n" +
+                    "    public void dropped() {\n" +
+                    "    }\n" +
+                    "}").getBytes());
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(1, count("SELECT COUNT(*) FROM methods WHERE method_name = 'dropped'"));
+
+            CountDownLatch reindexed = new CountDownLatch(1);
+            try (ProjectWatcher watcher = new ProjectWatcher(parser, testProjectDir, 50)) {
+                watcher.addListener((Set<Path> changed, Set<Path> deleted) -> {
+                    if (changed.contains(helper)) {
+                        reindexed.countDown();
+                    }
+                });
+                watcher.start();
+                Files.write(helper, ("package com.example;\n\n" +
+                        "public class Helper {\n" +
+                        "    public void kept() {\n" +
+                        "    }\n" +
+                        "}").getBytes());
+                assertTrue(reindexed.await(10, TimeUnit.SECONDS), "Watcher should pick up the edit");
+            }
+
+            assertEquals(0, count("SELECT COUNT(*) FROM methods WHERE method_name = 'dropped'"),
+                "A declaration removed from the file should not stay behind as a stub");
+            assertEquals(1, count("SELECT COUNT(*) FROM methods WHERE method_name = 'kept' AND begin_offset IS NOT NULL"));
+            // Still called from Watched.first(), so it stays
+            assertEquals(1, count("SELECT COUNT(*) FROM methods WHERE method_name = 'second'"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testMovedDirectoryDropsItsFiles() {
+        try {
+            Path subDir = Files.createDirectories(sourceFile.resolveSibling("sub"));
+            Path inner = subDir.resolve("Inner.java");
+            Files.write(inner, ("package com.example.sub;\n\n" +
+                    "public class Inner {\n" +
+                    "    public void run() {\n" +
+                    "    }\n" +
+                    "}").getBytes());
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(1, count("SELECT COUNT(*) FROM classes WHERE class_name = 'Inner'"));
+
+            Path outside = Files.createTempDirectory("moved-out");
+            CountDownLatch reindexed = new CountDownLatch(1);
+            try (ProjectWatcher watcher = new ProjectWatcher(parser, testProjectDir, 50)) {
+                watcher.addListener((Set<Path> changed, Set<Path> deleted) -> {
+                    if (deleted.contains(inner)) {
+                        reindexed.countDown();
+                    }
+                });
+                watcher.start();
+                // Moved out of the project: no event names the file itself
+                Files.move(subDir, outside.resolve("sub"));
+                assertTrue(reindexed.await(10, TimeUnit.SECONDS), "Watcher should drop the moved directory");
+            } finally {
+                Files.deleteIfExists(outside.resolve("sub/Inner.java"));
+                Files.deleteIfExists(outside.resolve("sub"));
+                Files.deleteIfExists(outside);
+            }
+
+            assertEquals(0, count("SELECT COUNT(*) FROM classes WHERE class_name = 'Inner'"));
+            assertEquals(0, count("SELECT COUNT(*) FROM methods WHERE method_name = 'run'"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testEditedFileIsReindexed() {
+        try {
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+            assertEquals(1, countCalls("second"));
+
+            CountDownLatch reindexed = new CountDownLatch(1);
+            try (ProjectWatcher watcher = new ProjectWatcher(parser, testProjectDir, 50)) {
+                watcher.addListener((Set<Path> changed, Set<Path> deleted) -> {
+                    if (changed.contains(sourceFile)) {
+                        reindexed.countDown();
+                    }
+                });
+                watcher.start();
+
+                // Replace the call to second() with a call to third()
+                Files.write(sourceFile, ("package com.example;\n\n" +
+                        "public class Watched {\n" +
+                        "    public void first() {\n" +
+                        "        this.third();\n" +
+                        "    }\n\n" +
+                        "    public void second() {\n" +
+                        "    }\n\n" +
+                        "    public void third() {\n" +
+                        "    }\n" +
+                        "}").getBytes());
+
+                assertTrue(reindexed.await(10, TimeUnit.SECONDS), "Watcher should pick up the edit");
+            }
+
+            assertEquals(0, countCalls("second"), "Calls from the old file contents should be gone");
+            assertEquals(1, countCalls("third"));
+
+            assertEquals(1, count("SELECT COUNT(*) FROM classes WHERE class_name = 'Watched'"),
+                "Class should be updated in place");
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void testBusyDatabaseIsRetried() {
+        try {
+            JavaSourceParser parser = new JavaSourceParser();
+            parser.parseProject(testProjectDir);
+
+            CountDownLatch reindexed = new CountDownLatch(1);
+            Connection conn = DatabaseManager.getInstance().getConnection();
+            try (ProjectWatcher watcher = new ProjectWatcher(parser, testProjectDir, 50)) {
+                watcher.addListener((Set<Path> changed, Set<Path> deleted) -> {
+                    if (changed.contains(sourceFile)) {
+                        reindexed.countDown();
+                    }
+                });
+                watcher.start();
+
+                // Hold the write lock for longer than the watcher's busy timeout
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("UPDATE classes SET class_name = class_name");
+                    Files.write(sourceFile, ("package com.example;\n\n" +
+                            "public class Watched {\n" +
+                            "    public void first() {\n" +
+                            "        this.third();\n" +
+                            "    }\n\n" +
+                            "    public void third() {\n" +
+                            "    }\n" +
+                            "}").getBytes());
+                    assertFalse(reindexed.await(5, TimeUnit.SECONDS), "The commit should not get through the lock");
+                } finally {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+
+                assertTrue(reindexed.await(10, TimeUnit.SECONDS), "The failed batch should be retried");
+            }
+
+            assertEquals(1, countCalls("third"));
+            assertEquals(0, count("SELECT COUNT(*) FROM methods WHERE method_name = 'second'"));
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+}
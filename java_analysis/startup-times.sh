@@ -0,0 +1,36 @@
+#!/bin/bash
+# Reports launcher start-up for a short query, with default JVM flags and with the CDS
+# archive from cds.sh, as the median of several runs. The baseline keeps the JDK's own
+# default CDS archive, as a plain "java" launch would, so the difference is what the
+# application archive adds. Numbers come from -Dcli.timing: "startup" is process start
+# to main(), "command" is the query itself. Usage: startup-times.sh [runs]
+set -e
+JAR=target/java-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar
+CDS=target/java-analysis.jsa
+RUNS=${1:-10}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+java -cp "$JAR" com.jps.analysis.cli.Main index test_java_project --db "$WORK/times.db" > /dev/null 2>&1
+
+measure() {
+  local label=$1
+  shift
+  for _ in $(seq "$RUNS"); do
+    local begin=$(date +%s%N)
+    java "$@" -Dcli.timing=true -cp "$JAR" com.jps.analysis.cli.Main query loops --db "$WORK/times.db" \
+      2>&1 > /dev/null | sed -n 's/^timing: startup=\([0-9]*\)ms command=\([0-9]*\)ms$/\1 \2/p' \
+      | tr '\n' ' '
+    echo $(( ($(date +%s%N) - begin) / 1000000 ))
+  done | sort -n -k3 | awk -v label="$label" '{ rows[NR] = $0 } END {
+      split(rows[int((NR + 1) / 2)], median, " ")
+      printf "%-8s startup %4d ms  command %4d ms  wall %4d ms  (median of %d)\n", label, median[1], median[2], median[3], NR
+    }'
+}
+
+measure "default"
+if [ -f "$CDS" ]; then
+  measure "appcds" -XX:SharedArchiveFile="$CDS"
+else
+  echo "No archive at $CDS; run cds.sh to compare"
+fi